@@ -0,0 +1,791 @@
+package assets;
+
+import graphicstructs.CompressedMesh3D;
+import graphicstructs.Mesh3D;
+import graphicstructs.MeshOptimizer;
+import graphicstructs.ObjImporter;
+import graphicstructs.OffHeapMesh3D;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads models from .obj files on a bounded pool of threads, sharing the meshes of every model that has already been
+ * loaded
+ * <br>Requests for a file that is already loading share one future, and files with the same contents and the same
+ * material libraries and textures share the same meshes. Loaded models are kept in a cache bounded by their total
+ * amount of triangles, dropping the least recently requested first. Files that have been loaded and the libraries and
+ * textures they use are watched so models can be loaded again when any of them change on disk.
+ * <br>Meshes given out by the manager are shared and must not be modified.
+ */
+public class AssetManager implements Closeable {
+    /**
+     * Most threads used to read files by default
+     */
+    private static final int MAX_DEFAULT_THREADS = 8;
+
+    /**
+     * Most loads waiting for a thread before the thread asking for the load reads the file itself
+     */
+    private static final int QUEUE_CAPACITY = 1024;
+
+    /**
+     * Triangles kept in the cache by default
+     */
+    public static final long DEFAULT_CACHE_TRIANGLES = 4_000_000;
+
+    /**
+     * Threads reading and importing files
+     */
+    private final Executor executor;
+
+    /**
+     * Executor created by this manager and shut down when it is closed, or null if the executor was given to it
+     */
+    private final ExecutorService ownedExecutor;
+
+    /**
+     * Most triangles kept in the cache across every model
+     */
+    private final long cacheTriangleBudget;
+
+    /**
+     * Loaded models keyed by the hash of their contents and the files they use, ordered from least to most recently
+     * requested
+     */
+    private final LinkedHashMap<String, CachedModel> cache;
+
+    /**
+     * Contents last loaded from each file, keyed by its absolute normalized path
+     */
+    private final Map<Path, FileState> fileStates;
+
+    /**
+     * Loaded files using each material library or texture, keyed by the absolute normalized path of the used file
+     */
+    private final Map<Path, Set<Path>> dependentFiles;
+
+    /**
+     * Loads that have not finished yet, keyed by the absolute normalized path of their file
+     */
+    private final ConcurrentHashMap<Path, CompletableFuture<List<Mesh3D>>> pendingLoads;
+
+    /**
+     * Listeners told about every model loaded again after its file changed
+     */
+    private final CopyOnWriteArrayList<ReloadListener> reloadListeners;
+
+    /**
+     * Listeners told about every model dropped from the cache
+     */
+    private final CopyOnWriteArrayList<EvictionListener> evictionListeners;
+
+    /**
+     * Watcher of the directories holding loaded files, null until hot reloading is enabled
+     */
+    private WatchService watchService;
+
+    /**
+     * Directories already registered with the watcher
+     */
+    private final Set<Path> watchedDirectories;
+
+    /**
+     * Amount of triangles in the cache
+     */
+    private long cachedTriangles;
+
+    /**
+     * Directory of binary mesh files for loaded models, null to keep loaded meshes on the heap
+     */
+    private volatile File meshCacheDirectory;
+
+    /**
+     * Whether or not meshes of loaded models are compressed when they are kept on the heap
+     */
+    private volatile boolean compressMeshes;
+
+    /**
+     * Whether or not vertices of loaded models are welded and their triangles reordered before they are stored
+     */
+    private volatile boolean optimizeMeshes;
+
+    // Constructors
+
+    /**
+     * Create an asset manager with a thread for each processor, up to eight, and the default cache size
+     */
+    public AssetManager() {
+        this(Math.max(1, Math.min(MAX_DEFAULT_THREADS, Runtime.getRuntime().availableProcessors())),
+                DEFAULT_CACHE_TRIANGLES);
+    }
+
+    /**
+     * Create an asset manager
+     * @param threadCount amount of threads reading files, must be positive
+     * @param cacheTriangleBudget most triangles kept in the cache across every model, must not be negative
+     */
+    public AssetManager(int threadCount, long cacheTriangleBudget) {
+        if (threadCount <= 0) {
+            throw new IllegalArgumentException("An asset manager needs at least one thread");
+        } else if (cacheTriangleBudget < 0) {
+            throw new IllegalArgumentException("Cache size cannot be negative");
+        }
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(QUEUE_CAPACITY), runnable -> {
+                    Thread thread = new Thread(runnable, "asset-loader-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+
+        executor = pool;
+        ownedExecutor = pool;
+        this.cacheTriangleBudget = cacheTriangleBudget;
+        cache = new LinkedHashMap<>(16, 0.75f, true);
+        fileStates = new HashMap<>();
+        dependentFiles = new HashMap<>();
+        pendingLoads = new ConcurrentHashMap<>();
+        reloadListeners = new CopyOnWriteArrayList<>();
+        evictionListeners = new CopyOnWriteArrayList<>();
+        watchedDirectories = new HashSet<>();
+    }
+
+    /**
+     * Create an asset manager reading and importing files on threads it does not own, such as the blocking threads of
+     * a job system, which keep running when the manager is closed
+     * @param loadExecutor executor to read and import files on
+     * @param cacheTriangleBudget most triangles kept in the cache across every model, must not be negative
+     */
+    public AssetManager(Executor loadExecutor, long cacheTriangleBudget) {
+        if (loadExecutor == null) {
+            throw new IllegalArgumentException("Cannot load models on a null executor");
+        } else if (cacheTriangleBudget < 0) {
+            throw new IllegalArgumentException("Cache size cannot be negative");
+        }
+
+        executor = loadExecutor;
+        ownedExecutor = null;
+        this.cacheTriangleBudget = cacheTriangleBudget;
+        cache = new LinkedHashMap<>(16, 0.75f, true);
+        fileStates = new HashMap<>();
+        dependentFiles = new HashMap<>();
+        pendingLoads = new ConcurrentHashMap<>();
+        reloadListeners = new CopyOnWriteArrayList<>();
+        evictionListeners = new CopyOnWriteArrayList<>();
+        watchedDirectories = new HashSet<>();
+    }
+
+    // Loading
+
+    /**
+     * Load the meshes of a .obj file without blocking, split by object or group and material
+     * <br>Files that are loading, or loaded and unchanged on disk along with their material libraries and textures,
+     * are not read again
+     * @param file .obj file to load
+     * @return a future completed with the meshes of the file, or completed exceptionally with an
+     * {@link UncheckedIOException} if the file cannot be read or is malformed
+     */
+    public CompletableFuture<List<Mesh3D>> load(File file) {
+        if (file == null) {
+            throw new IllegalArgumentException("Cannot load a null file");
+        }
+
+        Path path = file.toPath().toAbsolutePath().normalize();
+
+        List<Mesh3D> cached = getIfUnchanged(path);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        CompletableFuture<List<Mesh3D>> future = new CompletableFuture<>();
+        CompletableFuture<List<Mesh3D>> pending = pendingLoads.putIfAbsent(path, future);
+        if (pending != null) {
+            return pending;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(read(path));
+                } catch (IOException e) {
+                    future.completeExceptionally(new UncheckedIOException("Could not load " + path, e));
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    pendingLoads.remove(path, future);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pendingLoads.remove(path, future);
+            future.completeExceptionally(new IllegalStateException("Cannot load files after closing", e));
+        }
+
+        return future;
+    }
+
+    /**
+     * Load the meshes of many .obj files at once
+     * @param files .obj files to load
+     * @return a future completed with the meshes of every file in the order of the files, or completed exceptionally
+     * if any file cannot be loaded
+     */
+    public CompletableFuture<List<List<Mesh3D>>> loadAll(List<File> files) {
+        if (files == null) {
+            throw new IllegalArgumentException("Cannot load a null list of files");
+        }
+
+        List<CompletableFuture<List<Mesh3D>>> futures = new ArrayList<>(files.size());
+        for (File file : files) {
+            futures.add(load(file));
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(unused -> {
+            List<List<Mesh3D>> models = new ArrayList<>(futures.size());
+            for (CompletableFuture<List<Mesh3D>> future : futures) {
+                models.add(future.join());
+            }
+
+            return models;
+        });
+    }
+
+    /**
+     * Load the meshes of a .obj file, waiting for them to finish loading
+     * @param file .obj file to load
+     * @return the meshes of the file
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    public List<Mesh3D> loadNow(File file) throws IOException {
+        try {
+            return load(file).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+
+            throw e;
+        }
+    }
+
+    // Return the meshes last loaded from a file if neither it nor the files it uses have changed on disk since and
+    // they are still cached
+    private synchronized List<Mesh3D> getIfUnchanged(Path path) {
+        FileState state = fileStates.get(path);
+        if (state == null || !state.matches()) {
+            return null;
+        }
+
+        CachedModel model = cache.get(state.contentHash);
+        return model == null ? null : model.meshes;
+    }
+
+    // Read and import a file, reusing the meshes of any cached model with the same contents and used files
+    private List<Mesh3D> read(Path path) throws IOException {
+        long lastModified = Files.getLastModifiedTime(path).toMillis();
+        byte[] contents = Files.readAllBytes(path);
+
+        List<File> referencedFiles = ObjImporter.findReferencedFiles(new ByteArrayInputStream(contents), path.toFile());
+        Path[] files = new Path[referencedFiles.size() + 1];
+        long[] lastModifiedTimes = new long[files.length];
+        long[] sizes = new long[files.length];
+        byte[][] fileContents = new byte[files.length][];
+
+        files[0] = path;
+        lastModifiedTimes[0] = lastModified;
+        sizes[0] = contents.length;
+        fileContents[0] = contents;
+
+        for (int i = 1; i < files.length; i++) {
+            // the time and size are taken before the contents, so a change while reading is caught by the next check
+            File file = referencedFiles.get(i - 1).getAbsoluteFile();
+            files[i] = file.toPath().normalize();
+            lastModifiedTimes[i] = file.lastModified();
+            sizes[i] = file.length();
+            fileContents[i] = file.isFile() ? Files.readAllBytes(files[i]) : null;
+        }
+
+        String contentHash = hash(fileContents);
+        FileState newState = new FileState(contentHash, files, lastModifiedTimes, sizes);
+
+        List<Mesh3D> meshes;
+        synchronized (this) {
+            CachedModel model = cache.get(contentHash);
+            meshes = model == null ? null : model.meshes;
+        }
+
+        File meshCacheDirectory = this.meshCacheDirectory;
+        if (meshes == null && meshCacheDirectory != null) {
+            meshes = mapCachedMeshes(meshCacheDirectory, contentHash);
+        }
+
+        if (meshes == null) {
+            meshes = ObjImporter.importMeshes(new ByteArrayInputStream(contents), path.toFile());
+
+            if (optimizeMeshes) {
+                List<Mesh3D> optimizedMeshes = new ArrayList<>(meshes.size());
+                for (Mesh3D mesh : meshes) {
+                    optimizedMeshes.add(MeshOptimizer.optimize(mesh));
+                }
+
+                meshes = optimizedMeshes;
+            }
+
+            if (meshCacheDirectory != null) {
+                meshes = storeOffHeap(meshes, meshCacheDirectory, contentHash);
+            } else if (compressMeshes) {
+                List<Mesh3D> compressedMeshes = new ArrayList<>(meshes.size());
+                for (Mesh3D mesh : meshes) {
+                    compressedMeshes.add(CompressedMesh3D.compress(mesh));
+                }
+
+                meshes = compressedMeshes;
+            }
+
+            meshes = Collections.unmodifiableList(meshes);
+        }
+
+        List<List<Mesh3D>> evictedModels = Collections.emptyList();
+        synchronized (this) {
+            // another load may have imported the same contents at the same time
+            CachedModel model = cache.get(contentHash);
+            if (model == null) {
+                model = new CachedModel(meshes);
+                cache.put(contentHash, model);
+                cachedTriangles += model.triangleCount;
+                evictedModels = evict();
+            }
+
+            FileState oldState = fileStates.put(path, newState);
+            if (oldState != null) {
+                for (int i = 1; i < oldState.files.length; i++) {
+                    Set<Path> dependents = dependentFiles.get(oldState.files[i]);
+                    dependents.remove(path);
+                    if (dependents.isEmpty()) {
+                        dependentFiles.remove(oldState.files[i]);
+                    }
+                }
+            }
+
+            for (int i = 1; i < files.length; i++) {
+                dependentFiles.computeIfAbsent(files[i], unused -> new HashSet<>()).add(path);
+            }
+
+            meshes = model.meshes;
+        }
+
+        if (watchService != null) {
+            for (Path file : files) {
+                watch(file.getParent());
+            }
+        }
+
+        for (List<Mesh3D> evictedMeshes : evictedModels) {
+            for (EvictionListener listener : evictionListeners) {
+                listener.modelEvicted(evictedMeshes);
+            }
+        }
+
+        return meshes;
+    }
+
+    // Map the binary mesh files written for a model with the same contents, or return null if there are none
+    private static List<Mesh3D> mapCachedMeshes(File directory, String contentHash) {
+        List<Mesh3D> meshes = new ArrayList<>();
+
+        try {
+            File meshFile = meshCacheFile(directory, contentHash, 0);
+            while (meshFile.isFile()) {
+                meshes.add(OffHeapMesh3D.map(meshFile));
+                meshFile = meshCacheFile(directory, contentHash, meshes.size());
+            }
+        } catch (IOException e) {
+            // a damaged cache is ignored and written again once the model is imported
+            return null;
+        }
+
+        return meshes.isEmpty() ? null : Collections.unmodifiableList(meshes);
+    }
+
+    // Copy imported meshes off the heap and write them to binary mesh files for the next load of the same contents
+    // Models with textures are kept off the heap but not written, since mapped meshes have no material
+    private static List<Mesh3D> storeOffHeap(List<Mesh3D> meshes, File directory, String contentHash) {
+        List<Mesh3D> offHeapMeshes = new ArrayList<>(meshes.size());
+        boolean textured = false;
+
+        for (Mesh3D mesh : meshes) {
+            offHeapMeshes.add(OffHeapMesh3D.copyOf(mesh));
+            textured |= mesh.getMaterial() != null && mesh.getMaterial().getDiffuseMap() != null;
+        }
+
+        if (!textured) {
+            try {
+                // the first file is written last, so a model is only mapped once all of its files exist
+                for (int i = offHeapMeshes.size() - 1; i >= 0; i--) {
+                    File meshFile = meshCacheFile(directory, contentHash, i);
+                    File partialFile = new File(directory, meshFile.getName() + ".part");
+
+                    ((OffHeapMesh3D) offHeapMeshes.get(i)).write(partialFile);
+                    Files.move(partialFile.toPath(), meshFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException e) {
+                // the model is still usable, it will just be imported again next time
+                System.err.println("Could not write mesh cache for " + contentHash + ": " + e.getMessage());
+            }
+        }
+
+        return offHeapMeshes;
+    }
+
+    private static File meshCacheFile(File directory, String contentHash, int meshIndex) {
+        return new File(directory, contentHash + "." + meshIndex + ".mesh");
+    }
+
+    // Drop the least recently requested models until the cache fits its budget, always keeping the newest model, and
+    // return the meshes of every dropped model
+    private List<List<Mesh3D>> evict() {
+        List<List<Mesh3D>> evictedModels = new ArrayList<>();
+        Iterator<CachedModel> models = cache.values().iterator();
+
+        while (cachedTriangles > cacheTriangleBudget && cache.size() > 1) {
+            CachedModel model = models.next();
+            cachedTriangles -= model.triangleCount;
+            evictedModels.add(model.meshes);
+            models.remove();
+        }
+
+        return evictedModels;
+    }
+
+    // Hash the contents of a file and of the files it uses, null for missing files, so files with the same contents
+    // share meshes
+    private static String hash(byte[][] fileContents) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            ByteBuffer length = ByteBuffer.allocate(Long.BYTES);
+
+            for (byte[] contents : fileContents) {
+                // each file is prefixed by its length so different splits of the same bytes hash differently
+                length.clear();
+                digest.update(length.putLong(contents == null ? -1 : contents.length).array());
+                if (contents != null) {
+                    digest.update(contents);
+                }
+            }
+
+            // the hash names files in the mesh cache, so it must be safe to use in a file name
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required by every Java platform", e);
+        }
+    }
+
+    // Hot reloading
+
+    /**
+     * Start watching the files that have been and will be loaded and the material libraries and textures they use,
+     * loading them again whenever any of them change on disk and telling every reload listener about the new meshes
+     * @throws IOException if the file system cannot be watched
+     */
+    public synchronized void enableHotReload() throws IOException {
+        if (watchService != null) {
+            return;
+        }
+
+        watchService = FileSystems.getDefault().newWatchService();
+        for (FileState state : fileStates.values()) {
+            for (Path file : state.files) {
+                watch(file.getParent());
+            }
+        }
+
+        Thread watcher = new Thread(this::watchForChanges, "asset-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * @param listener listener told about every model loaded again after its file changed
+     */
+    public void addReloadListener(ReloadListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Cannot add a null listener");
+        }
+
+        reloadListeners.add(listener);
+    }
+
+    /**
+     * @param listener listener to stop telling about reloaded models
+     */
+    public void removeReloadListener(ReloadListener listener) {
+        reloadListeners.remove(listener);
+    }
+
+    /**
+     * @param listener listener told about every model dropped from the cache
+     */
+    public void addEvictionListener(EvictionListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Cannot add a null listener");
+        }
+
+        evictionListeners.add(listener);
+    }
+
+    /**
+     * @param listener listener to stop telling about dropped models
+     */
+    public void removeEvictionListener(EvictionListener listener) {
+        evictionListeners.remove(listener);
+    }
+
+    // Register a directory holding loaded or used files with the watcher
+    private synchronized void watch(Path directory) {
+        if (watchService == null || directory == null || !watchedDirectories.add(directory)) {
+            return;
+        }
+
+        try {
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException | ClosedWatchServiceException e) {
+            watchedDirectories.remove(directory);
+        }
+    }
+
+    // Wait for changes to watched directories and load again every loaded file that changed or uses a changed file
+    private void watchForChanges() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                Path directory = (Path) key.watchable();
+
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.context() instanceof Path) {
+                        reloadIfChanged(directory.resolve((Path) event.context()).normalize());
+                    }
+                }
+
+                key.reset();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // the manager was closed
+        }
+    }
+
+    // Load every loaded file that is or uses a changed file again if it or any file it uses differs from what was
+    // loaded
+    private void reloadIfChanged(Path changedPath) {
+        Set<Path> paths = new HashSet<>();
+        Map<Path, List<Mesh3D>> oldMeshes = new HashMap<>();
+
+        synchronized (this) {
+            paths.add(changedPath);
+            paths.addAll(dependentFiles.getOrDefault(changedPath, Collections.emptySet()));
+
+            for (Path path : paths) {
+                FileState state = fileStates.get(path);
+
+                // editors often write a file in several steps, so only changes to its time or size are worth reading
+                if (state != null && !state.matches()) {
+                    CachedModel model = cache.get(state.contentHash);
+                    oldMeshes.put(path, model == null ? Collections.emptyList() : model.meshes);
+                }
+            }
+        }
+
+        oldMeshes.forEach(this::reload);
+    }
+
+    // Load a changed file again and tell every reload listener if its meshes changed
+    private void reload(Path path, List<Mesh3D> oldMeshes) {
+        load(path.toFile()).thenAccept(newMeshes -> {
+            if (newMeshes != oldMeshes) {
+                for (ReloadListener listener : reloadListeners) {
+                    listener.modelReloaded(path.toFile(), oldMeshes, newMeshes);
+                }
+            }
+        });
+    }
+
+    // Closing
+
+    /**
+     * Stop watching files and stop every thread of this manager, letting loads already started finish
+     * @throws IOException if the watcher cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
+
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    // Setters
+
+    /**
+     * Keep the meshes of models loaded from now on outside of the heap, writing them to binary mesh files in a
+     * directory and mapping those files instead of importing models with the same contents again
+     * <br>Models with textures are kept outside of the heap but imported again each time
+     * @param directory directory to keep binary mesh files in, created if it does not exist, or null to keep meshes
+     *                  of models loaded from now on on the heap
+     * @throws IOException if the directory cannot be created
+     */
+    public void setMeshCacheDirectory(File directory) throws IOException {
+        if (directory != null) {
+            Files.createDirectories(directory.toPath());
+        }
+
+        meshCacheDirectory = directory;
+    }
+
+    /**
+     * Compress the meshes of models loaded from now on that are kept on the heap, trading a small loss of precision
+     * for a much smaller footprint
+     * @param compressMeshes whether or not to compress meshes kept on the heap
+     */
+    public void setMeshCompression(boolean compressMeshes) {
+        this.compressMeshes = compressMeshes;
+    }
+
+    /**
+     * Weld duplicate vertices and reorder the triangles of models imported from now on so transformed vertices are
+     * reused, before they are compressed or written to binary mesh files
+     * @param optimizeMeshes whether or not to optimize imported meshes
+     */
+    public void setMeshOptimization(boolean optimizeMeshes) {
+        this.optimizeMeshes = optimizeMeshes;
+    }
+
+    // Getters
+
+    /**
+     * @return the amount of models in the cache
+     */
+    public synchronized int getCachedModelCount() {
+        return cache.size();
+    }
+
+    /**
+     * @return the amount of triangles across every model in the cache
+     */
+    public synchronized long getCachedTriangleCount() {
+        return cachedTriangles;
+    }
+
+    /**
+     * Listener told when a model is loaded again because its file changed on disk
+     */
+    public interface ReloadListener {
+        /**
+         * Called on a loading thread once the new meshes of a changed file have been loaded
+         * @param file file that changed
+         * @param oldMeshes meshes previously loaded from the file, empty if they had left the cache
+         * @param newMeshes meshes now loaded from the file
+         */
+        void modelReloaded(File file, List<Mesh3D> oldMeshes, List<Mesh3D> newMeshes);
+    }
+
+    /**
+     * Listener told when a model is dropped from the cache, so anything kept for its meshes can be dropped too
+     */
+    public interface EvictionListener {
+        /**
+         * Called on a loading thread once a model has been dropped from the cache to make room for another
+         * @param meshes meshes of the dropped model, which may still be in use by whoever loaded them
+         */
+        void modelEvicted(List<Mesh3D> meshes);
+    }
+
+    // Meshes of a loaded model and the amount of triangles across them
+    private static final class CachedModel {
+        private final List<Mesh3D> meshes;
+
+        private final long triangleCount;
+
+        private CachedModel(List<Mesh3D> meshes) {
+            this.meshes = meshes;
+
+            long count = 0;
+            for (Mesh3D mesh : meshes) {
+                count += mesh.size();
+            }
+
+            triangleCount = count;
+        }
+    }
+
+    // Contents last loaded from a file, and the time and size the file and each file it uses had when they were read
+    // The loaded file comes first, followed by its material libraries and textures, missing ones with no time or size
+    private static final class FileState {
+        private final String contentHash;
+
+        private final Path[] files;
+
+        private final long[] lastModified;
+
+        private final long[] sizes;
+
+        private FileState(String contentHash, Path[] files, long[] lastModified, long[] sizes) {
+            this.contentHash = contentHash;
+            this.files = files;
+            this.lastModified = lastModified;
+            this.sizes = sizes;
+        }
+
+        // Test if the file and every file it uses still have the time and size they had when they were read
+        private boolean matches() {
+            for (int i = 0; i < files.length; i++) {
+                File file = files[i].toFile();
+                if (file.lastModified() != lastModified[i] || file.length() != sizes[i]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,92 @@
+package benchmarks;
+
+import assets.AssetManager;
+import graphicstructs.Mesh3D;
+import graphicstructs.ObjImporter;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the time to load a scene of generated models one after another against loading them with an asset manager,
+ * where every model is requested twice as scenes reference the same model from many places
+ * <br>Usage: AssetLoadBenchmark [models] [cells per side] [threads]
+ */
+final class AssetLoadBenchmark {
+    private AssetLoadBenchmark() {
+
+    }
+
+    public static void main(String[] args) throws IOException {
+        int models = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int cells = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        File directory = Files.createTempDirectory("asset-benchmark").toFile();
+        List<File> scene = new ArrayList<>();
+
+        for (int i = 0; i < models; i++) {
+            File file = new File(directory, "model" + i + ".obj");
+            writeModel(file, cells, i);
+            file.deleteOnExit();
+            scene.add(file);
+        }
+
+        // every model is referenced twice
+        scene.addAll(new ArrayList<>(scene));
+        directory.deleteOnExit();
+
+        System.out.printf("%d references to %d models of %d triangles, %d threads%n", scene.size(), models,
+                cells * cells * 2, threads);
+
+        long start = System.nanoTime();
+        long triangles = 0;
+        for (File file : scene) {
+            for (Mesh3D mesh : ObjImporter.importMeshes(file)) {
+                triangles += mesh.size();
+            }
+        }
+
+        double serialMillis = (System.nanoTime() - start) / 1e6;
+        System.out.printf("serial  %8.1f ms, %d triangles in memory%n", serialMillis, triangles);
+
+        try (AssetManager assetManager = new AssetManager(threads, Long.MAX_VALUE)) {
+            start = System.nanoTime();
+            assetManager.loadAll(scene).join();
+
+            double managedMillis = (System.nanoTime() - start) / 1e6;
+            System.out.printf("manager %8.1f ms, %d triangles in memory | %.2fx serial%n", managedMillis,
+                    assetManager.getCachedTriangleCount(), serialMillis / managedMillis);
+        }
+    }
+
+    // Write a model of a bumpy grid with vertex normals, different for every seed
+    private static void writeModel(File file, int cells, long seed) throws IOException {
+        Random random = new Random(seed);
+
+        try (PrintWriter writer = new PrintWriter(new BufferedWriter(Files.newBufferedWriter(file.toPath())))) {
+            for (int row = 0; row <= cells; row++) {
+                for (int col = 0; col <= cells; col++) {
+                    writer.printf("v %.6f %.6f %.6f%n", col * 0.5, random.nextDouble(), row * 0.5);
+                    writer.printf("vn %.6f %.6f %.6f%n", random.nextDouble() - 0.5, 1.0, random.nextDouble() - 0.5);
+                }
+            }
+
+            for (int row = 0; row < cells; row++) {
+                for (int col = 0; col < cells; col++) {
+                    int topLeft = row * (cells + 1) + col + 1;
+                    int bottomLeft = topLeft + cells + 1;
+                    writer.printf("f %d//%d %d//%d %d//%d %d//%d%n", topLeft, topLeft, bottomLeft, bottomLeft,
+                            bottomLeft + 1, bottomLeft + 1, topLeft + 1, topLeft + 1);
+                }
+            }
+        }
+    }
+
+}
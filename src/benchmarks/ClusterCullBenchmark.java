@@ -0,0 +1,180 @@
+package benchmarks;
+
+import datakit.SinglyLinkedList;
+import graphicstructs.Mesh3D;
+import graphicstructs.Triangle3D;
+import mathkit.Vector;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Measures how many back faces of a tessellated sphere are culled by the normal cones of its clusters from random
+ * camera positions, and the time of finding the facing triangles with and without testing the clusters first
+ * <br>Both ways are timed in turn pass by pass over the same camera positions, with the median pass time of each
+ * reported. Any front facing triangle inside a culled cluster is counted, which should never happen.
+ * <br>Usage: ClusterCullBenchmark [rings] [camera positions] [passes]
+ */
+final class ClusterCullBenchmark {
+    private static final int WARMUP_PASSES = 20;
+
+    /**
+     * Distances of the camera from the center of the sphere, as multiples of its radius
+     */
+    private static final double MIN_DISTANCE = 1.5;
+
+    private static final double MAX_DISTANCE = 6.0;
+
+    /**
+     * Facing triangles found by the timed passes, printed so the passes cannot be skipped
+     */
+    private static long facingTotal;
+
+    private ClusterCullBenchmark() {
+
+    }
+
+    public static void main(String[] args) {
+        int rings = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int positionCount = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int passes = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+
+        Mesh3D sphere = createSphere(rings);
+        int clusterCount = (sphere.size() + Mesh3D.CLUSTER_SIZE - 1) / Mesh3D.CLUSTER_SIZE;
+        double[] positions = createPositions(positionCount, new Random(1));
+
+        long backFaces = 0;
+        long clusterCulled = 0;
+        long frontFacesCulled = 0;
+
+        for (int position = 0; position < positionCount; position++) {
+            double x = positions[position * 3];
+            double y = positions[position * 3 + 1];
+            double z = positions[position * 3 + 2];
+
+            for (int tri = 0; tri < sphere.size(); tri++) {
+                boolean culled = sphere.clusterFacesAway(tri / Mesh3D.CLUSTER_SIZE, x, y, z);
+                boolean facing = sphere.facesTowards(tri, x, y, z);
+
+                backFaces += facing ? 0 : 1;
+                clusterCulled += culled ? 1 : 0;
+                frontFacesCulled += culled && facing ? 1 : 0;
+            }
+        }
+
+        for (int i = 0; i < WARMUP_PASSES; i++) {
+            facingTotal += findFacing(sphere, positions, false) + findFacing(sphere, positions, true);
+        }
+
+        double[] triangleMillis = new double[passes];
+        double[] clusterMillis = new double[passes];
+        for (int i = 0; i < passes; i++) {
+            long start = System.nanoTime();
+            facingTotal += findFacing(sphere, positions, false);
+            triangleMillis[i] = (System.nanoTime() - start) / 1e6;
+
+            start = System.nanoTime();
+            facingTotal += findFacing(sphere, positions, true);
+            clusterMillis[i] = (System.nanoTime() - start) / 1e6;
+        }
+
+        System.out.printf("%d triangles in %d clusters, %d camera positions, %d passes%n", sphere.size(),
+                clusterCount, positionCount, passes);
+        System.out.printf("back faces %.1f%% of triangles | culled by cluster cones %.1f%% of back faces | "
+                + "front faces culled %d%n", 100.0 * backFaces / ((long) sphere.size() * positionCount),
+                100.0 * clusterCulled / backFaces, frontFacesCulled);
+
+        double triangleMedian = median(triangleMillis);
+        double clusterMedian = median(clusterMillis);
+        System.out.printf("triangle tests %7.3f ms | with cluster cones %7.3f ms | %+.1f%% (%d facing)%n",
+                triangleMedian, clusterMedian, (clusterMedian / triangleMedian - 1.0) * 100.0, facingTotal);
+    }
+
+    // Count the triangles facing every camera position, testing the cone of each cluster first if asked, the way
+    // viewports gather facing triangles
+    private static long findFacing(Mesh3D mesh, double[] positions, boolean testClusters) {
+        long facing = 0;
+        int triCount = mesh.size();
+
+        for (int position = 0; position < positions.length; position += 3) {
+            double x = positions[position];
+            double y = positions[position + 1];
+            double z = positions[position + 2];
+            boolean clusterCulled = false;
+
+            for (int tri = 0; tri < triCount; tri++) {
+                if (testClusters && tri % Mesh3D.CLUSTER_SIZE == 0) {
+                    clusterCulled = mesh.clusterFacesAway(tri / Mesh3D.CLUSTER_SIZE, x, y, z);
+                }
+
+                if (!clusterCulled && mesh.facesTowards(tri, x, y, z)) {
+                    facing++;
+                }
+            }
+        }
+
+        return facing;
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    // Pick camera positions in random directions around a unit sphere at the origin (three values per position)
+    private static double[] createPositions(int count, Random random) {
+        double[] positions = new double[count * 3];
+
+        for (int i = 0; i < count; i++) {
+            // a normalized gaussian vector points in a uniformly random direction
+            double x = random.nextGaussian();
+            double y = random.nextGaussian();
+            double z = random.nextGaussian();
+            double scale = (MIN_DISTANCE + random.nextDouble() * (MAX_DISTANCE - MIN_DISTANCE))
+                    / Math.sqrt(x * x + y * y + z * z);
+
+            positions[i * 3] = x * scale;
+            positions[i * 3 + 1] = y * scale;
+            positions[i * 3 + 2] = z * scale;
+        }
+
+        return positions;
+    }
+
+    // Create a unit sphere at the origin out of rings of quads between poles, each split into two triangles
+    private static Mesh3D createSphere(int rings) {
+        int segments = rings * 2;
+        Vector[][] points = new Vector[rings + 1][segments];
+
+        for (int ring = 0; ring <= rings; ring++) {
+            double polar = Math.PI * ring / rings;
+            for (int segment = 0; segment < segments; segment++) {
+                double azimuth = 2.0 * Math.PI * segment / segments;
+                points[ring][segment] = new Vector(Math.sin(polar) * Math.cos(azimuth), Math.cos(polar),
+                        Math.sin(polar) * Math.sin(azimuth));
+            }
+        }
+
+        SinglyLinkedList<Triangle3D> triList = new SinglyLinkedList<>();
+        for (int ring = 0; ring < rings; ring++) {
+            for (int segment = 0; segment < segments; segment++) {
+                int next = (segment + 1) % segments;
+
+                // the quads touching a pole have one edge of zero length, so only their other triangle is kept
+                if (ring > 0) {
+                    triList.add(new Triangle3D(points[ring][segment], points[ring][next],
+                            points[ring + 1][segment]));
+                }
+
+                if (ring < rings - 1) {
+                    triList.add(new Triangle3D(points[ring][next], points[ring + 1][next],
+                            points[ring + 1][segment]));
+                }
+            }
+        }
+
+        return new Mesh3D(triList);
+    }
+
+}
@@ -0,0 +1,142 @@
+package benchmarks;
+
+import datakit.SinglyLinkedList;
+import graphicstructs.CompressedMesh3D;
+import graphicstructs.Mesh3D;
+import graphicstructs.Triangle3D;
+import mathkit.Matrix;
+import mathkit.Vector;
+
+/**
+ * Measures the heap taken by a large terrain mesh and the time to cull and transform every triangle of it, for a mesh
+ * of triangle objects against the same mesh compressed
+ * <br>Usage: CompressedMeshBenchmark [cells per side] [passes]
+ */
+final class CompressedMeshBenchmark {
+    private static final int WARMUP_PASSES = 5;
+
+    private CompressedMeshBenchmark() {
+
+    }
+
+    public static void main(String[] args) {
+        int cells = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int passes = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        double angle = Math.toRadians(30);
+        Matrix rotation = Matrix.identityMatrix(3);
+        rotation.set(0, 0, Math.cos(angle));
+        rotation.set(0, 2, -Math.sin(angle));
+        rotation.set(2, 0, Math.sin(angle));
+        rotation.set(2, 2, Math.cos(angle));
+        Vector translation = new Vector(-cells / 2.0, -10.0, cells / 2.0);
+
+        long baseline = usedMemory();
+        Mesh3D mesh = createTerrain(cells);
+        long meshBytes = usedMemory() - baseline;
+        System.out.printf("%d triangles%n", mesh.size());
+
+        double meshMillis = run("objects", mesh, rotation, translation, passes);
+        System.out.printf("objects    heap %8.1f MB%n", meshBytes / 1e6);
+
+        CompressedMesh3D compressedMesh = CompressedMesh3D.compress(mesh);
+        mesh = null;
+
+        long compressedBytes = usedMemory() - baseline;
+        double compressedMillis = run("compressed", compressedMesh, rotation, translation, passes);
+        System.out.printf("compressed heap %8.1f MB (%.1f MB of data) | %.1fx smaller, %.2fx transform time%n",
+                compressedBytes / 1e6, compressedMesh.getDataSize() / 1e6, (double) meshBytes / compressedBytes,
+                compressedMillis / meshMillis);
+    }
+
+    // Cull and transform the mesh repeatedly the way the engine does, print the average time and return it
+    private static double run(String name, Mesh3D mesh, Matrix rotation, Vector translation, int passes) {
+        double checksum = 0.0;
+        for (int i = 0; i < WARMUP_PASSES; i++) {
+            checksum += transform(mesh, rotation, translation);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < passes; i++) {
+            checksum += transform(mesh, rotation, translation);
+        }
+
+        double millis = (System.nanoTime() - start) / 1e6 / passes;
+        System.out.printf("%-10s transform %7.2f ms (checksum %.3e)%n", name, millis, checksum);
+        return millis;
+    }
+
+    // Transform every triangle facing the camera at the origin, summing the depths so no work can be skipped
+    private static double transform(Mesh3D mesh, Matrix rotation, Vector translation) {
+        Vector camPos = translation.multiplyByScalar(-1.0).multiplyMatrix(rotation.getTransposed());
+        double camX = camPos.get(0);
+        double camY = camPos.get(1);
+        double camZ = camPos.get(2);
+        double depthSum = 0.0;
+
+        if (mesh instanceof CompressedMesh3D) {
+            CompressedMesh3D compressedMesh = (CompressedMesh3D) mesh;
+
+            for (int tri = 0; tri < mesh.size(); tri++) {
+                if (compressedMesh.facesTowards(tri, camX, camY, camZ)) {
+                    for (int corner = 0; corner < Triangle3D.SIZE; corner++) {
+                        double x = compressedMesh.getX(tri, corner);
+                        double y = compressedMesh.getY(tri, corner);
+                        double z = compressedMesh.getZ(tri, corner);
+
+                        Vector transformed = new Vector(3);
+                        for (int col = 0; col < 3; col++) {
+                            transformed.set(col, x * rotation.get(0, col) + y * rotation.get(1, col)
+                                    + z * rotation.get(2, col) + translation.get(col));
+                        }
+
+                        depthSum += transformed.get(2);
+                    }
+                }
+            }
+        } else {
+            int tri = 0;
+            for (Triangle3D triangle : mesh) {
+                if (mesh.facesTowards(tri++, camX, camY, camZ)) {
+                    for (Vector vertex : triangle) {
+                        depthSum += vertex.multiplyMatrix(rotation).add(translation).get(2);
+                    }
+                }
+            }
+        }
+
+        return depthSum;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // Create a rolling terrain grid with shared vertices and vertex normals
+    private static Mesh3D createTerrain(int cells) {
+        Vector[][] points = new Vector[cells + 1][cells + 1];
+        for (int row = 0; row <= cells; row++) {
+            for (int col = 0; col <= cells; col++) {
+                points[row][col] = new Vector(col, Math.sin(row * 0.1) * Math.cos(col * 0.1) * 4.0, row);
+            }
+        }
+
+        SinglyLinkedList<Triangle3D> triList = new SinglyLinkedList<>();
+        for (int row = 0; row < cells; row++) {
+            for (int col = 0; col < cells; col++) {
+                triList.add(new Triangle3D(points[row][col], points[row][col + 1], points[row + 1][col + 1]));
+                triList.add(new Triangle3D(points[row][col], points[row + 1][col + 1], points[row + 1][col]));
+            }
+        }
+
+        Mesh3D mesh = new Mesh3D(triList);
+        mesh.computeVertexNormals();
+        return mesh;
+    }
+
+}
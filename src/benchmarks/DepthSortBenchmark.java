@@ -0,0 +1,108 @@
+package benchmarks;
+
+import datakit.SinglyLinkedList;
+import engine.DepthSorter;
+import engine.Rasterizer;
+import graphicstructs.PackedColor;
+import graphicstructs.Triangle3D;
+import mathkit.Vector;
+
+import java.util.Random;
+
+/**
+ * Measures overdraw and fill time of a layered scene with and without front to back depth sorting
+ * <br>Usage: DepthSortBenchmark [triangles] [width] [height] [frames]
+ */
+final class DepthSortBenchmark {
+    private static final int WARMUP_FRAMES = 20;
+
+    private DepthSortBenchmark() {
+
+    }
+
+    public static void main(String[] args) {
+        int triCount = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int width = args.length > 1 ? Integer.parseInt(args[1]) : 1920;
+        int height = args.length > 2 ? Integer.parseInt(args[2]) : 1080;
+        int frames = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+
+        SinglyLinkedList<Triangle3D> scene = createLayeredScene(triCount, width, height, new Random(42));
+        Rasterizer rasterizer = new Rasterizer(new int[width * height], width, height, Double.MAX_VALUE);
+        DepthSorter depthSorter = new DepthSorter();
+
+        System.out.printf("%d triangles at %dx%d, %d frames%n", triCount, width, height, frames);
+        run("unsorted", scene, rasterizer, null, frames);
+        run("front-to-back", scene, rasterizer, depthSorter, frames);
+    }
+
+    // Render the scene repeatedly and print the average timings and the overdraw of all of the timed frames together
+    private static void run(String name, SinglyLinkedList<Triangle3D> scene, Rasterizer rasterizer,
+                            DepthSorter depthSorter, int frames) {
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            renderFrame(scene, rasterizer, depthSorter);
+        }
+
+        long sortNanos = 0;
+        long fillNanos = 0;
+        long pixelsWritten = 0;
+        long pixelsCovered = 0;
+
+        for (int i = 0; i < frames; i++) {
+            long start = System.nanoTime();
+            SinglyLinkedList<Triangle3D> ordered = depthSorter == null ? scene : depthSorter.sortFrontToBack(scene);
+            long sorted = System.nanoTime();
+
+            rasterizer.clear();
+            for (Triangle3D tri : ordered) {
+                rasterizer.fillTriangle(tri);
+            }
+
+            long filled = System.nanoTime();
+            sortNanos += sorted - start;
+            fillNanos += filled - sorted;
+
+            // counted after the frame is timed, since counting the covered pixels reads the whole depth buffer
+            pixelsWritten += rasterizer.getPixelsWritten();
+            pixelsCovered += rasterizer.getPixelsCovered();
+        }
+
+        double overdraw = pixelsCovered == 0 ? 0.0 : (double) pixelsWritten / pixelsCovered;
+        System.out.printf("%-14s sort %7.3f ms | fill %7.3f ms | overdraw %.2f%n", name,
+                sortNanos / 1e6 / frames, fillNanos / 1e6 / frames, overdraw);
+    }
+
+    private static void renderFrame(SinglyLinkedList<Triangle3D> scene, Rasterizer rasterizer,
+                                    DepthSorter depthSorter) {
+        SinglyLinkedList<Triangle3D> ordered = depthSorter == null ? scene : depthSorter.sortFrontToBack(scene);
+
+        rasterizer.clear();
+        for (Triangle3D tri : ordered) {
+            rasterizer.fillTriangle(tri);
+        }
+    }
+
+    // Create screen space triangles at random depths that heavily overlap each other
+    private static SinglyLinkedList<Triangle3D> createLayeredScene(int triCount, int width, int height, Random random) {
+        SinglyLinkedList<Triangle3D> scene = new SinglyLinkedList<>();
+        double maxSize = Math.min(width, height) / 4.0;
+
+        for (int i = 0; i < triCount; i++) {
+            double z = random.nextDouble();
+            double centerX = maxSize + random.nextDouble() * (width - 2 * maxSize);
+            double centerY = maxSize + random.nextDouble() * (height - 2 * maxSize);
+
+            Vector[] vertices = new Vector[Triangle3D.SIZE];
+            for (int j = 0; j < vertices.length; j++) {
+                double x = centerX + (random.nextDouble() - 0.5) * 2 * maxSize;
+                double y = centerY + (random.nextDouble() - 0.5) * 2 * maxSize;
+                vertices[j] = new Vector(x, y, z);
+            }
+
+            int argb = PackedColor.BLACK | random.nextInt(0x1000000);
+            scene.add(new Triangle3D(vertices[0], vertices[1], vertices[2], argb));
+        }
+
+        return scene;
+    }
+
+}
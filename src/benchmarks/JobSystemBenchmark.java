@@ -0,0 +1,178 @@
+package benchmarks;
+
+import jobs.Job;
+import jobs.JobGroup;
+import jobs.JobSystem;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.IntStream;
+
+/**
+ * Measures the overhead of the job system: submitting and joining empty jobs, chains of dependent jobs, frames of
+ * small jobs joined once per frame, parallel loops and blocking jobs, each against the nearest way of doing the same
+ * without it
+ * <br>Usage: JobSystemBenchmark [jobs] [jobs per frame] [frames] [threads]
+ */
+final class JobSystemBenchmark {
+    private static final int WARMUP_PASSES = 3;
+
+    /**
+     * Iterations of busy work in each job of a frame, roughly tens of microseconds
+     */
+    private static final int WORK_PER_JOB = 20_000;
+
+    /**
+     * Time each blocking job sleeps for in milliseconds
+     */
+    private static final int BLOCKING_MILLIS = 5;
+
+    /**
+     * Sink for busy work so it is not optimized away
+     */
+    private static volatile double sink;
+
+    private JobSystemBenchmark() {
+
+    }
+
+    public static void main(String[] args) {
+        int jobCount = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int jobsPerFrame = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int frames = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        // futures run on a pool of the same size, so only the job system's own overhead is compared
+        ForkJoinPool pool = new ForkJoinPool(threads);
+
+        try (JobSystem jobSystem = new JobSystem(threads)) {
+            System.out.printf("%d threads, blocking jobs on %s%n", jobSystem.getParallelism(),
+                    jobSystem.usesVirtualThreads() ? "virtual threads" : "platform threads");
+
+            for (int pass = 0; pass <= WARMUP_PASSES; pass++) {
+                boolean print = pass == WARMUP_PASSES;
+
+                report(print, "empty jobs", jobCount, "job",
+                        time(() -> emptyJobs(jobSystem, jobCount)),
+                        time(() -> emptyFutures(pool, jobCount)));
+                report(print, "dependency chain", jobCount, "job",
+                        time(() -> chain(jobSystem, jobCount)),
+                        time(() -> futureChain(pool, jobCount)));
+                report(print, "frames", frames, "frame",
+                        time(() -> frameJobs(jobSystem, frames, jobsPerFrame)),
+                        time(() -> serialFrames(frames, jobsPerFrame)));
+                report(print, "parallel for", jobCount, "index",
+                        time(() -> jobSystem.parallelFor(0, jobCount, i -> sink = Math.sqrt(i))),
+                        time(() -> pool.invoke(ForkJoinTask.adapt(() -> IntStream.range(0, jobCount).parallel()
+                                .forEach(i -> sink = Math.sqrt(i))))));
+            }
+
+            int blockingJobs = Math.max(1, jobCount / 100);
+            long blockingNanos = time(() -> blockingJobs(jobSystem, blockingJobs));
+            System.out.printf("%-17s %d jobs sleeping %d ms each in %.1f ms%n", "blocking jobs", blockingJobs,
+                    BLOCKING_MILLIS, blockingNanos / 1e6);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Print the time per item of the job system against the time per item without it
+    private static void report(boolean print, String name, int count, String item, long jobNanos, long baselineNanos) {
+        if (print) {
+            System.out.printf("%-17s job system %9.1f ns/%s | without %9.1f ns/%s%n", name,
+                    (double) jobNanos / count, item, (double) baselineNanos / count, item);
+        }
+    }
+
+    private static long time(Runnable run) {
+        long start = System.nanoTime();
+        run.run();
+        return System.nanoTime() - start;
+    }
+
+    private static void emptyJobs(JobSystem jobSystem, int count) {
+        JobGroup group = jobSystem.newGroup();
+        for (int i = 0; i < count; i++) {
+            group.submit(() -> { });
+        }
+
+        group.join();
+    }
+
+    private static void emptyFutures(ForkJoinPool pool, int count) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            futures.add(CompletableFuture.runAsync(() -> { }, pool));
+        }
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    // Each job depends on the one before it, so they run one after another
+    private static void chain(JobSystem jobSystem, int count) {
+        Job<Void> job = jobSystem.submit(() -> { });
+        for (int i = 1; i < count; i++) {
+            job = jobSystem.submit(() -> { }, job);
+        }
+
+        job.join();
+    }
+
+    private static void futureChain(ForkJoinPool pool, int count) {
+        CompletableFuture<Void> future = CompletableFuture.runAsync(() -> { }, pool);
+        for (int i = 1; i < count; i++) {
+            future = future.thenRunAsync(() -> { }, pool);
+        }
+
+        future.join();
+    }
+
+    // Split each frame into small jobs joined at the end of the frame, as the engine does for its viewports
+    private static void frameJobs(JobSystem jobSystem, int frames, int jobsPerFrame) {
+        JobGroup frame = jobSystem.newGroup();
+
+        for (int i = 0; i < frames; i++) {
+            for (int j = 0; j < jobsPerFrame; j++) {
+                frame.submit(JobSystemBenchmark::work);
+            }
+
+            frame.join();
+        }
+    }
+
+    private static void serialFrames(int frames, int jobsPerFrame) {
+        for (int i = 0; i < frames; i++) {
+            for (int j = 0; j < jobsPerFrame; j++) {
+                work();
+            }
+        }
+    }
+
+    private static void blockingJobs(JobSystem jobSystem, int count) {
+        JobGroup group = jobSystem.newGroup();
+        for (int i = 0; i < count; i++) {
+            group.submitIO(() -> {
+                try {
+                    Thread.sleep(BLOCKING_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+
+        group.join();
+    }
+
+    private static void work() {
+        double total = 0.0;
+        for (int i = 0; i < WORK_PER_JOB; i++) {
+            total += Math.sqrt(i);
+        }
+
+        sink = total;
+    }
+
+}
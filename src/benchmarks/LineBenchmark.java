@@ -0,0 +1,100 @@
+package benchmarks;
+
+import engine.Rasterizer;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Random;
+
+/**
+ * Measures the time to draw the lines of a wireframe with the rasterizer writing straight into the canvas, with and
+ * without depth testing, against drawing each line through {@link java.awt.Graphics#drawLine}
+ * <br>Lines start anywhere around the canvas, so some of them are clipped against its edges
+ * <br>Usage: LineBenchmark [lines] [width] [height] [frames] [max length]
+ */
+final class LineBenchmark {
+    private static final int WARMUP_FRAMES = 10;
+
+    private LineBenchmark() {
+
+    }
+
+    public static void main(String[] args) {
+        int lineCount = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int width = args.length > 1 ? Integer.parseInt(args[1]) : 1920;
+        int height = args.length > 2 ? Integer.parseInt(args[2]) : 1080;
+        int frames = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+        double maxLength = args.length > 4 ? Double.parseDouble(args[4]) : 24.0;
+
+        double[] lines = createLines(lineCount, width, height, maxLength, new Random(42));
+        BufferedImage canvas = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] raster = ((DataBufferInt) canvas.getRaster().getDataBuffer()).getData();
+        Rasterizer rasterizer = new Rasterizer(raster, width, height, Double.MAX_VALUE);
+
+        System.out.printf("%d lines up to %.0f pixels long at %dx%d, %d frames%n", lineCount, maxLength, width, height,
+                frames);
+        report("rasterizer", lineCount, frames, () -> drawLines(rasterizer, lines, false));
+        report("depth tested", lineCount, frames, () -> drawLines(rasterizer, lines, true));
+        report("Graphics", lineCount, frames, () -> drawLines(canvas, lines));
+    }
+
+    // Draw every line repeatedly and print the average time per frame and per line
+    private static void report(String name, int lineCount, int frames, Runnable frame) {
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            frame.run();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < frames; i++) {
+            frame.run();
+        }
+
+        double frameNanos = (double) (System.nanoTime() - start) / frames;
+        System.out.printf("%-13s %8.3f ms/frame | %6.1f ns/line%n", name, frameNanos / 1e6, frameNanos / lineCount);
+    }
+
+    private static void drawLines(Rasterizer rasterizer, double[] lines, boolean depthTest) {
+        rasterizer.clear();
+        for (int i = 0; i < lines.length; i += 6) {
+            rasterizer.drawLine(lines[i], lines[i + 1], lines[i + 2], lines[i + 3], lines[i + 4], lines[i + 5],
+                    0xFF00B4FF, depthTest);
+        }
+
+        rasterizer.finishFrame();
+    }
+
+    private static void drawLines(BufferedImage canvas, double[] lines) {
+        Graphics2D g = canvas.createGraphics();
+        g.setColor(Color.BLACK);
+        g.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        g.setColor(new Color(0x00B4FF));
+
+        for (int i = 0; i < lines.length; i += 6) {
+            g.drawLine((int) lines[i], (int) lines[i + 1], (int) lines[i + 3], (int) lines[i + 4]);
+        }
+
+        g.dispose();
+    }
+
+    // Create lines in screen space with random ends and depths, six values per line
+    private static double[] createLines(int lineCount, int width, int height, double maxLength, Random random) {
+        double[] lines = new double[lineCount * 6];
+
+        for (int i = 0; i < lines.length; i += 6) {
+            double angle = random.nextDouble() * 2.0 * Math.PI;
+            double length = random.nextDouble() * maxLength;
+
+            lines[i] = random.nextDouble() * (width + maxLength) - maxLength / 2.0;
+            lines[i + 1] = random.nextDouble() * (height + maxLength) - maxLength / 2.0;
+            lines[i + 2] = random.nextDouble();
+            lines[i + 3] = lines[i] + Math.cos(angle) * length;
+            lines[i + 4] = lines[i + 1] + Math.sin(angle) * length;
+            lines[i + 5] = random.nextDouble();
+        }
+
+        return lines;
+    }
+
+}
@@ -0,0 +1,128 @@
+package benchmarks;
+
+import datakit.SinglyLinkedList;
+import graphicstructs.IndexedMesh3D;
+import graphicstructs.Mesh3D;
+import graphicstructs.MeshOptimizer;
+import graphicstructs.OffHeapMesh3D;
+import graphicstructs.Triangle3D;
+import mathkit.Matrix;
+import mathkit.Vector;
+
+import java.util.Arrays;
+
+/**
+ * Measures the vertices and vertex transforms of a terrain mesh exported with a copy of each vertex per triangle, as
+ * exported, welded and reordered, transforming vertices through a cache the way the engine does
+ * <br>Usage: MeshOptimizerBenchmark [cells per side] [passes]
+ */
+final class MeshOptimizerBenchmark {
+    private static final int WARMUP_PASSES = 5;
+
+    private MeshOptimizerBenchmark() {
+
+    }
+
+    public static void main(String[] args) {
+        int cells = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        int passes = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        Mesh3D mesh = createExportedTerrain(cells);
+        System.out.printf("%d triangles%n", mesh.size());
+
+        long start = System.nanoTime();
+        Mesh3D weldedMesh = MeshOptimizer.weldVertices(mesh, MeshOptimizer.DEFAULT_WELD_TOLERANCE);
+        Mesh3D optimizedMesh = MeshOptimizer.reorderTriangles(weldedMesh);
+        System.out.printf("optimized in %.1f ms%n", (System.nanoTime() - start) / 1e6);
+
+        double millis = run("exported", OffHeapMesh3D.copyOf(mesh), passes);
+        run("welded", OffHeapMesh3D.copyOf(weldedMesh), passes);
+        double optimizedMillis = run("optimized", OffHeapMesh3D.copyOf(optimizedMesh), passes);
+        System.out.printf("%.2fx transform time%n", optimizedMillis / millis);
+    }
+
+    // Transform the mesh repeatedly, print its vertices, transforms per triangle and average time, and return the time
+    private static double run(String name, OffHeapMesh3D mesh, int passes) {
+        int[] cacheIndices = new int[MeshOptimizer.VERTEX_CACHE_SIZE];
+        Vector[] cacheVertices = new Vector[MeshOptimizer.VERTEX_CACHE_SIZE];
+
+        double checksum = 0.0;
+        for (int i = 0; i < WARMUP_PASSES; i++) {
+            checksum += transform(mesh, cacheIndices, cacheVertices, null);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < passes; i++) {
+            checksum += transform(mesh, cacheIndices, cacheVertices, null);
+        }
+
+        double millis = (System.nanoTime() - start) / 1e6 / passes;
+        int[] transforms = new int[1];
+        transform(mesh, cacheIndices, cacheVertices, transforms);
+
+        System.out.printf("%-9s %8d vertices | %.3f transforms per triangle | transform %7.2f ms (checksum %.3e)%n",
+                name, mesh.getVertexCount(), (double) transforms[0] / mesh.size(), millis, checksum);
+        return millis;
+    }
+
+    // Transform every corner of the mesh through a direct mapped cache of transformed vertices, summing the depths so
+    // no work can be skipped and counting the vertices transformed if asked to
+    private static double transform(IndexedMesh3D mesh, int[] cacheIndices, Vector[] cacheVertices, int[] transforms) {
+        Matrix rotation = Matrix.identityMatrix(3);
+        rotation.set(0, 0, Math.cos(0.5));
+        rotation.set(0, 2, -Math.sin(0.5));
+        rotation.set(2, 0, Math.sin(0.5));
+        rotation.set(2, 2, Math.cos(0.5));
+
+        Arrays.fill(cacheIndices, -1);
+        double depthSum = 0.0;
+
+        for (int tri = 0; tri < mesh.size(); tri++) {
+            for (int corner = 0; corner < Triangle3D.SIZE; corner++) {
+                int vertexIndex = mesh.getVertexIndex(tri, corner);
+                int slot = vertexIndex % cacheIndices.length;
+
+                if (cacheIndices[slot] != vertexIndex) {
+                    double x = mesh.getX(tri, corner);
+                    double y = mesh.getY(tri, corner);
+                    double z = mesh.getZ(tri, corner);
+
+                    Vector transformed = new Vector(3);
+                    for (int col = 0; col < 3; col++) {
+                        transformed.set(col, x * rotation.get(0, col) + y * rotation.get(1, col)
+                                + z * rotation.get(2, col));
+                    }
+
+                    cacheIndices[slot] = vertexIndex;
+                    cacheVertices[slot] = transformed;
+
+                    if (transforms != null) {
+                        transforms[0]++;
+                    }
+                }
+
+                depthSum += cacheVertices[slot].get(2);
+            }
+        }
+
+        return depthSum;
+    }
+
+    // Create a rolling terrain grid where every triangle holds its own copy of its vertices, as many exporters write
+    private static Mesh3D createExportedTerrain(int cells) {
+        SinglyLinkedList<Triangle3D> triList = new SinglyLinkedList<>();
+        for (int row = 0; row < cells; row++) {
+            for (int col = 0; col < cells; col++) {
+                triList.add(new Triangle3D(point(row, col), point(row, col + 1), point(row + 1, col + 1)));
+                triList.add(new Triangle3D(point(row, col), point(row + 1, col + 1), point(row + 1, col)));
+            }
+        }
+
+        return new Mesh3D(triList);
+    }
+
+    private static Vector point(int row, int col) {
+        return new Vector(col, Math.sin(row * 0.1) * Math.cos(col * 0.1) * 4.0, row);
+    }
+
+}
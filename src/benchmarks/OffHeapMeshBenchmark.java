@@ -0,0 +1,88 @@
+package benchmarks;
+
+import datakit.SinglyLinkedList;
+import graphicstructs.Mesh3D;
+import graphicstructs.OffHeapMesh3D;
+import graphicstructs.Triangle3D;
+import mathkit.Vector;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Measures the heap taken by a large terrain mesh and the time of a full garbage collection while it is held, for a
+ * mesh on the heap against the same mesh mapped from a binary mesh file
+ * <br>Usage: OffHeapMeshBenchmark [cells per side] [collections]
+ */
+final class OffHeapMeshBenchmark {
+    private OffHeapMeshBenchmark() {
+
+    }
+
+    public static void main(String[] args) throws IOException {
+        int cells = args.length > 0 ? Integer.parseInt(args[0]) : 700;
+        int collections = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        File meshFile = File.createTempFile("terrain", ".mesh");
+        meshFile.deleteOnExit();
+
+        long baseline = collectAndMeasure();
+        Mesh3D heapMesh = createTerrain(cells);
+        System.out.printf("%d triangles%n", heapMesh.size());
+        report("heap", heapMesh, baseline, collections);
+
+        OffHeapMesh3D.copyOf(heapMesh).write(meshFile);
+        heapMesh = null;
+
+        baseline = collectAndMeasure();
+        Mesh3D mappedMesh = OffHeapMesh3D.map(meshFile);
+        report("mapped", mappedMesh, baseline, collections);
+        System.out.printf("binary mesh file %.1f MB%n", meshFile.length() / 1e6);
+    }
+
+    // Print the heap held by a mesh and the average time of a full collection while it is reachable
+    private static void report(String name, Mesh3D mesh, long baseline, int collections) {
+        long used = collectAndMeasure() - baseline;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < collections; i++) {
+            System.gc();
+        }
+
+        double millis = (System.nanoTime() - start) / 1e6 / collections;
+        System.out.printf("%-6s heap %8.1f MB | full gc %7.2f ms | %d triangles reachable%n", name, used / 1e6,
+                millis, mesh.size());
+    }
+
+    private static long collectAndMeasure() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // Create a rolling terrain grid with shared vertices and vertex normals
+    private static Mesh3D createTerrain(int cells) {
+        Vector[][] points = new Vector[cells + 1][cells + 1];
+        for (int row = 0; row <= cells; row++) {
+            for (int col = 0; col <= cells; col++) {
+                points[row][col] = new Vector(col, Math.sin(row * 0.1) * Math.cos(col * 0.1) * 4.0, row);
+            }
+        }
+
+        SinglyLinkedList<Triangle3D> triList = new SinglyLinkedList<>();
+        for (int row = 0; row < cells; row++) {
+            for (int col = 0; col < cells; col++) {
+                triList.add(new Triangle3D(points[row][col], points[row][col + 1], points[row + 1][col + 1]));
+                triList.add(new Triangle3D(points[row][col], points[row + 1][col + 1], points[row + 1][col]));
+            }
+        }
+
+        Mesh3D mesh = new Mesh3D(triList);
+        mesh.computeVertexNormals();
+        return mesh;
+    }
+
+}
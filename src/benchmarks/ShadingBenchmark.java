@@ -0,0 +1,166 @@
+package benchmarks;
+
+import datakit.SinglyLinkedList;
+import engine.Rasterizer;
+import graphicstructs.PackedColor;
+import graphicstructs.Triangle3D;
+import lighting.DirectionalLight;
+import lighting.Lighting;
+import mathkit.Vector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures fill time of a screen covering terrain grid with flat, Gouraud and Phong shading
+ * <br>All of the shading modes are warmed up before any is timed, and then timed in turn frame by frame, so each one
+ * runs against the same compiled fill code and shares any slowdown of the machine, with the median frame time of each
+ * reported
+ * <br>The mode timed first changes every frame, so no mode is always timed right after the slower Phong frame
+ * <br>Usage: ShadingBenchmark [cells per side] [width] [height] [frames]
+ */
+final class ShadingBenchmark {
+    private static final int WARMUP_FRAMES = 20;
+
+    private static final String[] MODE_NAMES = {"flat", "gouraud", "phong"};
+
+    private ShadingBenchmark() {
+
+    }
+
+    public static void main(String[] args) {
+        int cells = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int width = args.length > 1 ? Integer.parseInt(args[1]) : 1920;
+        int height = args.length > 2 ? Integer.parseInt(args[2]) : 1080;
+        int frames = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+
+        Rasterizer rasterizer = new Rasterizer(new int[width * height], width, height, Double.MAX_VALUE);
+        Lighting lighting = new Lighting();
+        lighting.addLight(new DirectionalLight(new Vector(1, 1, -1)));
+        rasterizer.setLighting(lighting);
+
+        List<SinglyLinkedList<Triangle3D>> scenes = new ArrayList<>();
+        scenes.add(createTerrain(cells, width, height, false, false));
+        scenes.add(createTerrain(cells, width, height, true, false));
+        scenes.add(createTerrain(cells, width, height, false, true));
+
+        for (SinglyLinkedList<Triangle3D> scene : scenes) {
+            for (int i = 0; i < WARMUP_FRAMES; i++) {
+                fill(scene, rasterizer);
+            }
+        }
+
+        double[][] frameMillis = new double[scenes.size()][frames];
+        for (int i = 0; i < frames; i++) {
+            for (int turn = 0; turn < scenes.size(); turn++) {
+                int mode = (i + turn) % scenes.size();
+                long start = System.nanoTime();
+                fill(scenes.get(mode), rasterizer);
+                frameMillis[mode][i] = (System.nanoTime() - start) / 1e6;
+            }
+        }
+
+        System.out.printf("%d triangles at %dx%d, %d frames%n", cells * cells * 2, width, height, frames);
+        double flatMillis = median(frameMillis[0]);
+        System.out.printf("%-8s fill %7.3f ms%n", MODE_NAMES[0], flatMillis);
+
+        for (int mode = 1; mode < scenes.size(); mode++) {
+            double millis = median(frameMillis[mode]);
+            System.out.printf("%-8s fill %7.3f ms | %+.1f%% over flat%n", MODE_NAMES[mode], millis,
+                    (millis / flatMillis - 1.0) * 100.0);
+        }
+    }
+
+    private static void fill(SinglyLinkedList<Triangle3D> scene, Rasterizer rasterizer) {
+        rasterizer.clear();
+        for (Triangle3D tri : scene) {
+            rasterizer.fillTriangle(tri);
+        }
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    // Create a grid of screen space triangles over a rolling height function, lit per vertex or per triangle
+    // Vertex colors and normals are shared arrays the triangles read from, the way the engine shares the arrays of its
+    // lighting cache
+    private static SinglyLinkedList<Triangle3D> createTerrain(int cells, int width, int height, boolean gouraud,
+                                                               boolean phong) {
+        Vector[][] points = new Vector[cells + 1][cells + 1];
+        Vector[][] normals = new Vector[cells + 1][cells + 1];
+        Vector light = new Vector(1, 1, -1).normalized();
+
+        for (int row = 0; row <= cells; row++) {
+            for (int col = 0; col <= cells; col++) {
+                double x = (double) col / cells * (width - 1);
+                double y = (double) row / cells * (height - 1);
+                double u = (double) col / cells * 4 * Math.PI;
+                double v = (double) row / cells * 4 * Math.PI;
+
+                points[row][col] = new Vector(x, y, 0.5 + 0.25 * Math.sin(u) * Math.cos(v));
+                normals[row][col] = new Vector(-Math.cos(u) * Math.cos(v), Math.sin(u) * Math.sin(v), -1).normalized();
+            }
+        }
+
+        int triCount = cells * cells * 2;
+        int[] vertexColors = gouraud ? new int[triCount * Triangle3D.SIZE] : null;
+        double[] vertexNormals = phong ? new double[triCount * Triangle3D.NORMAL_STRIDE] : null;
+
+        SinglyLinkedList<Triangle3D> scene = new SinglyLinkedList<>();
+        for (int row = 0; row < cells; row++) {
+            for (int col = 0; col < cells; col++) {
+                int[][] corners = {{row, col}, {row + 1, col}, {row + 1, col + 1}, {row, col + 1}};
+                int triIndex = (row * cells + col) * 2;
+
+                scene.add(createTriangle(points, normals, light, new int[][] {corners[0], corners[1], corners[2]},
+                        triIndex, vertexColors, vertexNormals));
+                scene.add(createTriangle(points, normals, light, new int[][] {corners[2], corners[3], corners[0]},
+                        triIndex + 1, vertexColors, vertexNormals));
+            }
+        }
+
+        return scene;
+    }
+
+    // Create a triangle between three grid points, writing its vertex colors or normals into the shared arrays if
+    // there are any
+    private static Triangle3D createTriangle(Vector[][] points, Vector[][] normals, Vector light, int[][] corners,
+                                             int triIndex, int[] vertexColors, double[] vertexNormals) {
+        Triangle3D tri = new Triangle3D(points[corners[0][0]][corners[0][1]], points[corners[1][0]][corners[1][1]],
+                points[corners[2][0]][corners[2][1]]);
+        Vector normalSum = new Vector(3);
+
+        for (int i = 0; i < Triangle3D.SIZE; i++) {
+            Vector normal = normals[corners[i][0]][corners[i][1]];
+            normalSum = normalSum.add(normal);
+
+            if (vertexColors != null) {
+                vertexColors[triIndex * Triangle3D.SIZE + i] = shade(normal, light);
+            } else if (vertexNormals != null) {
+                for (int axis = 0; axis < 3; axis++) {
+                    vertexNormals[triIndex * Triangle3D.NORMAL_STRIDE + i * 3 + axis] = normal.get(axis);
+                }
+            }
+        }
+
+        if (vertexColors != null) {
+            tri.setVertexColors(vertexColors, triIndex * Triangle3D.SIZE);
+        } else if (vertexNormals != null) {
+            tri.setNormals(vertexNormals, triIndex * Triangle3D.NORMAL_STRIDE);
+        } else {
+            tri.setARGB(shade(normalSum.normalized(), light));
+        }
+
+        return tri;
+    }
+
+    private static int shade(Vector normal, Vector light) {
+        double shadingVal = Math.min(Math.max(normal.dotProduct(light), 0.0), 1.0);
+        return PackedColor.shade(PackedColor.WHITE, PackedColor.toFixedShade(shadingVal));
+    }
+
+}
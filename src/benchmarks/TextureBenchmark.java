@@ -0,0 +1,149 @@
+package benchmarks;
+
+import datakit.SinglyLinkedList;
+import engine.Rasterizer;
+import graphicstructs.PackedColor;
+import graphicstructs.Texture;
+import graphicstructs.Triangle3D;
+import mathkit.Vector;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures fill time of a screen covering grid with flat colors against the same grid mapped with a texture
+ * <br>All of the scenes are warmed up before any is timed, and then timed in turn frame by frame, so each one runs
+ * against the same compiled fill code and shares any slowdown of the machine, with the median frame time of each
+ * reported
+ * <br>Usage: TextureBenchmark [cells per side] [texture size] [width] [height] [frames]
+ */
+final class TextureBenchmark {
+    private static final int WARMUP_FRAMES = 20;
+
+    /**
+     * Times the texture repeats across the grid in each direction
+     */
+    private static final int TEXTURE_REPEATS = 4;
+
+    private static final String[] SCENE_NAMES = {"flat", "textured", "lit"};
+
+    private TextureBenchmark() {
+
+    }
+
+    public static void main(String[] args) {
+        int cells = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int textureSize = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+        int width = args.length > 2 ? Integer.parseInt(args[2]) : 1920;
+        int height = args.length > 3 ? Integer.parseInt(args[3]) : 1080;
+        int frames = args.length > 4 ? Integer.parseInt(args[4]) : 100;
+
+        Rasterizer rasterizer = new Rasterizer(new int[width * height], width, height, Double.MAX_VALUE);
+        Texture texture = createTexture(textureSize);
+        int litGray = PackedColor.shade(PackedColor.WHITE, PackedColor.toFixedShade(0.8));
+
+        List<SinglyLinkedList<Triangle3D>> scenes = new ArrayList<>();
+        scenes.add(createGrid(cells, width, height, null, litGray));
+        scenes.add(createGrid(cells, width, height, texture, PackedColor.WHITE));
+        scenes.add(createGrid(cells, width, height, texture, litGray));
+
+        for (SinglyLinkedList<Triangle3D> scene : scenes) {
+            for (int i = 0; i < WARMUP_FRAMES; i++) {
+                fill(scene, rasterizer);
+            }
+        }
+
+        double[][] frameMillis = new double[scenes.size()][frames];
+        for (int i = 0; i < frames; i++) {
+            for (int scene = 0; scene < scenes.size(); scene++) {
+                long start = System.nanoTime();
+                fill(scenes.get(scene), rasterizer);
+                frameMillis[scene][i] = (System.nanoTime() - start) / 1e6;
+            }
+        }
+
+        System.out.printf("%d triangles at %dx%d, %dx%d texture with %d levels, %d frames%n", cells * cells * 2,
+                width, height, textureSize, textureSize, texture.getLevelCount(), frames);
+        double flatMillis = median(frameMillis[0]);
+        System.out.printf("%-8s fill %7.3f ms%n", SCENE_NAMES[0], flatMillis);
+
+        for (int scene = 1; scene < scenes.size(); scene++) {
+            double millis = median(frameMillis[scene]);
+            System.out.printf("%-8s fill %7.3f ms | %.2fx flat%n", SCENE_NAMES[scene], millis, millis / flatMillis);
+        }
+    }
+
+    private static void fill(SinglyLinkedList<Triangle3D> scene, Rasterizer rasterizer) {
+        rasterizer.clear();
+        for (Triangle3D tri : scene) {
+            rasterizer.fillTriangle(tri);
+        }
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    // Create a noisy checkerboard so every texel differs from its neighbours
+    private static Texture createTexture(int size) {
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int checker = ((x >> 5) + (y >> 5)) % 2 == 0 ? 200 : 60;
+                int noise = (x * 73 + y * 151) % 40;
+                image.setRGB(x, y, PackedColor.pack(checker + noise / 2, checker, checker - noise / 2 + 20));
+            }
+        }
+
+        return new Texture(image);
+    }
+
+    // Create a grid of screen space triangles receding in depth, with projected texture coordinates if textured
+    private static SinglyLinkedList<Triangle3D> createGrid(int cells, int width, int height, Texture texture,
+                                                            int argb) {
+        Vector[][] points = new Vector[cells + 1][cells + 1];
+        Vector[][] textureCoords = new Vector[cells + 1][cells + 1];
+
+        for (int row = 0; row <= cells; row++) {
+            for (int col = 0; col <= cells; col++) {
+                double x = (double) col / cells * (width - 1);
+                double y = (double) row / cells * (height - 1);
+                double depth = 1.0 + 3.0 * row / cells; // rows further down the screen are further away
+                double u = (double) col / cells * TEXTURE_REPEATS;
+                double v = (double) row / cells * TEXTURE_REPEATS;
+
+                points[row][col] = new Vector(x, y, 0.5 + 0.1 * depth);
+                textureCoords[row][col] = new Vector(u / depth, v / depth, 1.0 / depth);
+            }
+        }
+
+        SinglyLinkedList<Triangle3D> scene = new SinglyLinkedList<>();
+        for (int row = 0; row < cells; row++) {
+            for (int col = 0; col < cells; col++) {
+                int[][] corners = {{row, col}, {row + 1, col}, {row + 1, col + 1}, {row, col + 1}};
+                scene.add(createTriangle(points, textureCoords, corners[0], corners[1], corners[2], texture, argb));
+                scene.add(createTriangle(points, textureCoords, corners[2], corners[3], corners[0], texture, argb));
+            }
+        }
+
+        return scene;
+    }
+
+    private static Triangle3D createTriangle(Vector[][] points, Vector[][] textureCoords, int[] a, int[] b, int[] c,
+                                             Texture texture, int argb) {
+        Triangle3D tri = new Triangle3D(points[a[0]][a[1]], points[b[0]][b[1]], points[c[0]][c[1]], argb);
+
+        if (texture != null) {
+            tri.setTexture(texture);
+            tri.setTextureCoords(textureCoords[a[0]][a[1]], textureCoords[b[0]][b[1]], textureCoords[c[0]][c[1]]);
+        }
+
+        return tri;
+    }
+
+}
@@ -1,8 +1,10 @@
 package engine;
 
 import graphicstructs.Math3D;
+import mathkit.Constants;
 import mathkit.Matrix;
 import mathkit.Vector;
+import spatial.CollisionGrid;
 
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
@@ -75,6 +77,33 @@ public class Camera implements KeyListener {
 
     private boolean tiltRight;
 
+    // Walking
+
+    /**
+     * Grid of the ground and walls to walk on, or null to fly freely
+     */
+    private volatile CollisionGrid walkGrid;
+
+    /**
+     * Height of the camera above the ground while walking
+     */
+    private double eyeHeight;
+
+    /**
+     * Radius of the body kept out of walls while walking
+     */
+    private double bodyRadius;
+
+    /**
+     * Highest rise in the ground that can be walked up without being stopped
+     */
+    private double stepHeight;
+
+    /**
+     * Whether or not the camera has been placed on the ground since walking started
+     */
+    private boolean grounded;
+
     // Constructors
 
     public Camera(double moveSpeed, double strafeSpeed, double flySpeed, double rotSpeed) {
@@ -86,6 +115,10 @@ public class Camera implements KeyListener {
         worldPos = new Vector(3);
 
         rotMat = Matrix.identityMatrix(3);
+
+        eyeHeight = 1.7; // magic
+        bodyRadius = 0.3; // magic
+        stepHeight = 0.4; // magic
     }
 
     public void update() {
@@ -94,8 +127,14 @@ public class Camera implements KeyListener {
             rotMat = Math3D.rotationMatrix(yaw, pitch, roll);
         }
 
+        Vector previousPos = worldPos;
+        CollisionGrid grid = walkGrid;
+
+        move(grid != null);
 
-        move();
+        if (grid != null) {
+            walk(grid, previousPos);
+        }
     }
 
     private void rotate() {
@@ -124,9 +163,9 @@ public class Camera implements KeyListener {
         }
     }
 
-    private void move() {
+    private void move(boolean walking) {
         if (moveForward || moveBackward) {
-            Vector zTranspose = Math3D.forwardRotated(rotMat).multiplyByScalar(moveSpeed);
+            Vector zTranspose = movementDirection(Math3D.forwardRotated(rotMat), walking).multiplyByScalar(moveSpeed);
 
             if (moveForward) {
                 worldPos = worldPos.add(zTranspose);
@@ -137,7 +176,7 @@ public class Camera implements KeyListener {
             }
         }
 
-        if (moveUp || moveDown) {
+        if (!walking && (moveUp || moveDown)) {
             Vector yTranspose = Math3D.upRotated(rotMat).multiplyByScalar(flySpeed);
 
             if (moveUp) {
@@ -150,7 +189,7 @@ public class Camera implements KeyListener {
         }
 
         if (moveLeft || moveRight) {
-            Vector xTranspose = Math3D.rightRotated(rotMat).multiplyByScalar(strafeSpeed);
+            Vector xTranspose = movementDirection(Math3D.rightRotated(rotMat), walking).multiplyByScalar(strafeSpeed);
 
             if (moveLeft) {
                 worldPos = worldPos.add(xTranspose);
@@ -162,8 +201,107 @@ public class Camera implements KeyListener {
         }
     }
 
+    // Flatten a direction onto the ground while walking so looking up or down doesn't change the walking speed
+    private Vector movementDirection(Vector direction, boolean walking) {
+        if (!walking) {
+            return direction;
+        }
+
+        Vector flatDirection = new Vector(direction.get(0), 0, direction.get(2));
+        if (Constants.doubleEqualsZero(flatDirection.dotProduct(flatDirection))) {
+            return flatDirection;
+        }
+
+        return flatDirection.normalized();
+    }
+
+    // Keep the camera out of walls and at eye height above the ground, undoing any step that leaves the ground
+    private void walk(CollisionGrid grid, Vector previousPos) {
+        double feetY = previousPos.get(1) - eyeHeight;
+        double maxGroundHeight = grounded ? feetY + stepHeight : Double.MAX_VALUE;
+
+        // keep the body above the highest step out of anything it was moved into
+        Vector base = worldPos;
+        if (grounded) {
+            base = grid.collideCapsule(new Vector(worldPos.get(0), feetY + stepHeight, worldPos.get(2)),
+                    eyeHeight - stepHeight, bodyRadius);
+        }
+
+        double groundHeight = grid.heightAt(base.get(0), base.get(2), maxGroundHeight);
+
+        if (Double.isNaN(groundHeight)) { // stepped off the ground or up something too high
+            groundHeight = grid.heightAt(previousPos.get(0), previousPos.get(2), maxGroundHeight);
+
+            if (Double.isNaN(groundHeight)) {
+                worldPos = previousPos;
+                return;
+            }
+
+            base = previousPos;
+        }
+
+        worldPos = new Vector(base.get(0), groundHeight + eyeHeight, base.get(2));
+        grounded = true;
+    }
+
+    // Setters
+
+    /**
+     * Walk on the ground of a grid instead of flying freely
+     * @param walkGrid grid of the ground and walls to walk on, or null to fly freely
+     */
+    public void setWalkGrid(CollisionGrid walkGrid) {
+        grounded = false;
+        this.walkGrid = walkGrid;
+    }
+
+    /**
+     * Set the size of the body walking on the ground
+     * @param eyeHeight height of the camera above the ground, must be at least the step height plus twice the radius
+     * @param bodyRadius radius of the body kept out of walls, must be greater than 0
+     * @param stepHeight highest rise in the ground that can be walked up, must be at least 0
+     */
+    public void setWalkDimensions(double eyeHeight, double bodyRadius, double stepHeight) {
+        if (bodyRadius <= 0.0 || stepHeight < 0.0) {
+            throw new IllegalArgumentException("Radius must be greater than 0 and step height at least 0");
+        } else if (eyeHeight < stepHeight + bodyRadius * 2.0) {
+            throw new IllegalArgumentException("Eye height must leave room for the body above the step height");
+        }
+
+        this.eyeHeight = eyeHeight;
+        this.bodyRadius = bodyRadius;
+        this.stepHeight = stepHeight;
+    }
+
+    /**
+     * Place the camera at a position and orientation, such as one recorded in an earlier frame
+     * @param worldPos position in the 3D environment
+     * @param yaw rotation angle around the y-axis
+     * @param pitch rotation angle around the x-axis
+     * @param roll rotation angle around the z-axis
+     */
+    public void setPose(Vector worldPos, double yaw, double pitch, double roll) {
+        if (worldPos == null || worldPos.size() != 3) {
+            throw new IllegalArgumentException("Position must be a 3D vector");
+        }
+
+        this.worldPos = worldPos;
+        this.yaw = yaw;
+        this.pitch = pitch;
+        this.roll = roll;
+        rotMat = Math3D.rotationMatrix(yaw, pitch, roll);
+        grounded = false;
+    }
+
     // Getters
 
+    /**
+     * @return whether or not the camera is walking on the ground instead of flying freely
+     */
+    public boolean isWalking() {
+        return walkGrid != null;
+    }
+
     /**
      * @return the vector position of the camera in the 3D environment
      */
@@ -171,6 +309,27 @@ public class Camera implements KeyListener {
         return worldPos;
     }
 
+    /**
+     * @return the rotation angle around the y-axis
+     */
+    public double getYaw() {
+        return yaw;
+    }
+
+    /**
+     * @return the rotation angle around the x-axis
+     */
+    public double getPitch() {
+        return pitch;
+    }
+
+    /**
+     * @return the rotation angle around the z-axis
+     */
+    public double getRoll() {
+        return roll;
+    }
+
     /**
      * @return the rotation matrix of the camera
      */
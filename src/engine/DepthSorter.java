@@ -0,0 +1,143 @@
+package engine;
+
+import datakit.SinglyLinkedList;
+import graphicstructs.Triangle3D;
+
+import java.util.Arrays;
+
+/**
+ * Orders projected triangles front to back with a linear time radix sort on quantized depth
+ * <br>Drawing near triangles first lets the depth test reject most occluded pixels before they are written
+ */
+public class DepthSorter {
+    /**
+     * Index of where the z value of a vector will be
+     */
+    private static final int Z_INDEX = 2;
+
+    /**
+     * Amount of bits each depth is quantized to
+     */
+    private static final int KEY_BITS = 16;
+
+    /**
+     * Amount of bits sorted by each radix pass
+     */
+    private static final int RADIX_BITS = 8;
+
+    /**
+     * Amount of buckets in each radix pass
+     */
+    private static final int RADIX = 1 << RADIX_BITS;
+
+    /**
+     * Largest quantized depth
+     */
+    private static final int MAX_KEY = (1 << KEY_BITS) - 1;
+
+    // Scratch
+
+    // buffers are kept between frames so sorting does not allocate once the scene size settles
+
+    private Triangle3D[] tris = new Triangle3D[0];
+
+    private Triangle3D[] sortedTris = new Triangle3D[0];
+
+    private int[] keys = new int[0];
+
+    private int[] sortedKeys = new int[0];
+
+    private final int[] bucketCounts = new int[RADIX];
+
+    // Sort
+
+    /**
+     * Sort projected triangles by ascending average depth
+     * <br>The sort is stable, so triangles within the same depth bucket keep their original order
+     * @param projTris triangles in screen space whose z values lie between 0 and 1
+     * @return a new list holding the same triangles ordered front to back
+     */
+    public SinglyLinkedList<Triangle3D> sortFrontToBack(SinglyLinkedList<Triangle3D> projTris) {
+        if (projTris == null) {
+            throw new IllegalArgumentException("Cannot sort a null list of triangles");
+        }
+
+        int count = projTris.size();
+        ensureCapacity(count);
+
+        int i = 0;
+        for (Triangle3D tri : projTris) {
+            tris[i] = tri;
+            keys[i] = quantizeDepth(tri);
+            i++;
+        }
+
+        for (int shift = 0; shift < KEY_BITS; shift += RADIX_BITS) {
+            radixPass(count, shift);
+        }
+
+        SinglyLinkedList<Triangle3D> sorted = new SinglyLinkedList<>();
+        for (i = 0; i < count; i++) {
+            sorted.add(tris[i]);
+            tris[i] = null;
+        }
+
+        return sorted;
+    }
+
+    // Counting sort the triangles by one digit of their keys, then swap the sorted results back into place
+    private void radixPass(int count, int shift) {
+        Arrays.fill(bucketCounts, 0);
+
+        for (int i = 0; i < count; i++) {
+            bucketCounts[(keys[i] >>> shift) & (RADIX - 1)]++;
+        }
+
+        int offset = 0;
+        for (int bucket = 0; bucket < RADIX; bucket++) {
+            int bucketCount = bucketCounts[bucket];
+            bucketCounts[bucket] = offset;
+            offset += bucketCount;
+        }
+
+        for (int i = 0; i < count; i++) {
+            int dest = bucketCounts[(keys[i] >>> shift) & (RADIX - 1)]++;
+            sortedKeys[dest] = keys[i];
+            sortedTris[dest] = tris[i];
+        }
+
+        int[] tempKeys = keys;
+        keys = sortedKeys;
+        sortedKeys = tempKeys;
+
+        Triangle3D[] tempTris = tris;
+        tris = sortedTris;
+        sortedTris = tempTris;
+    }
+
+    // Map the average depth of a projected triangle onto an integer key
+    private int quantizeDepth(Triangle3D projTri) {
+        double avgZ = (projTri.get(0).get(Z_INDEX) + projTri.get(1).get(Z_INDEX) + projTri.get(2).get(Z_INDEX)) / 3;
+        int key = (int) (avgZ * MAX_KEY);
+
+        if (key < 0) {
+            return 0;
+        }
+
+        return Math.min(key, MAX_KEY);
+    }
+
+    // Grow the scratch buffers to fit a desired amount of triangles
+    private void ensureCapacity(int count) {
+        if (tris.length >= count) {
+            return;
+        }
+
+        int capacity = Math.max(count, tris.length * 2);
+        tris = new Triangle3D[capacity];
+        sortedTris = new Triangle3D[capacity];
+        keys = new int[capacity];
+        sortedKeys = new int[capacity];
+    }
+
+}
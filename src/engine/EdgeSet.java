@@ -0,0 +1,136 @@
+package engine;
+
+/**
+ * Set of the edges of a mesh already added to the lines of a frame, so an edge shared by two triangles is only drawn
+ * once
+ * <br>Edges are keyed by the two vertices they join, in either order. Keys are kept in open addressed arrays of
+ * primitives and the set is emptied by moving to the next generation, so clearing it for each mesh is free.
+ */
+final class EdgeSet {
+    /**
+     * Capacity of a new set, always a power of two
+     */
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    /**
+     * Key of the first vertex of the edge in each slot
+     */
+    private long[] firstKeys;
+
+    /**
+     * Key of the second vertex of the edge in each slot
+     */
+    private long[] secondKeys;
+
+    /**
+     * Generation each slot was last filled in, slots of older generations are empty
+     */
+    private int[] slotGenerations;
+
+    /**
+     * Generation of the edges currently in the set
+     */
+    private int generation;
+
+    /**
+     * Amount of edges in the set
+     */
+    private int size;
+
+    // Constructors
+
+    EdgeSet() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    // Allocate empty slots
+    private void allocate(int capacity) {
+        firstKeys = new long[capacity];
+        secondKeys = new long[capacity];
+        slotGenerations = new int[capacity];
+        generation = 1;
+        size = 0;
+    }
+
+    // Edges
+
+    // Add the edge between two vertices, returning whether or not it was new to the set
+    boolean add(long vertexKeyA, long vertexKeyB) {
+        long first = Math.min(vertexKeyA, vertexKeyB);
+        long second = Math.max(vertexKeyA, vertexKeyB);
+
+        int mask = firstKeys.length - 1;
+        int slot = hash(first, second) & mask;
+
+        while (slotGenerations[slot] == generation) {
+            if (firstKeys[slot] == first && secondKeys[slot] == second) {
+                return false;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        firstKeys[slot] = first;
+        secondKeys[slot] = second;
+        slotGenerations[slot] = generation;
+        size++;
+
+        // keep the set at most half full so probes stay short
+        if (size * 2 > firstKeys.length) {
+            grow();
+        }
+
+        return true;
+    }
+
+    // Empty the set
+    void clear() {
+        size = 0;
+        generation++;
+
+        if (generation == Integer.MAX_VALUE) { // slots of a generation this old could be mistaken for new ones
+            allocate(firstKeys.length);
+        }
+    }
+
+    // Move every edge into slots twice as many
+    private void grow() {
+        long[] oldFirstKeys = firstKeys;
+        long[] oldSecondKeys = secondKeys;
+        int[] oldSlotGenerations = slotGenerations;
+        int oldGeneration = generation;
+
+        allocate(oldFirstKeys.length * 2);
+        int mask = firstKeys.length - 1;
+
+        for (int i = 0; i < oldFirstKeys.length; i++) {
+            if (oldSlotGenerations[i] != oldGeneration) {
+                continue;
+            }
+
+            int slot = hash(oldFirstKeys[i], oldSecondKeys[i]) & mask;
+            while (slotGenerations[slot] == generation) {
+                slot = (slot + 1) & mask;
+            }
+
+            firstKeys[slot] = oldFirstKeys[i];
+            secondKeys[slot] = oldSecondKeys[i];
+            slotGenerations[slot] = generation;
+            size++;
+        }
+    }
+
+    // Mix the keys of both vertices so nearby vertex indices spread across the slots
+    private static int hash(long first, long second) {
+        long mixed = (first * 0x9E3779B97F4A7C15L + second) * 0xC2B2AE3D27D4EB4FL;
+        return (int) (mixed ^ (mixed >>> 32));
+    }
+
+    // Getters
+
+    // Amount of edges in the set
+    int size() {
+        return size;
+    }
+
+}
@@ -1,25 +1,42 @@
 package engine;
 
-import datakit.SinglyLinkedList;
+import assets.AssetManager;
+import graphicstructs.Math3D;
 import graphicstructs.Mesh3D;
-import graphicstructs.Plane;
-import graphicstructs.Triangle3D;
+import jobs.Job;
+import jobs.JobGroup;
+import jobs.JobSystem;
+import lighting.DirectionalLight;
+import lighting.Lighting;
+import lighting.LightingCache;
 import mathkit.Matrix;
 import mathkit.Vector;
+import profiling.FrameEvent;
+import spatial.CollisionGrid;
+import spatial.RayCaster;
+import spatial.RayHit;
 
 import javax.swing.JPanel;
 import java.awt.Color;
 import java.awt.Graphics;
+import java.awt.GraphicsConfiguration;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.image.BufferedImage;
-import java.awt.image.DataBufferInt;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * JPanel to calculate and render 3D Graphics
@@ -42,56 +59,152 @@ public class Engine extends JPanel {
      */
     private final int Z_INDEX = 2;
 
-    // Plane Defaults
+    // Mesh and Triangle
 
     /**
-     * Highest value visible in the z-plane of the 3D environment
+     * List of all meshes that exist
      */
-    private final double Z_FAR = 1000.0;
+    private final List<Mesh3D> meshes;
 
     /**
-     * Lowest value visible in the z-plane of the 3D environment
+     * Loads models in the background and shares meshes between models with the same file or contents
      */
-    private final double Z_NEAR = 0.1;
+    private final AssetManager assetManager;
 
-    // Mesh and Triangle
+    /**
+     * Changes to the meshes from loads that finished, applied on the engine thread at the start of the next frame
+     */
+    private final ConcurrentLinkedQueue<Runnable> pendingMeshChanges;
 
     /**
-     * List of all meshes that exist
+     * Rotation and translation of every mesh in world space, replaced as a whole whenever it changes so a frame never
+     * sees the rotation of one transform with the translation of another
+     */
+    private volatile WorldTransform worldTransform;
+
+    /**
+     * Incremented whenever the world transform changes
      */
-    private final ArrayList<Mesh3D> meshes;
+    private final AtomicLong transformVersion;
+
+    // Lighting
 
     /**
-     * List of triangles to convert to projected values to be rendered
+     * Every light in the 3D environment
      */
-    private SinglyLinkedList<Triangle3D> trianglesToRender;
+    private final Lighting lighting;
 
     /**
-     * List of all triangles that are currently being rendered onto the canvas
+     * Lit colors of each mesh kept between frames
      */
-    private SinglyLinkedList<Triangle3D> trianglesBeingRendered;
+    private final LightingCache lightingCache;
 
     /**
-     * Matrix to convert a 3D coordinate into a 2D point on the screen
+     * How lighting is applied across the surface of triangles
      */
-    private Matrix projMat;
+    private volatile ShadingMode shadingMode;
 
     // Rendering
 
     /**
-     * Image taking up the whole screen
+     * Every viewport in the order they are drawn, each rendering the world from its own camera
+     */
+    private final List<Viewport> viewports;
+
+    /**
+     * Viewport covering the whole panel by default, showing the world from the camera the keyboard moves
+     */
+    private final Viewport mainViewport;
+
+    /**
+     * Whether or not triangles are sorted front to back before they are rasterized
+     */
+    private volatile boolean depthSorting;
+
+    /**
+     * What is drawn for the meshes, filled triangles or debug lines
+     */
+    private volatile ViewMode viewMode;
+
+    /**
+     * Whether or not viewports draw every other frame by reprojecting the whole of their last rasterized frame to the
+     * new camera pose while only the camera moves, filling holes from neighbouring pixels instead of any triangles
+     */
+    private volatile boolean temporalReprojection;
+
+    // Resolution
+
+    /**
+     * Smallest fraction of the panel's resolution rendered at with dynamic resolution
+     */
+    private static final double MIN_RENDER_SCALE = 0.25;
+
+    /**
+     * Smallest change in render scale, so the canvas isn't reallocated for every small change in frame time
+     */
+    private static final double RENDER_SCALE_STEP = 0.05;
+
+    /**
+     * Fewest frames between changes in render scale, giving the average frame time time to settle
      */
-    private BufferedImage canvas;
+    private static final int RENDER_SCALE_INTERVAL = 15;
 
     /**
-     * Container for colors for each pixel in the canvas
+     * Fraction of the frame time budget dynamic resolution aims to use, leaving room for spikes
      */
-    private int[] canvasRaster;
+    private static final double FRAME_TIME_HEADROOM = 0.9;
 
     /**
-     * Container for the z-value of each pixel in the canvas
+     * Whether or not the render scale follows recent frame times to stay within the frame time budget
      */
-    private double[] depthBuffer;
+    private volatile boolean dynamicResolution;
+
+    /**
+     * Time in milliseconds each frame should take with dynamic resolution, or 0 to use the frame interval
+     */
+    private volatile double frameTimeBudget;
+
+    /**
+     * Fraction of the panel's resolution the canvas is rendered at
+     */
+    private volatile double renderScale;
+
+    /**
+     * Moving average of the time in milliseconds each frame took to update and render
+     */
+    private double averageFrameTime;
+
+    /**
+     * Frame the render scale last changed in
+     */
+    private long renderScaleFrame;
+
+    /**
+     * Time in nanoseconds the last frame took to render
+     */
+    private volatile long lastRenderTime;
+
+    // Queries
+
+    /**
+     * Caster answering ray queries against every mesh
+     */
+    private final RayCaster rayCaster;
+
+    /**
+     * Grid of every mesh in world space for the camera to walk on, or null if it hasn't been built
+     */
+    private CollisionGrid collisionGrid;
+
+    /**
+     * Version of the world transform the collision grid was built with
+     */
+    private long collisionGridVersion;
+
+    /**
+     * Whether or not the camera walks on the meshes instead of flying freely
+     */
+    private volatile boolean walkMode;
 
     // Engine
 
@@ -107,11 +220,36 @@ public class Engine extends JPanel {
 
     private Camera camera;
 
+    /**
+     * Scheduler running the stages of the pipeline for each viewport, model loads and replay writes
+     */
+    private final JobSystem jobSystem;
+
     /**
      * Amount of frames to run per second
      */
     private double frameRate;
 
+    /**
+     * Number of frames updated since the engine started
+     */
+    private volatile long frameCount;
+
+    /**
+     * Load of the model the engine starts with
+     */
+    private CompletableFuture<List<Mesh3D>> defaultModelLoad;
+
+    /**
+     * Recorder writing the camera pose of each frame to a replay file, or null if no replay is being recorded
+     */
+    private volatile ReplayRecorder replayRecorder;
+
+    /**
+     * Latest job writing a frame of the replay, which the write of the next frame waits for to keep frames in order
+     */
+    private volatile Job<Void> replayWrite;
+
     // Constructors
 
     /**
@@ -131,9 +269,24 @@ public class Engine extends JPanel {
         };
 
         camera = new Camera(.25, .25, .25, Math.toRadians(1));
-        trianglesToRender = new SinglyLinkedList<>();
-        trianglesBeingRendered = new SinglyLinkedList<>();
-        meshes = new ArrayList<>();
+        meshes = new CopyOnWriteArrayList<>();
+        jobSystem = new JobSystem();
+        // loads parse as much as they read, so no more run at once than there are CPU bound threads
+        assetManager = new AssetManager(jobSystem.newBoundedIOExecutor(jobSystem.getParallelism()),
+                AssetManager.DEFAULT_CACHE_TRIANGLES);
+        pendingMeshChanges = new ConcurrentLinkedQueue<>();
+        mainViewport = new Viewport(camera, 0.0, 0.0, 1.0, 1.0);
+        viewports = new CopyOnWriteArrayList<>(List.of(mainViewport));
+        renderScale = 1.0;
+        mainViewport.setJobSystem(jobSystem);
+        rayCaster = new RayCaster(jobSystem);
+        transformVersion = new AtomicLong();
+        worldTransform = new WorldTransform(Matrix.identityMatrix(3), new Vector(0, 0, 20), 0); // magic
+        lighting = new Lighting();
+        lighting.addLight(new DirectionalLight(new Vector(1, 1, -1))); // magic
+        lightingCache = new LightingCache(lighting);
+        shadingMode = ShadingMode.FLAT;
+        viewMode = ViewMode.SOLID;
 
         initMeshes();
         setBackground(Color.BLACK);
@@ -145,6 +298,15 @@ public class Engine extends JPanel {
             public void keyPressed(KeyEvent e) {
                 if (e.getKeyCode() == KeyEvent.VK_ESCAPE) { // exit application
                     System.exit(0);
+                } else if (e.getKeyCode() == KeyEvent.VK_G) { // toggle walking on the ground
+                    setWalkMode(!walkMode);
+                } else if (e.getKeyCode() == KeyEvent.VK_R) { // toggle recording a replay
+                    toggleRecording();
+                } else if (e.getKeyCode() == KeyEvent.VK_V) { // cycle through wireframe and bounds views
+                    ViewMode[] viewModes = ViewMode.values();
+                    setViewMode(viewModes[(viewMode.ordinal() + 1) % viewModes.length]);
+                } else if (e.getKeyCode() == KeyEvent.VK_T) { // toggle temporal reprojection
+                    setTemporalReprojection(!temporalReprojection);
                 }
             }
         });
@@ -156,21 +318,22 @@ public class Engine extends JPanel {
 
     // Create all desired meshes here
     private void initMeshes() {
+        assetManager.addReloadListener((file, oldMeshes, newMeshes) ->
+                pendingMeshChanges.add(() -> replaceMeshes(oldMeshes, newMeshes)));
+
         try {
-            meshes.add(Mesh3D.createMeshFromFile(new File("res/models/Mountains.obj")));
+            assetManager.enableHotReload();
         } catch (IOException e) {
-            e.printStackTrace();
+            System.err.println("Models will not reload when their files change: " + e.getMessage());
         }
+
+        defaultModelLoad = loadModel(new File("res/models/Mountains.obj"));
     }
 
     /**
      * Start the engine by starting the timer to run at a set interval
      */
     public void start() {
-        projMat = projectionMatrix(Math.PI / 2);
-        canvas = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_RGB);
-        canvasRaster = ((DataBufferInt) canvas.getRaster().getDataBuffer()).getData();
-        depthBuffer = new double[canvasRaster.length];
         timer.scheduleAtFixedRate(timerTask, 0, (long) (1000 / frameRate));
         requestFocus();
     }
@@ -180,325 +343,481 @@ public class Engine extends JPanel {
      */
     public void stop() {
         timer.cancel();
+
+        try {
+            stopRecording();
+        } catch (IOException e) {
+            System.err.println("Could not finish the replay file: " + e.getMessage());
+        }
+
+        try {
+            assetManager.close();
+        } catch (IOException e) {
+            System.err.println("Could not stop watching model files: " + e.getMessage());
+        }
+
+        jobSystem.close();
     }
 
-    // Render
+    // Models
 
     /**
-     * All rendering occurs here
-     * @param g graphics object to draw onto screen with
+     * Load a model in the background and add its meshes to the world at the start of the first frame after it loads
+     * <br>Models that fail to load are reported on the standard error stream as well as through the returned future
+     * @param file .obj file of the model
+     * @return a future completed with the meshes of the model once it has loaded
      */
-    @Override
-    protected void paintComponent(Graphics g) {
-        Arrays.fill(canvasRaster, 0);
-        Arrays.fill(depthBuffer, Z_FAR);
-
-        // fill all triangles (triangles are already in projected form)
-        for (Triangle3D tri : trianglesBeingRendered) {
-            fillTriangle(tri);
-        }
+    public CompletableFuture<List<Mesh3D>> loadModel(File file) {
+        return assetManager.load(file).whenComplete((loadedMeshes, error) -> {
+            if (error != null) {
+                System.err.println("Could not load model " + file + ": "
+                        + (error.getCause() != null ? error.getCause() : error));
+            } else {
+                pendingMeshChanges.add(() -> replaceMeshes(Collections.emptyList(), loadedMeshes));
+            }
+        });
+    }
 
-        g.drawImage(canvas, 0, 0, null);
+    // Replace every mesh in the world with others at the start of the next frame
+    void setMeshes(List<Mesh3D> newMeshes) {
+        pendingMeshChanges.add(() -> replaceMeshes(new ArrayList<>(meshes), newMeshes));
     }
 
-    private void drawTriangle(Triangle3D projTri, Graphics g) {
-        Vector point1 = projTri.get(0);
-        Vector point2 = projTri.get(1);
-        Vector point3 = projTri.get(2);
+    // Apply the changes from every load that has finished since the last frame
+    private void applyMeshChanges() {
+        Runnable change = pendingMeshChanges.poll();
 
-        g.drawLine((int) point1.get(X_INDEX), (int) point1.get(Y_INDEX),
-                (int) point2.get(X_INDEX), (int) point2.get(Y_INDEX));
+        while (change != null) {
+            change.run();
+            change = pendingMeshChanges.poll();
+        }
+    }
 
-        g.drawLine((int) point2.get(X_INDEX), (int) point2.get(Y_INDEX),
-                (int) point3.get(X_INDEX), (int) point3.get(Y_INDEX));
+    // Swap meshes of the world for others, adding the new meshes if none of the old ones are in the world
+    private void replaceMeshes(List<Mesh3D> oldMeshes, List<Mesh3D> newMeshes) {
+        boolean replaced = false;
 
-        g.drawLine((int) point3.get(X_INDEX), (int) point3.get(Y_INDEX),
-                (int) point1.get(X_INDEX), (int) point1.get(Y_INDEX));
-    }
+        for (Mesh3D oldMesh : oldMeshes) {
+            replaced |= meshes.removeIf(mesh -> mesh == oldMesh);
+            lightingCache.invalidate(oldMesh);
+            rayCaster.invalidate(oldMesh);
+        }
 
-    // Fill a projected triangle with a scanline algorithm
-    // Accounts for depth buffering
-    private void fillTriangle(Triangle3D projTri) {
-        // sort the projected triangle by y values
-        Triangle3D sortedProjTri = getSortedTriByY(projTri);
-        Vector point1 = sortedProjTri.get(0);
-        Vector point2 = sortedProjTri.get(1);
-        Vector point3 = sortedProjTri.get(2);
+        if (replaced || oldMeshes.isEmpty()) {
+            meshes.addAll(newMeshes);
+        }
 
-        int rgb = sortedProjTri.getColor().getRGB();
-        double avgZ = (point1.get(Z_INDEX) + point2.get(Z_INDEX) + point3.get(Z_INDEX)) / 3;
+        // the walk grid holds the triangles of every mesh, so it is built again on the next frame
+        collisionGrid = null;
+    }
 
-        // scanline fill the upper sub triangle
-        int currY = (int) point1.get(Y_INDEX) + 1;
-        int point1X = (int) point1.get(X_INDEX);
-        int startRow = 0;
-        int endRow = 0;
+    // Replays
 
-        double slopeA = (point2.get(X_INDEX) - point1.get(X_INDEX)) / (point2.get(Y_INDEX) - point1.get(Y_INDEX));
-        double slopeB = (point3.get(X_INDEX) - point1.get(X_INDEX)) / (point3.get(Y_INDEX) - point1.get(Y_INDEX));
+    /**
+     * Record the camera pose of every frame from now on into a replay file, which can be rendered again headlessly
+     * with the same frames by running the ReplayRunner class
+     * <br>The settings of the first frame are recorded for the whole replay, any replay already being recorded is
+     * finished first
+     * @param file file to write the replay to, replacing any existing file
+     * @throws IOException if the file cannot be created
+     */
+    public void startRecording(File file) throws IOException {
+        stopRecording();
+        WorldTransform transform = worldTransform;
+        replayRecorder = new ReplayRecorder(file, getWidth(), getHeight(), shadingMode, depthSorting,
+                transform.worldMat, transform.translationVec);
+    }
 
-        while (currY <= point2.get(Y_INDEX)) {
-            int xStart = (int) (point1X + (startRow * slopeA));
-            int xEnd = (int) (point1X + (endRow * slopeB));
+    /**
+     * Finish the replay being recorded, if any
+     * @throws IOException if the end of the replay file cannot be written
+     */
+    public void stopRecording() throws IOException {
+        ReplayRecorder recorder = replayRecorder;
+        replayRecorder = null;
+
+        // every frame recorded so far is written before the file is finished
+        Job<Void> write = replayWrite;
+        if (write != null) {
+            write.join();
+        }
 
-            for (int currX = Math.min(xStart, xEnd); currX <= Math.max(xStart, xEnd); currX++) {
-                int screenIndex = currY * getWidth() + currX;
+        if (recorder != null) {
+            recorder.close();
+        }
+    }
 
-                if (avgZ < depthBuffer[screenIndex]) {
-                    depthBuffer[screenIndex] = avgZ;
-                    canvasRaster[screenIndex] = rgb;
-                }
+    // Start recording into a new file in the replays directory, or finish the replay being recorded
+    private void toggleRecording() {
+        try {
+            if (replayRecorder != null) {
+                stopRecording();
+                return;
             }
 
-            currY++;
-            startRow++;
-            endRow++;
+            File directory = new File("replays");
+            Files.createDirectories(directory.toPath());
+
+            File file = new File(directory, "replay-" + System.currentTimeMillis() + ".replay");
+            startRecording(file);
+            System.out.println("Recording replay to " + file);
+        } catch (IOException e) {
+            System.err.println("Could not record replay: " + e.getMessage());
         }
+    }
 
-        // scanline fill the lower sub triangle
-        currY = (int) point2.get(Y_INDEX) + 1;
-        startRow = 0;
-        slopeA = (point3.get(X_INDEX) - point2.get(X_INDEX)) / (point3.get(Y_INDEX) - point2.get(Y_INDEX));
-        int point2X = (int) point2.get(X_INDEX);
+    // Record the camera pose of the frame just updated if a replay is being recorded, writing it on a blocking job
+    // after the previous frame's write
+    private void recordFrame(double frameTime) {
+        ReplayRecorder recorder = replayRecorder;
+        if (recorder == null) {
+            return;
+        }
 
-        while (currY <= point3.get(Y_INDEX)) {
-            int xStart = (int) (point2X + (startRow * slopeA));
-            int xEnd = (int) (point1X + (endRow * slopeB));
+        Vector worldPos = new Vector(camera.getWorldPos());
+        double yaw = camera.getYaw();
+        double pitch = camera.getPitch();
+        double roll = camera.getRoll();
 
-            for (int currX = Math.min(xStart, xEnd); currX <= Math.max(xStart, xEnd); currX++) {
-                int screenIndex = currY * getWidth() + currX;
+        Runnable write = () -> writeReplayFrame(recorder, worldPos, yaw, pitch, roll, frameTime);
+        Job<Void> previousWrite = replayWrite;
+        replayWrite = previousWrite == null ? jobSystem.submitIO(write) : jobSystem.submitIO(write, previousWrite);
+    }
 
-                if (avgZ < depthBuffer[screenIndex]) {
-                    depthBuffer[screenIndex] = avgZ;
-                    canvasRaster[screenIndex] = rgb;
-                }
+    // Write the camera pose of a frame into a replay, stopping the recording if it cannot be written
+    private void writeReplayFrame(ReplayRecorder recorder, Vector worldPos, double yaw, double pitch, double roll,
+                                  double frameTime) {
+        try {
+            recorder.recordFrame(worldPos, yaw, pitch, roll, frameTime);
+        } catch (IOException e) {
+            System.err.println("Stopped recording replay: " + e.getMessage());
+            if (replayRecorder == recorder) {
+                replayRecorder = null;
             }
 
-            currY++;
-            startRow++;
-            endRow++;
+            try {
+                recorder.close();
+            } catch (IOException closeError) {
+                e.addSuppressed(closeError);
+            }
         }
     }
 
-    // Given a triangle, return a new triangle with the vectors sorted by ascending y value
-    private Triangle3D getSortedTriByY(Triangle3D triangle) {
-        int[] sortedTriVecIndices = new int[] {0, 1, 2};
-
-        for (int i = 0; i < sortedTriVecIndices.length; i++) {
-            int j = i;
-            int temp = sortedTriVecIndices[j];
+    // Viewports
 
-            while (j > 0 && triangle.get(temp).get(Y_INDEX) < triangle.get(sortedTriVecIndices[j - 1]).get(Y_INDEX)) {
-                sortedTriVecIndices[j] = sortedTriVecIndices[j - 1];
-                sortedTriVecIndices[j - 1] = temp;
-                j--;
-            }
-        }
-
-        return new Triangle3D(
-                triangle.get(sortedTriVecIndices[0]),
-                triangle.get(sortedTriVecIndices[1]),
-                triangle.get(sortedTriVecIndices[2]),
-                triangle.getColor()
-        );
+    /**
+     * Add a viewport showing the world from a camera in a region of the panel, drawn over every existing viewport
+     * <br>Every viewport is culled, projected and rasterized at the same time as the others, while the meshes, world
+     * transform and lit colors of each frame are shared between them. Cameras added this way are not moved by the
+     * keyboard, but are updated once every frame
+     * @param camera camera to show the world from, may be shared with other viewports
+     * @param x left edge of the region as a fraction of the panel's width
+     * @param y top edge of the region as a fraction of the panel's height
+     * @param width width of the region as a fraction of the panel's width
+     * @param height height of the region as a fraction of the panel's height
+     * @return the new viewport, whose region can be changed at any time
+     */
+    public Viewport addViewport(Camera camera, double x, double y, double width, double height) {
+        Viewport viewport = new Viewport(camera, x, y, width, height);
+        viewport.setJobSystem(jobSystem);
+        viewports.add(viewport);
+        return viewport;
     }
 
-    // Update
+    /**
+     * Remove a viewport added to the engine, the main viewport cannot be removed
+     * @param viewport viewport to remove
+     * @return true if the viewport was removed
+     */
+    public boolean removeViewport(Viewport viewport) {
+        if (viewport == mainViewport) {
+            throw new IllegalArgumentException("Cannot remove the main viewport");
+        }
 
-    // Perform all actions for the engine each frame
-    private void update() {
-        camera.update();
+        // the viewports below show through its region, and nothing else may have changed to repaint them
+        boolean removed = viewports.remove(viewport);
+        if (removed) {
+            repaint();
+        }
 
-        trianglesToRender = new SinglyLinkedList<>();
-        cullTrianglesFromMeshes();
-        projectAndScaleTriangles();
-        clipTrianglesToRender();
+        return removed;
+    }
 
-        trianglesBeingRendered = trianglesToRender;
-        repaint();
+    /**
+     * @return every viewport in the order they are drawn, starting with the main viewport
+     */
+    public List<Viewport> getViewports() {
+        return Collections.unmodifiableList(viewports);
     }
 
-    // Add transformed triangles to the list of triangles to be rendered if valid
-    private void cullTrianglesFromMeshes() {
-        Vector lightDirection = new Vector(1, 1, -1).normalized(); // magic
-        Matrix worldMat = Matrix.identityMatrix(3);
-        Vector translationVec = new Vector(0, 0, 20); // magic
+    /**
+     * @return the viewport showing the world from the camera the keyboard moves, covering the whole panel unless its
+     * region is changed
+     */
+    public Viewport getMainViewport() {
+        return mainViewport;
+    }
 
-        // transform world relative to camera movement
-        Matrix viewMatrix = camera.getPointAtMat().getTransposed();
-        Vector viewVec = camera.getWorldPos().multiplyMatrix(viewMatrix).multiplyByScalar(-1.0);
+    // Render
 
-        Plane nearPlane = new Plane(new Vector(0, 0, Z_NEAR), new Vector(0, 0, -1));
+    /**
+     * All rendering occurs here
+     * @param g graphics object to draw onto screen with
+     */
+    @Override
+    protected void paintComponent(Graphics g) {
+        long renderStart = System.nanoTime();
+        List<Viewport> frameViewports = new ArrayList<>(viewports);
 
-        for (Mesh3D mesh : meshes) {
-            for (Triangle3D tri : mesh) {
-                // transform triangle in world space
-                Triangle3D transformedTri = transformTriangle(tri, worldMat, translationVec);
+        // clear whatever the viewports leave uncovered
+        if (frameViewports.stream().noneMatch(Viewport::coversPanel)) {
+            g.setColor(getBackground());
+            g.fillRect(0, 0, getWidth(), getHeight());
+        }
 
-                // apply lighting to triangle
-                // cull based on if the triangle won't be seen
-                Vector triSurfNorm = transformedTri.getSurfaceNormal();
-                Vector triCamLine = transformedTri.get(0).subtract(camera.getWorldPos());
-                double surfNormCamDiff = triSurfNorm.dotProduct(triCamLine);
+        rasterizeFrame(frameViewports);
 
-                if (surfNormCamDiff < 0.0) {
-                    double shadingValue = triSurfNorm.dotProduct(lightDirection);
+        GraphicsConfiguration config = getGraphicsConfiguration();
+        for (Viewport viewport : frameViewports) {
+            viewport.present(g, config, getWidth(), getHeight());
+        }
 
-                    if (shadingValue < 0) {
-                        shadingValue = 0;
-                    } else if (shadingValue > 1) {
-                        shadingValue = 1;
-                    }
+        lastRenderTime = System.nanoTime() - renderStart;
+    }
 
-                    transformedTri.setShading(shadingValue);
-                    transformedTri = transformTriangle(transformedTri, viewMatrix, viewVec);
-                    trianglesToRender.addAll(clipTriangleAgainstPlane(transformedTri, nearPlane));
-                }
-            }
-        }
+    // Fill the triangles of the latest updated frame into the canvas of every viewport
+    // Returns the amount of triangles filled
+    int rasterizeFrame() {
+        return rasterizeFrame(new ArrayList<>(viewports));
     }
 
-    // Transform a triangle given a rotation and scaling matrix and a translation vector
-    private Triangle3D transformTriangle(Triangle3D tri, Matrix rotAndScaleMat, Vector translationVec) {
-        Vector[] transformedVertices = new Vector[Triangle3D.SIZE];
-        for (int i = 0; i < transformedVertices.length; i++) {
-            Vector currVec = tri.get(i);
-            transformedVertices[i] = currVec.multiplyMatrix(rotAndScaleMat).add(translationVec);
+    // Fill the triangles of the latest updated frame into the canvases of viewports, each on its own thread
+    // Returns the amount of triangles filled
+    private int rasterizeFrame(List<Viewport> frameViewports) {
+        long frameNumber = frameCount;
+
+        if (frameViewports.size() == 1) {
+            return frameViewports.get(0).rasterize(frameNumber, 0);
         }
 
-        return new Triangle3D(transformedVertices[0], transformedVertices[1], transformedVertices[2], tri.getColor());
+        return runForEachViewport(frameViewports, (viewport, index) -> viewport.rasterize(frameNumber, index));
     }
 
-    // Convert all vertices of a triangle from world space to screen space
-    private void projectAndScaleTriangles() {
-        for (Triangle3D tri : trianglesToRender) { // iterate through all triangles
-            for (int i = 0; i < Triangle3D.SIZE; i++) { // iterate through each vertex of the triangle
-                // project the 3D coordinate to 2D
-                Vector currVector = tri.get(i);
-                double z = currVector.get(Z_INDEX);
-                double newZ = (z - Z_NEAR) * projMat.get(2, 2);
-
-                currVector = currVector.multiplyMatrix(projMat);
-                currVector.set(Z_INDEX, newZ);
-                Vector normalizedVector = currVector.divideByScalar(z);
+    // Run a stage of the pipeline for every viewport as a job each, waiting for all of them before returning
+    // Returns the sum of what the stage returned for each viewport
+    private int runForEachViewport(List<Viewport> frameViewports, ViewportStage stage) {
+        JobGroup stageJobs = jobSystem.newGroup();
+        List<Job<Integer>> viewportJobs = new ArrayList<>();
 
-                // scale the normalized coordinates to pixel values on the screen
-                double newX = (-normalizedVector.get(X_INDEX) + 1.0) * getWidth() / 2.0;
-                double newY = (-normalizedVector.get(Y_INDEX) + 1.0) * getHeight() / 2.0;
+        for (int i = 0; i < frameViewports.size(); i++) {
+            Viewport viewport = frameViewports.get(i);
+            int index = i;
+            viewportJobs.add(stageJobs.submit(() -> stage.run(viewport, index)));
+        }
 
-                normalizedVector.set(X_INDEX, newX);
-                normalizedVector.set(Y_INDEX, newY);
+        stageJobs.join();
 
-                tri.set(i, normalizedVector);
-            }
+        int total = 0;
+        for (Job<Integer> job : viewportJobs) {
+            total += job.join();
         }
+
+        return total;
+    }
+
+    /**
+     * Stage of the pipeline run for a single viewport
+     */
+    private interface ViewportStage {
+        int run(Viewport viewport, int index);
     }
 
-    private void clipTrianglesToRender() {
-        Plane[] planes = {
-                new Plane(new Vector(0, 0, 0), new Vector(0, -1, 0)), // top plane
-                new Plane(new Vector(0, getHeight() - 1, 0), new Vector(0, 1, 0)), // bottom plane
+    /**
+     * Rotation and translation of every mesh in world space with the version they were set as, never changed once
+     * created
+     */
+    private static final class WorldTransform {
+        private final Matrix worldMat;
 
-                new Plane(new Vector(0, 0, 0), new Vector(-1, 0, 0)), // left plane
-                new Plane(new Vector(getWidth() - 1, 0, 0), new Vector(1, 0, 0)) // right plane
-        };
+        private final Vector translationVec;
 
-        SinglyLinkedList<Triangle3D> clippedTrisToRender = new SinglyLinkedList<>();
+        private final long version;
 
-        for (Triangle3D triToRender : trianglesToRender) {
-            SinglyLinkedList<Triangle3D> triQueue = new SinglyLinkedList<>();
-            triQueue.add(triToRender);
+        private WorldTransform(Matrix worldMat, Vector translationVec, long version) {
+            this.worldMat = worldMat;
+            this.translationVec = translationVec;
+            this.version = version;
+        }
+    }
 
-            for (Plane plane : planes) {
-                int queueSize = triQueue.size();
+    // Update
 
-                while (queueSize > 0) {
-                    Triangle3D triToClip = triQueue.removeFirst();
-                    triQueue.addAll(clipTriangleAgainstPlane(triToClip, plane));
-                    queueSize--;
-                }
+    // Give the camera a grid of the meshes to walk on while walking, rebuilding it whenever the world transform changes
+    private void updateWalkGrid() {
+        if (!walkMode) {
+            if (camera.isWalking()) {
+                camera.setWalkGrid(null);
             }
 
-            clippedTrisToRender.addAll(triQueue);
+            return;
         }
 
-        trianglesToRender = clippedTrisToRender;
+        WorldTransform transform = worldTransform;
+        if (collisionGrid == null || collisionGridVersion != transform.version) {
+            collisionGrid = new CollisionGrid(meshes, transform.worldMat, transform.translationVec);
+            collisionGridVersion = transform.version;
+            camera.setWalkGrid(collisionGrid);
+        } else if (!camera.isWalking()) {
+            camera.setWalkGrid(collisionGrid);
+        }
     }
 
-    // Generate a list of new clipped triangles given an original triangle and a plane to clip against
-    private SinglyLinkedList<Triangle3D> clipTriangleAgainstPlane(Triangle3D tri, Plane plane) {
-        SinglyLinkedList<Triangle3D> clippedTris = new SinglyLinkedList<>();
-        SinglyLinkedList<Vector> insideVertices = new SinglyLinkedList<>();
-        SinglyLinkedList<Vector> outsideVertices = new SinglyLinkedList<>();
+    // Perform all actions for the engine each frame, called by the timer or by a replay
+    void update() {
+        long updateStart = System.nanoTime();
+        FrameEvent frameEvent = new FrameEvent();
+        frameEvent.begin();
+        frameCount++;
+
+        List<Viewport> frameViewports = new ArrayList<>(viewports);
+        updateRenderResolution(frameViewports);
+        applyMeshChanges();
+
+        updateWalkGrid();
+        updateCameras(frameViewports);
+
+        // everything not depending on a camera is taken once and shared by every viewport, including lit colors,
+        // which the first viewport to need them computes for the others
+        WorldTransform transform = worldTransform;
+        FrameState frame = new FrameState(frameCount, new ArrayList<>(meshes), transform.worldMat,
+                transform.translationVec, transform.version, lighting, lightingCache, shadingMode, depthSorting,
+                viewMode, temporalReprojection);
+
+        int trianglesRendered;
+        if (frameViewports.size() == 1) {
+            trianglesRendered = mainViewport.updateGeometry(frame, 0);
+        } else {
+            trianglesRendered = runForEachViewport(frameViewports,
+                    (viewport, index) -> viewport.updateGeometry(frame, index));
+        }
 
-        for (Vector vertex : tri) {
-            double distFromPlane = plane.distanceFromPoint(vertex);
+        // viewports whose camera, meshes, lights and size are unchanged keep their last frame, so the panel is only
+        // repainted once something moves
+        boolean changed = false;
+        for (Viewport viewport : frameViewports) {
+            changed |= viewport.publishFrame(frame);
+        }
 
-            if (distFromPlane <= 0.0) {
-                insideVertices.add(vertex);
-            } else {
-                outsideVertices.add(vertex);
-            }
+        if (changed) {
+            repaint();
         }
 
-        if (insideVertices.size() == 1) {
-            Vector insideVec = insideVertices.getFirst();
-            Vector outsideVec1 = outsideVertices.getFirst();
-            Vector outsideVec2 = outsideVertices.getLast();
+        frameEvent.end();
+        if (frameEvent.shouldCommit()) {
+            frameEvent.frameNumber = frameCount;
+            frameEvent.trianglesRendered = trianglesRendered;
+            frameEvent.commit();
+        }
 
-            Vector intersectPoint1 = plane.lineIntersectPlanePoint(insideVec, outsideVec1);
-            Vector intersectPoint2 = plane.lineIntersectPlanePoint(insideVec, outsideVec2);
+        // frames that reused the last frame say nothing about rendering time, so dynamic resolution ignores them
+        double frameTime = (System.nanoTime() - updateStart + (changed ? lastRenderTime : 0)) / 1e6;
+        if (changed) {
+            averageFrameTime += (frameTime - averageFrameTime) * 0.1; // magic
+        }
 
-            Vector[] vertices = new Vector[3];
-            vertices[0] = insideVec;
-            vertices[1] = intersectPoint1;
-            vertices[2] = intersectPoint2;
+        recordFrame(frameTime);
+    }
 
-            Triangle3D clippedTri = new Triangle3D(vertices[0], vertices[1], vertices[2], tri.getColor());
-            clippedTris.add(clippedTri);
-        } else if (insideVertices.size() == 2) {
-            Vector insideVec1 = insideVertices.getFirst();
-            Vector insideVec2 = insideVertices.getLast();
-            Vector outsideVec = outsideVertices.getFirst();
+    // Move the camera of every viewport, once for cameras shared by several viewports
+    private void updateCameras(List<Viewport> frameViewports) {
+        Set<Camera> updatedCameras = Collections.newSetFromMap(new IdentityHashMap<>());
 
-            Vector intersectPoint1 = plane.lineIntersectPlanePoint(insideVec1, outsideVec);
-            Vector intersectPoint2 = plane.lineIntersectPlanePoint(insideVec2, outsideVec);
+        for (Viewport viewport : frameViewports) {
+            if (updatedCameras.add(viewport.getCamera())) {
+                viewport.getCamera().update();
+            }
+        }
+    }
 
-            Vector[] vertices1 = new Vector[3];
-            vertices1[0] = insideVec1;
-            vertices1[1] = insideVec2;
-            vertices1[2] = intersectPoint1;
+    // Pick the resolution to render the next frame at from the panel's size and, with dynamic resolution, recent
+    // frame times, updating the projection of each viewport whenever its resolution changes
+    private void updateRenderResolution(List<Viewport> frameViewports) {
+        double scale = renderScale;
 
-            Vector[] vertices2 = new Vector[3];
-            vertices2[0] = intersectPoint1;
-            vertices2[1] = insideVec2;
-            vertices2[2] = intersectPoint2;
+        if (!dynamicResolution) {
+            scale = 1.0;
+        } else if (frameCount - renderScaleFrame >= RENDER_SCALE_INTERVAL && averageFrameTime > 0.0) {
+            double budget = frameTimeBudget > 0.0 ? frameTimeBudget : 1000.0 / frameRate;
 
-            Triangle3D clippedTri1 = new Triangle3D(vertices1[0], vertices1[1], vertices1[2], tri.getColor());
-            Triangle3D clippedTri2 = new Triangle3D(vertices2[0], vertices2[1], vertices2[2], tri.getColor());
+            // rendering time grows with the amount of pixels, which grows with the square of the scale
+            double targetScale = scale * Math.sqrt(budget * FRAME_TIME_HEADROOM / averageFrameTime);
+            targetScale = Math.max(MIN_RENDER_SCALE, Math.min(1.0, targetScale));
 
-            clippedTris.add(clippedTri1);
-            clippedTris.add(clippedTri2);
-        } else if (insideVertices.size() == 3) {
-            clippedTris.add(tri);
+            if (Math.abs(targetScale - scale) >= RENDER_SCALE_STEP) {
+                scale = Math.round(targetScale / RENDER_SCALE_STEP) * RENDER_SCALE_STEP;
+                renderScaleFrame = frameCount;
+            }
         }
 
-        return clippedTris;
+        renderScale = scale;
+
+        for (Viewport viewport : frameViewports) {
+            viewport.updateResolution(getWidth(), getHeight(), scale);
+        }
     }
 
-    // Generate a projection matrix based on a field of view
-    private Matrix projectionMatrix(double fovInRadians) {
-        Matrix newProjectionMatrix = new Matrix(3, 3);
+    // Queries
 
-        double aspectRatio = (double) getHeight() / getWidth();
-        double fovRatio = 1.0 / Math.tan(fovInRadians / 2.0);
-        double zNormalization = Z_FAR / (Z_FAR - Z_NEAR);
+    /**
+     * Find the nearest triangle hit by a ray in world space
+     * @param origin start of the ray in world space, must be 3D
+     * @param direction direction of the ray in world space, must be 3D and non zero
+     * @return the nearest hit, or null if the ray hits nothing
+     */
+    public RayHit castRay(Vector origin, Vector direction) {
+        WorldTransform transform = worldTransform;
+        return rayCaster.castRay(meshes, transform.worldMat, transform.translationVec, origin, direction);
+    }
 
-        newProjectionMatrix.set(0, 0, aspectRatio * fovRatio);
-        newProjectionMatrix.set(1, 1, fovRatio);
-        newProjectionMatrix.set(2, 2, zNormalization);
+    /**
+     * Find the nearest triangle hit by each ray of a batch in world space, casting the rays in parallel
+     * @param origins start of each ray in world space, must be 3D
+     * @param directions direction of each ray in world space, must be 3D, non zero and as many as there are origins
+     * @return the nearest hit of each ray in the order of the rays, null for each ray that hits nothing
+     */
+    public RayHit[] castRays(Vector[] origins, Vector[] directions) {
+        WorldTransform transform = worldTransform;
+        return rayCaster.castRays(meshes, transform.worldMat, transform.translationVec, origins, directions);
+    }
 
-        return newProjectionMatrix;
+    /**
+     * Check whether any mesh blocks the straight line between two points in world space
+     * @param from start of the line in world space, must be 3D
+     * @param to end of the line in world space, must be 3D
+     * @return true if no triangle lies between the two points
+     */
+    public boolean hasLineOfSight(Vector from, Vector to) {
+        WorldTransform transform = worldTransform;
+        return rayCaster.hasLineOfSight(meshes, transform.worldMat, transform.translationVec, from, to);
+    }
+
+    /**
+     * Find the nearest triangle under a pixel of the screen, seen from the camera of the topmost viewport containing it
+     * @param screenX x value of the pixel
+     * @param screenY y value of the pixel
+     * @return the nearest hit under the pixel, or null if there is nothing under it
+     */
+    public RayHit pick(int screenX, int screenY) {
+        for (int i = viewports.size() - 1; i >= 0; i--) { // later viewports are drawn over earlier ones
+            Viewport viewport = viewports.get(i);
+
+            if (viewport.contains(screenX, screenY, getWidth(), getHeight())) {
+                Vector direction = viewport.directionThrough(screenX, screenY, getWidth(), getHeight());
+                return castRay(viewport.getCamera().getWorldPos(), direction);
+            }
+        }
+
+        return null;
     }
 
     // Setters
@@ -516,6 +835,101 @@ public class Engine extends JPanel {
         timer.scheduleAtFixedRate(timerTask, 0, (long) (1000 / frameRate));
     }
 
+    /**
+     * Set the rotation and translation of every mesh in world space, copying both so later changes to them do not
+     * affect the world
+     * @param worldMat rotation matrix, must be 3x3 and orthonormal since its transpose is used as its inverse
+     * @param translationVec translation vector, must be 3D
+     */
+    public void setWorldTransform(Matrix worldMat, Vector translationVec) {
+        if (worldMat == null || translationVec == null) {
+            throw new IllegalArgumentException("Cannot set the world transform to null");
+        } else if (translationVec.size() != 3) {
+            throw new IllegalArgumentException("Translation must be a 3D vector");
+        } else if (!Math3D.isOrthonormal(worldMat)) {
+            throw new IllegalArgumentException("World matrix must be orthonormal, it cannot scale or shear");
+        }
+
+        Matrix worldMatCopy = new Matrix(3, 3);
+        for (int row = 0; row < 3; row++) {
+            for (int col = 0; col < 3; col++) {
+                worldMatCopy.set(row, col, worldMat.get(row, col));
+            }
+        }
+
+        worldTransform = new WorldTransform(worldMatCopy, new Vector(translationVec),
+                transformVersion.incrementAndGet());
+    }
+
+    /**
+     * @param shadingMode how lighting should be applied across the surface of triangles, textured triangles are lit
+     *                    once per face whatever the mode
+     */
+    public void setShadingMode(ShadingMode shadingMode) {
+        if (shadingMode == null) {
+            throw new IllegalArgumentException("Cannot set shading mode to null");
+        }
+
+        this.shadingMode = shadingMode;
+    }
+
+    /**
+     * @param walkMode whether or not the camera should walk on the meshes instead of flying freely
+     */
+    public void setWalkMode(boolean walkMode) {
+        this.walkMode = walkMode;
+    }
+
+    /**
+     * @param dynamicResolution whether or not the render scale should follow recent frame times to stay within the
+     *                          frame time budget
+     */
+    public void setDynamicResolution(boolean dynamicResolution) {
+        this.dynamicResolution = dynamicResolution;
+    }
+
+    /**
+     * @param frameTimeBudget time in milliseconds each frame should take with dynamic resolution, or 0 to use the
+     *                        frame interval, must be at least 0
+     */
+    public void setFrameTimeBudget(double frameTimeBudget) {
+        if (frameTimeBudget < 0.0) {
+            throw new IllegalArgumentException("Frame time budget must be at least 0");
+        }
+
+        this.frameTimeBudget = frameTimeBudget;
+    }
+
+    /**
+     * @param depthSorting whether or not triangles should be sorted front to back before they are rasterized
+     */
+    public void setDepthSorting(boolean depthSorting) {
+        this.depthSorting = depthSorting;
+    }
+
+    /**
+     * @param viewMode what should be drawn for the meshes, filled triangles or debug lines
+     */
+    public void setViewMode(ViewMode viewMode) {
+        if (viewMode == null) {
+            throw new IllegalArgumentException("Cannot set view mode to null");
+        }
+
+        this.viewMode = viewMode;
+    }
+
+    /**
+     * Reprojecting trades a little accuracy for speed while the camera moves slowly: every other frame skips its
+     * geometry and fill, moving each pixel of the last rasterized frame to where it appears from the new camera pose
+     * and filling holes from the pixels beside them. Frames are only reprojected while the camera moves few enough
+     * pixels and reprojecting is cheaper than rendering, and only in the solid view.
+     * @param temporalReprojection whether or not viewports should reproject their last frame while only the camera
+     *                             moves
+     */
+    public void setTemporalReprojection(boolean temporalReprojection) {
+        this.temporalReprojection = temporalReprojection;
+    }
+
     // Getters
 
     /**
@@ -525,4 +939,82 @@ public class Engine extends JPanel {
         return frameRate;
     }
 
+    /**
+     * @return every light in the 3D environment, lights can be added, removed and changed at any time
+     */
+    public Lighting getLighting() {
+        return lighting;
+    }
+
+    /**
+     * @return how lighting is applied across the surface of triangles
+     */
+    public ShadingMode getShadingMode() {
+        return shadingMode;
+    }
+
+    /**
+     * @return whether or not the camera walks on the meshes instead of flying freely
+     */
+    public boolean isWalkMode() {
+        return walkMode;
+    }
+
+    /**
+     * @return whether or not the render scale follows recent frame times to stay within the frame time budget
+     */
+    public boolean isDynamicResolution() {
+        return dynamicResolution;
+    }
+
+    /**
+     * @return the fraction of the panel's resolution the canvas is rendered at
+     */
+    public double getRenderScale() {
+        return renderScale;
+    }
+
+    /**
+     * @return whether or not triangles are sorted front to back before they are rasterized
+     */
+    public boolean isDepthSorting() {
+        return depthSorting;
+    }
+
+    /**
+     * @return what is drawn for the meshes, filled triangles or debug lines
+     */
+    public ViewMode getViewMode() {
+        return viewMode;
+    }
+
+    /**
+     * @return whether or not viewports reproject their last frame while only the camera moves
+     */
+    public boolean isTemporalReprojection() {
+        return temporalReprojection;
+    }
+
+    /**
+     * @return whether or not the camera pose of each frame is being recorded into a replay file
+     */
+    public boolean isRecording() {
+        return replayRecorder != null;
+    }
+
+    // Load of the model the engine starts with, completed once its meshes are queued to be added to the world
+    CompletableFuture<List<Mesh3D>> getDefaultModelLoad() {
+        return defaultModelLoad;
+    }
+
+    // Camera of the main viewport
+    Camera getCamera() {
+        return camera;
+    }
+
+    // Image the latest frame of the main viewport was rasterized into, or null if no frame has been rasterized
+    BufferedImage getCanvas() {
+        return mainViewport.getCanvas();
+    }
+
 }
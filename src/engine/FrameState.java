@@ -0,0 +1,130 @@
+package engine;
+
+import graphicstructs.Mesh3D;
+import lighting.Lighting;
+import lighting.LightingCache;
+import mathkit.Matrix;
+import mathkit.Vector;
+
+import java.util.List;
+
+/**
+ * Camera independent state of a single frame, taken once by the engine loop and shared by every viewport rendering it
+ * <br>Every viewport of a frame sees the same meshes, world transform and settings, even if they change while the
+ * viewports are rendering
+ */
+final class FrameState {
+    /**
+     * Number of the frame since the engine started
+     */
+    private final long frameNumber;
+
+    /**
+     * Every mesh in the world
+     */
+    private final List<Mesh3D> meshes;
+
+    /**
+     * Rotation and translation of every mesh in world space
+     */
+    private final Matrix worldMat;
+
+    private final Vector translationVec;
+
+    /**
+     * Version of the world transform, for the lit colors cached with it
+     */
+    private final long transformVersion;
+
+    /**
+     * Every light in the world and the lit colors of each mesh, shared by every viewport
+     */
+    private final Lighting lighting;
+
+    private final LightingCache lightingCache;
+
+    /**
+     * How lighting is applied across the surface of triangles
+     */
+    private final ShadingMode shadingMode;
+
+    /**
+     * Whether or not triangles are sorted front to back before they are rasterized
+     */
+    private final boolean depthSorting;
+
+    /**
+     * What is drawn for the meshes, filled triangles or debug lines
+     */
+    private final ViewMode viewMode;
+
+    /**
+     * Whether or not viewports may reproject their last frame instead of filling every triangle again
+     */
+    private final boolean temporalReprojection;
+
+    // Constructors
+
+    FrameState(long frameNumber, List<Mesh3D> meshes, Matrix worldMat, Vector translationVec, long transformVersion,
+               Lighting lighting, LightingCache lightingCache, ShadingMode shadingMode, boolean depthSorting,
+               ViewMode viewMode, boolean temporalReprojection) {
+        this.frameNumber = frameNumber;
+        this.meshes = meshes;
+        this.worldMat = worldMat;
+        this.translationVec = translationVec;
+        this.transformVersion = transformVersion;
+        this.lighting = lighting;
+        this.lightingCache = lightingCache;
+        this.shadingMode = shadingMode;
+        this.depthSorting = depthSorting;
+        this.viewMode = viewMode;
+        this.temporalReprojection = temporalReprojection;
+    }
+
+    // Getters
+
+    long getFrameNumber() {
+        return frameNumber;
+    }
+
+    List<Mesh3D> getMeshes() {
+        return meshes;
+    }
+
+    Matrix getWorldMat() {
+        return worldMat;
+    }
+
+    Vector getTranslationVec() {
+        return translationVec;
+    }
+
+    long getTransformVersion() {
+        return transformVersion;
+    }
+
+    Lighting getLighting() {
+        return lighting;
+    }
+
+    LightingCache getLightingCache() {
+        return lightingCache;
+    }
+
+    ShadingMode getShadingMode() {
+        return shadingMode;
+    }
+
+    boolean isDepthSorting() {
+        return depthSorting;
+    }
+
+    ViewMode getViewMode() {
+        return viewMode;
+    }
+
+    boolean isTemporalReprojection() {
+        return temporalReprojection;
+    }
+
+}
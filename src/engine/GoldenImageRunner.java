@@ -0,0 +1,514 @@
+package engine;
+
+import datakit.SinglyLinkedList;
+import graphicstructs.CompressedMesh3D;
+import graphicstructs.Material;
+import graphicstructs.Mesh3D;
+import graphicstructs.MeshOptimizer;
+import graphicstructs.OffHeapMesh3D;
+import graphicstructs.Texture;
+import graphicstructs.Triangle3D;
+import mathkit.Matrix;
+import mathkit.Vector;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Renders canned scenes headlessly from fixed camera poses in every shading mode and compares each image against a
+ * stored reference image, so changes to the render paths can be shown to leave the output unchanged
+ * <br>Scenes rendered a different way, such as from off-heap or compressed meshes, with depth sorting or presented
+ * tile by tile over the frame before them, are compared against the references of the scene they render. Ways of
+ * rendering that change the image, such as debug lines, reprojection, several viewports or dynamic resolution, have
+ * references of their own. Images that differ get a diff image showing every pixel beyond the tolerance in red over
+ * a dimmed copy of the reference, along with the image actually rendered.
+ * <br>Usage: GoldenImageRunner [reference-dir] [--update] [--tolerance channel-difference]
+ * [--max-different fraction] [--diff diff-dir]
+ */
+final class GoldenImageRunner {
+    private static final int WIDTH = 320;
+
+    private static final int HEIGHT = 240;
+
+    /**
+     * Largest difference in any color channel of a pixel still counted as the same
+     */
+    private static final int DEFAULT_TOLERANCE = 2;
+
+    /**
+     * Largest fraction of pixels that may differ beyond the tolerance for an image to match
+     */
+    private static final double DEFAULT_MAX_DIFFERENT = 0.0;
+
+    /**
+     * Turn of the camera for the frame presented before a scene presented tile by tile, so most tiles change
+     */
+    private static final double PREVIOUS_FRAME_YAW = 0.3;
+
+    /**
+     * Turn of the camera for the frame a reprojected scene is reprojected from, few enough pixels to be reprojected
+     */
+    private static final double REPROJECTED_FROM_YAW = 0.02;
+
+    /**
+     * Most times a reprojected scene is rendered before giving up on its frame being reprojected, since frames are
+     * only reprojected once reprojecting them was measured cheaper than rendering them
+     */
+    private static final int MAX_REPROJECTION_ATTEMPTS = 10;
+
+    /**
+     * Frame time budget in milliseconds for scenes with dynamic resolution, small enough for every frame to take
+     * longer so the render scale drops to its lowest
+     */
+    private static final double TINY_FRAME_TIME_BUDGET = 1e-3;
+
+    /**
+     * Most frames rendered for the render scale to drop with dynamic resolution before giving up on it
+     */
+    private static final int MAX_RESOLUTION_FRAMES = 100;
+
+    /**
+     * Length of each side of the texture mapped onto textured scenes, in texels
+     */
+    private static final int TEXTURE_SIZE = 64;
+
+    /**
+     * Length of each side of a square in the checkerboard of the texture, in texels
+     */
+    private static final int TEXTURE_SQUARE = 8;
+
+    private GoldenImageRunner() {
+
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+
+        File referenceDirectory = new File("res/golden");
+        File diffDirectory = new File("golden-diff");
+        boolean update = false;
+        int tolerance = DEFAULT_TOLERANCE;
+        double maxDifferent = DEFAULT_MAX_DIFFERENT;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--update")) {
+                update = true;
+            } else if (args[i].equals("--tolerance") && i + 1 < args.length) {
+                tolerance = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--max-different") && i + 1 < args.length) {
+                maxDifferent = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("--diff") && i + 1 < args.length) {
+                diffDirectory = new File(args[++i]);
+            } else {
+                referenceDirectory = new File(args[i]);
+            }
+        }
+
+        Files.createDirectories(referenceDirectory.toPath());
+
+        Engine engine = new Engine(60.0);
+        engine.setSize(WIDTH, HEIGHT);
+        engine.setWorldTransform(Matrix.identityMatrix(3), new Vector(3));
+
+        // the model the engine starts with is replaced by each scene once it has finished loading
+        engine.getDefaultModelLoad().handle((meshes, error) -> meshes).join();
+
+        int imageCount = 0;
+        int failures = 0;
+
+        for (Scene scene : createScenes()) {
+            engine.setMeshes(scene.meshes);
+            engine.setDepthSorting(scene.technique == Technique.DEPTH_SORTED);
+            engine.setViewMode(scene.technique == Technique.WIREFRAME_OVER_SOLID ? ViewMode.WIREFRAME_OVER_SOLID
+                    : ViewMode.SOLID);
+            engine.setTemporalReprojection(scene.technique == Technique.REPROJECTED);
+            engine.setDynamicResolution(scene.technique == Technique.DYNAMIC_RESOLUTION);
+            engine.setFrameTimeBudget(scene.technique == Technique.DYNAMIC_RESOLUTION ? TINY_FRAME_TIME_BUDGET : 0.0);
+
+            // the second viewport looks down on the scene from above and behind its camera, in the top right
+            Viewport secondViewport = null;
+            if (scene.technique == Technique.SECOND_VIEWPORT) {
+                Camera camera = new Camera(.25, .25, .25, Math.toRadians(1));
+                camera.setPose(scene.cameraPos.add(new Vector(0.0, 6.0, -3.0)), scene.yaw, scene.pitch + 0.5, 0.0);
+                secondViewport = engine.addViewport(camera, 0.6, 0.05, 0.35, 0.35);
+            }
+
+            for (ShadingMode shadingMode : ShadingMode.values()) {
+                String mode = shadingMode.name().toLowerCase(Locale.ROOT);
+                File referenceFile = new File(referenceDirectory, scene.reference + "-" + mode + ".png");
+                String name = scene.name + "-" + mode;
+
+                engine.setShadingMode(shadingMode);
+                BufferedImage image = render(engine, scene);
+                imageCount++;
+
+                if (image == null) {
+                    System.out.printf("FAIL     %s: could not be rendered with %s%n", name,
+                            scene.technique.name().toLowerCase(Locale.ROOT).replace('_', ' '));
+                    failures++;
+                    continue;
+                }
+
+                // only the scene a reference is named after may write it, every other way of rendering is compared
+                if (update && scene.name.equals(scene.reference)) {
+                    ImageIO.write(image, "png", referenceFile);
+                    System.out.printf("UPDATED  %s%n", name);
+                    continue;
+                }
+
+                if (!referenceFile.exists()) {
+                    System.out.printf("MISSING  %s: no reference image %s%n", name, referenceFile);
+                    failures++;
+                    continue;
+                }
+
+                BufferedImage reference = ImageIO.read(referenceFile);
+                BufferedImage diff = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+                int[] comparison = compare(reference, image, tolerance, diff);
+                boolean matches = comparison[0] <= maxDifferent * WIDTH * HEIGHT;
+
+                System.out.printf("%-8s %s: %d pixels differ, largest channel difference %d%n",
+                        matches ? "PASS" : "FAIL", name, comparison[0], comparison[1]);
+
+                if (!matches) {
+                    Files.createDirectories(diffDirectory.toPath());
+                    ImageIO.write(diff, "png", new File(diffDirectory, name + "-diff.png"));
+                    ImageIO.write(image, "png", new File(diffDirectory, name + "-actual.png"));
+                    failures++;
+                }
+            }
+
+            if (secondViewport != null) {
+                engine.removeViewport(secondViewport);
+            }
+        }
+
+        engine.stop();
+
+        System.out.printf("%d of %d images match%n", imageCount - failures, imageCount);
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    // Render a single frame of a scene and draw every viewport over an image the size of the panel
+    // Scenes presented tile by tile first render the frame from a turned camera, then copy only the tiles that
+    // changed since onto a copy of it, the way frames are presented on a screen
+    // Returns null if the scene could not be rendered the way it asks
+    private static BufferedImage render(Engine engine, Scene scene) {
+        switch (scene.technique) {
+            case TILED_PRESENT:
+                renderFrame(engine, scene, scene.yaw + PREVIOUS_FRAME_YAW);
+                BufferedImage image = presentFrame(engine);
+                renderFrame(engine, scene, scene.yaw);
+
+                Graphics2D graphics = image.createGraphics();
+                engine.getMainViewport().presentChangedTiles(graphics);
+                graphics.dispose();
+                return image;
+            case REPROJECTED:
+                return renderReprojected(engine, scene);
+            case DYNAMIC_RESOLUTION:
+                return renderAtLowerResolution(engine, scene);
+            default:
+                renderFrame(engine, scene, scene.yaw);
+                return presentFrame(engine);
+        }
+    }
+
+    // Render a frame of a scene reprojected from a frame rendered with the camera turned slightly
+    // Each attempt starts from a frame turned too far to reproject from, so the frame after it is rasterized and
+    // remembered, and the scene's frame is the one reprojected from it
+    // Returns null if the frame was never reprojected, which fills no triangles
+    private static BufferedImage renderReprojected(Engine engine, Scene scene) {
+        for (int attempt = 0; attempt < MAX_REPROJECTION_ATTEMPTS; attempt++) {
+            renderFrame(engine, scene, scene.yaw + PREVIOUS_FRAME_YAW);
+            renderFrame(engine, scene, scene.yaw + REPROJECTED_FROM_YAW);
+
+            if (renderFrame(engine, scene, scene.yaw) == 0) {
+                return presentFrame(engine);
+            }
+        }
+
+        return null;
+    }
+
+    // Render a frame of a scene once dynamic resolution has dropped the render scale below the panel's resolution
+    // Frames turned back and forth are rendered until every one of them took longer than the frame time budget for
+    // long enough to lower the scale
+    // Returns null if the render scale never dropped
+    private static BufferedImage renderAtLowerResolution(Engine engine, Scene scene) {
+        for (int frame = 0; engine.getRenderScale() == 1.0; frame++) {
+            if (frame == MAX_RESOLUTION_FRAMES) {
+                return null;
+            }
+
+            renderFrame(engine, scene, scene.yaw + (frame % 2 == 0 ? PREVIOUS_FRAME_YAW : 0.0));
+        }
+
+        // the turned frames were rendered before the scale dropped, so the scene's frame is always rendered at it
+        renderFrame(engine, scene, scene.yaw + PREVIOUS_FRAME_YAW);
+        renderFrame(engine, scene, scene.yaw);
+        return presentFrame(engine);
+    }
+
+    // Render a single frame of a scene with the camera turned to a yaw
+    // Returns the amount of triangles filled, 0 if the frame was reprojected
+    private static int renderFrame(Engine engine, Scene scene, double yaw) {
+        engine.getCamera().setPose(scene.cameraPos, yaw, scene.pitch, 0.0);
+        engine.update();
+        return engine.rasterizeFrame();
+    }
+
+    // Draw every viewport over an image the size of the panel the way they are presented on a screen, upscaling
+    // canvases rendered at a lower resolution
+    private static BufferedImage presentFrame(Engine engine) {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+
+        for (Viewport viewport : engine.getViewports()) {
+            viewport.present(graphics, null, WIDTH, HEIGHT);
+        }
+
+        graphics.dispose();
+        return image;
+    }
+
+    // Count the pixels of an image differing from the reference beyond the tolerance in any channel, drawing them
+    // in red over a dimmed copy of the reference
+    // Returns the amount of differing pixels followed by the largest difference in any channel
+    private static int[] compare(BufferedImage reference, BufferedImage image, int tolerance, BufferedImage diff) {
+        if (reference.getWidth() != image.getWidth() || reference.getHeight() != image.getHeight()) {
+            return new int[]{image.getWidth() * image.getHeight(), 255};
+        }
+
+        int differentPixels = 0;
+        int maxDifference = 0;
+
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int expected = reference.getRGB(x, y);
+                int actual = image.getRGB(x, y);
+
+                int difference = 0;
+                for (int shift = 0; shift <= 16; shift += 8) {
+                    difference = Math.max(difference,
+                            Math.abs((expected >> shift & 0xFF) - (actual >> shift & 0xFF)));
+                }
+
+                maxDifference = Math.max(maxDifference, difference);
+
+                if (difference > tolerance) {
+                    differentPixels++;
+                    diff.setRGB(x, y, 0x800000 | Math.min(255, 128 + difference) << 16);
+                } else {
+                    int gray = ((expected >> 16 & 0xFF) + (expected >> 8 & 0xFF) + (expected & 0xFF)) / 12;
+                    diff.setRGB(x, y, gray << 16 | gray << 8 | gray);
+                }
+            }
+        }
+
+        return new int[]{differentPixels, maxDifference};
+    }
+
+    // Create every scene, each followed by the other ways of rendering it
+    private static List<Scene> createScenes() {
+        List<Scene> scenes = new ArrayList<>();
+
+        Mesh3D cube = Mesh3D.cube(-1.0, -1.0, -1.0, 2.0);
+        cube.computeVertexNormals();
+        Vector cubePos = new Vector(-2.5, 2.0, -4.0);
+        scenes.add(new Scene("cube", "cube", List.of(cube), cubePos, -0.5, 0.35, Technique.PLAIN));
+        scenes.add(new Scene("cube-off-heap", "cube", List.of(OffHeapMesh3D.copyOf(cube)), cubePos, -0.5, 0.35,
+                Technique.PLAIN));
+        scenes.add(new Scene("cube-tiled-present", "cube", List.of(cube), cubePos, -0.5, 0.35,
+                Technique.TILED_PRESENT));
+        scenes.add(new Scene("cube-wireframe-over-solid", "cube-wireframe-over-solid", List.of(cube), cubePos, -0.5,
+                0.35, Technique.WIREFRAME_OVER_SOLID));
+
+        Mesh3D texturedCube = createTexturedCube();
+        scenes.add(new Scene("textured-cube", "textured-cube", List.of(texturedCube), cubePos, -0.5, 0.35,
+                Technique.PLAIN));
+        scenes.add(new Scene("textured-cube-compressed", "textured-cube",
+                List.of(CompressedMesh3D.compress(texturedCube)), cubePos, -0.5, 0.35, Technique.PLAIN));
+
+        List<Mesh3D> prisms = List.of(
+                Mesh3D.rectangularPrism(-3.0, -1.0, 0.0, 1.0, 3.0, 1.0),
+                Mesh3D.rectangularPrism(-1.0, -1.0, 2.0, 4.0, 0.5, 2.0),
+                Mesh3D.rectangularPrism(1.5, 0.0, -1.0, 0.5, 0.5, 6.0)
+        );
+        for (Mesh3D prism : prisms) {
+            prism.computeVertexNormals();
+        }
+
+        Vector prismsPos = new Vector(0.0, 2.5, -4.5);
+        scenes.add(new Scene("prisms", "prisms", prisms, prismsPos, 0.0, 0.4, Technique.PLAIN));
+        scenes.add(new Scene("prisms-depth-sorted", "prisms", prisms, prismsPos, 0.0, 0.4, Technique.DEPTH_SORTED));
+        scenes.add(new Scene("prisms-second-viewport", "prisms-second-viewport", prisms, prismsPos, 0.0, 0.4,
+                Technique.SECOND_VIEWPORT));
+
+        // the camera stands beside the cube looking along it, so the near plane cuts through its side
+        Mesh3D nearCube = Mesh3D.cube(-2.0, -2.0, 0.0, 4.0);
+        nearCube.computeVertexNormals();
+        scenes.add(new Scene("near-cube", "near-cube", List.of(nearCube), new Vector(2.6, 0.5, 1.0), 0.6, 0.1,
+                Technique.PLAIN));
+
+        // looking down onto terrain all around the camera, so it crosses the near plane and every edge of the screen
+        Mesh3D terrain = createTerrain(60);
+        Vector terrainPos = new Vector(0.0, 4.0, 0.0);
+        scenes.add(new Scene("terrain", "terrain", List.of(terrain), terrainPos, 0.4, 1.0, Technique.PLAIN));
+        scenes.add(new Scene("terrain-off-heap", "terrain", List.of(OffHeapMesh3D.copyOf(terrain)), terrainPos, 0.4,
+                1.0, Technique.PLAIN));
+        // compressing snaps vertices to a grid, which moves a few pixels along the silhouettes of the hills
+        scenes.add(new Scene("terrain-compressed", "terrain-compressed",
+                List.of(CompressedMesh3D.compress(terrain)), terrainPos, 0.4, 1.0, Technique.PLAIN));
+        scenes.add(new Scene("terrain-optimized", "terrain", List.of(MeshOptimizer.optimize(terrain)), terrainPos,
+                0.4, 1.0, Technique.PLAIN));
+        scenes.add(new Scene("terrain-depth-sorted", "terrain", List.of(terrain), terrainPos, 0.4, 1.0,
+                Technique.DEPTH_SORTED));
+        scenes.add(new Scene("terrain-tiled-present", "terrain", List.of(terrain), terrainPos, 0.4, 1.0,
+                Technique.TILED_PRESENT));
+        scenes.add(new Scene("terrain-reprojected", "terrain-reprojected", List.of(terrain), terrainPos, 0.4, 1.0,
+                Technique.REPROJECTED));
+        scenes.add(new Scene("terrain-dynamic-resolution", "terrain-dynamic-resolution", List.of(terrain),
+                terrainPos, 0.4, 1.0, Technique.DYNAMIC_RESOLUTION));
+
+        return scenes;
+    }
+
+    // Create a cube with a checkerboard texture mapped across each face, from the material of the cube
+    // Each square of the checkerboard has its own color, so a face mapped flipped or turned shows it
+    private static Mesh3D createTexturedCube() {
+        BufferedImage image = new BufferedImage(TEXTURE_SIZE, TEXTURE_SIZE, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < TEXTURE_SIZE; y++) {
+            for (int x = 0; x < TEXTURE_SIZE; x++) {
+                int squareX = x / TEXTURE_SQUARE;
+                int squareY = y / TEXTURE_SQUARE;
+                boolean light = (squareX + squareY) % 2 == 0;
+                image.setRGB(x, y, light ? 0xFFF0F0F0 : 0xFF000000 | squareX * 32 << 16 | squareY * 32 << 8 | 0xA0);
+            }
+        }
+
+        Texture texture = new Texture(image);
+        Material material = new Material("checkerboard");
+        material.setDiffuseMap(texture);
+
+        Mesh3D cube = Mesh3D.cube(-1.0, -1.0, -1.0, 2.0);
+        cube.setMaterial(material);
+
+        // each face is mapped along the two axes it spans, from the corner of the cube
+        for (Triangle3D tri : cube) {
+            Vector normal = tri.getSurfaceNormal();
+            int faceAxis = 0;
+            for (int axis = 1; axis < 3; axis++) {
+                if (Math.abs(normal.get(axis)) > Math.abs(normal.get(faceAxis))) {
+                    faceAxis = axis;
+                }
+            }
+
+            int uAxis = faceAxis == 0 ? 1 : 0;
+            int vAxis = faceAxis == 2 ? 1 : 2;
+            Vector[] textureCoords = new Vector[Triangle3D.SIZE];
+            for (int i = 0; i < Triangle3D.SIZE; i++) {
+                textureCoords[i] = new Vector((tri.get(i).get(uAxis) + 1.0) / 2.0,
+                        (tri.get(i).get(vAxis) + 1.0) / 2.0);
+            }
+
+            tri.setTexture(texture);
+            tri.setTextureCoords(textureCoords[0], textureCoords[1], textureCoords[2]);
+        }
+
+        return cube;
+    }
+
+    // Create a rolling terrain grid centered on the origin with shared vertices and vertex normals
+    private static Mesh3D createTerrain(int cells) {
+        Vector[][] points = new Vector[cells + 1][cells + 1];
+        for (int row = 0; row <= cells; row++) {
+            for (int col = 0; col <= cells; col++) {
+                double x = col - cells / 2.0;
+                double z = row - cells / 2.0;
+                points[row][col] = new Vector(x, Math.sin(z * 0.3) * Math.cos(x * 0.25) * 1.5, z);
+            }
+        }
+
+        SinglyLinkedList<Triangle3D> triList = new SinglyLinkedList<>();
+        for (int row = 0; row < cells; row++) {
+            for (int col = 0; col < cells; col++) {
+                triList.add(new Triangle3D(points[row][col], points[row + 1][col + 1], points[row][col + 1]));
+                triList.add(new Triangle3D(points[row][col], points[row + 1][col], points[row + 1][col + 1]));
+            }
+        }
+
+        Mesh3D mesh = new Mesh3D(triList);
+        mesh.computeVertexNormals();
+        return mesh;
+    }
+
+    /**
+     * Way a scene is rendered besides from its meshes in the solid view
+     */
+    private enum Technique {
+        PLAIN,
+
+        DEPTH_SORTED,
+
+        /**
+         * Copying only the tiles that changed over the frame before, rendered from a turned camera
+         */
+        TILED_PRESENT,
+
+        WIREFRAME_OVER_SOLID,
+
+        /**
+         * Reprojecting the frame from one rendered with the camera turned slightly, with temporal reprojection
+         */
+        REPROJECTED,
+
+        /**
+         * With a second viewport looking down on the scene drawn over the top right of the main viewport
+         */
+        SECOND_VIEWPORT,
+
+        /**
+         * At the lowest render scale dynamic resolution drops to, upscaled to the panel
+         */
+        DYNAMIC_RESOLUTION
+    }
+
+    /**
+     * Meshes rendered from a fixed camera pose, compared against the reference images of a scene
+     */
+    private static final class Scene {
+        private final String name;
+
+        private final String reference;
+
+        private final List<Mesh3D> meshes;
+
+        private final Vector cameraPos;
+
+        private final double yaw;
+
+        private final double pitch;
+
+        private final Technique technique;
+
+        private Scene(String name, String reference, List<Mesh3D> meshes, Vector cameraPos, double yaw, double pitch,
+                      Technique technique) {
+            this.name = name;
+            this.reference = reference;
+            this.meshes = meshes;
+            this.cameraPos = cameraPos;
+            this.yaw = yaw;
+            this.pitch = pitch;
+            this.technique = technique;
+        }
+    }
+
+}
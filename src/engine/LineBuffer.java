@@ -0,0 +1,76 @@
+package engine;
+
+import java.util.Arrays;
+
+/**
+ * Lines of a frame in screen space, gathered while the geometry of a viewport is updated and drawn once its
+ * triangles are filled
+ * <br>Each line is kept as the x, y and depth of both of its ends followed by its color, in arrays of primitives so
+ * millions of lines don't become millions of objects
+ */
+final class LineBuffer {
+    /**
+     * Amount of values stored for the ends of each line
+     */
+    private static final int LINE_SIZE = 6;
+
+    /**
+     * Ends of each line, six values per line
+     */
+    private double[] ends;
+
+    /**
+     * Color of each line in packed ARGB format
+     */
+    private int[] colors;
+
+    /**
+     * Amount of lines in the buffer
+     */
+    private int size;
+
+    // Constructors
+
+    // Create a buffer with room for an amount of lines before it grows, such as the amount of the frame before
+    LineBuffer(int capacity) {
+        ends = new double[Math.max(0, capacity) * LINE_SIZE];
+        colors = new int[Math.max(0, capacity)];
+    }
+
+    // Lines
+
+    // Add a line between two points in screen space
+    void add(double x0, double y0, double z0, double x1, double y1, double z1, int argb) {
+        if (size == colors.length) {
+            int capacity = Math.max(64, size * 2);
+            ends = Arrays.copyOf(ends, capacity * LINE_SIZE);
+            colors = Arrays.copyOf(colors, capacity);
+        }
+
+        int offset = size * LINE_SIZE;
+        ends[offset] = x0;
+        ends[offset + 1] = y0;
+        ends[offset + 2] = z0;
+        ends[offset + 3] = x1;
+        ends[offset + 4] = y1;
+        ends[offset + 5] = z1;
+        colors[size++] = argb;
+    }
+
+    // Draw every line into a rasterizer, skipping pixels behind filled triangles if depth tested
+    void draw(Rasterizer rasterizer, boolean depthTest) {
+        for (int i = 0; i < size; i++) {
+            int offset = i * LINE_SIZE;
+            rasterizer.drawLine(ends[offset], ends[offset + 1], ends[offset + 2],
+                    ends[offset + 3], ends[offset + 4], ends[offset + 5], colors[i], depthTest);
+        }
+    }
+
+    // Getters
+
+    // Amount of lines in the buffer
+    int size() {
+        return size;
+    }
+
+}
@@ -0,0 +1,1526 @@
+package engine;
+
+import graphicstructs.PackedColor;
+import graphicstructs.Texture;
+import graphicstructs.Triangle3D;
+import jobs.JobSystem;
+import lighting.AmbientLight;
+import lighting.DirectionalLight;
+import lighting.Light;
+import lighting.Lighting;
+import lighting.PointLight;
+import mathkit.Vector;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Scanline rasterizer that fills projected triangles into a color raster with depth buffering
+ * <br>The raster is split into square tiles that are cleared the first time a triangle touches them in a frame, so
+ * clearing only costs as much as the area drawn to, and tiles left untouched are only cleared if they were drawn to
+ * the frame before
+ */
+public class Rasterizer {
+    // Vector Indices
+
+    /**
+     * Index of where the x value of a vector will be
+     */
+    private static final int X_INDEX = 0;
+
+    /**
+     * Index of where the y value of a vector will be
+     */
+    private static final int Y_INDEX = 1;
+
+    /**
+     * Index of where the z value of a vector will be
+     */
+    private static final int Z_INDEX = 2;
+
+    // Shading
+
+    private static final int FLAT = 0;
+
+    private static final int GOURAUD = 1;
+
+    private static final int PHONG = 2;
+
+    private static final int TEXTURED = 3;
+
+    /**
+     * Gouraud shading of triangles whose vertex colors are all gray, which only interpolates a single channel
+     */
+    private static final int GRAY_GOURAUD = 4;
+
+    /**
+     * Amount of values interpolated across a triangle per vertex, either a normal followed by a world position or
+     * texture coordinates
+     */
+    private static final int ATTRIBUTE_COUNT = 6;
+
+    /**
+     * Amount of values interpolated across a textured triangle per vertex
+     */
+    private static final int TEXTURE_ATTRIBUTE_COUNT = 3;
+
+    /**
+     * Amount of values packed per directional light, the unit direction then the red, green and blue light it casts
+     */
+    private static final int DIRECTIONAL_LIGHT_STRIDE = 6;
+
+    /**
+     * Amount of values packed per point light, the position, the attenuation then the red, green and blue light it
+     * casts
+     */
+    private static final int POINT_LIGHT_STRIDE = 7;
+
+    private static final double[] NO_POINT_LIGHTS = new double[0];
+
+    private static final Light[] NO_OTHER_LIGHTS = new Light[0];
+
+    /**
+     * Value of 1 in 16.16 fixed point
+     */
+    private static final int FIXED_ONE = 1 << 16;
+
+    /**
+     * Largest color channel value in 16.16 fixed point
+     */
+    private static final int MAX_FIXED_CHANNEL = 255 * FIXED_ONE;
+
+    // Texturing
+
+    /**
+     * Amount of pixels between each perspective correct texture coordinate, pixels between them are interpolated
+     * linearly
+     */
+    private static final int TEXTURE_RUN_LENGTH = 16;
+
+    /**
+     * Reciprocal of each length a run of pixels can have, so texture coordinates are stepped across a run without a
+     * division
+     */
+    private static final double[] RUN_RECIPROCALS = new double[TEXTURE_RUN_LENGTH + 1];
+
+    static {
+        for (int i = 1; i <= TEXTURE_RUN_LENGTH; i++) {
+            RUN_RECIPROCALS[i] = 1.0 / i;
+        }
+    }
+
+    /**
+     * Largest distance in texels a texture coordinate may stray from its perspective correct value for a triangle to
+     * be mapped affinely, with no divisions at all
+     */
+    private static final double AFFINE_TEXEL_ERROR = 0.25;
+
+    private static final int MODULATE_NONE = 0;
+
+    private static final int MODULATE_GRAY = 1;
+
+    private static final int MODULATE_COLOR = 2;
+
+    // Tiles
+
+    /**
+     * Width and height of each tile in pixels, as a power of 2
+     */
+    private static final int TILE_SHIFT = 6;
+
+    /**
+     * Width and height of each tile in pixels
+     */
+    public static final int TILE_SIZE = 1 << TILE_SHIFT;
+
+    /**
+     * Smallest amount of tiles worth clearing across threads at the end of a frame
+     */
+    private static final int PARALLEL_CLEAR_THRESHOLD = 64;
+
+    // Buffers
+
+    /**
+     * Width of the raster in pixels
+     */
+    private final int width;
+
+    /**
+     * Height of the raster in pixels
+     */
+    private final int height;
+
+    /**
+     * Container for colors for each pixel in the raster
+     */
+    private final int[] raster;
+
+    /**
+     * Container for the z-value of each pixel in the raster
+     */
+    private final double[] depthBuffer;
+
+    /**
+     * Value the depth buffer is reset to when cleared
+     */
+    private final double clearDepth;
+
+    /**
+     * Amount of tiles along the width of the raster
+     */
+    private final int tileColumns;
+
+    /**
+     * Amount of tiles along the height of the raster
+     */
+    private final int tileRows;
+
+    /**
+     * Frame each tile was last cleared in because a triangle touched it
+     */
+    private final int[] tileClearedFrame;
+
+    /**
+     * Frame each tile was last cleared in because it went untouched after being drawn to
+     */
+    private final int[] tileResolvedFrame;
+
+    /**
+     * Whether or not each tile may hold colors other than black
+     */
+    private final boolean[] tileDrawn;
+
+    /**
+     * Number of the current frame, incremented every clear
+     */
+    private int frame;
+
+    // Lighting, a snapshot of the lights used to Phong shade triangles with the light of each color channel scaled so
+    // 1 is full brightness
+
+    private double ambientRed;
+
+    private double ambientGreen;
+
+    private double ambientBlue;
+
+    /**
+     * Directional lights packed {@link #DIRECTIONAL_LIGHT_STRIDE} values at a time
+     */
+    private double[] directionalLights = {0.0, 0.0, -1.0, 1.0, 1.0, 1.0};
+
+    /**
+     * Point lights packed {@link #POINT_LIGHT_STRIDE} values at a time
+     */
+    private double[] pointLights = NO_POINT_LIGHTS;
+
+    /**
+     * Lights of any other kind, which light each pixel through {@link Light#illuminate}
+     */
+    private Light[] otherLights = NO_OTHER_LIGHTS;
+
+    /**
+     * Running red, green and blue totals of the pixel being lit by the other lights
+     */
+    private final double[] lightTotals = new double[3];
+
+    // Scratch
+
+    /**
+     * First and last x value of each row of the triangle being filled, indexed by row
+     */
+    private final int[] spanStarts;
+
+    private final int[] spanEnds;
+
+    /**
+     * Attributes of each vertex of the triangle being filled
+     */
+    private final double[] vertexAttributes = new double[Triangle3D.SIZE * ATTRIBUTE_COUNT];
+
+    /**
+     * Change of each attribute per pixel in the x direction across the triangle being filled
+     */
+    private final double[] attributeStepsX = new double[ATTRIBUTE_COUNT];
+
+    /**
+     * Change of each attribute per pixel in the y direction across the triangle being filled
+     */
+    private final double[] attributeStepsY = new double[ATTRIBUTE_COUNT];
+
+    /**
+     * Texture coordinates of each vertex of the triangle being filled in texels of the chosen level, unprojected
+     */
+    private final double[] vertexTexelU = new double[Triangle3D.SIZE];
+
+    private final double[] vertexTexelV = new double[Triangle3D.SIZE];
+
+    /**
+     * Levels of the last texture mapped with a gray shade, already scaled by the shade
+     */
+    private final ShadedTextureCache shadedTextures = new ShadedTextureCache();
+
+    // color planes of the triangle being Gouraud shaded in 16.16 fixed point, as values at the top left corner of
+    // the screen and changes per pixel
+
+    private long redPlane;
+
+    private long redStepX;
+
+    private long redStepY;
+
+    private long greenPlane;
+
+    private long greenStepX;
+
+    private long greenStepY;
+
+    private long bluePlane;
+
+    private long blueStepX;
+
+    private long blueStepY;
+
+    /**
+     * Screen position of the first vertex of the triangle being filled, where the attribute gradients start from
+     */
+    private double gradientOriginX;
+
+    private double gradientOriginY;
+
+    // weights turning the changes of a value from the first vertex to the second and third into its changes per pixel
+    // in x and y across the triangle being filled
+
+    private double gradientWeightX1;
+
+    private double gradientWeightX2;
+
+    private double gradientWeightY1;
+
+    private double gradientWeightY2;
+
+    // mip level of the texture being mapped across the triangle being filled, and how its texels are scaled by the
+    // triangle's color
+
+    private int[] textureTexels;
+
+    private int[] textureMortonX;
+
+    private int[] textureMortonY;
+
+    private int textureLevelWidth;
+
+    private int textureLevelHeight;
+
+    private int textureMaskX;
+
+    private int textureMaskY;
+
+    private int textureModulation;
+
+    // whether the texture is mapped affinely across the triangle being filled, and its texture coordinates in texels
+    // as values at the top left corner of the screen and changes per pixel when it is
+
+    private boolean textureAffine;
+
+    private double affineU;
+
+    private double affineUStepX;
+
+    private double affineUStepY;
+
+    private double affineV;
+
+    private double affineVStepX;
+
+    private double affineVStepY;
+
+    private int redShade;
+
+    private int greenShade;
+
+    private int blueShade;
+
+    // Statistics
+
+    /**
+     * Amount of pixels written since the last clear, including pixels written over more than once
+     */
+    private long pixelsWritten;
+
+    // Constructors
+
+    /**
+     * Create a rasterizer that draws into an existing raster
+     * @param raster color raster to fill, must hold width * height pixels
+     * @param width width of the raster in pixels, must be greater than 0
+     * @param height height of the raster in pixels, must be greater than 0
+     * @param clearDepth depth value every pixel starts at when the raster is cleared
+     */
+    public Rasterizer(int[] raster, int width, int height, double clearDepth) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid dimensions");
+        } else if (raster == null || raster.length != width * height) {
+            throw new IllegalArgumentException("Raster must hold exactly width * height pixels");
+        }
+
+        this.raster = raster;
+        this.width = width;
+        this.height = height;
+        this.clearDepth = clearDepth;
+
+        depthBuffer = new double[raster.length];
+        spanStarts = new int[height];
+        spanEnds = new int[height];
+
+        tileColumns = (width + TILE_SIZE - 1) >> TILE_SHIFT;
+        tileRows = (height + TILE_SIZE - 1) >> TILE_SHIFT;
+        tileClearedFrame = new int[tileColumns * tileRows];
+        tileResolvedFrame = new int[tileColumns * tileRows];
+        tileDrawn = new boolean[tileColumns * tileRows];
+        Arrays.fill(tileDrawn, true); // the raster may already hold an image
+    }
+
+    // Render
+
+    /**
+     * Start a new frame where every pixel is black and every depth is the clear depth
+     * <br>Pixels are only actually reset when a triangle first touches their tile or when the frame is finished
+     */
+    public void clear() {
+        frame++;
+        pixelsWritten = 0;
+    }
+
+    /**
+     * Finish the current frame by clearing every tile that was drawn to before but not touched since the last clear,
+     * after which the whole raster holds the frame
+     */
+    public void finishFrame() {
+        finishFrame(null);
+    }
+
+    /**
+     * Finish the current frame by clearing every tile that was drawn to before but not touched since the last clear,
+     * spreading the tiles across the CPU bound threads of a job system when there are many of them
+     * @param jobSystem job system to clear tiles on, or null to clear them all on the calling thread
+     */
+    public void finishFrame(JobSystem jobSystem) {
+        int staleTiles = 0;
+        for (int tile = 0; tile < tileDrawn.length; tile++) {
+            if (tileDrawn[tile] && tileClearedFrame[tile] != frame) {
+                staleTiles++;
+            }
+        }
+
+        if (staleTiles == 0) {
+            return;
+        }
+
+        if (jobSystem != null && staleTiles >= PARALLEL_CLEAR_THRESHOLD) {
+            jobSystem.parallelFor(0, tileDrawn.length, this::clearIfStale);
+        } else {
+            for (int tile = 0; tile < tileDrawn.length; tile++) {
+                clearIfStale(tile);
+            }
+        }
+    }
+
+    // Clear the colors of a tile if it was drawn to before but not touched this frame
+    // Depths are cleared when a triangle next touches the tile
+    private void clearIfStale(int tile) {
+        if (tileDrawn[tile] && tileClearedFrame[tile] != frame) {
+            forEachTileRow(tile, (rowStart, rowEnd) -> Arrays.fill(raster, rowStart, rowEnd, 0));
+            tileDrawn[tile] = false;
+            tileResolvedFrame[tile] = frame;
+        }
+    }
+
+    // Clear the colors and depths of every tile a row of pixels crosses that hasn't been touched yet this frame
+    private void touchTiles(int y, int spanStart, int spanEnd) {
+        int tileRowStart = (y >> TILE_SHIFT) * tileColumns;
+        int lastTile = tileRowStart + (spanEnd >> TILE_SHIFT);
+
+        for (int tile = tileRowStart + (spanStart >> TILE_SHIFT); tile <= lastTile; tile++) {
+            if (tileClearedFrame[tile] != frame) {
+                boolean drawn = tileDrawn[tile];
+
+                forEachTileRow(tile, (rowStart, rowEnd) -> {
+                    if (drawn) {
+                        Arrays.fill(raster, rowStart, rowEnd, 0);
+                    }
+
+                    Arrays.fill(depthBuffer, rowStart, rowEnd, clearDepth);
+                });
+
+                tileClearedFrame[tile] = frame;
+                tileDrawn[tile] = true;
+            }
+        }
+    }
+
+    /**
+     * Keep the pixels and depths currently in a tile as part of the current frame, instead of clearing them when a
+     * triangle first touches the tile or when the frame is finished
+     * <br>Meant for tiles written straight into the raster and depth buffer since the last clear, such as tiles
+     * reprojected from the frame before
+     * @param tileColumn column of the tile
+     * @param tileRow row of the tile
+     */
+    public void keepTile(int tileColumn, int tileRow) {
+        int tile = tileRow * tileColumns + tileColumn;
+        tileClearedFrame[tile] = frame;
+        tileDrawn[tile] = true;
+    }
+
+    // Run an action over the range of raster indices of each row of pixels in a tile
+    private void forEachTileRow(int tile, TileRowAction action) {
+        int tileX = (tile % tileColumns) << TILE_SHIFT;
+        int tileY = (tile / tileColumns) << TILE_SHIFT;
+        int tileWidth = Math.min(TILE_SIZE, width - tileX);
+        int tileHeight = Math.min(TILE_SIZE, height - tileY);
+
+        for (int y = tileY; y < tileY + tileHeight; y++) {
+            int rowStart = y * width + tileX;
+            action.run(rowStart, rowStart + tileWidth);
+        }
+    }
+
+    // Action on the range of raster indices of a row of pixels in a tile
+    private interface TileRowAction {
+        void run(int rowStart, int rowEnd);
+    }
+
+    /**
+     * Fill a projected triangle with a scanline algorithm, accounting for depth buffering
+     * <br>Textured triangles are mapped with the texture scaled by the triangle color, triangles with vertex colors are
+     * Gouraud shaded, triangles with only vertex normals are Phong shaded with the lights set on this rasterizer and
+     * all other triangles are filled with a single color
+     * @param projTri triangle in screen space, must lie within the raster
+     */
+    public void fillTriangle(Triangle3D projTri) {
+        // sort the vertices of the projected triangle by y values
+        int index1 = 0;
+        int index2 = 1;
+        int index3 = 2;
+
+        if (projTri.get(index2).get(Y_INDEX) < projTri.get(index1).get(Y_INDEX)) {
+            index1 = 1;
+            index2 = 0;
+        }
+
+        if (projTri.get(index3).get(Y_INDEX) < projTri.get(index2).get(Y_INDEX)) {
+            int temp = index2;
+            index2 = index3;
+            index3 = temp;
+
+            if (projTri.get(index2).get(Y_INDEX) < projTri.get(index1).get(Y_INDEX)) {
+                temp = index1;
+                index1 = index2;
+                index2 = temp;
+            }
+        }
+
+        Vector point1 = projTri.get(index1);
+        Vector point2 = projTri.get(index2);
+        Vector point3 = projTri.get(index3);
+
+        int shading = FLAT;
+        if (projTri.isTextured()) {
+            shading = TEXTURED;
+        } else if (projTri.hasVertexColors()) {
+            shading = hasGrayVertexColors(projTri) ? GRAY_GOURAUD : GOURAUD;
+        } else if (projTri.hasNormals()) {
+            shading = PHONG;
+        }
+
+        int rgb = projTri.getARGB();
+
+        if (shading == TEXTURED) {
+            loadTexture(projTri, rgb);
+        }
+
+        if (shading == GOURAUD || shading == GRAY_GOURAUD) {
+            loadGradientWeights(projTri);
+            loadColorGradients(projTri, shading);
+        } else if (shading != FLAT) {
+            loadGradientWeights(projTri);
+            loadAttributeGradients(projTri, shading);
+        }
+
+        double avgZ = (point1.get(Z_INDEX) + point2.get(Z_INDEX) + point3.get(Z_INDEX)) / 3;
+
+        // find the span of every row of the upper sub triangle
+        int firstRow = (int) point1.get(Y_INDEX) + 1;
+        int currY = firstRow;
+        int point1X = (int) point1.get(X_INDEX);
+        int startRow = 0;
+        int endRow = 0;
+
+        double slopeA = (point2.get(X_INDEX) - point1.get(X_INDEX)) / (point2.get(Y_INDEX) - point1.get(Y_INDEX));
+        double slopeB = (point3.get(X_INDEX) - point1.get(X_INDEX)) / (point3.get(Y_INDEX) - point1.get(Y_INDEX));
+
+        while (currY <= point2.get(Y_INDEX)) {
+            setSpan(currY, (int) (point1X + (startRow * slopeA)), (int) (point1X + (endRow * slopeB)));
+
+            currY++;
+            startRow++;
+            endRow++;
+        }
+
+        // find the span of every row of the lower sub triangle
+        currY = (int) point2.get(Y_INDEX) + 1;
+        startRow = 0;
+        slopeA = (point3.get(X_INDEX) - point2.get(X_INDEX)) / (point3.get(Y_INDEX) - point2.get(Y_INDEX));
+        int point2X = (int) point2.get(X_INDEX);
+
+        while (currY <= point3.get(Y_INDEX)) {
+            setSpan(currY, (int) (point2X + (startRow * slopeA)), (int) (point1X + (endRow * slopeB)));
+
+            currY++;
+            startRow++;
+            endRow++;
+        }
+
+        int lastRow = currY - 1;
+
+        // each way of shading fills all of the rows in its own loop, so each loop only ever sees one kind of triangle
+        if (shading == FLAT) {
+            fillRows(firstRow, lastRow, avgZ, rgb);
+        } else if (shading == GOURAUD) {
+            fillGouraudRows(firstRow, lastRow, avgZ);
+        } else if (shading == GRAY_GOURAUD) {
+            fillGrayRows(firstRow, lastRow, avgZ);
+        } else if (shading == PHONG) {
+            fillPhongRows(firstRow, lastRow, avgZ, rgb, projTri.hasWorldPositions());
+        } else {
+            fillTexturedRows(firstRow, lastRow, avgZ);
+        }
+    }
+
+    // Store the span of a row of the triangle being filled between two x values in either order
+    private void setSpan(int y, int xStart, int xEnd) {
+        spanStarts[y] = Math.min(xStart, xEnd);
+        spanEnds[y] = Math.max(xStart, xEnd);
+    }
+
+    // Fill rows of the triangle being filled with a single color
+    private void fillRows(int firstRow, int lastRow, double z, int rgb) {
+        int written = 0;
+
+        for (int y = firstRow; y <= lastRow; y++) {
+            int spanStart = spanStarts[y];
+            int spanEnd = spanEnds[y];
+            touchTiles(y, spanStart, spanEnd);
+
+            int rowStart = y * width;
+
+            for (int screenIndex = rowStart + spanStart; screenIndex <= rowStart + spanEnd; screenIndex++) {
+                if (z < depthBuffer[screenIndex]) {
+                    depthBuffer[screenIndex] = z;
+                    raster[screenIndex] = rgb;
+                    written++;
+                }
+            }
+        }
+
+        pixelsWritten += written;
+    }
+
+    // Fill rows of the triangle being filled, interpolating the vertex colors across them
+    private void fillGouraudRows(int firstRow, int lastRow, double z) {
+        long redStepX = this.redStepX;
+        long greenStepX = this.greenStepX;
+        long blueStepX = this.blueStepX;
+        int written = 0;
+
+        // the color planes are stepped down the rows, and across each row from its first pixel
+        long redRow = redPlane + redStepY * firstRow;
+        long greenRow = greenPlane + greenStepY * firstRow;
+        long blueRow = bluePlane + blueStepY * firstRow;
+
+        for (int y = firstRow; y <= lastRow; y++) {
+            int spanStart = spanStarts[y];
+            int spanEnd = spanEnds[y];
+            int length = spanEnd - spanStart;
+            touchTiles(y, spanStart, spanEnd);
+
+            // find the color channels at both ends of the span in 16.16 fixed point
+            long redStart = redRow + redStepX * spanStart;
+            long greenStart = greenRow + greenStepX * spanStart;
+            long blueStart = blueRow + blueStepX * spanStart;
+            long redEnd = redStart + redStepX * length;
+            long greenEnd = greenStart + greenStepX * length;
+            long blueEnd = blueStart + blueStepX * length;
+
+            int red = (int) redStart;
+            int green = (int) greenStart;
+            int blue = (int) blueStart;
+            int redStep = (int) redStepX;
+            int greenStep = (int) greenStepX;
+            int blueStep = (int) blueStepX;
+
+            // spans can reach slightly past the edges of a triangle, where the color planes leave the range of the
+            // vertices, so rows are clamped if either end of any channel is out of range
+            // all of the ends are checked at once, since a branch per channel is mispredicted wherever colors sit at
+            // either end of their range, like in shadows
+            long outOfRange = redStart | redEnd | greenStart | greenEnd | blueStart | blueEnd
+                    | (MAX_FIXED_CHANNEL - redStart) | (MAX_FIXED_CHANNEL - redEnd)
+                    | (MAX_FIXED_CHANNEL - greenStart) | (MAX_FIXED_CHANNEL - greenEnd)
+                    | (MAX_FIXED_CHANNEL - blueStart) | (MAX_FIXED_CHANNEL - blueEnd);
+
+            if (outOfRange < 0) {
+                red = clampFixedChannel(redStart);
+                green = clampFixedChannel(greenStart);
+                blue = clampFixedChannel(blueStart);
+                redStep = clampFixedStep(red, redStep, length);
+                greenStep = clampFixedStep(green, greenStep, length);
+                blueStep = clampFixedStep(blue, blueStep, length);
+            }
+
+            // red and blue are stepped together as two 8.8 fixed point values in one int, one shift away from their
+            // places in a packed color, with steps rounded towards zero so neither leaves its 16 bits by the span end
+            int redBlue = (red >> 8 << 16) | (blue >> 8);
+            int redBlueStep = (redStep / 256 << 16) + blueStep / 256;
+
+            int rowStart = y * width;
+
+            for (int screenIndex = rowStart + spanStart; screenIndex <= rowStart + spanEnd; screenIndex++) {
+                if (z < depthBuffer[screenIndex]) {
+                    depthBuffer[screenIndex] = z;
+                    raster[screenIndex] = 0xFF000000 | ((redBlue >>> 8) & 0xFF00FF) | ((green >>> 8) & 0xFF00);
+                    written++;
+                }
+
+                redBlue += redBlueStep;
+                green += greenStep;
+            }
+
+            redRow += redStepY;
+            greenRow += greenStepY;
+            blueRow += blueStepY;
+        }
+
+        pixelsWritten += written;
+    }
+
+    // Fill rows of the triangle being filled, interpolating the red channel of vertex colors that are all gray
+    // A gray level is turned into a packed color with a single multiplication, and only has one channel to step and
+    // keep in range, which leaves far less work per row and per pixel than stepping every channel
+    private void fillGrayRows(int firstRow, int lastRow, double z) {
+        long grayStepX = redStepX;
+        int written = 0;
+
+        long grayRow = redPlane + redStepY * firstRow;
+
+        for (int y = firstRow; y <= lastRow; y++) {
+            int spanStart = spanStarts[y];
+            int spanEnd = spanEnds[y];
+            int length = spanEnd - spanStart;
+            touchTiles(y, spanStart, spanEnd);
+
+            long grayStart = grayRow + grayStepX * spanStart;
+            long grayEnd = grayStart + grayStepX * length;
+
+            int gray = (int) grayStart;
+            int grayStep = (int) grayStepX;
+
+            if ((grayStart | grayEnd | (MAX_FIXED_CHANNEL - grayStart) | (MAX_FIXED_CHANNEL - grayEnd)) < 0) {
+                gray = clampFixedChannel(grayStart);
+                grayStep = clampFixedStep(gray, grayStep, length);
+            }
+
+            int rowStart = y * width;
+
+            for (int screenIndex = rowStart + spanStart; screenIndex <= rowStart + spanEnd; screenIndex++) {
+                if (z < depthBuffer[screenIndex]) {
+                    depthBuffer[screenIndex] = z;
+                    raster[screenIndex] = 0xFF000000 | ((gray >>> 16) * 0x010101);
+                    written++;
+                }
+
+                gray += grayStep;
+            }
+
+            grayRow += redStepY;
+        }
+
+        pixelsWritten += written;
+    }
+
+    // Fill rows of the triangle being filled, lighting the interpolated vertex normals at each pixel
+    // Point lights and other lights need the world position of each pixel, so triangles without world positions are
+    // only lit by the ambient and directional lights
+    private void fillPhongRows(int firstRow, int lastRow, double z, int rgb, boolean positioned) {
+        double normalStepX = attributeStepsX[0];
+        double normalStepY = attributeStepsX[1];
+        double normalStepZ = attributeStepsX[2];
+        double pointStepX = attributeStepsX[3];
+        double pointStepY = attributeStepsX[4];
+        double pointStepZ = attributeStepsX[5];
+        double[] directional = directionalLights;
+        double[] points = positioned ? pointLights : NO_POINT_LIGHTS;
+        Light[] others = positioned ? otherLights : NO_OTHER_LIGHTS;
+        int written = 0;
+
+        for (int y = firstRow; y <= lastRow; y++) {
+            int spanStart = spanStarts[y];
+            int spanEnd = spanEnds[y];
+            touchTiles(y, spanStart, spanEnd);
+
+            double offsetX = spanStart - gradientOriginX;
+            double offsetY = y - gradientOriginY;
+            double normalX = vertexAttributes[0] + normalStepX * offsetX + attributeStepsY[0] * offsetY;
+            double normalY = vertexAttributes[1] + normalStepY * offsetX + attributeStepsY[1] * offsetY;
+            double normalZ = vertexAttributes[2] + normalStepZ * offsetX + attributeStepsY[2] * offsetY;
+            double pointX = vertexAttributes[3] + pointStepX * offsetX + attributeStepsY[3] * offsetY;
+            double pointY = vertexAttributes[4] + pointStepY * offsetX + attributeStepsY[4] * offsetY;
+            double pointZ = vertexAttributes[5] + pointStepZ * offsetX + attributeStepsY[5] * offsetY;
+
+            int rowStart = y * width;
+
+            for (int screenIndex = rowStart + spanStart; screenIndex <= rowStart + spanEnd; screenIndex++) {
+                if (z < depthBuffer[screenIndex]) {
+                    double lengthSquared = normalX * normalX + normalY * normalY + normalZ * normalZ;
+                    double unitX = 0.0;
+                    double unitY = 0.0;
+                    double unitZ = 0.0;
+
+                    if (lengthSquared > 0.0) {
+                        double inverseLength = 1.0 / Math.sqrt(lengthSquared);
+                        unitX = normalX * inverseLength;
+                        unitY = normalY * inverseLength;
+                        unitZ = normalZ * inverseLength;
+                    }
+
+                    double red = ambientRed;
+                    double green = ambientGreen;
+                    double blue = ambientBlue;
+
+                    for (int i = 0; i < directional.length; i += DIRECTIONAL_LIGHT_STRIDE) {
+                        double lambert = unitX * directional[i] + unitY * directional[i + 1]
+                                + unitZ * directional[i + 2];
+
+                        if (lambert > 0.0) {
+                            red += lambert * directional[i + 3];
+                            green += lambert * directional[i + 4];
+                            blue += lambert * directional[i + 5];
+                        }
+                    }
+
+                    for (int i = 0; i < points.length; i += POINT_LIGHT_STRIDE) {
+                        double toLightX = points[i] - pointX;
+                        double toLightY = points[i + 1] - pointY;
+                        double toLightZ = points[i + 2] - pointZ;
+                        double distSquared = toLightX * toLightX + toLightY * toLightY + toLightZ * toLightZ;
+                        double amount = 1.0;
+
+                        if (distSquared != 0.0) {
+                            double lambert = (unitX * toLightX + unitY * toLightY + unitZ * toLightZ)
+                                    / Math.sqrt(distSquared);
+                            amount = lambert > 0.0 ? lambert / (1.0 + points[i + 3] * distSquared) : 0.0;
+                        }
+
+                        red += amount * points[i + 4];
+                        green += amount * points[i + 5];
+                        blue += amount * points[i + 6];
+                    }
+
+                    if (others.length > 0) {
+                        lightTotals[0] = red;
+                        lightTotals[1] = green;
+                        lightTotals[2] = blue;
+
+                        for (Light light : others) {
+                            light.illuminate(pointX, pointY, pointZ, unitX, unitY, unitZ, lightTotals);
+                        }
+
+                        red = lightTotals[0];
+                        green = lightTotals[1];
+                        blue = lightTotals[2];
+                    }
+
+                    depthBuffer[screenIndex] = z;
+                    raster[screenIndex] = PackedColor.shade(rgb, toFixedShade(red), toFixedShade(green),
+                            toFixedShade(blue));
+                    written++;
+                }
+
+                normalX += normalStepX;
+                normalY += normalStepY;
+                normalZ += normalStepZ;
+                pointX += pointStepX;
+                pointY += pointStepY;
+                pointZ += pointStepZ;
+            }
+        }
+
+        pixelsWritten += written;
+    }
+
+    // Clamp an amount of light to a fixed point shading value
+    private static int toFixedShade(double light) {
+        return PackedColor.toFixedShade(Math.min(Math.max(light, 0.0), 1.0));
+    }
+
+    // Fill rows of the triangle being filled, mapping the texture across them
+    // Texture coordinates are divided by depth at the start of every run of pixels and interpolated linearly within it,
+    // unless the whole triangle is close enough to affine to skip the divisions
+    private void fillTexturedRows(int firstRow, int lastRow, double z) {
+        if (textureAffine) {
+            fillAffineTexturedRows(firstRow, lastRow, z);
+            return;
+        }
+
+        int written = 0;
+
+        for (int y = firstRow; y <= lastRow; y++) {
+            int spanStart = spanStarts[y];
+            int spanEnd = spanEnds[y];
+            touchTiles(y, spanStart, spanEnd);
+
+            double offsetX = spanStart - gradientOriginX;
+            double offsetY = y - gradientOriginY;
+            double projU = vertexAttributes[0] + attributeStepsX[0] * offsetX + attributeStepsY[0] * offsetY;
+            double projV = vertexAttributes[1] + attributeStepsX[1] * offsetX + attributeStepsY[1] * offsetY;
+            double inverseZ = vertexAttributes[2] + attributeStepsX[2] * offsetX + attributeStepsY[2] * offsetY;
+
+            // each texture coordinate is unprojected with one division for both of its axes
+            double depth = FIXED_ONE / inverseZ;
+            long fixedU = (long) (projU * depth);
+            long fixedV = (long) (projV * depth);
+
+            int rowStart = y * width;
+
+            for (int runStart = spanStart; runStart <= spanEnd; runStart += TEXTURE_RUN_LENGTH) {
+                int runLength = Math.min(TEXTURE_RUN_LENGTH, spanEnd - runStart + 1);
+
+                projU += attributeStepsX[0] * runLength;
+                projV += attributeStepsX[1] * runLength;
+                inverseZ += attributeStepsX[2] * runLength;
+
+                depth = FIXED_ONE / inverseZ;
+                long nextU = (long) (projU * depth);
+                long nextV = (long) (projV * depth);
+                long stepU;
+                long stepV;
+
+                // multiplying by the reciprocal of the length avoids a long division for runs cut short by the span
+                double runReciprocal = RUN_RECIPROCALS[runLength];
+                stepU = (long) ((nextU - fixedU) * runReciprocal);
+                stepV = (long) ((nextV - fixedV) * runReciprocal);
+
+                written += fillTexelRun(rowStart + runStart, runLength, z, fixedU, fixedV, stepU, stepV);
+
+                fixedU = nextU;
+                fixedV = nextV;
+            }
+        }
+
+        pixelsWritten += written;
+    }
+
+    // Fill rows of the triangle being filled, mapping the texture across them affinely with each row as one run
+    private void fillAffineTexturedRows(int firstRow, int lastRow, double z) {
+        long stepU = toFixed(affineUStepX);
+        long stepV = toFixed(affineVStepX);
+        int written = 0;
+
+        for (int y = firstRow; y <= lastRow; y++) {
+            int spanStart = spanStarts[y];
+            int spanEnd = spanEnds[y];
+            touchTiles(y, spanStart, spanEnd);
+
+            long fixedU = toFixed(affineU + affineUStepX * spanStart + affineUStepY * y);
+            long fixedV = toFixed(affineV + affineVStepX * spanStart + affineVStepY * y);
+
+            if (spanEnd >= spanStart) {
+                written += fillTexelRun(y * width + spanStart, spanEnd - spanStart + 1, z, fixedU, fixedV, stepU,
+                        stepV);
+            }
+        }
+
+        pixelsWritten += written;
+    }
+
+    // Fill a run of pixels in a row with texels stepped linearly between two texture coordinates in 16.16 fixed
+    // point, returning the amount of pixels written
+    // Each way of scaling texels by the triangle's color has its own loop, so the choice is made once per run instead
+    // of once per pixel
+    private int fillTexelRun(int runStart, int runLength, double z, long fixedU, long fixedV, long stepU,
+                             long stepV) {
+        int[] texels = textureTexels;
+        int[] mortonX = textureMortonX;
+        int[] mortonY = textureMortonY;
+        int maskX = textureMaskX;
+        int maskY = textureMaskY;
+        int runEnd = runStart + runLength;
+        int written = 0;
+
+        if (textureModulation == MODULATE_NONE) {
+            for (int screenIndex = runStart; screenIndex < runEnd; screenIndex++) {
+                if (z < depthBuffer[screenIndex]) {
+                    depthBuffer[screenIndex] = z;
+                    raster[screenIndex] = 0xFF000000
+                            | texels[mortonX[(int) (fixedU >> 16) & maskX] + mortonY[(int) (fixedV >> 16) & maskY]];
+                    written++;
+                }
+
+                fixedU += stepU;
+                fixedV += stepV;
+            }
+        } else if (textureModulation == MODULATE_GRAY) {
+            int shade = redShade;
+
+            for (int screenIndex = runStart; screenIndex < runEnd; screenIndex++) {
+                if (z < depthBuffer[screenIndex]) {
+                    int texel = texels[mortonX[(int) (fixedU >> 16) & maskX] + mortonY[(int) (fixedV >> 16) & maskY]];
+                    depthBuffer[screenIndex] = z;
+                    raster[screenIndex] = PackedColor.shade(texel, shade);
+                    written++;
+                }
+
+                fixedU += stepU;
+                fixedV += stepV;
+            }
+        } else {
+            int red = redShade;
+            int green = greenShade;
+            int blue = blueShade;
+
+            for (int screenIndex = runStart; screenIndex < runEnd; screenIndex++) {
+                if (z < depthBuffer[screenIndex]) {
+                    int texel = texels[mortonX[(int) (fixedU >> 16) & maskX] + mortonY[(int) (fixedV >> 16) & maskY]];
+                    depthBuffer[screenIndex] = z;
+                    raster[screenIndex] = PackedColor.shade(texel, red, green, blue);
+                    written++;
+                }
+
+                fixedU += stepU;
+                fixedV += stepV;
+            }
+        }
+
+        return written;
+    }
+
+    /**
+     * Draw a line between two points in screen space with Bresenham's algorithm, writing straight into the raster
+     * <br>Lines are clipped to the raster and never write depth, so they don't hide each other or the triangles filled
+     * after them. Depth is interpolated linearly across the screen, as it is for projected straight lines.
+     * @param x0 x value of the start of the line
+     * @param y0 y value of the start of the line
+     * @param z0 depth of the start of the line
+     * @param x1 x value of the end of the line
+     * @param y1 y value of the end of the line
+     * @param z1 depth of the end of the line
+     * @param argb color of the line in packed ARGB format
+     * @param depthTest whether or not pixels behind filled triangles are skipped
+     */
+    public void drawLine(double x0, double y0, double z0, double x1, double y1, double z1, int argb,
+                         boolean depthTest) {
+        double deltaX = x1 - x0;
+        double deltaY = y1 - y0;
+        double deltaZ = z1 - z0;
+
+        // clip the line to the raster with Liang-Barsky, keeping the fractions of the line left on each end
+        double startFraction = 0.0;
+        double endFraction = 1.0;
+        boolean inside = x0 >= 0.0 && x1 >= 0.0 && y0 >= 0.0 && y1 >= 0.0
+                && x0 <= width - 1 && x1 <= width - 1 && y0 <= height - 1 && y1 <= height - 1;
+
+        for (int edge = 0; edge < 4 && !inside; edge++) {
+            double direction = edge == 0 ? -deltaX : edge == 1 ? deltaX : edge == 2 ? -deltaY : deltaY;
+            double distance = edge == 0 ? x0 : edge == 1 ? width - 1 - x0 : edge == 2 ? y0 : height - 1 - y0;
+
+            if (direction == 0.0) {
+                if (distance < 0.0) { // parallel to the edge and outside of it
+                    return;
+                }
+            } else {
+                double fraction = distance / direction;
+
+                if (direction < 0.0) {
+                    startFraction = Math.max(startFraction, fraction);
+                } else {
+                    endFraction = Math.min(endFraction, fraction);
+                }
+
+                if (startFraction > endFraction) {
+                    return;
+                }
+            }
+        }
+
+        int x = clampIndex((int) (x0 + deltaX * startFraction), width);
+        int y = clampIndex((int) (y0 + deltaY * startFraction), height);
+        int endX = clampIndex((int) (x0 + deltaX * endFraction), width);
+        int endY = clampIndex((int) (y0 + deltaY * endFraction), height);
+
+        int stepsX = Math.abs(endX - x);
+        int stepsY = -Math.abs(endY - y);
+        int directionX = x < endX ? 1 : -1;
+        int directionY = y < endY ? 1 : -1;
+        int steps = Math.max(stepsX, -stepsY);
+
+        double z = z0 + deltaZ * startFraction;
+        double zStep = steps == 0 ? 0.0 : deltaZ * (endFraction - startFraction) / steps;
+        int error = stepsX + stepsY;
+
+        for (int i = 0; i <= steps; i++) {
+            // a line may be the first thing to touch a tile this frame
+            if (tileClearedFrame[(y >> TILE_SHIFT) * tileColumns + (x >> TILE_SHIFT)] != frame) {
+                touchTiles(y, x, x);
+            }
+
+            int screenIndex = y * width + x;
+            if (!depthTest || z <= depthBuffer[screenIndex]) {
+                raster[screenIndex] = argb;
+            }
+
+            z += zStep;
+
+            int doubledError = error * 2;
+            if (doubledError >= stepsY) {
+                error += stepsY;
+                x += directionX;
+            }
+
+            if (doubledError <= stepsX) {
+                error += stepsX;
+                y += directionY;
+            }
+        }
+    }
+
+    // Keep a pixel coordinate within the raster, since clipping in floating point can land a hair outside of it
+    private static int clampIndex(int value, int size) {
+        return Math.min(Math.max(value, 0), size - 1);
+    }
+
+    // Pick the mip level of the texture whose texels best match the size of the triangle's pixels, and how to scale
+    // the texels by the triangle's color
+    private void loadTexture(Triangle3D projTri, int rgb) {
+        Texture texture = projTri.getTexture();
+
+        // compare the area the triangle covers on the screen with the area it covers on the full resolution texture
+        double screenEdge1X = projTri.get(1).get(X_INDEX) - projTri.get(0).get(X_INDEX);
+        double screenEdge1Y = projTri.get(1).get(Y_INDEX) - projTri.get(0).get(Y_INDEX);
+        double screenEdge2X = projTri.get(2).get(X_INDEX) - projTri.get(0).get(X_INDEX);
+        double screenEdge2Y = projTri.get(2).get(Y_INDEX) - projTri.get(0).get(Y_INDEX);
+        double screenArea = Math.abs(screenEdge1X * screenEdge2Y - screenEdge2X * screenEdge1Y);
+
+        // the texture coordinates are stored projected, so they are divided by their inverse depth to unproject them
+        for (int i = 0; i < Triangle3D.SIZE; i++) {
+            Vector textureCoord = projTri.getTextureCoord(i);
+            double depth = 1.0 / textureCoord.get(Z_INDEX);
+            int offset = i * ATTRIBUTE_COUNT;
+            vertexAttributes[offset] = textureCoord.get(X_INDEX) * depth * texture.getWidth(0);
+            vertexAttributes[offset + 1] = textureCoord.get(Y_INDEX) * depth * texture.getHeight(0);
+        }
+
+        double texelEdge1X = vertexAttributes[ATTRIBUTE_COUNT] - vertexAttributes[0];
+        double texelEdge1Y = vertexAttributes[ATTRIBUTE_COUNT + 1] - vertexAttributes[1];
+        double texelEdge2X = vertexAttributes[2 * ATTRIBUTE_COUNT] - vertexAttributes[0];
+        double texelEdge2Y = vertexAttributes[2 * ATTRIBUTE_COUNT + 1] - vertexAttributes[1];
+        double textureArea = Math.abs(texelEdge1X * texelEdge2Y - texelEdge2X * texelEdge1Y);
+
+        // each level has a quarter of the texels of the level before, so the level is half the base 2 logarithm of
+        // the ratio of the areas rounded to the nearest whole number, which is half the exponent of twice the ratio
+        int level = 0;
+        if (screenArea > 0.0 && textureArea > screenArea) {
+            level = Math.min(texture.getLevelCount() - 1, Math.getExponent(2.0 * textureArea / screenArea) >> 1);
+        }
+
+        textureLevelWidth = texture.getWidth(level);
+        textureLevelHeight = texture.getHeight(level);
+        textureTexels = texture.getTexels();
+        textureMortonX = texture.getMortonX(level);
+        textureMortonY = texture.getMortonY(level);
+        textureMaskX = textureLevelWidth - 1;
+        textureMaskY = textureLevelHeight - 1;
+
+        // channels of 255 scale texels by exactly 1
+        redShade = PackedColor.red(rgb) + (PackedColor.red(rgb) >>> 7);
+        greenShade = PackedColor.green(rgb) + (PackedColor.green(rgb) >>> 7);
+        blueShade = PackedColor.blue(rgb) + (PackedColor.blue(rgb) >>> 7);
+
+        if (redShade == PackedColor.SHADE_ONE && greenShade == PackedColor.SHADE_ONE
+                && blueShade == PackedColor.SHADE_ONE) {
+            textureModulation = MODULATE_NONE;
+        } else if (redShade == greenShade && greenShade == blueShade) {
+            textureModulation = MODULATE_GRAY;
+
+            // triangles sharing the texture and the shade map texels shaded once per level instead of once per pixel
+            int[] shadedTexels = shadedTextures.getLevel(texture, level, redShade, screenArea / 2.0);
+            if (shadedTexels != null) {
+                textureTexels = shadedTexels;
+                textureMortonX = shadedTextures.getMortonX(level);
+                textureModulation = MODULATE_NONE;
+            }
+        } else {
+            textureModulation = MODULATE_COLOR;
+        }
+    }
+
+    // Whether every vertex color of a triangle has equal red, green and blue channels
+    private static boolean hasGrayVertexColors(Triangle3D projTri) {
+        for (int i = 0; i < Triangle3D.SIZE; i++) {
+            int argb = projTri.getVertexARGB(i);
+
+            if (PackedColor.red(argb) != PackedColor.green(argb) || PackedColor.green(argb) != PackedColor.blue(argb)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // Clamp a 16.16 fixed point color channel between 0 and 255
+    private static int clampFixedChannel(long channel) {
+        if (channel < 0) {
+            return 0;
+        } else if (channel > MAX_FIXED_CHANNEL) {
+            return MAX_FIXED_CHANNEL;
+        }
+
+        return (int) channel;
+    }
+
+    // Shrink a fixed point step if it would carry a channel out of range by the end of a span
+    // Spans can reach slightly past the edges of a triangle, where the color planes leave the range of the vertices
+    private static int clampFixedStep(int start, int step, int length) {
+        long end = start + (long) step * length;
+
+        if (end < 0) {
+            return -start / length;
+        } else if (end > MAX_FIXED_CHANNEL) {
+            return (MAX_FIXED_CHANNEL - start) / length;
+        }
+
+        return step;
+    }
+
+    // Find the weights turning the change of a value from the first vertex of a triangle to each of the other two into
+    // its change per pixel across the screen
+    // Values are linear in screen space, so each one forms a plane with constant steps in x and y
+    private void loadGradientWeights(Triangle3D projTri) {
+        gradientOriginX = projTri.get(0).get(X_INDEX);
+        gradientOriginY = projTri.get(0).get(Y_INDEX);
+
+        double edge1X = projTri.get(1).get(X_INDEX) - gradientOriginX;
+        double edge1Y = projTri.get(1).get(Y_INDEX) - gradientOriginY;
+        double edge2X = projTri.get(2).get(X_INDEX) - gradientOriginX;
+        double edge2Y = projTri.get(2).get(Y_INDEX) - gradientOriginY;
+
+        double area = edge1X * edge2Y - edge2X * edge1Y;
+        double invArea = area == 0.0 ? 0.0 : 1.0 / area; // triangles with no area take the first vertex's values
+
+        gradientWeightX1 = edge2Y * invArea;
+        gradientWeightX2 = -edge1Y * invArea;
+        gradientWeightY1 = -edge2X * invArea;
+        gradientWeightY2 = edge1X * invArea;
+    }
+
+    // Find the plane of each color channel of the vertices in 16.16 fixed point, from the top left corner of the screen
+    // Gray triangles only need the plane of their red channel, which the other channels are equal to
+    private void loadColorGradients(Triangle3D projTri, int shading) {
+        int argb1 = projTri.getVertexARGB(0);
+        int argb2 = projTri.getVertexARGB(1);
+        int argb3 = projTri.getVertexARGB(2);
+
+        int red1 = PackedColor.red(argb1);
+        double redX = gradientX(red1, PackedColor.red(argb2), PackedColor.red(argb3));
+        double redY = gradientY(red1, PackedColor.red(argb2), PackedColor.red(argb3));
+        redStepX = toFixed(redX);
+        redStepY = toFixed(redY);
+        redPlane = toFixed(red1 - redX * gradientOriginX - redY * gradientOriginY);
+
+        if (shading == GRAY_GOURAUD) {
+            return;
+        }
+
+        int green1 = PackedColor.green(argb1);
+        double greenX = gradientX(green1, PackedColor.green(argb2), PackedColor.green(argb3));
+        double greenY = gradientY(green1, PackedColor.green(argb2), PackedColor.green(argb3));
+        greenStepX = toFixed(greenX);
+        greenStepY = toFixed(greenY);
+        greenPlane = toFixed(green1 - greenX * gradientOriginX - greenY * gradientOriginY);
+
+        int blue1 = PackedColor.blue(argb1);
+        double blueX = gradientX(blue1, PackedColor.blue(argb2), PackedColor.blue(argb3));
+        double blueY = gradientY(blue1, PackedColor.blue(argb2), PackedColor.blue(argb3));
+        blueStepX = toFixed(blueX);
+        blueStepY = toFixed(blueY);
+        bluePlane = toFixed(blue1 - blueX * gradientOriginX - blueY * gradientOriginY);
+    }
+
+    // Load the normals and world positions or texture coordinates of each vertex and find how they change across the
+    // screen
+    private void loadAttributeGradients(Triangle3D projTri, int shading) {
+        boolean positioned = projTri.hasWorldPositions();
+
+        for (int i = 0; i < Triangle3D.SIZE; i++) {
+            int offset = i * ATTRIBUTE_COUNT;
+
+            if (shading == TEXTURED) {
+                // projected texture coordinates in texels of the chosen level
+                Vector textureCoord = projTri.getTextureCoord(i);
+                vertexAttributes[offset] = textureCoord.get(X_INDEX) * textureLevelWidth;
+                vertexAttributes[offset + 1] = textureCoord.get(Y_INDEX) * textureLevelHeight;
+                vertexAttributes[offset + 2] = textureCoord.get(Z_INDEX);
+            } else {
+                vertexAttributes[offset] = projTri.getNormal(i, X_INDEX);
+                vertexAttributes[offset + 1] = projTri.getNormal(i, Y_INDEX);
+                vertexAttributes[offset + 2] = projTri.getNormal(i, Z_INDEX);
+                vertexAttributes[offset + 3] = positioned ? projTri.getWorldPosition(i, X_INDEX) : 0.0;
+                vertexAttributes[offset + 4] = positioned ? projTri.getWorldPosition(i, Y_INDEX) : 0.0;
+                vertexAttributes[offset + 5] = positioned ? projTri.getWorldPosition(i, Z_INDEX) : 0.0;
+            }
+        }
+
+        int attributeCount = shading == TEXTURED ? TEXTURE_ATTRIBUTE_COUNT : ATTRIBUTE_COUNT;
+        for (int i = 0; i < attributeCount; i++) {
+            double value1 = vertexAttributes[i];
+            double value2 = vertexAttributes[ATTRIBUTE_COUNT + i];
+            double value3 = vertexAttributes[2 * ATTRIBUTE_COUNT + i];
+
+            attributeStepsX[i] = gradientX(value1, value2, value3);
+            attributeStepsY[i] = gradientY(value1, value2, value3);
+        }
+
+        if (shading == TEXTURED) {
+            loadAffineTexture();
+        }
+    }
+
+    // Decide whether the texture can be mapped affinely across the triangle being filled, and if so find how its
+    // unprojected texture coordinates change across the screen
+    // Along an edge whose ends have inverse depths w1 and w2, affine mapping strays from the perspective correct
+    // coordinate by at most about half the edge's length in texels times (w1 - w2) / (w1 + w2), near its middle
+    private void loadAffineTexture() {
+        double minInverseZ = Double.MAX_VALUE;
+        double maxInverseZ = 0.0;
+        double[] texelU = vertexTexelU;
+        double[] texelV = vertexTexelV;
+
+        for (int i = 0; i < Triangle3D.SIZE; i++) {
+            int offset = i * ATTRIBUTE_COUNT;
+            double inverseZ = vertexAttributes[offset + 2];
+            minInverseZ = Math.min(minInverseZ, inverseZ);
+            maxInverseZ = Math.max(maxInverseZ, inverseZ);
+            texelU[i] = vertexAttributes[offset] / inverseZ;
+            texelV[i] = vertexAttributes[offset + 1] / inverseZ;
+        }
+
+        double longestEdge = 0.0;
+        for (int i = 0; i < Triangle3D.SIZE; i++) {
+            int next = (i + 1) % Triangle3D.SIZE;
+            double edgeLength = Math.abs(texelU[next] - texelU[i]) + Math.abs(texelV[next] - texelV[i]);
+            longestEdge = Math.max(longestEdge, edgeLength);
+        }
+
+        double error = 0.5 * longestEdge * (maxInverseZ - minInverseZ) / (maxInverseZ + minInverseZ);
+        textureAffine = error <= AFFINE_TEXEL_ERROR;
+
+        if (textureAffine) {
+            affineUStepX = gradientX(texelU[0], texelU[1], texelU[2]);
+            affineUStepY = gradientY(texelU[0], texelU[1], texelU[2]);
+            affineU = texelU[0] - affineUStepX * gradientOriginX - affineUStepY * gradientOriginY;
+            affineVStepX = gradientX(texelV[0], texelV[1], texelV[2]);
+            affineVStepY = gradientY(texelV[0], texelV[1], texelV[2]);
+            affineV = texelV[0] - affineVStepX * gradientOriginX - affineVStepY * gradientOriginY;
+        }
+    }
+
+    // Change per pixel in x and y of a value given at each vertex of the triangle being filled
+    private double gradientX(double value1, double value2, double value3) {
+        return (value2 - value1) * gradientWeightX1 + (value3 - value1) * gradientWeightX2;
+    }
+
+    private double gradientY(double value1, double value2, double value3) {
+        return (value2 - value1) * gradientWeightY1 + (value3 - value1) * gradientWeightY2;
+    }
+
+    // Convert a value to 16.16 fixed point
+    private static long toFixed(double value) {
+        return (long) (value * FIXED_ONE);
+    }
+
+    // Setters
+
+    /**
+     * Take a snapshot of the lights used to Phong shade triangles, lit the same way as {@link Lighting#shade}
+     * <br>Lights changed afterwards only take effect once this is called again
+     * @param lighting lighting to take the lights from
+     */
+    public void setLighting(Lighting lighting) {
+        if (lighting == null) {
+            throw new IllegalArgumentException("Cannot set lighting to null");
+        }
+
+        List<Light> lights = lighting.getLights();
+        double[] ambient = new double[3];
+        List<Double> directional = new ArrayList<>();
+        List<Double> points = new ArrayList<>();
+        List<Light> others = new ArrayList<>();
+
+        for (Light light : lights) {
+            if (light instanceof AmbientLight) {
+                light.illuminate(0.0, 0.0, 0.0, 0.0, 0.0, 0.0, ambient);
+            } else if (light instanceof DirectionalLight) {
+                Vector direction = ((DirectionalLight) light).getDirection();
+                directional.add(direction.get(X_INDEX));
+                directional.add(direction.get(Y_INDEX));
+                directional.add(direction.get(Z_INDEX));
+                addLightColor(light, directional);
+            } else if (light instanceof PointLight) {
+                PointLight pointLight = (PointLight) light;
+                Vector position = pointLight.getPosition();
+                points.add(position.get(X_INDEX));
+                points.add(position.get(Y_INDEX));
+                points.add(position.get(Z_INDEX));
+                points.add(pointLight.getAttenuation());
+                addLightColor(light, points);
+            } else {
+                others.add(light);
+            }
+        }
+
+        ambientRed = ambient[0];
+        ambientGreen = ambient[1];
+        ambientBlue = ambient[2];
+        directionalLights = toArray(directional);
+        pointLights = toArray(points);
+        otherLights = others.toArray(new Light[0]);
+    }
+
+    // Pack the red, green and blue light a light casts at full strength, where 1 is full brightness
+    private static void addLightColor(Light light, List<Double> packed) {
+        Color color = light.getColor();
+        double scale = light.getIntensity() / 255.0;
+        packed.add(color.getRed() * scale);
+        packed.add(color.getGreen() * scale);
+        packed.add(color.getBlue() * scale);
+    }
+
+    private static double[] toArray(List<Double> values) {
+        double[] array = new double[values.size()];
+
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+
+        return array;
+    }
+
+    // Getters
+
+    /**
+     * @return the width of the raster in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the height of the raster in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return the depth value every pixel starts at when the raster is cleared
+     */
+    public double getClearDepth() {
+        return clearDepth;
+    }
+
+    /**
+     * @return the color raster this rasterizer draws into
+     */
+    public int[] getRaster() {
+        return raster;
+    }
+
+    /**
+     * @return the amount of tiles along the width of the raster
+     */
+    public int getTileColumns() {
+        return tileColumns;
+    }
+
+    /**
+     * @return the amount of tiles along the height of the raster
+     */
+    public int getTileRows() {
+        return tileRows;
+    }
+
+    /**
+     * @param tileColumn column of the tile
+     * @param tileRow row of the tile
+     * @return whether or not the pixels of the tile may have changed since the frame before
+     */
+    public boolean isTileChanged(int tileColumn, int tileRow) {
+        int tile = tileRow * tileColumns + tileColumn;
+        return tileClearedFrame[tile] == frame || tileResolvedFrame[tile] == frame;
+    }
+
+    /**
+     * @param tileColumn column of the tile
+     * @param tileRow row of the tile
+     * @return whether or not the depths of the tile belong to the current frame, as tiles no triangle touched since the
+     * last clear only hold the clear depth
+     */
+    public boolean isTileTouched(int tileColumn, int tileRow) {
+        return tileClearedFrame[tileRow * tileColumns + tileColumn] == frame;
+    }
+
+    /**
+     * @return the depth buffer of this rasterizer, where only tiles touched since the last clear hold current depths
+     */
+    public double[] getDepthBuffer() {
+        return depthBuffer;
+    }
+
+    /**
+     * @return the amount of pixels written since the last clear
+     */
+    public long getPixelsWritten() {
+        return pixelsWritten;
+    }
+
+    /**
+     * @return the amount of distinct pixels covered since the last clear
+     */
+    public int getPixelsCovered() {
+        int[] covered = new int[1];
+
+        for (int tile = 0; tile < tileClearedFrame.length; tile++) {
+            if (tileClearedFrame[tile] == frame) {
+                forEachTileRow(tile, (rowStart, rowEnd) -> {
+                    for (int i = rowStart; i < rowEnd; i++) {
+                        if (depthBuffer[i] < clearDepth) {
+                            covered[0]++;
+                        }
+                    }
+                });
+            }
+        }
+
+        return covered[0];
+    }
+
+    /**
+     * @return the average amount of times each covered pixel was written since the last clear
+     */
+    public double getOverdrawRatio() {
+        int covered = getPixelsCovered();
+        return covered == 0 ? 0.0 : (double) pixelsWritten / covered;
+    }
+
+}
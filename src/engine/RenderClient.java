@@ -0,0 +1,213 @@
+package engine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Measures how many images per second a {@link RenderServer} renders by requesting a turntable of a model, camera
+ * poses evenly spaced around the origin looking at it, with many requests in flight at once
+ * <br>Requests are written in batches, flushed whenever the window of requests in flight is full, while a second
+ * thread reads the responses as they arrive. With --local a server is started in the same process on a free port.
+ * <br>Usage: RenderClient model.obj [--port port] [--images count] [--size widthxheight] [--in-flight requests]
+ * [--shading mode] [--distance distance] [--height height] [--output dir] [--local workers]
+ */
+final class RenderClient {
+    private RenderClient() {
+
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 0) {
+            System.err.println("Usage: RenderClient model.obj [--port port] [--images count] [--size widthxheight]"
+                    + " [--in-flight requests] [--shading mode] [--distance distance] [--height height]"
+                    + " [--output dir] [--local workers]");
+            System.exit(2);
+        }
+
+        String model = new File(args[0]).getAbsolutePath();
+        int port = RenderServer.DEFAULT_PORT;
+        int imageCount = 360;
+        int width = 256;
+        int height = 256;
+        int inFlight = 32;
+        String shadingMode = ShadingMode.FLAT.name();
+        double distance = 5.0;
+        double cameraHeight = 2.0;
+        File outputDirectory = null;
+        int localWorkers = 0;
+
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--port") && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--images") && i + 1 < args.length) {
+                imageCount = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--size") && i + 1 < args.length) {
+                String[] size = args[++i].toLowerCase(Locale.ROOT).split("x");
+                width = Integer.parseInt(size[0]);
+                height = Integer.parseInt(size[1]);
+            } else if (args[i].equals("--in-flight") && i + 1 < args.length) {
+                inFlight = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--shading") && i + 1 < args.length) {
+                shadingMode = args[++i];
+            } else if (args[i].equals("--distance") && i + 1 < args.length) {
+                distance = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("--height") && i + 1 < args.length) {
+                cameraHeight = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("--output") && i + 1 < args.length) {
+                outputDirectory = new File(args[++i]);
+            } else if (args[i].equals("--local") && i + 1 < args.length) {
+                localWorkers = Integer.parseInt(args[++i]);
+            }
+        }
+
+        if (outputDirectory != null) {
+            Files.createDirectories(outputDirectory.toPath());
+        }
+
+        RenderServer localServer = null;
+        if (localWorkers > 0) {
+            System.setProperty("java.awt.headless", "true");
+            localServer = new RenderServer(0, localWorkers, Math.max(1, inFlight));
+            port = localServer.getPort();
+
+            RenderServer server = localServer;
+            Thread serverThread = new Thread(() -> {
+                try {
+                    server.serve();
+                } catch (IOException e) {
+                    System.err.println("Render server stopped: " + e.getMessage());
+                }
+            }, "render-server");
+            serverThread.setDaemon(true);
+            serverThread.start();
+        }
+
+        long[] sendTimes = new long[imageCount];
+        long[] latencies = new long[imageCount];
+        long[] totals = new long[2]; // bytes received and failed requests
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setTcpNoDelay(true);
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+            DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+            Semaphore window = new Semaphore(inFlight);
+
+            File directory = outputDirectory;
+            int count = imageCount;
+            Thread receiver = new Thread(() -> receive(input, count, window, sendTimes, latencies, totals, directory),
+                    "render-client-receiver");
+
+            output.writeInt(RenderServer.MAGIC);
+            output.writeInt(RenderServer.VERSION);
+
+            long start = System.nanoTime();
+            receiver.start();
+
+            for (int id = 0; id < imageCount; id++) {
+                // everything written so far is sent before waiting, so the server always has the whole window
+                if (!window.tryAcquire()) {
+                    output.flush();
+                    window.acquire();
+                }
+
+                double angle = 2.0 * Math.PI * id / imageCount;
+                sendTimes[id] = System.nanoTime();
+
+                output.writeInt(id);
+                output.writeUTF(model);
+                output.writeDouble(distance * Math.sin(angle));
+                output.writeDouble(cameraHeight);
+                output.writeDouble(-distance * Math.cos(angle));
+                output.writeDouble(angle); // positive yaw turns toward -x, keeping the origin in view
+                output.writeDouble(Math.atan2(cameraHeight, distance));
+                output.writeDouble(0.0);
+                output.writeInt(width);
+                output.writeInt(height);
+                output.writeUTF(shadingMode);
+            }
+
+            output.flush();
+            socket.shutdownOutput();
+            receiver.join();
+
+            double seconds = (System.nanoTime() - start) / 1e9;
+            printSummary(imageCount, width, height, inFlight, seconds, latencies, totals);
+        } finally {
+            if (localServer != null) {
+                localServer.close();
+            }
+        }
+
+        System.exit(totals[1] == 0 ? 0 : 1);
+    }
+
+    // Read every response, recording its latency, releasing its place in the window and saving its image if asked
+    private static void receive(DataInputStream input, int imageCount, Semaphore window, long[] sendTimes,
+                                long[] latencies, long[] totals, File outputDirectory) {
+        try {
+            for (int i = 0; i < imageCount; i++) {
+                int id = input.readInt();
+                boolean succeeded = input.readBoolean();
+                latencies[id] = System.nanoTime() - sendTimes[id];
+
+                if (succeeded) {
+                    byte[] image = new byte[input.readInt()];
+                    input.readFully(image);
+                    totals[0] += image.length;
+
+                    if (outputDirectory != null) {
+                        Files.write(new File(outputDirectory, String.format("image-%05d.png", id)).toPath(), image);
+                    }
+                } else {
+                    String error = input.readUTF();
+                    if (totals[1]++ == 0) {
+                        System.err.println("Request " + id + " failed: " + error);
+                    }
+                }
+
+                window.release();
+            }
+        } catch (IOException e) {
+            System.err.println("Lost the connection to the render server: " + e.getMessage());
+            totals[1]++;
+        }
+    }
+
+    // Print the throughput and the distribution of latencies of every request
+    private static void printSummary(int imageCount, int width, int height, int inFlight, double seconds,
+                                     long[] latencies, long[] totals) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+
+        System.out.printf("%d images at %dx%d, %d requests in flight%n", imageCount, width, height, inFlight);
+        System.out.printf("%.2f s, %.1f images per second, %.1f KB per image%n", seconds, imageCount / seconds,
+                totals[0] / 1024.0 / Math.max(1, imageCount - totals[1]));
+
+        if (imageCount > 0) {
+            System.out.printf("latency  mean %7.2f ms | p50 %7.2f ms | p95 %7.2f ms | p99 %7.2f ms | max %7.2f ms%n",
+                    Arrays.stream(sorted).average().orElse(0.0) / 1e6, percentile(sorted, 0.5) / 1e6,
+                    percentile(sorted, 0.95) / 1e6, percentile(sorted, 0.99) / 1e6, sorted[sorted.length - 1] / 1e6);
+        }
+
+        if (totals[1] > 0) {
+            System.out.printf("%d requests failed%n", totals[1]);
+        }
+    }
+
+    // Nearest rank percentile of sorted values
+    private static long percentile(long[] sorted, double fraction) {
+        int rank = (int) Math.ceil(fraction * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+}
@@ -0,0 +1,578 @@
+package engine;
+
+import assets.AssetManager;
+import graphicstructs.Mesh3D;
+import lighting.DirectionalLight;
+import lighting.Lighting;
+import lighting.LightingCache;
+import mathkit.Matrix;
+import mathkit.Vector;
+
+import javax.imageio.ImageIO;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Long running server rendering camera poses of models into PNG images for clients on the same machine, keeping the
+ * models it has loaded in memory between requests as long as they fit the cache of its asset manager
+ * <br>Clients connect over TCP on the loopback address and send the connection header, {@link #MAGIC} and
+ * {@link #VERSION} as ints, followed by any amount of requests without waiting for their responses. Each request is
+ * an int id, the model file as UTF, the camera position, yaw, pitch and roll as doubles, the width and height as ints
+ * and the shading mode as UTF. Each response is the int id of its request and a boolean telling whether it succeeded,
+ * followed by the length and bytes of the PNG image if it did or an error message as UTF if it did not.
+ * <br>Requests are rendered in parallel by a pool of workers, so responses come back in the order they finish.
+ * Responses finished together are written in a single flush. Requests wait in a bounded queue, and a connection is
+ * not read while the queue is full or while as many of its requests as the queue holds are still unanswered, so
+ * clients sending faster than the workers render or reading slower than they send are held back by the socket.
+ * A client finishes by shutting down its output, after which the server answers every request still waiting and
+ * closes the connection.
+ * <br>Usage: RenderServer [--port port] [--workers threads] [--queue requests] [model.obj ...]
+ */
+final class RenderServer implements Closeable {
+    /**
+     * First int sent on every connection
+     */
+    static final int MAGIC = 0x524E4452;
+
+    /**
+     * Version of the protocol
+     */
+    static final int VERSION = 1;
+
+    /**
+     * Port the server listens on by default
+     */
+    static final int DEFAULT_PORT = 7878;
+
+    /**
+     * Largest width or height of a rendered image
+     */
+    static final int MAX_RESOLUTION = 4096;
+
+    /**
+     * Requests waiting to be rendered by default before connections stop being read
+     */
+    private static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    /**
+     * Socket accepting connections on the loopback address
+     */
+    private final ServerSocket serverSocket;
+
+    /**
+     * Loads models, shared by every worker
+     */
+    private final AssetManager assetManager;
+
+    /**
+     * Lights every model is rendered with, and the lit colors of each model shared by every worker
+     */
+    private final Lighting lighting;
+
+    private final LightingCache lightingCache;
+
+    /**
+     * Rotation and translation of every model in world space, models are rendered where they are in their files
+     */
+    private final Matrix worldMat;
+
+    private final Vector translationVec;
+
+    /**
+     * Requests waiting for a worker
+     */
+    private final BlockingQueue<RenderJob> jobs;
+
+    /**
+     * Most requests of a single connection read but not yet answered
+     */
+    private final int maxUnansweredRequests;
+
+    /**
+     * Threads rendering requests
+     */
+    private final List<Thread> workers;
+
+    /**
+     * Every open connection
+     */
+    private final Set<Connection> connections;
+
+    /**
+     * Number of the next request rendered
+     */
+    private final AtomicLong jobNumber;
+
+    /**
+     * Whether or not the server has been closed
+     */
+    private volatile boolean closed;
+
+    // Constructors
+
+    /**
+     * Create a server listening on the loopback address and start its workers
+     * @param port port to listen on, or 0 for any free port
+     * @param workerCount amount of requests rendered at the same time, must be positive
+     * @param queueCapacity amount of requests waiting to be rendered, or unanswered on a single connection, before
+     *                      connections stop being read, must be positive
+     * @throws IOException if the port cannot be listened on
+     */
+    RenderServer(int port, int workerCount, int queueCapacity) throws IOException {
+        if (workerCount <= 0) {
+            throw new IllegalArgumentException("A render server needs at least one worker");
+        } else if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be positive");
+        }
+
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        assetManager = new AssetManager();
+        lighting = new Lighting();
+        lighting.addLight(new DirectionalLight(new Vector(1, 1, -1))); // magic
+        lightingCache = new LightingCache(lighting);
+        assetManager.addEvictionListener(meshes -> {
+            for (Mesh3D mesh : meshes) {
+                lightingCache.invalidate(mesh);
+            }
+        });
+        worldMat = Matrix.identityMatrix(3);
+        translationVec = new Vector(3);
+        jobs = new ArrayBlockingQueue<>(queueCapacity);
+        maxUnansweredRequests = queueCapacity;
+        workers = new ArrayList<>();
+        connections = ConcurrentHashMap.newKeySet();
+        jobNumber = new AtomicLong();
+
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::renderJobs, "render-worker-" + (i + 1));
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+
+        int port = DEFAULT_PORT;
+        int workerCount = Runtime.getRuntime().availableProcessors();
+        int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+        List<String> preloads = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--port") && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--workers") && i + 1 < args.length) {
+                workerCount = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--queue") && i + 1 < args.length) {
+                queueCapacity = Integer.parseInt(args[++i]);
+            } else {
+                preloads.add(args[i]);
+            }
+        }
+
+        RenderServer server = new RenderServer(port, workerCount, queueCapacity);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+            } catch (IOException e) {
+                System.err.println("Could not stop the render server: " + e.getMessage());
+            }
+        }));
+
+        for (String model : preloads) {
+            try {
+                server.loadModel(model);
+            } catch (CompletionException e) {
+                System.err.println("Could not load model " + model + ": " + e.getCause());
+            }
+        }
+
+        System.out.printf("Rendering with %d workers on port %d%n", workerCount, server.getPort());
+        server.serve();
+    }
+
+    // Connections
+
+    /**
+     * Accept connections until the server is closed, reading the requests of each on its own thread
+     * @throws IOException if connections cannot be accepted for any reason other than the server closing
+     */
+    void serve() throws IOException {
+        while (!closed) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (closed) {
+                    return;
+                }
+
+                throw e;
+            }
+
+            Connection connection = new Connection(socket, maxUnansweredRequests);
+            connections.add(connection);
+
+            Thread reader = new Thread(() -> readRequests(connection), "render-reader-" + socket.getPort());
+            Thread writer = new Thread(() -> writeResponses(connection), "render-writer-" + socket.getPort());
+            reader.setDaemon(true);
+            writer.setDaemon(true);
+            reader.start();
+            writer.start();
+        }
+    }
+
+    // Read requests from a connection into the queue until the client stops sending, blocking while the queue is full
+    // or the connection has too many unanswered requests
+    private void readRequests(Connection connection) {
+        int requestCount = 0;
+
+        try {
+            DataInputStream input = connection.input;
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                connection.close();
+                return;
+            }
+
+            while (!closed) {
+                int id;
+                try {
+                    id = input.readInt();
+                } catch (EOFException e) { // the client has sent every request
+                    break;
+                }
+
+                String model = input.readUTF();
+                Vector position = new Vector(input.readDouble(), input.readDouble(), input.readDouble());
+                double yaw = input.readDouble();
+                double pitch = input.readDouble();
+                double roll = input.readDouble();
+                int width = input.readInt();
+                int height = input.readInt();
+                String shadingMode = input.readUTF();
+                requestCount++;
+
+                // answered requests are released by the writer, so a client that does not read holds back its reader
+                connection.unansweredRequests.acquire();
+
+                RenderJob job;
+                try {
+                    job = new RenderJob(connection, id, model, position, yaw, pitch, roll, width, height,
+                            ShadingMode.valueOf(shadingMode.toUpperCase(Locale.ROOT)));
+                } catch (IllegalArgumentException e) {
+                    connection.responses.add(Response.failure(id, "Invalid request: " + e.getMessage()));
+                    continue;
+                }
+
+                jobs.put(job);
+            }
+        } catch (IOException e) {
+            connection.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            connection.close();
+        } finally {
+            connection.responses.add(Response.end(requestCount));
+        }
+    }
+
+    // Write responses to a connection as they finish until every request read from it is answered, flushing once for
+    // each batch of responses finished together
+    private void writeResponses(Connection connection) {
+        List<Response> batch = new ArrayList<>();
+        int responseCount = 0;
+        int requestCount = -1; // unknown until the client stops sending
+
+        try {
+            DataOutputStream output = connection.output;
+
+            while (requestCount < 0 || responseCount < requestCount) {
+                batch.add(connection.responses.take());
+                connection.responses.drainTo(batch);
+                int answered = 0;
+
+                for (Response response : batch) {
+                    if (response.requestCount >= 0) {
+                        requestCount = response.requestCount;
+                        continue;
+                    }
+
+                    output.writeInt(response.id);
+                    output.writeBoolean(response.image != null);
+
+                    if (response.image != null) {
+                        output.writeInt(response.image.length);
+                        output.write(response.image);
+                    } else {
+                        output.writeUTF(response.error);
+                    }
+
+                    responseCount++;
+                    answered++;
+                }
+
+                output.flush();
+                connection.unansweredRequests.release(answered);
+                batch.clear();
+            }
+        } catch (IOException e) {
+            // the client has gone, so its remaining responses are dropped
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            connection.close();
+            connections.remove(connection);
+
+            // the reader may be waiting for responses that will never be written, and fails on the closed socket
+            // once it stops waiting
+            connection.unansweredRequests.release(maxUnansweredRequests);
+        }
+    }
+
+    // Render
+
+    // Render requests from the queue until the server is closed, each worker with its own camera and viewport
+    private void renderJobs() {
+        Camera camera = new Camera(.25, .25, .25, Math.toRadians(1));
+        Viewport viewport = new Viewport(camera, 0.0, 0.0, 1.0, 1.0);
+
+        while (!closed) {
+            RenderJob job;
+            try {
+                job = jobs.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            job.connection.responses.add(answer(job, camera, viewport));
+        }
+    }
+
+    // Render a request, or describe why it could not be rendered
+    private Response answer(RenderJob job, Camera camera, Viewport viewport) {
+        if (job.connection.isClosed()) { // nobody is left to send the image to, so it isn't rendered
+            return Response.failure(job.id, "Connection closed");
+        }
+
+        try {
+            return Response.success(job.id, render(job, camera, viewport));
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            return Response.failure(job.id, "Could not load model " + job.model + ": " + cause);
+        } catch (IOException | RuntimeException e) {
+            return Response.failure(job.id, "Could not render: " + e);
+        }
+    }
+
+    // Render a request into a PNG image through a viewport covering the whole image
+    private byte[] render(RenderJob job, Camera camera, Viewport viewport) throws IOException {
+        List<Mesh3D> meshes = loadModel(job.model);
+        long number = jobNumber.incrementAndGet();
+
+        // the world transform never changes, so lit colors are computed once per model for every request
+        FrameState frame = new FrameState(number, meshes, worldMat, translationVec, 0, lighting, lightingCache,
+                job.shadingMode, false, ViewMode.SOLID, false);
+
+        camera.setPose(job.position, job.yaw, job.pitch, job.roll);
+        viewport.updateResolution(job.width, job.height, 1.0);
+        viewport.updateGeometry(frame, 0);
+        viewport.publishFrame(frame);
+        viewport.rasterize(number, 0);
+
+        ByteArrayOutputStream image = new ByteArrayOutputStream(job.width * job.height / 4);
+        ImageIO.write(viewport.getCanvas(), "png", image);
+        return image.toByteArray();
+    }
+
+    /**
+     * Load a model, waiting for it if it is still loading, reusing its meshes while it stays in the cache of the asset
+     * manager and is unchanged on disk
+     * @param model .obj file of the model, relative to the directory the server was started in
+     * @return the meshes of the model
+     * @throws CompletionException if the model cannot be loaded, in which case it is loaded again on the next request
+     */
+    List<Mesh3D> loadModel(String model) {
+        return assetManager.load(new File(model)).join();
+    }
+
+    // Getters
+
+    /**
+     * @return the port the server listens on
+     */
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    // Overrides
+
+    /**
+     * Stop accepting connections, close every open connection and stop the workers
+     * @throws IOException if the server socket or the asset manager cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        serverSocket.close();
+
+        for (Connection connection : connections) {
+            connection.close();
+        }
+
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+
+        assetManager.close();
+    }
+
+    /**
+     * Socket of a client along with the responses waiting to be written to it
+     */
+    private static final class Connection {
+        private final Socket socket;
+
+        private final DataInputStream input;
+
+        private final DataOutputStream output;
+
+        /**
+         * Responses finished by the workers, written by the connection's writer thread
+         */
+        private final BlockingQueue<Response> responses;
+
+        /**
+         * Permits for requests read from the connection, taken by the reader and given back once they are answered
+         */
+        private final Semaphore unansweredRequests;
+
+        private Connection(Socket socket, int maxUnansweredRequests) throws IOException {
+            this.socket = socket;
+            socket.setTcpNoDelay(true);
+            input = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+            output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+            responses = new LinkedBlockingQueue<>();
+            unansweredRequests = new Semaphore(maxUnansweredRequests);
+        }
+
+        private boolean isClosed() {
+            return socket.isClosed();
+        }
+
+        private void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // the connection is being dropped either way
+            }
+        }
+    }
+
+    /**
+     * Camera pose of a model to render, along with the connection to send the image to
+     */
+    private static final class RenderJob {
+        private final Connection connection;
+
+        private final int id;
+
+        private final String model;
+
+        private final Vector position;
+
+        private final double yaw;
+
+        private final double pitch;
+
+        private final double roll;
+
+        private final int width;
+
+        private final int height;
+
+        private final ShadingMode shadingMode;
+
+        private RenderJob(Connection connection, int id, String model, Vector position, double yaw, double pitch,
+                          double roll, int width, int height, ShadingMode shadingMode) {
+            if (width <= 0 || height <= 0 || width > MAX_RESOLUTION || height > MAX_RESOLUTION) {
+                throw new IllegalArgumentException("Resolution must be from 1 to " + MAX_RESOLUTION + " pixels");
+            } else if (!Double.isFinite(yaw) || !Double.isFinite(pitch) || !Double.isFinite(roll)) {
+                throw new IllegalArgumentException("Camera angles must be finite");
+            }
+
+            this.connection = connection;
+            this.id = id;
+            this.model = model;
+            this.position = position;
+            this.yaw = yaw;
+            this.pitch = pitch;
+            this.roll = roll;
+            this.width = width;
+            this.height = height;
+            this.shadingMode = shadingMode;
+        }
+    }
+
+    /**
+     * Image or error answering a request, or the amount of requests read from a connection once the client has
+     * stopped sending
+     */
+    private static final class Response {
+        private final int id;
+
+        private final byte[] image;
+
+        private final String error;
+
+        /**
+         * Amount of requests read from the connection, or -1 if this answers a request
+         */
+        private final int requestCount;
+
+        private Response(int id, byte[] image, String error, int requestCount) {
+            this.id = id;
+            this.image = image;
+            this.error = error;
+            this.requestCount = requestCount;
+        }
+
+        private static Response success(int id, byte[] image) {
+            return new Response(id, image, null, -1);
+        }
+
+        private static Response failure(int id, String error) {
+            return new Response(id, null, error, -1);
+        }
+
+        private static Response end(int requestCount) {
+            return new Response(0, null, null, requestCount);
+        }
+    }
+
+}
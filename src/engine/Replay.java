@@ -0,0 +1,231 @@
+package engine;
+
+import mathkit.Matrix;
+import mathkit.Vector;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Camera poses of every frame of a recorded run of the engine, along with the settings it was rendered with
+ * <br>Replays are written by {@link ReplayRecorder} as a compressed stream of a header followed by one pose per frame
+ */
+final class Replay {
+    /**
+     * First int of every replay file
+     */
+    static final int MAGIC = 0x52504C59;
+
+    /**
+     * Version of the replay file format
+     */
+    static final int VERSION = 1;
+
+    /**
+     * Values stored for each frame: the camera position, yaw, pitch and roll
+     */
+    static final int POSE_SIZE = 6;
+
+    /**
+     * Resolution of the panel the replay was recorded at
+     */
+    private final int width;
+
+    private final int height;
+
+    /**
+     * How lighting was applied across the surface of triangles
+     */
+    private final ShadingMode shadingMode;
+
+    /**
+     * Whether or not triangles were sorted front to back before they were rasterized
+     */
+    private final boolean depthSorting;
+
+    /**
+     * Rotation and translation of every mesh in world space
+     */
+    private final Matrix worldMat;
+
+    private final Vector translationVec;
+
+    /**
+     * Camera pose of each frame, {@link #POSE_SIZE} values per frame
+     */
+    private final double[] poses;
+
+    /**
+     * Time in milliseconds each frame took to update and render when it was recorded
+     */
+    private final float[] frameTimes;
+
+    // Constructors
+
+    private Replay(int width, int height, ShadingMode shadingMode, boolean depthSorting, Matrix worldMat,
+                   Vector translationVec, double[] poses, float[] frameTimes) {
+        this.width = width;
+        this.height = height;
+        this.shadingMode = shadingMode;
+        this.depthSorting = depthSorting;
+        this.worldMat = worldMat;
+        this.translationVec = translationVec;
+        this.poses = poses;
+        this.frameTimes = frameTimes;
+    }
+
+    /**
+     * Read every frame of a replay file
+     * @param file replay file written by a {@link ReplayRecorder}
+     * @return the replay stored in the file
+     * @throws IOException if the file cannot be read or is not a replay file
+     */
+    static Replay read(File file) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(file))))) {
+            if (input.readInt() != MAGIC) {
+                throw new IOException(file + " is not a replay file");
+            }
+
+            int version = input.readInt();
+            if (version != VERSION) {
+                throw new IOException(file + " has unsupported replay version " + version);
+            }
+
+            int width = input.readInt();
+            int height = input.readInt();
+            ShadingMode shadingMode;
+            try {
+                shadingMode = ShadingMode.valueOf(input.readUTF());
+            } catch (IllegalArgumentException e) {
+                throw new IOException(file + " has an unknown shading mode", e);
+            }
+
+            boolean depthSorting = input.readBoolean();
+
+            Matrix worldMat = new Matrix(3, 3);
+            for (int row = 0; row < 3; row++) {
+                for (int col = 0; col < 3; col++) {
+                    worldMat.set(row, col, input.readDouble());
+                }
+            }
+
+            Vector translationVec = new Vector(input.readDouble(), input.readDouble(), input.readDouble());
+
+            double[] poses = new double[POSE_SIZE * 1024];
+            float[] frameTimes = new float[1024];
+            int frameCount = 0;
+
+            // frames follow one another until the end of the stream
+            while (true) {
+                double x;
+                try {
+                    x = input.readDouble();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                if (frameCount == frameTimes.length) {
+                    poses = Arrays.copyOf(poses, poses.length * 2);
+                    frameTimes = Arrays.copyOf(frameTimes, frameTimes.length * 2);
+                }
+
+                int offset = frameCount * POSE_SIZE;
+                poses[offset] = x;
+                for (int i = 1; i < POSE_SIZE; i++) {
+                    poses[offset + i] = input.readDouble();
+                }
+
+                frameTimes[frameCount++] = input.readFloat();
+            }
+
+            return new Replay(width, height, shadingMode, depthSorting, worldMat, translationVec,
+                    Arrays.copyOf(poses, frameCount * POSE_SIZE), Arrays.copyOf(frameTimes, frameCount));
+        }
+    }
+
+    // Getters
+
+    /**
+     * @return the amount of frames in this replay
+     */
+    int getFrameCount() {
+        return frameTimes.length;
+    }
+
+    /**
+     * @return the width of the panel the replay was recorded at
+     */
+    int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the height of the panel the replay was recorded at
+     */
+    int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return how lighting was applied across the surface of triangles
+     */
+    ShadingMode getShadingMode() {
+        return shadingMode;
+    }
+
+    /**
+     * @return whether or not triangles were sorted front to back before they were rasterized
+     */
+    boolean isDepthSorting() {
+        return depthSorting;
+    }
+
+    /**
+     * @return the rotation of every mesh in world space
+     */
+    Matrix getWorldMat() {
+        return worldMat;
+    }
+
+    /**
+     * @return the translation of every mesh in world space
+     */
+    Vector getTranslationVec() {
+        return translationVec;
+    }
+
+    /**
+     * Place a camera where it was in a frame of this replay
+     * @param frame index of the frame, must be within the amount of frames
+     * @param camera camera to place
+     */
+    void applyPose(int frame, Camera camera) {
+        if (frame < 0 || frame >= frameTimes.length) {
+            throw new IllegalArgumentException("Frame " + frame + " is out of bounds");
+        }
+
+        int offset = frame * POSE_SIZE;
+        camera.setPose(new Vector(poses[offset], poses[offset + 1], poses[offset + 2]), poses[offset + 3],
+                poses[offset + 4], poses[offset + 5]);
+    }
+
+    /**
+     * @param frame index of the frame, must be within the amount of frames
+     * @return the time in milliseconds the frame took to update and render when it was recorded
+     */
+    float getFrameTime(int frame) {
+        if (frame < 0 || frame >= frameTimes.length) {
+            throw new IllegalArgumentException("Frame " + frame + " is out of bounds");
+        }
+
+        return frameTimes[frame];
+    }
+
+}
@@ -0,0 +1,125 @@
+package engine;
+
+import mathkit.Matrix;
+import mathkit.Vector;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writer of the camera pose of every frame the engine updates into a replay file that can be read as a {@link Replay}
+ * <br>Poses are recorded instead of key presses, so a replay renders exactly the recorded frames however the timer
+ * happened to run while recording
+ */
+final class ReplayRecorder implements Closeable {
+    /**
+     * Stream of the replay file being written
+     */
+    private final DataOutputStream output;
+
+    /**
+     * Amount of frames recorded so far
+     */
+    private int frameCount;
+
+    /**
+     * Whether or not the replay file has been closed
+     */
+    private boolean closed;
+
+    // Constructors
+
+    /**
+     * Create a replay file and write the settings every frame of it is rendered with
+     * @param file file to write the replay to, replacing any existing file
+     * @param width width of the panel being recorded
+     * @param height height of the panel being recorded
+     * @param shadingMode how lighting is applied across the surface of triangles
+     * @param depthSorting whether or not triangles are sorted front to back before they are rasterized
+     * @param worldMat rotation of every mesh in world space, must be 3x3
+     * @param translationVec translation of every mesh in world space, must be 3D
+     * @throws IOException if the file cannot be created
+     */
+    ReplayRecorder(File file, int width, int height, ShadingMode shadingMode, boolean depthSorting, Matrix worldMat,
+                   Vector translationVec) throws IOException {
+        output = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file))));
+
+        try {
+            output.writeInt(Replay.MAGIC);
+            output.writeInt(Replay.VERSION);
+            output.writeInt(width);
+            output.writeInt(height);
+            output.writeUTF(shadingMode.name());
+            output.writeBoolean(depthSorting);
+
+            for (int row = 0; row < 3; row++) {
+                for (int col = 0; col < 3; col++) {
+                    output.writeDouble(worldMat.get(row, col));
+                }
+            }
+
+            for (int i = 0; i < 3; i++) {
+                output.writeDouble(translationVec.get(i));
+            }
+        } catch (IOException e) {
+            output.close();
+            throw e;
+        }
+    }
+
+    // Recording
+
+    /**
+     * Record the pose of the camera for a frame, doing nothing once the recorder is closed
+     * @param worldPos position of the camera the frame was rendered from, must be 3D
+     * @param yaw yaw of the camera
+     * @param pitch pitch of the camera
+     * @param roll roll of the camera
+     * @param frameTime time in milliseconds the frame took to update and render
+     * @throws IOException if the frame cannot be written
+     */
+    synchronized void recordFrame(Vector worldPos, double yaw, double pitch, double roll, double frameTime)
+            throws IOException {
+        if (closed) {
+            return;
+        }
+
+        output.writeDouble(worldPos.get(0));
+        output.writeDouble(worldPos.get(1));
+        output.writeDouble(worldPos.get(2));
+        output.writeDouble(yaw);
+        output.writeDouble(pitch);
+        output.writeDouble(roll);
+        output.writeFloat((float) frameTime);
+        frameCount++;
+    }
+
+    // Getters
+
+    /**
+     * @return the amount of frames recorded so far
+     */
+    synchronized int getFrameCount() {
+        return frameCount;
+    }
+
+    // Overrides
+
+    /**
+     * Finish writing the replay file, frames recorded afterwards are ignored
+     * @throws IOException if the end of the file cannot be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            output.close();
+        }
+    }
+
+}
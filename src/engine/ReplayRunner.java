@@ -0,0 +1,239 @@
+package engine;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.zip.CRC32;
+
+/**
+ * Renders every frame of a recorded replay headlessly and as fast as possible, reporting how long each frame took
+ * <br>With checksums, the pixels of every frame are hashed into a checksum of the whole replay, which stays the same
+ * between runs as long as the rendered images do
+ * <br>With reprojection, viewports reproject their last frame the way they would with temporal reprojection on
+ * <br>Usage: ReplayRunner replay-file [--checksum] [--expect checksum] [--warmup passes] [--report file.csv]
+ * [--reproject] [model.obj ...]
+ */
+final class ReplayRunner {
+    private static final double FRAME_RATE = 60.0;
+
+    private ReplayRunner() {
+
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: ReplayRunner replay-file [--checksum] [--expect checksum] [--warmup passes]"
+                    + " [--report file.csv] [--reproject] [model.obj ...]");
+            System.exit(2);
+        }
+
+        System.setProperty("java.awt.headless", "true");
+
+        boolean checksums = false;
+        String expectedChecksum = null;
+        int warmupPasses = 0;
+        File reportFile = null;
+        boolean reproject = false;
+        List<File> modelFiles = new ArrayList<>();
+
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--checksum")) {
+                checksums = true;
+            } else if (args[i].equals("--expect") && i + 1 < args.length) {
+                checksums = true;
+                expectedChecksum = args[++i];
+            } else if (args[i].equals("--warmup") && i + 1 < args.length) {
+                warmupPasses = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--report") && i + 1 < args.length) {
+                reportFile = new File(args[++i]);
+            } else if (args[i].equals("--reproject")) {
+                reproject = true;
+            } else {
+                modelFiles.add(new File(args[i]));
+            }
+        }
+
+        Replay replay = Replay.read(new File(args[0]));
+        Engine engine = createEngine(replay, modelFiles);
+        engine.setTemporalReprojection(reproject);
+
+        for (int i = 0; i < warmupPasses; i++) {
+            run(engine, replay, null);
+        }
+
+        long[] timings = new long[replay.getFrameCount() * 2];
+        int[] frameChecksums = checksums ? new int[replay.getFrameCount()] : null;
+        run(engine, replay, timings);
+
+        if (checksums) {
+            // render once more for the checksums so hashing the pixels stays out of the timings
+            for (int frame = 0; frame < replay.getFrameCount(); frame++) {
+                renderFrame(engine, replay, frame);
+                frameChecksums[frame] = checksum(engine.getCanvas());
+            }
+        }
+
+        engine.stop();
+
+        if (reportFile != null) {
+            writeReport(reportFile, replay, timings, frameChecksums);
+        }
+
+        int exitCode = printSummary(replay, timings, frameChecksums, expectedChecksum);
+        System.exit(exitCode);
+    }
+
+    // Create an engine set up the way the replay was recorded, with every model loaded
+    private static Engine createEngine(Replay replay, List<File> modelFiles) {
+        Engine engine = new Engine(FRAME_RATE);
+        engine.setSize(replay.getWidth(), replay.getHeight());
+        engine.setShadingMode(replay.getShadingMode());
+        engine.setDepthSorting(replay.isDepthSorting());
+        engine.setWorldTransform(replay.getWorldMat(), replay.getTranslationVec());
+
+        // a missing default model is already reported by the engine, so only wait for it to finish
+        engine.getDefaultModelLoad().handle((meshes, error) -> meshes).join();
+
+        for (File modelFile : modelFiles) {
+            try {
+                engine.loadModel(modelFile).join();
+            } catch (CompletionException e) {
+                engine.stop();
+                System.exit(1);
+            }
+        }
+
+        return engine;
+    }
+
+    // Render every frame of the replay, storing the update and raster time of each frame if given an array for them
+    private static void run(Engine engine, Replay replay, long[] timings) {
+        for (int frame = 0; frame < replay.getFrameCount(); frame++) {
+            replay.applyPose(frame, engine.getCamera());
+
+            long start = System.nanoTime();
+            engine.update();
+            long updated = System.nanoTime();
+            engine.rasterizeFrame();
+            long rasterized = System.nanoTime();
+
+            if (timings != null) {
+                timings[frame * 2] = updated - start;
+                timings[frame * 2 + 1] = rasterized - updated;
+            }
+        }
+    }
+
+    // Render a single frame of the replay into the canvas of the engine
+    private static void renderFrame(Engine engine, Replay replay, int frame) {
+        replay.applyPose(frame, engine.getCamera());
+        engine.update();
+        engine.rasterizeFrame();
+    }
+
+    // CRC32 of every pixel of an image
+    private static int checksum(BufferedImage image) {
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        ByteBuffer bytes = ByteBuffer.allocate(pixels.length * Integer.BYTES);
+        bytes.asIntBuffer().put(pixels);
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    // Write the time and checksum of each frame as comma separated values
+    private static void writeReport(File file, Replay replay, long[] timings, int[] frameChecksums)
+            throws IOException {
+        try (PrintWriter writer = new PrintWriter(file)) {
+            writer.println("frame,recorded_ms,update_ms,raster_ms,total_ms"
+                    + (frameChecksums != null ? ",checksum" : ""));
+
+            for (int frame = 0; frame < replay.getFrameCount(); frame++) {
+                long update = timings[frame * 2];
+                long raster = timings[frame * 2 + 1];
+                writer.printf("%d,%.3f,%.3f,%.3f,%.3f", frame, replay.getFrameTime(frame), update / 1e6,
+                        raster / 1e6, (update + raster) / 1e6);
+
+                if (frameChecksums != null) {
+                    writer.printf(",%08x", frameChecksums[frame]);
+                }
+
+                writer.println();
+            }
+        }
+    }
+
+    // Print the distribution of frame times and the checksum of the replay
+    // Returns 1 if the checksum differs from the expected one, 0 otherwise
+    private static int printSummary(Replay replay, long[] timings, int[] frameChecksums, String expectedChecksum) {
+        int frameCount = replay.getFrameCount();
+        long[] updates = new long[frameCount];
+        long[] rasters = new long[frameCount];
+        long[] totals = new long[frameCount];
+        long[] recorded = new long[frameCount];
+
+        for (int frame = 0; frame < frameCount; frame++) {
+            updates[frame] = timings[frame * 2];
+            rasters[frame] = timings[frame * 2 + 1];
+            totals[frame] = updates[frame] + rasters[frame];
+            recorded[frame] = (long) (replay.getFrameTime(frame) * 1e6);
+        }
+
+        System.out.printf("%d frames at %dx%d, %s shading%n", frameCount, replay.getWidth(), replay.getHeight(),
+                replay.getShadingMode());
+        printTimes("update", updates);
+        printTimes("raster", rasters);
+        printTimes("total", totals);
+        printTimes("recorded", recorded);
+
+        long totalTime = Arrays.stream(totals).sum();
+        System.out.printf("%.1f frames per second%n", frameCount / (totalTime / 1e9));
+
+        if (frameChecksums == null) {
+            return 0;
+        }
+
+        CRC32 crc = new CRC32();
+        ByteBuffer bytes = ByteBuffer.allocate(frameChecksums.length * Integer.BYTES);
+        bytes.asIntBuffer().put(frameChecksums);
+        crc.update(bytes);
+
+        String checksum = String.format("%08x", crc.getValue());
+        System.out.println("checksum " + checksum);
+
+        if (expectedChecksum != null && !expectedChecksum.equalsIgnoreCase(checksum)) {
+            System.err.println("Checksum " + checksum + " does not match the expected " + expectedChecksum);
+            return 1;
+        }
+
+        return 0;
+    }
+
+    private static void printTimes(String name, long[] times) {
+        if (times.length == 0) {
+            return;
+        }
+
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+
+        System.out.printf("%-8s mean %7.2f ms | p50 %7.2f ms | p95 %7.2f ms | p99 %7.2f ms | max %7.2f ms%n", name,
+                Arrays.stream(sorted).average().orElse(0.0) / 1e6, percentile(sorted, 0.5) / 1e6,
+                percentile(sorted, 0.95) / 1e6, percentile(sorted, 0.99) / 1e6, sorted[sorted.length - 1] / 1e6);
+    }
+
+    // Nearest rank percentile of sorted values
+    private static long percentile(long[] sorted, double fraction) {
+        int rank = (int) Math.ceil(fraction * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+}
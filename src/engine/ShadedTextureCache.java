@@ -0,0 +1,93 @@
+package engine;
+
+import graphicstructs.PackedColor;
+import graphicstructs.Texture;
+
+/**
+ * Mip levels of one texture with every texel already scaled by one gray shade, so triangles sharing the texture and
+ * the shade map shaded texels straight from the level instead of scaling each texel as it is written
+ * <br>A level is only shaded once the triangles mapping it with the texture and the shade have covered as many pixels
+ * as it has texels, so shading it never costs more than the scaling it saves. Triangles that change texture or shade
+ * from one to the next never reach that and keep scaling their texels.
+ * <br>Each shaded level is stored on its own, with the level's offset taken out of its Morton x values
+ */
+final class ShadedTextureCache {
+    /**
+     * Texture the levels are shaded from, null if nothing has been shaded yet
+     */
+    private Texture texture;
+
+    /**
+     * Fixed point shade every texel is scaled by
+     */
+    private int shade;
+
+    /**
+     * Texels of each shaded level in Morton order, null for levels not shaded yet
+     */
+    private int[][] levels;
+
+    /**
+     * For each shaded level, the bits an x value adds to a Morton index into the level
+     */
+    private int[][] levelMortonX;
+
+    /**
+     * Pixels covered so far by triangles mapping each level with the texture and the shade
+     */
+    private double[] coveredPixels;
+
+    // Levels
+
+    // Get a level of a texture with every texel scaled by a shade, or null if the level isn't worth shading yet
+    // The pixels are the amount the triangle about to map the level covers, counted towards shading it
+    int[] getLevel(Texture texture, int level, int fixedShade, double pixels) {
+        if (texture != this.texture || fixedShade != shade) {
+            this.texture = texture;
+            shade = fixedShade;
+            levels = new int[texture.getLevelCount()][];
+            levelMortonX = new int[texture.getLevelCount()][];
+            coveredPixels = new double[texture.getLevelCount()];
+        }
+
+        if (levels[level] == null) {
+            coveredPixels[level] += pixels;
+
+            if (coveredPixels[level] < (double) texture.getWidth(level) * texture.getHeight(level)) {
+                return null;
+            }
+
+            shadeLevel(level);
+        }
+
+        return levels[level];
+    }
+
+    // Copy a level of the texture with every texel scaled by the shade
+    private void shadeLevel(int level) {
+        int[] mortonX = texture.getMortonX(level);
+        int levelOffset = mortonX[0]; // x and y values of 0 add no bits, leaving only the level's offset
+        int[] texels = texture.getTexels();
+        int[] shaded = new int[texture.getWidth(level) * texture.getHeight(level)];
+
+        for (int i = 0; i < shaded.length; i++) {
+            shaded[i] = PackedColor.shade(texels[levelOffset + i], shade);
+        }
+
+        int[] localMortonX = new int[mortonX.length];
+        for (int x = 0; x < mortonX.length; x++) {
+            localMortonX[x] = mortonX[x] - levelOffset;
+        }
+
+        levels[level] = shaded;
+        levelMortonX[level] = localMortonX;
+    }
+
+    // Getters
+
+    // Get the bits an x value adds to a Morton index into a level returned by getLevel
+    int[] getMortonX(int level) {
+        return levelMortonX[level];
+    }
+
+}
@@ -0,0 +1,22 @@
+package engine;
+
+/**
+ * How lighting is applied across the surface of a triangle
+ * <br>Textured triangles are always lit once per face, scaling their texture by a single color, whatever the mode
+ */
+public enum ShadingMode {
+    /**
+     * A single lighting value per triangle from its surface normal
+     */
+    FLAT,
+
+    /**
+     * Lighting computed at each vertex normal and interpolated across the triangle
+     */
+    GOURAUD,
+
+    /**
+     * Vertex normals interpolated across the triangle and lit at each pixel
+     */
+    PHONG
+}
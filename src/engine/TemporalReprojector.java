@@ -0,0 +1,270 @@
+package engine;
+
+import mathkit.Matrix;
+import mathkit.Vector;
+
+import java.util.Arrays;
+
+/**
+ * Moves the pixels of the last frame rasterized into a viewport to where they appear from a new camera pose, drawing a
+ * frame between two rasterized frames without filling any triangles
+ * <br>Each pixel is lifted back to a point relative to the old camera from its depth, moved into the space of the new
+ * camera and splatted onto the new frame, keeping the nearest pixel wherever several land. Holes left where no pixel
+ * lands, such as cracks between spread out pixels, surfaces the old camera couldn't see and the edges the camera turns
+ * towards, are filled from the farther of the pixels on either side of them along their row. Holes are only
+ * approximated this way and never rasterized, so surfaces coming into view smear until the next rasterized frame.
+ * <br>Triangles are depth tested at their average depth, which is the depth pixels are lifted from, so surfaces of
+ * large triangles near the camera shift slightly until the next frame is rasterized
+ */
+final class TemporalReprojector {
+    /**
+     * Resolution of the frames reprojected
+     */
+    private final int width;
+
+    private final int height;
+
+    /**
+     * Distances from the camera to the near plane and to the background, where pixels no triangle covers lie
+     */
+    private final double zNear;
+
+    private final double zFar;
+
+    /**
+     * Amount of tiles along the width and height of the frames
+     */
+    private final int tileColumns;
+
+    private final int tileRows;
+
+    /**
+     * Colors and depths of the last frame remembered
+     */
+    private final int[] previousColors;
+
+    private final double[] previousDepths;
+
+    /**
+     * Whether or not a pixel of the last frame landed on each pixel of the frame being reprojected
+     */
+    private final boolean[] covered;
+
+    /**
+     * View matrix and position of the camera of the last frame remembered, null before a frame is remembered
+     */
+    private Matrix previousViewMat;
+
+    private Vector previousCameraPos;
+
+    /**
+     * Version of the scene the last frame remembered showed, frames are only reprojected within the same scene
+     */
+    private long previousSceneVersion;
+
+    // Constructors
+
+    // Create a reprojector for frames of a resolution, with the near plane and background at distances from the camera
+    TemporalReprojector(int width, int height, double zNear, double zFar) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid dimensions");
+        }
+
+        this.width = width;
+        this.height = height;
+        this.zNear = zNear;
+        this.zFar = zFar;
+
+        tileColumns = (width + Rasterizer.TILE_SIZE - 1) / Rasterizer.TILE_SIZE;
+        tileRows = (height + Rasterizer.TILE_SIZE - 1) / Rasterizer.TILE_SIZE;
+
+        previousColors = new int[width * height];
+        previousDepths = new double[width * height];
+        covered = new boolean[width * height];
+    }
+
+    // Frames
+
+    // Reproject the last frame remembered into a rasterizer cleared for a new frame as seen from a new camera pose
+    // Returns false if there is no frame of the same scene to reproject, leaving the rasterizer untouched
+    boolean reproject(Rasterizer rasterizer, Matrix projMat, Matrix viewMat, Vector cameraPos, long sceneVersion) {
+        if (previousViewMat == null || sceneVersion != previousSceneVersion) {
+            return false;
+        } else if (rasterizer.getWidth() != width || rasterizer.getHeight() != height) {
+            throw new IllegalArgumentException("Rasterizer must match the resolution of the reprojector");
+        }
+
+        int[] raster = rasterizer.getRaster();
+        double[] depthBuffer = rasterizer.getDepthBuffer();
+        double clearDepth = rasterizer.getClearDepth();
+
+        splat(raster, depthBuffer, projMat, viewMat, cameraPos, clearDepth);
+        fillHoles(raster, depthBuffer, clearDepth);
+
+        // every pixel was written, so no tile is cleared when the frame is finished
+        for (int tileRow = 0; tileRow < tileRows; tileRow++) {
+            for (int tileColumn = 0; tileColumn < tileColumns; tileColumn++) {
+                rasterizer.keepTile(tileColumn, tileRow);
+            }
+        }
+
+        return true;
+    }
+
+    // Remember the frame a rasterizer just finished and the camera it was seen from, to reproject later frames from
+    void remember(Rasterizer rasterizer, Matrix viewMat, Vector cameraPos, long sceneVersion) {
+        if (rasterizer.getWidth() != width || rasterizer.getHeight() != height) {
+            throw new IllegalArgumentException("Rasterizer must match the resolution of the reprojector");
+        }
+
+        System.arraycopy(rasterizer.getRaster(), 0, previousColors, 0, previousColors.length);
+
+        // tiles no triangle touched hold stale depths, but are empty
+        double[] depthBuffer = rasterizer.getDepthBuffer();
+        double clearDepth = rasterizer.getClearDepth();
+
+        for (int tileRow = 0; tileRow < tileRows; tileRow++) {
+            for (int tileColumn = 0; tileColumn < tileColumns; tileColumn++) {
+                boolean touched = rasterizer.isTileTouched(tileColumn, tileRow);
+                int tileX = tileColumn * Rasterizer.TILE_SIZE;
+                int tileWidth = Math.min(Rasterizer.TILE_SIZE, width - tileX);
+                int tileEnd = Math.min((tileRow + 1) * Rasterizer.TILE_SIZE, height);
+
+                for (int y = tileRow * Rasterizer.TILE_SIZE; y < tileEnd; y++) {
+                    int rowStart = y * width + tileX;
+
+                    if (touched) {
+                        System.arraycopy(depthBuffer, rowStart, previousDepths, rowStart, tileWidth);
+                    } else {
+                        Arrays.fill(previousDepths, rowStart, rowStart + tileWidth, clearDepth);
+                    }
+                }
+            }
+        }
+
+        previousViewMat = viewMat;
+        previousCameraPos = cameraPos;
+        previousSceneVersion = sceneVersion;
+    }
+
+    // Forget the last frame remembered, so nothing is reprojected until another frame is remembered
+    void forget() {
+        previousViewMat = null;
+        previousCameraPos = null;
+    }
+
+    // Move every pixel of the last frame to where it appears from the new camera, keeping the nearest pixel wherever
+    // several land on the same pixel
+    private void splat(int[] raster, double[] depthBuffer, Matrix projMat, Matrix viewMat, Vector cameraPos,
+                       double clearDepth) {
+        // points relative to the old camera move relative to the new camera with a single rotation and translation,
+        // and the view matrix is a rotation, so its transpose is its inverse
+        Matrix moveMat = previousViewMat.getTransposed().multiplyMatrix(viewMat);
+        Vector moveVec = previousCameraPos.subtract(cameraPos).multiplyMatrix(viewMat);
+
+        double m00 = moveMat.get(0, 0);
+        double m01 = moveMat.get(0, 1);
+        double m02 = moveMat.get(0, 2);
+        double m10 = moveMat.get(1, 0);
+        double m11 = moveMat.get(1, 1);
+        double m12 = moveMat.get(1, 2);
+        double m20 = moveMat.get(2, 0);
+        double m21 = moveMat.get(2, 1);
+        double m22 = moveMat.get(2, 2);
+        double moveX = moveVec.get(0);
+        double moveY = moveVec.get(1);
+        double moveZ = moveVec.get(2);
+
+        double scaleX = projMat.get(0, 0);
+        double scaleY = projMat.get(1, 1);
+        double depthScale = projMat.get(2, 2);
+        double halfWidth = width / 2.0;
+        double halfHeight = height / 2.0;
+
+        // the direction through each pixel is linear in x along a row, so it is moved into the new camera's space
+        // once per row and stepped along it, leaving each point as its distance along the moved direction
+        double stepX = -1.0 / (halfWidth * scaleX);
+        double firstX = (1.0 - 0.5 / halfWidth) / scaleX;
+
+        Arrays.fill(covered, false);
+
+        for (int y = 0; y < height; y++) {
+            double directionY = (1.0 - (y + 0.5) / halfHeight) / scaleY;
+            double rayX = firstX * m00 + directionY * m10 + m20;
+            double rayY = firstX * m01 + directionY * m11 + m21;
+            double rayZ = firstX * m02 + directionY * m12 + m22;
+            int rowStart = y * width;
+
+            for (int index = rowStart; index < rowStart + width; index++) {
+                double depth = previousDepths[index];
+
+                // invert the projection of the depth, with nothing covering the pixel if it lies beyond the far plane
+                boolean background = depth >= depthScale;
+                double z = background ? zFar : zNear * depthScale / (depthScale - depth);
+
+                double newZ = rayZ * z + moveZ;
+                if (newZ >= zNear) {
+                    double inverseZ = 1.0 / newZ;
+                    double screenX = (1.0 - (rayX * z + moveX) * scaleX * inverseZ) * halfWidth;
+                    double screenY = (1.0 - (rayY * z + moveY) * scaleY * inverseZ) * halfHeight;
+
+                    if (screenX >= 0.0 && screenY >= 0.0 && screenX < width && screenY < height) {
+                        int target = (int) screenY * width + (int) screenX;
+                        double newDepth = background ? clearDepth : (newZ - zNear) * depthScale * inverseZ;
+
+                        if (!covered[target] || newDepth < depthBuffer[target]) {
+                            raster[target] = previousColors[index];
+                            depthBuffer[target] = newDepth;
+                            covered[target] = true;
+                        }
+                    }
+                }
+
+                rayX += stepX * m00;
+                rayY += stepX * m01;
+                rayZ += stepX * m02;
+            }
+        }
+    }
+
+    // Fill each run of uncovered pixels along a row from the farther of the pixels on either side of it, since holes
+    // mostly show surfaces behind the ones around them, or from the row above if the whole row is uncovered
+    private void fillHoles(int[] raster, double[] depthBuffer, double clearDepth) {
+        for (int y = 0; y < height; y++) {
+            int rowStart = y * width;
+            int x = 0;
+
+            while (x < width) {
+                if (covered[rowStart + x]) {
+                    x++;
+                    continue;
+                }
+
+                int holeStart = x;
+                while (x < width && !covered[rowStart + x]) {
+                    x++;
+                }
+
+                int left = holeStart > 0 ? rowStart + holeStart - 1 : -1;
+                int right = x < width ? rowStart + x : -1;
+
+                if (left < 0 && right < 0) {
+                    if (y > 0) {
+                        System.arraycopy(raster, rowStart - width, raster, rowStart, width);
+                        System.arraycopy(depthBuffer, rowStart - width, depthBuffer, rowStart, width);
+                    } else {
+                        Arrays.fill(raster, rowStart, rowStart + width, 0);
+                        Arrays.fill(depthBuffer, rowStart, rowStart + width, clearDepth);
+                    }
+
+                    continue;
+                }
+
+                int source = right < 0 || (left >= 0 && depthBuffer[left] >= depthBuffer[right]) ? left : right;
+                Arrays.fill(raster, rowStart + holeStart, rowStart + x, raster[source]);
+                Arrays.fill(depthBuffer, rowStart + holeStart, rowStart + x, depthBuffer[source]);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,26 @@
+package engine;
+
+/**
+ * What is drawn for the meshes of the world, either their filled triangles or debug lines over or instead of them
+ */
+public enum ViewMode {
+    /**
+     * Filled triangles only
+     */
+    SOLID,
+
+    /**
+     * Edges of every triangle facing the camera, without filling any triangles
+     */
+    WIREFRAME,
+
+    /**
+     * Filled triangles with the edges of every visible triangle drawn over them
+     */
+    WIREFRAME_OVER_SOLID,
+
+    /**
+     * Filled triangles with the bounding box of every mesh drawn over them
+     */
+    BOUNDS
+}
@@ -0,0 +1,1449 @@
+package engine;
+
+import datakit.SinglyLinkedList;
+import graphicstructs.IndexedMesh3D;
+import graphicstructs.Mesh3D;
+import graphicstructs.MeshOptimizer;
+import graphicstructs.PackedColor;
+import graphicstructs.Plane;
+import graphicstructs.Triangle3D;
+import jobs.JobSystem;
+import lighting.Lighting;
+import lighting.LightingCache;
+import mathkit.Matrix;
+import mathkit.Vector;
+import profiling.BufferReallocationEvent;
+import profiling.PipelineStageEvent;
+
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.VolatileImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Region of the engine's panel showing the world from a camera
+ * <br>Each viewport culls, projects, clips and rasterizes the world on its own, at the same time as every other
+ * viewport of the engine, while the meshes, world transform and lit colors of a frame are shared between them
+ */
+public final class Viewport {
+    /**
+     * Index of where the x value of a vector will be
+     */
+    private static final int X_INDEX = 0;
+
+    /**
+     * Index of where the y value of a vector will be
+     */
+    private static final int Y_INDEX = 1;
+
+    /**
+     * Index of where the z value of a vector will be
+     */
+    private static final int Z_INDEX = 2;
+
+    /**
+     * Distance to the far plane
+     */
+    private static final double Z_FAR = 1000.0;
+
+    /**
+     * Distance to the near plane
+     */
+    private static final double Z_NEAR = 0.1;
+
+    /**
+     * Field of view of every viewport
+     */
+    private static final double FIELD_OF_VIEW = Math.PI / 2;
+
+    /**
+     * Color of the edges of triangles in packed ARGB format
+     */
+    private static final int WIREFRAME_ARGB = 0xFF00B4FF;
+
+    /**
+     * Color of the bounding boxes of meshes in packed ARGB format
+     */
+    private static final int BOUNDS_ARGB = 0xFF00FF00;
+
+    /**
+     * Distance edges are depth tested in front of their ends relative to their length, so they aren't hidden by the
+     * triangles around them
+     * <br>Triangles are depth tested at their average depth, so a triangle can cover the pixels of its own edges and
+     * of the edges of its neighbours with a depth up to about the size of the triangle in front of them
+     */
+    private static final double EDGE_DEPTH_OFFSET = 1.0;
+
+    /**
+     * Farthest a point may move across the canvas, in pixels, for a frame to be reprojected from the frame before it
+     * with temporal reprojection, beyond which too much of the frame would be holes
+     */
+    private static final double MAX_REPROJECTED_SHIFT = 8.0;
+
+    // Region
+
+    /**
+     * Camera the world is shown from
+     */
+    private final Camera camera;
+
+    /**
+     * Left edge of the viewport as a fraction of the panel's width
+     */
+    private volatile double x;
+
+    /**
+     * Top edge of the viewport as a fraction of the panel's height
+     */
+    private volatile double y;
+
+    /**
+     * Width of the viewport as a fraction of the panel's width
+     */
+    private volatile double width;
+
+    /**
+     * Height of the viewport as a fraction of the panel's height
+     */
+    private volatile double height;
+
+    // Geometry
+
+    /**
+     * Matrix to convert a 3D coordinate into a 2D point on the canvas
+     */
+    private Matrix projMat;
+
+    /**
+     * Resolution of the canvas triangles are currently projected for
+     */
+    private int renderWidth;
+
+    private int renderHeight;
+
+    /**
+     * List of all triangles to be rendered onto the canvas
+     */
+    private SinglyLinkedList<Triangle3D> trianglesToRender;
+
+    /**
+     * Vertex indices held by each slot of the cache of transformed vertices of indexed meshes, or -1 if a slot is empty
+     */
+    private final int[] vertexCacheIndices;
+
+    /**
+     * Transformed vertices held by each slot of the cache of transformed vertices of indexed meshes
+     */
+    private final Vector[] vertexCacheVertices;
+
+    /**
+     * Sorter to order triangles front to back before they are rasterized
+     */
+    private final DepthSorter depthSorter;
+
+    /**
+     * Lines to be drawn over or instead of the triangles to render
+     */
+    private LineBuffer linesToRender;
+
+    /**
+     * Edges of the current mesh already added to the lines to render
+     */
+    private final EdgeSet addedEdges;
+
+    /**
+     * Everything the triangles to render were last updated from, null before the first update
+     */
+    private ViewInputs geometryInputs;
+
+    /**
+     * Everything the last frame handed to rendering was seen from, whether its triangles were updated or it is
+     * reprojected, null before the first update
+     */
+    private ViewInputs frameInputs;
+
+    /**
+     * Whether or not the last update produced a frame different from the update before
+     */
+    private boolean geometryChanged;
+
+    /**
+     * Whether or not the last update only moved the camera, so its frame is reprojected from the last frame rasterized
+     * instead of filled from triangles
+     */
+    private boolean reprojecting;
+
+    /**
+     * Triangles of each mesh that faced the camera in the last update, in the order of the meshes
+     */
+    private final List<FacingSet> facingSets;
+
+    /**
+     * Incremented whenever the meshes, lights, settings or resolution change between updates, so frames of different
+     * scenes are never reprojected into each other
+     */
+    private long sceneVersion;
+
+    /**
+     * Distance from the camera to the nearest vertex of the triangles to render
+     */
+    private double nearestDepth;
+
+    /**
+     * Triangles split in two by clipping since the start of the current pipeline stage
+     */
+    private int clipSplits;
+
+    /**
+     * Nanoseconds the last full frame took to update its geometry and to fill, and the last reprojected frame took to
+     * reproject along with remembering the frame it was reprojected from, so frames are only remembered and reprojected
+     * while that is cheaper than rendering them
+     */
+    private volatile long geometryNanos;
+
+    private volatile long fillNanos;
+
+    private volatile long reprojectNanos;
+
+    // Rendering
+
+    /**
+     * List of all triangles that are currently being rendered onto the canvas
+     */
+    private SinglyLinkedList<Triangle3D> trianglesBeingRendered;
+
+    /**
+     * Incremented whenever a frame different from the one before is published
+     */
+    private long publishedVersion;
+
+    /**
+     * Version of the frame last rasterized into the canvas
+     */
+    private long rasterizedVersion;
+
+    /**
+     * Lines that are currently being drawn onto the canvas once its triangles are filled
+     */
+    private LineBuffer linesBeingRendered;
+
+    /**
+     * Whether or not the lines being drawn skip pixels behind filled triangles
+     */
+    private boolean renderedLineDepthTest;
+
+    /**
+     * Resolution of the canvas the triangles being rendered were projected for, 0 before the first frame
+     */
+    private int renderedWidth;
+
+    private int renderedHeight;
+
+    /**
+     * Lights of the frame being rendered if it is lit per pixel, null otherwise
+     */
+    private Lighting renderedLighting;
+
+    /**
+     * Projection, view matrix, camera position and scene version of the frame being rendered, for reprojecting it
+     */
+    private Matrix renderedProjMat;
+
+    private Matrix renderedViewMat;
+
+    private Vector renderedViewPos;
+
+    private long renderedSceneVersion;
+
+    /**
+     * Whether or not the frame being rendered is reprojected from the last frame rasterized instead of filled
+     */
+    private boolean renderedReprojected;
+
+    /**
+     * Whether or not the frame being rendered is kept once rasterized to reproject the frames after it from
+     */
+    private boolean renderedKept;
+
+    /**
+     * Nanoseconds the reprojector last took to remember a frame
+     */
+    private volatile long rememberNanos;
+
+    /**
+     * Reprojects the last frame rasterized into the frames after it with temporal reprojection, null while it is off
+     */
+    private TemporalReprojector reprojector;
+
+    /**
+     * Image the viewport is rasterized into
+     */
+    private BufferedImage canvas;
+
+    /**
+     * Rasterizer filling triangles into the canvas
+     */
+    private Rasterizer rasterizer;
+
+    /**
+     * Version of the lighting the rasterizer's Phong lights were last taken from
+     */
+    private long phongLightingVersion;
+
+    /**
+     * Accelerated copy of the canvas drawn onto the screen, where only tiles that changed are updated each frame
+     */
+    private VolatileImage presentImage;
+
+    /**
+     * Job system the work of rasterizing is spread across, or null to do all of it on the rasterizing thread
+     */
+    private volatile JobSystem jobSystem;
+
+    // Constructors
+
+    // Create a viewport showing the world from a camera in a region of the panel
+    Viewport(Camera camera, double x, double y, double width, double height) {
+        if (camera == null) {
+            throw new IllegalArgumentException("Cannot create a viewport of a null camera");
+        }
+
+        this.camera = camera;
+        setRegion(x, y, width, height);
+
+        trianglesToRender = new SinglyLinkedList<>();
+        trianglesBeingRendered = new SinglyLinkedList<>();
+        linesToRender = new LineBuffer(0);
+        linesBeingRendered = linesToRender;
+        addedEdges = new EdgeSet();
+        facingSets = new ArrayList<>();
+        vertexCacheIndices = new int[MeshOptimizer.VERTEX_CACHE_SIZE];
+        vertexCacheVertices = new Vector[MeshOptimizer.VERTEX_CACHE_SIZE];
+        depthSorter = new DepthSorter();
+    }
+
+    // Resolution
+
+    // Size the canvas for the panel's size and render scale, updating the projection whenever its resolution changes
+    void updateResolution(int panelWidth, int panelHeight, double scale) {
+        int width = Math.max(1, (int) Math.round(panelWidth * this.width * scale));
+        int height = Math.max(1, (int) Math.round(panelHeight * this.height * scale));
+
+        if (width != renderWidth || height != renderHeight || projMat == null) {
+            renderWidth = width;
+            renderHeight = height;
+            projMat = projectionMatrix(FIELD_OF_VIEW);
+        }
+    }
+
+    // Generate a projection matrix based on a field of view
+    private Matrix projectionMatrix(double fovInRadians) {
+        Matrix newProjectionMatrix = new Matrix(3, 3);
+
+        double aspectRatio = (double) renderHeight / renderWidth;
+        double fovRatio = 1.0 / Math.tan(fovInRadians / 2.0);
+        double zNormalization = Z_FAR / (Z_FAR - Z_NEAR);
+
+        newProjectionMatrix.set(0, 0, aspectRatio * fovRatio);
+        newProjectionMatrix.set(1, 1, fovRatio);
+        newProjectionMatrix.set(2, 2, zNormalization);
+
+        return newProjectionMatrix;
+    }
+
+    // Geometry
+
+    // Cull, transform, project, clip and sort the triangles of a frame as seen from the camera, unless nothing they
+    // depend on has changed since the last update
+    // Returns the amount of triangles to render
+    int updateGeometry(FrameState frame, int viewportIndex) {
+        ViewInputs inputs = new ViewInputs(frame, camera, renderWidth, renderHeight, x, y, width, height);
+        geometryChanged = !inputs.sameView(frameInputs);
+
+        if (!geometryChanged) {
+            return trianglesToRender.size();
+        }
+
+        frameInputs = inputs;
+
+        // with temporal reprojection, every other frame only moves the camera of the frame before it, as long as the
+        // camera moved little enough for the pixels of that frame to still cover the canvas
+        reprojecting = !reprojecting && frame.isTemporalReprojection() && frame.getViewMode() == ViewMode.SOLID
+                && inputs.sameScene(geometryInputs) && canvasShift(inputs) <= MAX_REPROJECTED_SHIFT
+                && isReprojectionCheaper();
+
+        if (reprojecting) {
+            return trianglesToRender.size();
+        }
+
+        // which triangles face the camera only depends on where it is, so they are kept while it only turns
+        boolean sameFacing = inputs.sameFacing(geometryInputs);
+        if (!inputs.sameScene(geometryInputs)) {
+            sceneVersion++;
+            // reprojection is worth trying again in a new scene
+            reprojectNanos = 0;
+            rememberNanos = 0;
+        }
+
+        geometryInputs = inputs;
+        long geometryStart = System.nanoTime();
+
+        trianglesToRender = new SinglyLinkedList<>();
+        // lines are only read once published, so each frame fills a new buffer sized for the frame before
+        linesToRender = new LineBuffer(frame.getViewMode() == ViewMode.SOLID ? 0 : linesToRender.size());
+
+        PipelineStageEvent stageEvent = beginStage();
+        clipSplits = 0;
+        cullTrianglesFromMeshes(frame, sameFacing);
+        stageEvent.end();
+        if (stageEvent.shouldCommit()) {
+            // counting the triangles of every mesh walks all of them, so it is only done while the stage is recorded
+            recordStage(stageEvent, frame.getFrameNumber(), viewportIndex, "cull", meshTriangleCount(frame),
+                    trianglesToRender.size(), clipSplits);
+        }
+
+        stageEvent = beginStage();
+        projectAndScaleTriangles();
+        commitStage(stageEvent, frame, viewportIndex, "project", trianglesToRender.size(), trianglesToRender.size());
+
+        stageEvent = beginStage();
+        int preClipCount = trianglesToRender.size();
+        clipSplits = 0;
+        clipTrianglesToRender();
+        commitStage(stageEvent, frame.getFrameNumber(), viewportIndex, "clip", preClipCount, trianglesToRender.size(),
+                clipSplits);
+        nearestDepth = findNearestDepth();
+
+        if (frame.isDepthSorting()) {
+            stageEvent = beginStage();
+            trianglesToRender = depthSorter.sortFrontToBack(trianglesToRender);
+            commitStage(stageEvent, frame, viewportIndex, "sort", trianglesToRender.size(), trianglesToRender.size());
+        }
+
+        geometryNanos = System.nanoTime() - geometryStart;
+        return trianglesToRender.size();
+    }
+
+    // Whether reprojecting a frame along with remembering the frame it is reprojected from was last measured cheaper
+    // than rendering a frame, bounded below by the cost of remembering alone until a reprojection has been measured
+    private boolean isReprojectionCheaper() {
+        return Math.max(reprojectNanos, rememberNanos) < geometryNanos + fillNanos;
+    }
+
+    // Hand the triangles of the latest frame to rendering if they changed since the frame before
+    // Returns whether or not there is anything new to render
+    synchronized boolean publishFrame(FrameState frame) {
+        if (!geometryChanged) {
+            return false;
+        }
+
+        trianglesBeingRendered = trianglesToRender;
+        linesBeingRendered = linesToRender;
+        renderedLineDepthTest = frame.getViewMode() == ViewMode.WIREFRAME_OVER_SOLID;
+        renderedWidth = renderWidth;
+        renderedHeight = renderHeight;
+        renderedLighting = frame.getShadingMode() == ShadingMode.PHONG ? frame.getLighting() : null;
+        renderedProjMat = projMat;
+        renderedViewMat = frameInputs.viewMat;
+        renderedViewPos = frameInputs.viewPos;
+        renderedSceneVersion = sceneVersion;
+        renderedReprojected = reprojecting;
+        renderedKept = frame.isTemporalReprojection() && frame.getViewMode() == ViewMode.SOLID;
+        publishedVersion++;
+        return true;
+    }
+
+    // Count every triangle of every mesh
+    private static int meshTriangleCount(FrameState frame) {
+        int count = 0;
+        for (Mesh3D mesh : frame.getMeshes()) {
+            count += mesh.size();
+        }
+
+        return count;
+    }
+
+    // Add transformed triangles to the list of triangles to be rendered if valid, testing which triangles face the
+    // camera again unless the triangles that faced it in the last update still do
+    private void cullTrianglesFromMeshes(FrameState frame, boolean sameFacing) {
+        Matrix worldMat = frame.getWorldMat();
+        Vector translationVec = frame.getTranslationVec();
+        long transformVersion = frame.getTransformVersion();
+        LightingCache lightingCache = frame.getLightingCache();
+
+        // transform world relative to camera movement
+        Matrix viewMatrix = geometryInputs.viewMat;
+        Vector viewVec = geometryInputs.viewPos.multiplyMatrix(viewMatrix).multiplyByScalar(-1.0);
+
+        // combine the world and view transforms so each visible vertex is only transformed once
+        Matrix modelViewMat = worldMat.multiplyMatrix(viewMatrix);
+        Vector modelViewVec = translationVec.multiplyMatrix(viewMatrix).add(viewVec);
+
+        Plane nearPlane = new Plane(new Vector(0, 0, Z_NEAR), new Vector(0, 0, -1));
+        ShadingMode currShadingMode = frame.getShadingMode();
+        ViewMode viewMode = frame.getViewMode();
+        boolean fillTriangles = viewMode != ViewMode.WIREFRAME;
+        boolean drawEdges = viewMode == ViewMode.WIREFRAME || viewMode == ViewMode.WIREFRAME_OVER_SOLID;
+
+        // bring the camera into model space so triangles can be culled against their precomputed planes
+        // the engine only accepts orthonormal world matrices, so the transpose is the inverse
+        Vector modelCamPos = geometryInputs.viewPos.subtract(translationVec).multiplyMatrix(worldMat.getTransposed());
+        double camX = modelCamPos.get(X_INDEX);
+        double camY = modelCamPos.get(Y_INDEX);
+        double camZ = modelCamPos.get(Z_INDEX);
+
+        List<Mesh3D> meshes = frame.getMeshes();
+        while (facingSets.size() > meshes.size()) {
+            facingSets.remove(facingSets.size() - 1);
+        }
+
+        for (int meshIndex = 0; meshIndex < meshes.size(); meshIndex++) {
+            Mesh3D mesh = meshes.get(meshIndex);
+
+            if (viewMode == ViewMode.BOUNDS) {
+                addBoundingBox(mesh, modelViewMat, modelViewVec);
+            }
+
+            // lit colors only change with the lights or the world transform, so they are cached between frames
+            // and shared with every other viewport
+            // triangles read their vertex colors and normals straight from the cached arrays, so shading them smoothly
+            // allocates nothing per triangle
+            int[] litColors = null;
+            double[] worldNormals = null;
+            double[] worldPositions = null;
+            if (fillTriangles && currShadingMode == ShadingMode.FLAT) {
+                litColors = lightingCache.getFaceColors(mesh, worldMat, translationVec, transformVersion);
+            } else if (fillTriangles && currShadingMode == ShadingMode.GOURAUD) {
+                litColors = lightingCache.getVertexColors(mesh, worldMat, translationVec, transformVersion);
+            } else if (fillTriangles && currShadingMode == ShadingMode.PHONG) {
+                worldNormals = lightingCache.getVertexNormals(mesh, worldMat, transformVersion);
+                worldPositions = lightingCache.getVertexPositions(mesh, worldMat, translationVec, transformVersion);
+            }
+
+            int[] faceColors = currShadingMode == ShadingMode.FLAT ? litColors : null;
+
+            // indexed meshes are read through their accessors so only visible triangles become objects
+            IndexedMesh3D indexedMesh = mesh instanceof IndexedMesh3D ? (IndexedMesh3D) mesh : null;
+            Arrays.fill(vertexCacheIndices, -1);
+            addedEdges.clear();
+
+            if (meshIndex == facingSets.size()) {
+                facingSets.add(new FacingSet());
+            }
+
+            FacingSet facing = facingSets.get(meshIndex);
+            if (!sameFacing) {
+                findFacingTriangles(mesh, indexedMesh, camX, camY, camZ, facing);
+            }
+
+            for (int i = 0; i < facing.size; i++) {
+                int triIndex = facing.indices[i];
+                Triangle3D tri = indexedMesh == null ? facing.triangles[i] : null;
+
+                // transform triangle in world space and relative to the camera at once
+                Triangle3D transformedTri = tri != null ? transformTriangle(tri, modelViewMat, modelViewVec)
+                        : transformTriangle(indexedMesh, triIndex, modelViewMat, modelViewVec);
+
+                if (drawEdges) {
+                    addTriangleEdges(transformedTri, tri, indexedMesh, triIndex);
+                }
+
+                if (!fillTriangles) {
+                    continue;
+                }
+
+                // apply lighting to triangle, textured triangles are lit once across their whole surface
+                if (transformedTri.isTextured()) {
+                    if (faceColors == null) {
+                        faceColors = lightingCache.getFaceColors(mesh, worldMat, translationVec, transformVersion);
+                    }
+
+                    transformedTri.setARGB(faceColors[triIndex]);
+                } else if (currShadingMode == ShadingMode.FLAT) {
+                    transformedTri.setARGB(litColors[triIndex]);
+                } else if (currShadingMode == ShadingMode.GOURAUD) {
+                    transformedTri.setVertexColors(litColors, triIndex * Triangle3D.SIZE);
+                } else {
+                    transformedTri.setNormals(worldNormals, triIndex * Triangle3D.NORMAL_STRIDE);
+                    transformedTri.setWorldPositions(worldPositions, triIndex * Triangle3D.POSITION_STRIDE);
+                }
+
+                trianglesToRender.addAll(clipTriangleAgainstPlane(transformedTri, nearPlane));
+            }
+        }
+    }
+
+    // Find the distance from the camera to the nearest vertex of the projected triangles to render
+    private double findNearestDepth() {
+        double minDepth = Double.MAX_VALUE;
+        for (Triangle3D tri : trianglesToRender) {
+            for (int i = 0; i < Triangle3D.SIZE; i++) {
+                minDepth = Math.min(minDepth, tri.get(i).get(Z_INDEX));
+            }
+        }
+
+        // invert the projection of the depth, with nothing nearer than the near plane
+        double depthScale = projMat.get(Z_INDEX, Z_INDEX);
+        return minDepth < depthScale ? Z_NEAR * depthScale / (depthScale - Math.max(minDepth, 0.0)) : Double.MAX_VALUE;
+    }
+
+    // Estimate the farthest a point on the canvas moves between the camera the triangles to render were updated for
+    // and the camera of a new view, from the angle it turned and how far it moved relative to the nearest vertex
+    private double canvasShift(ViewInputs inputs) {
+        // the angle of the rotation between two view matrices follows from the trace of the rotation
+        Matrix turn = geometryInputs.viewMat.getTransposed().multiplyMatrix(inputs.viewMat);
+        double trace = turn.get(X_INDEX, X_INDEX) + turn.get(Y_INDEX, Y_INDEX) + turn.get(Z_INDEX, Z_INDEX);
+        double cosine = (trace - 1.0) / 2.0;
+        double angle = Math.acos(Math.max(-1.0, Math.min(1.0, cosine)));
+
+        Vector move = inputs.viewPos.subtract(geometryInputs.viewPos);
+        double distance = Math.sqrt(move.dotProduct(move));
+
+        // pixels a point a unit in front of the camera moves per unit it moves across the view
+        double pixelsPerUnit = Math.max(projMat.get(X_INDEX, X_INDEX) * renderWidth,
+                projMat.get(Y_INDEX, Y_INDEX) * renderHeight) / 2.0;
+        return (angle + distance / nearestDepth) * pixelsPerUnit;
+    }
+
+    // Gather the triangles of a mesh facing a camera position in model space, in the order of the mesh
+    private static void findFacingTriangles(Mesh3D mesh, IndexedMesh3D indexedMesh, double camX, double camY,
+                                            double camZ, FacingSet facing) {
+        facing.clear();
+        boolean clusterCulled = false;
+        Iterator<Triangle3D> triangles = indexedMesh == null ? mesh.iterator() : null;
+        int triCount = mesh.size();
+
+        for (int triIndex = 0; triIndex < triCount; triIndex++) {
+            Triangle3D tri = triangles == null ? null : triangles.next();
+
+            // cull whole clusters of triangles facing away from the camera with a single test
+            if (triIndex % Mesh3D.CLUSTER_SIZE == 0) {
+                clusterCulled = mesh.clusterFacesAway(triIndex / Mesh3D.CLUSTER_SIZE, camX, camY, camZ);
+            }
+
+            // cull based on if the triangle won't be seen
+            if (!clusterCulled && mesh.facesTowards(triIndex, camX, camY, camZ)) {
+                facing.add(triIndex, tri);
+            }
+        }
+    }
+
+    // Add the edges of a triangle facing the camera to the lines to render, skipping edges already added by a
+    // neighbouring triangle of the same mesh
+    private void addTriangleEdges(Triangle3D viewTri, Triangle3D tri, IndexedMesh3D indexedMesh, int triIndex) {
+        for (int i = 0; i < Triangle3D.SIZE; i++) {
+            int next = (i + 1) % Triangle3D.SIZE;
+            long keyA = vertexKey(tri, indexedMesh, triIndex, i);
+            long keyB = vertexKey(tri, indexedMesh, triIndex, next);
+
+            if (keyA != keyB && addedEdges.add(keyA, keyB)) {
+                Vector start = viewTri.get(i);
+                Vector end = viewTri.get(next);
+                Vector edge = end.subtract(start);
+                double length = Math.sqrt(edge.dotProduct(edge));
+
+                addLine(start, end, length * EDGE_DEPTH_OFFSET, WIREFRAME_ARGB);
+            }
+        }
+    }
+
+    // Key identifying a vertex of a mesh, its index in an indexed mesh or its position in any other mesh, since
+    // triangles sharing a vertex there share its position but not always its vector
+    private static long vertexKey(Triangle3D tri, IndexedMesh3D indexedMesh, int triIndex, int corner) {
+        if (tri == null) {
+            return indexedMesh.getVertexIndex(triIndex, corner);
+        }
+
+        // adding 0 turns -0 into 0, and each value is mixed before the next so mirrored positions don't collide
+        Vector vertex = tri.get(corner);
+        long key = mixBits(Double.doubleToLongBits(vertex.get(X_INDEX) + 0.0));
+        key = mixBits(key + Double.doubleToLongBits(vertex.get(Y_INDEX) + 0.0));
+        return mixBits(key + Double.doubleToLongBits(vertex.get(Z_INDEX) + 0.0));
+    }
+
+    // Spread every bit of a value across all of its bits, the finalizer of MurmurHash3
+    private static long mixBits(long value) {
+        value = (value ^ (value >>> 33)) * 0xFF51AFD7ED558CCDL;
+        value = (value ^ (value >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return value ^ (value >>> 33);
+    }
+
+    // Add the twelve edges of the bounding box of a mesh to the lines to render
+    private void addBoundingBox(Mesh3D mesh, Matrix modelViewMat, Vector modelViewVec) {
+        double[] bounds = mesh.getBounds();
+
+        // corner i takes its x, y and z from the maximum corner where bits 0, 1 and 2 of i are set
+        Vector[] corners = new Vector[8];
+        for (int i = 0; i < corners.length; i++) {
+            Vector corner = new Vector(bounds[(i & 1) == 0 ? 0 : 3], bounds[(i & 2) == 0 ? 1 : 4],
+                    bounds[(i & 4) == 0 ? 2 : 5]);
+            corners[i] = corner.multiplyMatrix(modelViewMat).add(modelViewVec);
+        }
+
+        for (int i = 0; i < corners.length; i++) {
+            for (int bit = 1; bit < corners.length; bit <<= 1) {
+                if ((i & bit) == 0) {
+                    addLine(corners[i], corners[i | bit], 0.0, BOUNDS_ARGB);
+                }
+            }
+        }
+    }
+
+    // Clip a line relative to the camera against the near plane, then project it onto the canvas and add it to the
+    // lines to render, with its depth taken a distance closer to the camera
+    private void addLine(Vector start, Vector end, double depthOffset, int argb) {
+        double startZ = start.get(Z_INDEX);
+        double endZ = end.get(Z_INDEX);
+
+        if (startZ < Z_NEAR && endZ < Z_NEAR) {
+            return;
+        } else if (startZ < Z_NEAR) {
+            start = lerpVector(start, end, (Z_NEAR - startZ) / (endZ - startZ));
+        } else if (endZ < Z_NEAR) {
+            end = lerpVector(end, start, (Z_NEAR - endZ) / (startZ - endZ));
+        }
+
+        double startDepth = projectDepth(Math.max(start.get(Z_INDEX) - depthOffset, Z_NEAR));
+        double endDepth = projectDepth(Math.max(end.get(Z_INDEX) - depthOffset, Z_NEAR));
+        linesToRender.add(projectX(start), projectY(start), startDepth, projectX(end), projectY(end), endDepth, argb);
+    }
+
+    // Project a point relative to the camera onto the canvas the same way as the vertices of triangles
+    private double projectX(Vector point) {
+        return (-point.get(X_INDEX) * projMat.get(X_INDEX, X_INDEX) / point.get(Z_INDEX) + 1.0) * renderWidth / 2.0;
+    }
+
+    private double projectY(Vector point) {
+        return (-point.get(Y_INDEX) * projMat.get(Y_INDEX, Y_INDEX) / point.get(Z_INDEX) + 1.0) * renderHeight / 2.0;
+    }
+
+    // Depth on the canvas of a distance from the camera, the same as the depth of the vertices of triangles
+    private double projectDepth(double z) {
+        return (z - Z_NEAR) * projMat.get(Z_INDEX, Z_INDEX) / z;
+    }
+
+    // Hand the lights to the per pixel lighting of the rasterizer whenever they change
+    private void updatePhongLighting(Lighting lighting) {
+        long lightingVersion = lighting.getVersion();
+        if (lightingVersion == phongLightingVersion) {
+            return;
+        }
+
+        rasterizer.setLighting(lighting);
+        phongLightingVersion = lightingVersion;
+    }
+
+    // Transform a triangle given a rotation and scaling matrix and a translation vector
+    private Triangle3D transformTriangle(Triangle3D tri, Matrix rotAndScaleMat, Vector translationVec) {
+        Vector[] transformedVertices = new Vector[Triangle3D.SIZE];
+        for (int i = 0; i < transformedVertices.length; i++) {
+            Vector currVec = tri.get(i);
+            transformedVertices[i] = currVec.multiplyMatrix(rotAndScaleMat).add(translationVec);
+        }
+
+        Triangle3D transformedTri = new Triangle3D(transformedVertices[0], transformedVertices[1],
+                transformedVertices[2], tri.getARGB());
+
+        if (tri.isTextured()) {
+            transformedTri.setTexture(tri.getTexture());
+            transformedTri.setTextureCoords(tri.getTextureCoord(0), tri.getTextureCoord(1), tri.getTextureCoord(2));
+        }
+
+        return transformedTri;
+    }
+
+    // Transform a triangle of an indexed mesh given a rotation and scaling matrix and a translation vector, reading
+    // its corners straight from the mesh instead of creating the triangle first
+    // Corners sharing a vertex with a recently transformed triangle reuse its transformed vertex from the cache
+    private Triangle3D transformTriangle(IndexedMesh3D mesh, int index, Matrix rotAndScaleMat, Vector translationVec) {
+        Vector[] transformedVertices = new Vector[Triangle3D.SIZE];
+        for (int i = 0; i < transformedVertices.length; i++) {
+            int vertexIndex = mesh.getVertexIndex(index, i);
+            int slot = vertexIndex % vertexCacheIndices.length;
+            if (vertexCacheIndices[slot] == vertexIndex) {
+                transformedVertices[i] = vertexCacheVertices[slot];
+                continue;
+            }
+
+            double x = mesh.getX(index, i);
+            double y = mesh.getY(index, i);
+            double z = mesh.getZ(index, i);
+
+            Vector transformedVec = new Vector(3);
+            for (int col = 0; col < 3; col++) {
+                transformedVec.set(col, x * rotAndScaleMat.get(0, col) + y * rotAndScaleMat.get(1, col)
+                        + z * rotAndScaleMat.get(2, col) + translationVec.get(col));
+            }
+
+            transformedVertices[i] = transformedVec;
+            vertexCacheIndices[slot] = vertexIndex;
+            vertexCacheVertices[slot] = transformedVec;
+        }
+
+        Triangle3D transformedTri = new Triangle3D(transformedVertices[0], transformedVertices[1],
+                transformedVertices[2], mesh.getARGB(index));
+
+        if (mesh.isTextured(index)) {
+            transformedTri.setTexture(mesh.getMaterial().getDiffuseMap());
+            transformedTri.setTextureCoords(mesh.getTextureCoord(index, 0), mesh.getTextureCoord(index, 1),
+                    mesh.getTextureCoord(index, 2));
+        }
+
+        return transformedTri;
+    }
+
+    // Convert all vertices of a triangle from world space to screen space
+    private void projectAndScaleTriangles() {
+        for (Triangle3D tri : trianglesToRender) { // iterate through all triangles
+            if (tri.isTextured()) {
+                // texture coordinates divided by depth interpolate linearly across the screen
+                Vector[] projTextureCoords = new Vector[Triangle3D.SIZE];
+                for (int i = 0; i < Triangle3D.SIZE; i++) {
+                    double inverseZ = 1.0 / tri.get(i).get(Z_INDEX);
+                    Vector textureCoord = tri.getTextureCoord(i);
+                    projTextureCoords[i] = new Vector(textureCoord.get(X_INDEX) * inverseZ,
+                            textureCoord.get(Y_INDEX) * inverseZ, inverseZ);
+                }
+
+                tri.setTextureCoords(projTextureCoords[0], projTextureCoords[1], projTextureCoords[2]);
+            }
+
+            for (int i = 0; i < Triangle3D.SIZE; i++) { // iterate through each vertex of the triangle
+                // project the 3D coordinate to 2D
+                Vector currVector = tri.get(i);
+                double z = currVector.get(Z_INDEX);
+                double newZ = (z - Z_NEAR) * projMat.get(2, 2);
+
+                currVector = currVector.multiplyMatrix(projMat);
+                currVector.set(Z_INDEX, newZ);
+                Vector normalizedVector = currVector.divideByScalar(z);
+
+                // scale the normalized coordinates to pixel values on the screen
+                double newX = (-normalizedVector.get(X_INDEX) + 1.0) * renderWidth / 2.0;
+                double newY = (-normalizedVector.get(Y_INDEX) + 1.0) * renderHeight / 2.0;
+
+                normalizedVector.set(X_INDEX, newX);
+                normalizedVector.set(Y_INDEX, newY);
+
+                tri.set(i, normalizedVector);
+            }
+        }
+    }
+
+    private void clipTrianglesToRender() {
+        Plane[] planes = {
+                new Plane(new Vector(0, 0, 0), new Vector(0, -1, 0)), // top plane
+                new Plane(new Vector(0, renderHeight - 1, 0), new Vector(0, 1, 0)), // bottom plane
+
+                new Plane(new Vector(0, 0, 0), new Vector(-1, 0, 0)), // left plane
+                new Plane(new Vector(renderWidth - 1, 0, 0), new Vector(1, 0, 0)) // right plane
+        };
+
+        SinglyLinkedList<Triangle3D> clippedTrisToRender = new SinglyLinkedList<>();
+
+        for (Triangle3D triToRender : trianglesToRender) {
+            SinglyLinkedList<Triangle3D> triQueue = new SinglyLinkedList<>();
+            triQueue.add(triToRender);
+
+            for (Plane plane : planes) {
+                int queueSize = triQueue.size();
+
+                while (queueSize > 0) {
+                    Triangle3D triToClip = triQueue.removeFirst();
+                    triQueue.addAll(clipTriangleAgainstPlane(triToClip, plane));
+                    queueSize--;
+                }
+            }
+
+            clippedTrisToRender.addAll(triQueue);
+        }
+
+        trianglesToRender = clippedTrisToRender;
+    }
+
+    // Generate a list of new clipped triangles given an original triangle and a plane to clip against
+    private SinglyLinkedList<Triangle3D> clipTriangleAgainstPlane(Triangle3D tri, Plane plane) {
+        SinglyLinkedList<Triangle3D> clippedTris = new SinglyLinkedList<>();
+        int[] insideIndices = new int[Triangle3D.SIZE];
+        int[] outsideIndices = new int[Triangle3D.SIZE];
+        int insideCount = 0;
+        int outsideCount = 0;
+
+        for (int i = 0; i < Triangle3D.SIZE; i++) {
+            double distFromPlane = plane.distanceFromPoint(tri.get(i));
+
+            if (distFromPlane <= 0.0) {
+                insideIndices[insideCount++] = i;
+            } else {
+                outsideIndices[outsideCount++] = i;
+            }
+        }
+
+        if (insideCount == 1) {
+            int insideIndex = insideIndices[0];
+
+            double fraction1 = plane.lineIntersectPlaneFraction(tri.get(insideIndex), tri.get(outsideIndices[0]));
+            double fraction2 = plane.lineIntersectPlaneFraction(tri.get(insideIndex), tri.get(outsideIndices[1]));
+
+            clippedTris.add(createClippedTriangle(tri,
+                    insideIndex, insideIndex, 0.0,
+                    insideIndex, outsideIndices[0], fraction1,
+                    insideIndex, outsideIndices[1], fraction2));
+        } else if (insideCount == 2) {
+            int insideIndex1 = insideIndices[0];
+            int insideIndex2 = insideIndices[1];
+            int outsideIndex = outsideIndices[0];
+
+            double fraction1 = plane.lineIntersectPlaneFraction(tri.get(insideIndex1), tri.get(outsideIndex));
+            double fraction2 = plane.lineIntersectPlaneFraction(tri.get(insideIndex2), tri.get(outsideIndex));
+
+            clippedTris.add(createClippedTriangle(tri,
+                    insideIndex1, insideIndex1, 0.0,
+                    insideIndex2, insideIndex2, 0.0,
+                    insideIndex1, outsideIndex, fraction1));
+            clippedTris.add(createClippedTriangle(tri,
+                    insideIndex1, outsideIndex, fraction1,
+                    insideIndex2, insideIndex2, 0.0,
+                    insideIndex2, outsideIndex, fraction2));
+            clipSplits++;
+        } else if (insideCount == 3) {
+            clippedTris.add(tri);
+        }
+
+        return clippedTris;
+    }
+
+    // Create a triangle whose vertices each lie a fraction of the way along an edge of an original triangle
+    // Vertex colors and normals are interpolated the same way as the positions
+    private Triangle3D createClippedTriangle(Triangle3D tri,
+                                             int fromA, int toA, double fractionA,
+                                             int fromB, int toB, double fractionB,
+                                             int fromC, int toC, double fractionC) {
+        Triangle3D clippedTri = new Triangle3D(
+                lerpVector(tri.get(fromA), tri.get(toA), fractionA),
+                lerpVector(tri.get(fromB), tri.get(toB), fractionB),
+                lerpVector(tri.get(fromC), tri.get(toC), fractionC),
+                tri.getARGB()
+        );
+
+        if (tri.hasVertexColors()) {
+            clippedTri.setVertexColors(
+                    PackedColor.lerp(tri.getVertexARGB(fromA), tri.getVertexARGB(toA), fractionA),
+                    PackedColor.lerp(tri.getVertexARGB(fromB), tri.getVertexARGB(toB), fractionB),
+                    PackedColor.lerp(tri.getVertexARGB(fromC), tri.getVertexARGB(toC), fractionC)
+            );
+        }
+
+        if (tri.hasNormals()) {
+            clippedTri.setNormals(
+                    lerpVector(tri.getNormal(fromA), tri.getNormal(toA), fractionA),
+                    lerpVector(tri.getNormal(fromB), tri.getNormal(toB), fractionB),
+                    lerpVector(tri.getNormal(fromC), tri.getNormal(toC), fractionC)
+            );
+        }
+
+        if (tri.hasWorldPositions()) {
+            clippedTri.setWorldPositions(
+                    lerpVector(tri.getWorldPosition(fromA), tri.getWorldPosition(toA), fractionA),
+                    lerpVector(tri.getWorldPosition(fromB), tri.getWorldPosition(toB), fractionB),
+                    lerpVector(tri.getWorldPosition(fromC), tri.getWorldPosition(toC), fractionC)
+            );
+        }
+
+        if (tri.isTextured()) {
+            clippedTri.setTexture(tri.getTexture());
+            clippedTri.setTextureCoords(
+                    lerpVector(tri.getTextureCoord(fromA), tri.getTextureCoord(toA), fractionA),
+                    lerpVector(tri.getTextureCoord(fromB), tri.getTextureCoord(toB), fractionB),
+                    lerpVector(tri.getTextureCoord(fromC), tri.getTextureCoord(toC), fractionC)
+            );
+        }
+
+        return clippedTri;
+    }
+
+    // Get the point a fraction of the way from one vector to another, reusing the first vector if the fraction is 0
+    private Vector lerpVector(Vector from, Vector to, double fraction) {
+        if (from == to || fraction == 0.0) {
+            return from;
+        }
+
+        return from.add(to.subtract(from).multiplyByScalar(fraction));
+    }
+
+    // Render
+
+    // Fill the triangles of the latest published frame into the canvas, following its resolution
+    // Returns the amount of triangles filled
+    int rasterize(long frameNumber, int viewportIndex) {
+        SinglyLinkedList<Triangle3D> trisToFill;
+        LineBuffer lines;
+        boolean lineDepthTest;
+        int width;
+        int height;
+        Lighting lighting;
+        long version;
+        boolean reprojected;
+        boolean kept;
+        Matrix frameProjMat;
+        Matrix frameViewMat;
+        Vector frameViewPos;
+        long frameSceneVersion;
+
+        synchronized (this) {
+            version = publishedVersion;
+            reprojected = renderedReprojected;
+            kept = renderedKept;
+            frameProjMat = renderedProjMat;
+            frameViewMat = renderedViewMat;
+            frameViewPos = renderedViewPos;
+            frameSceneVersion = renderedSceneVersion;
+            trisToFill = trianglesBeingRendered;
+            lines = linesBeingRendered;
+            lineDepthTest = renderedLineDepthTest;
+            width = renderedWidth;
+            height = renderedHeight;
+            lighting = renderedLighting;
+        }
+
+        if (width == 0 || height == 0) { // no frame has been published yet
+            return 0;
+        }
+
+        // the canvas already holds this frame, such as when the panel repaints while nothing moves
+        if (version == rasterizedVersion && canvas != null) {
+            return 0;
+        }
+
+        PipelineStageEvent rasterEvent = beginStage();
+
+        // follow the resolution the triangles were projected for
+        if (canvas == null || width != canvas.getWidth() || height != canvas.getHeight()) {
+            allocateBuffers(width, height);
+        }
+
+        if (lighting != null) {
+            updatePhongLighting(lighting);
+        }
+
+        long fillStart = System.nanoTime();
+        rasterizer.clear();
+
+        // frames between two rasterized frames move the pixels of the last rasterized frame instead of filling
+        // triangles, or fall back to the triangles of the frame before them if there is no frame to move
+        if (reprojected && reprojector != null
+                && reprojector.reproject(rasterizer, frameProjMat, frameViewMat, frameViewPos, frameSceneVersion)) {
+            rasterizer.finishFrame(jobSystem);
+            rasterizedVersion = version;
+            reprojectNanos = System.nanoTime() - fillStart + rememberNanos;
+
+            commitStage(rasterEvent, frameNumber, viewportIndex, "reproject", 0, 0, 0);
+            return 0;
+        }
+
+        // fill all triangles (triangles are already in projected form)
+        for (Triangle3D tri : trisToFill) {
+            rasterizer.fillTriangle(tri);
+        }
+
+        // debug lines go over the filled triangles, depth tested against them if asked
+        lines.draw(rasterizer, lineDepthTest);
+
+        rasterizer.finishFrame(jobSystem);
+        rasterizedVersion = version;
+        fillNanos = System.nanoTime() - fillStart;
+
+        // the triangles of a frame that fell back to them were seen from another camera, so it isn't kept
+        if (!kept) {
+            reprojector = null;
+        } else if (!reprojected) {
+            // remembering copies the whole frame, so it is skipped while the next frame couldn't be reprojected for
+            // less than rendering it, and the frame remembered before is forgotten so nothing is reprojected from it
+            if (isReprojectionCheaper()) {
+                if (reprojector == null) {
+                    reprojector = new TemporalReprojector(width, height, Z_NEAR, Z_FAR);
+                }
+
+                long rememberStart = System.nanoTime();
+                reprojector.remember(rasterizer, frameViewMat, frameViewPos, frameSceneVersion);
+                rememberNanos = System.nanoTime() - rememberStart;
+            } else if (reprojector != null) {
+                reprojector.forget();
+            }
+        }
+
+        commitStage(rasterEvent, frameNumber, viewportIndex, "raster", trisToFill.size(), trisToFill.size(), 0);
+        return trisToFill.size();
+    }
+
+    // Allocate the canvas and depth buffer for a given resolution
+    private void allocateBuffers(int width, int height) {
+        BufferReallocationEvent event = new BufferReallocationEvent();
+        event.begin();
+
+        canvas = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] canvasRaster = ((DataBufferInt) canvas.getRaster().getDataBuffer()).getData();
+        rasterizer = new Rasterizer(canvasRaster, width, height, Z_FAR);
+        presentImage = null;
+        reprojector = null;
+        phongLightingVersion = -1;
+
+        if (event.shouldCommit()) {
+            event.width = width;
+            event.height = height;
+            event.bytes = (long) canvasRaster.length * (Integer.BYTES + Double.BYTES);
+            event.commit();
+        }
+    }
+
+    // Copy the tiles of the canvas that changed into the accelerated image, then draw the accelerated image over the
+    // region of the panel
+    void present(Graphics g, GraphicsConfiguration config, int panelWidth, int panelHeight) {
+        if (canvas == null) {
+            return;
+        }
+
+        int left = (int) Math.round(x * panelWidth);
+        int top = (int) Math.round(y * panelHeight);
+        int right = (int) Math.round((x + width) * panelWidth);
+        int bottom = (int) Math.round((y + height) * panelHeight);
+
+        if (config == null) { // not on a screen, so there is nothing to accelerate
+            drawToRegion(g, canvas, left, top, right - left, bottom - top);
+            return;
+        }
+
+        do {
+            boolean copyAll = false;
+            int status = presentImage == null ? VolatileImage.IMAGE_INCOMPATIBLE : presentImage.validate(config);
+
+            if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+                if (presentImage != null) {
+                    presentImage.flush();
+                }
+
+                presentImage = config.createCompatibleVolatileImage(canvas.getWidth(), canvas.getHeight());
+                copyAll = true;
+            } else if (status == VolatileImage.IMAGE_RESTORED) {
+                copyAll = true;
+            }
+
+            Graphics2D presentGraphics = presentImage.createGraphics();
+            copyChangedTiles(presentGraphics, copyAll);
+            presentGraphics.dispose();
+
+            drawToRegion(g, presentImage, left, top, right - left, bottom - top);
+        } while (presentImage.contentsLost());
+    }
+
+    // Copy only the tiles of the canvas that changed in the latest rasterized frame onto an image holding the frame
+    // before it, the way frames are presented on a screen, so the tiled present can be checked without one
+    void presentChangedTiles(Graphics2D target) {
+        if (canvas != null) {
+            copyChangedTiles(target, false);
+        }
+    }
+
+    // Draw an image over a region of the panel, upscaling it with bilinear filtering if it is rendered at a lower
+    // resolution
+    private void drawToRegion(Graphics g, Image image, int left, int top, int regionWidth, int regionHeight) {
+        int imageWidth = image.getWidth(null);
+        int imageHeight = image.getHeight(null);
+
+        if (imageWidth == regionWidth && imageHeight == regionHeight) {
+            g.drawImage(image, left, top, null);
+            return;
+        }
+
+        Graphics2D g2d = (Graphics2D) g;
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.drawImage(image, left, top, regionWidth, regionHeight, null);
+    }
+
+    // Copy each run of changed tiles along a row of tiles from the canvas in a single draw
+    private void copyChangedTiles(Graphics2D target, boolean copyAll) {
+        if (copyAll) {
+            target.drawImage(canvas, 0, 0, null);
+            return;
+        }
+
+        int tileSize = Rasterizer.TILE_SIZE;
+
+        for (int tileRow = 0; tileRow < rasterizer.getTileRows(); tileRow++) {
+            int tileColumn = 0;
+
+            while (tileColumn < rasterizer.getTileColumns()) {
+                if (!rasterizer.isTileChanged(tileColumn, tileRow)) {
+                    tileColumn++;
+                    continue;
+                }
+
+                int runStart = tileColumn;
+                while (tileColumn < rasterizer.getTileColumns() && rasterizer.isTileChanged(tileColumn, tileRow)) {
+                    tileColumn++;
+                }
+
+                int x1 = runStart * tileSize;
+                int y1 = tileRow * tileSize;
+                int x2 = Math.min(tileColumn * tileSize, canvas.getWidth());
+                int y2 = Math.min(y1 + tileSize, canvas.getHeight());
+                target.drawImage(canvas, x1, y1, x2, y2, x1, y1, x2, y2, null);
+            }
+        }
+    }
+
+    // Queries
+
+    // Whether or not a pixel of the panel lies within the region of this viewport
+    boolean contains(int panelX, int panelY, int panelWidth, int panelHeight) {
+        double fractionX = (panelX + 0.5) / panelWidth;
+        double fractionY = (panelY + 0.5) / panelHeight;
+        return fractionX >= x && fractionX < x + width && fractionY >= y && fractionY < y + height;
+    }
+
+    // Direction in world space of the ray from the camera through a pixel of the panel within this viewport
+    Vector directionThrough(int panelX, int panelY, int panelWidth, int panelHeight) {
+        Matrix projMat = this.projMat;
+        if (projMat == null) {
+            throw new IllegalStateException("Cannot pick before the engine has started");
+        }
+
+        // undo the screen scaling and projection to get the direction through the pixel relative to the camera
+        double regionX = ((panelX + 0.5) / panelWidth - x) / width;
+        double regionY = ((panelY + 0.5) / panelHeight - y) / height;
+        Vector viewDirection = new Vector((1.0 - 2.0 * regionX) / projMat.get(X_INDEX, X_INDEX),
+                (1.0 - 2.0 * regionY) / projMat.get(Y_INDEX, Y_INDEX), 1.0);
+
+        return viewDirection.multiplyMatrix(camera.getPointAtMat());
+    }
+
+    // Whether or not this viewport covers the whole panel
+    boolean coversPanel() {
+        return x == 0.0 && y == 0.0 && width == 1.0 && height == 1.0;
+    }
+
+    // Image the latest frame was rasterized into, or null if no frame has been rasterized
+    BufferedImage getCanvas() {
+        return canvas;
+    }
+
+    // Profiling
+
+    // Create and begin timing an event for a pipeline stage
+    private static PipelineStageEvent beginStage() {
+        PipelineStageEvent event = new PipelineStageEvent();
+        event.begin();
+        return event;
+    }
+
+    private static void commitStage(PipelineStageEvent event, FrameState frame, int viewportIndex, String stage,
+                                    int trianglesIn, int trianglesOut) {
+        commitStage(event, frame.getFrameNumber(), viewportIndex, stage, trianglesIn, trianglesOut, 0);
+    }
+
+    // End the event of a finished pipeline stage and commit it if it is being recorded
+    private static void commitStage(PipelineStageEvent event, long frameNumber, int viewportIndex, String stage,
+                                    int trianglesIn, int trianglesOut, int clipSplits) {
+        event.end();
+        if (event.shouldCommit()) {
+            recordStage(event, frameNumber, viewportIndex, stage, trianglesIn, trianglesOut, clipSplits);
+        }
+    }
+
+    // Fill in and commit the event of an ended pipeline stage that is being recorded
+    private static void recordStage(PipelineStageEvent event, long frameNumber, int viewportIndex, String stage,
+                                    int trianglesIn, int trianglesOut, int clipSplits) {
+        event.stage = stage;
+        event.frameNumber = frameNumber;
+        event.viewport = viewportIndex;
+        event.trianglesIn = trianglesIn;
+        event.trianglesOut = trianglesOut;
+        event.clipSplits = clipSplits;
+        event.commit();
+    }
+
+    // Setters
+
+    // Spread the work of rasterizing across the CPU bound threads of a job system, or do all of it on the rasterizing
+    // thread if it is null
+    void setJobSystem(JobSystem jobSystem) {
+        this.jobSystem = jobSystem;
+    }
+
+    /**
+     * Move the viewport to a region of the panel, given as fractions of the panel's size
+     * @param x left edge of the region, from 0 to 1
+     * @param y top edge of the region, from 0 to 1
+     * @param width width of the region, greater than 0 and reaching no further than the right edge of the panel
+     * @param height height of the region, greater than 0 and reaching no further than the bottom edge of the panel
+     */
+    public void setRegion(double x, double y, double width, double height) {
+        if (!(x >= 0.0 && y >= 0.0 && width > 0.0 && height > 0.0)) {
+            throw new IllegalArgumentException("Region must start within the panel and have a positive size");
+        } else if (x + width > 1.0 || y + height > 1.0) {
+            throw new IllegalArgumentException("Region must end within the panel");
+        }
+
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+    }
+
+    // Getters
+
+    /**
+     * @return the camera the world is shown from
+     */
+    public Camera getCamera() {
+        return camera;
+    }
+
+    /**
+     * @return the left edge of the viewport as a fraction of the panel's width
+     */
+    public double getX() {
+        return x;
+    }
+
+    /**
+     * @return the top edge of the viewport as a fraction of the panel's height
+     */
+    public double getY() {
+        return y;
+    }
+
+    /**
+     * @return the width of the viewport as a fraction of the panel's width
+     */
+    public double getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the height of the viewport as a fraction of the panel's height
+     */
+    public double getHeight() {
+        return height;
+    }
+
+    // Indices of the triangles of a mesh facing the camera, with the triangles themselves if the mesh isn't indexed
+    private static final class FacingSet {
+        private int[] indices = new int[64];
+
+        private Triangle3D[] triangles = new Triangle3D[64];
+
+        private int size;
+
+        // Empty the set, keeping its arrays for the next time it is filled
+        private void clear() {
+            Arrays.fill(triangles, 0, size, null);
+            size = 0;
+        }
+
+        // Add a triangle after every triangle added so far
+        private void add(int index, Triangle3D triangle) {
+            if (size == indices.length) {
+                indices = Arrays.copyOf(indices, size * 2);
+                triangles = Arrays.copyOf(triangles, size * 2);
+            }
+
+            indices[size] = index;
+            triangles[size++] = triangle;
+        }
+    }
+
+    // Everything the triangles and lines of a viewport are computed from, so an update can tell if they would change
+    // Meshes are compared by identity since they are never changed once created, and lights by their version
+    private static final class ViewInputs {
+        private final Mesh3D[] meshes;
+
+        private final long transformVersion;
+
+        private final Lighting lighting;
+
+        private final long lightingVersion;
+
+        private final ShadingMode shadingMode;
+
+        private final boolean depthSorting;
+
+        private final ViewMode viewMode;
+
+        private final int renderWidth;
+
+        private final int renderHeight;
+
+        private final double[] region;
+
+        private final double[] pose;
+
+        private final Matrix viewMat;
+
+        private final Vector viewPos;
+
+        private ViewInputs(FrameState frame, Camera camera, int renderWidth, int renderHeight, double x, double y,
+                           double width, double height) {
+            meshes = frame.getMeshes().toArray(new Mesh3D[0]);
+            transformVersion = frame.getTransformVersion();
+            lighting = frame.getLighting();
+            lightingVersion = lighting.getVersion();
+            shadingMode = frame.getShadingMode();
+            depthSorting = frame.isDepthSorting();
+            viewMode = frame.getViewMode();
+            this.renderWidth = renderWidth;
+            this.renderHeight = renderHeight;
+            region = new double[]{x, y, width, height};
+
+            Vector worldPos = camera.getWorldPos();
+            pose = new double[]{worldPos.get(X_INDEX), worldPos.get(Y_INDEX), worldPos.get(Z_INDEX),
+                    camera.getYaw(), camera.getPitch(), camera.getRoll()};
+            viewMat = camera.getPointAtMat().getTransposed();
+            viewPos = worldPos;
+        }
+
+        // Test if a view would produce exactly the same triangles and lines as this one
+        private boolean sameView(ViewInputs other) {
+            return sameScene(other) && Arrays.equals(region, other.region) && Arrays.equals(pose, other.pose);
+        }
+
+        // Test if a view shows the same scene as this one at the same resolution, from any camera pose
+        private boolean sameScene(ViewInputs other) {
+            return sameWorld(other) && lighting == other.lighting && lightingVersion == other.lightingVersion
+                    && shadingMode == other.shadingMode && depthSorting == other.depthSorting
+                    && viewMode == other.viewMode && renderWidth == other.renderWidth
+                    && renderHeight == other.renderHeight;
+        }
+
+        // Test if the same triangles face the camera in a view as in this one, which holds while the camera only
+        // turns since nothing but the near plane culls triangles outside of its view
+        private boolean sameFacing(ViewInputs other) {
+            return sameWorld(other) && pose[0] == other.pose[0] && pose[1] == other.pose[1]
+                    && pose[2] == other.pose[2];
+        }
+
+        // Test if a view has the same meshes in the same world transform as this one
+        private boolean sameWorld(ViewInputs other) {
+            if (other == null || transformVersion != other.transformVersion || meshes.length != other.meshes.length) {
+                return false;
+            }
+
+            for (int i = 0; i < meshes.length; i++) {
+                if (meshes[i] != other.meshes[i]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,442 @@
+package graphicstructs;
+
+import mathkit.Vector;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Mesh stored in a compact quantized form, decoded on the fly as it is rendered
+ * <br>Triangles are split into chunks matching the clusters of the mesh. Each chunk holds its own vertices, so the
+ * corners of a triangle are indices into its chunk that fit in a single byte. Positions are stored as 16 bit offsets
+ * from the corner of the chunk on a grid shared by the whole mesh, so vertices shared between chunks decode to the same
+ * point and no cracks open between them. Normals are octahedron encoded into 32 bits.
+ */
+public final class CompressedMesh3D extends IndexedMesh3D {
+    /**
+     * Largest offset of a vertex from the corner of its chunk along an axis
+     */
+    private static final int MAX_OFFSET = 0xFFFF - 1;
+
+    /**
+     * Largest value of each component of an octahedron encoded normal
+     */
+    private static final double OCT_SCALE = Short.MAX_VALUE;
+
+    /**
+     * Distance between neighbouring points of the grid along each axis
+     */
+    private final double[] step;
+
+    /**
+     * Corner of each chunk in model space (three values per chunk)
+     */
+    private final double[] chunkOrigins;
+
+    /**
+     * Index of the first vertex of each chunk, followed by the amount of vertices
+     */
+    private final int[] chunkVertexStarts;
+
+    /**
+     * Offset of each vertex from the corner of its chunk in grid steps, read as unsigned (three values per vertex)
+     */
+    private final short[] positions;
+
+    /**
+     * Octahedron encoded normal of each vertex, null if the triangles have no normals
+     */
+    private final int[] normals;
+
+    /**
+     * Texture coordinates of each vertex (two values per vertex), null if no triangle has texture coordinates.
+     * Vertices of triangles without texture coordinates hold NaN.
+     */
+    private final float[] textureCoords;
+
+    /**
+     * Index of the vertex at each corner of each triangle within its chunk, read as unsigned (three values per
+     * triangle)
+     */
+    private final byte[] corners;
+
+    /**
+     * Color of each triangle as a packed ARGB value, or a single color shared by every triangle
+     */
+    private final int[] colors;
+
+    // Constructors
+
+    private CompressedMesh3D(double[] clusterCones, int triCount, double[] step, double[] chunkOrigins,
+                             int[] chunkVertexStarts, short[] positions, int[] normals, float[] textureCoords,
+                             byte[] corners, int[] colors) {
+        super(clusterCones, triCount);
+
+        this.step = step;
+        this.chunkOrigins = chunkOrigins;
+        this.chunkVertexStarts = chunkVertexStarts;
+        this.positions = positions;
+        this.normals = normals;
+        this.textureCoords = textureCoords;
+        this.corners = corners;
+        this.colors = colors;
+    }
+
+    /**
+     * Compress a mesh, keeping the order of its triangles
+     * <br>Corners within a chunk share a vertex if they hold the same vector object with the same normal and texture
+     * coordinates
+     * @param mesh mesh to compress
+     * @return a compressed copy of the mesh with the same name and material
+     */
+    public static CompressedMesh3D compress(Mesh3D mesh) {
+        if (mesh == null) {
+            throw new IllegalArgumentException("Cannot compress a null mesh");
+        } else if (mesh instanceof CompressedMesh3D) {
+            return (CompressedMesh3D) mesh;
+        }
+
+        int triCount = mesh.size();
+        int chunkCount = (triCount + CLUSTER_SIZE - 1) / CLUSTER_SIZE;
+        Triangle3D[] tris = new Triangle3D[triCount];
+        Texture texture = mesh.getMaterial() == null ? null : mesh.getMaterial().getDiffuseMap();
+        boolean hasNormals = triCount > 0;
+        boolean hasTextureCoords = false;
+        boolean sameColor = true;
+
+        int triIndex = 0;
+        for (Triangle3D tri : mesh) {
+            tris[triIndex] = tri;
+            hasNormals &= tri.hasNormals();
+            hasTextureCoords |= tri.hasTextureCoords();
+            sameColor &= tri.getARGB() == tris[0].getARGB();
+
+            if (tri.isTextured() && tri.getTexture() != texture) {
+                throw new IllegalArgumentException("Compressed meshes take their texture from their material");
+            }
+
+            triIndex++;
+        }
+
+        // the grid is fine enough for the largest chunk to span it, and anchored at the corner of the mesh
+        double[] meshMin = {Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE};
+        double[] step = new double[3];
+
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            double[] min = {Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE};
+            double[] max = {-Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+
+            for (int tri = chunk * CLUSTER_SIZE; tri < Math.min(triCount, (chunk + 1) * CLUSTER_SIZE); tri++) {
+                for (Vector vertex : tris[tri]) {
+                    for (int i = 0; i < 3; i++) {
+                        min[i] = Math.min(min[i], vertex.get(i));
+                        max[i] = Math.max(max[i], vertex.get(i));
+                    }
+                }
+            }
+
+            for (int i = 0; i < 3; i++) {
+                meshMin[i] = Math.min(meshMin[i], min[i]);
+                step[i] = Math.max(step[i], (max[i] - min[i]) / MAX_OFFSET);
+            }
+        }
+
+        for (int i = 0; i < 3; i++) {
+            if (!(step[i] > 0.0)) {
+                step[i] = 1.0;
+            }
+        }
+
+        double[] chunkOrigins = new double[chunkCount * 3];
+        int[] chunkVertexStarts = new int[chunkCount + 1];
+        short[] positions = new short[triCount * Triangle3D.SIZE * 3];
+        int[] normals = hasNormals ? new int[triCount * Triangle3D.SIZE] : null;
+        float[] textureCoords = hasTextureCoords ? new float[triCount * Triangle3D.SIZE * 2] : null;
+        byte[] corners = new byte[triCount * Triangle3D.SIZE];
+
+        Map<Vector, Integer> vertexIds = new IdentityHashMap<>();
+        Map<VertexKey, Integer> chunkVertices = new HashMap<>();
+        long[] gridPoints = new long[CLUSTER_SIZE * Triangle3D.SIZE * 3];
+        int vertexCount = 0;
+
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            int firstVertex = vertexCount;
+            long[] originPoint = {Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE};
+            chunkVertices.clear();
+            chunkVertexStarts[chunk] = firstVertex;
+
+            for (int tri = chunk * CLUSTER_SIZE; tri < Math.min(triCount, (chunk + 1) * CLUSTER_SIZE); tri++) {
+                for (int corner = 0; corner < Triangle3D.SIZE; corner++) {
+                    Vector vertex = tris[tri].get(corner);
+                    int normal = hasNormals ? encodeNormal(tris[tri].getNormal(corner)) : 0;
+                    Vector textureCoord = tris[tri].hasTextureCoords() ? tris[tri].getTextureCoord(corner) : null;
+
+                    Integer vertexId = vertexIds.computeIfAbsent(vertex, key -> vertexIds.size());
+                    VertexKey key = new VertexKey(vertexId, normal, textureCoord);
+                    Integer localIndex = chunkVertices.get(key);
+
+                    if (localIndex == null) {
+                        localIndex = vertexCount - firstVertex;
+                        chunkVertices.put(key, localIndex);
+
+                        for (int i = 0; i < 3; i++) {
+                            long gridPoint = Math.round((vertex.get(i) - meshMin[i]) / step[i]);
+                            gridPoints[localIndex * 3 + i] = gridPoint;
+                            originPoint[i] = Math.min(originPoint[i], gridPoint);
+                        }
+
+                        if (normals != null) {
+                            normals[vertexCount] = normal;
+                        }
+
+                        if (textureCoords != null) {
+                            textureCoords[vertexCount * 2] = textureCoord == null ? Float.NaN
+                                    : (float) textureCoord.get(0);
+                            textureCoords[vertexCount * 2 + 1] = textureCoord == null ? Float.NaN
+                                    : (float) textureCoord.get(1);
+                        }
+
+                        vertexCount++;
+                    }
+
+                    corners[tri * Triangle3D.SIZE + corner] = (byte) (int) localIndex;
+                }
+            }
+
+            for (int i = 0; i < 3; i++) {
+                chunkOrigins[chunk * 3 + i] = meshMin[i] + originPoint[i] * step[i];
+            }
+
+            for (int vertex = firstVertex; vertex < vertexCount; vertex++) {
+                for (int i = 0; i < 3; i++) {
+                    long offset = gridPoints[(vertex - firstVertex) * 3 + i] - originPoint[i];
+                    positions[vertex * 3 + i] = (short) offset;
+                }
+            }
+        }
+
+        chunkVertexStarts[chunkCount] = vertexCount;
+
+        int[] colors;
+        if (sameColor) {
+            colors = new int[] {triCount > 0 ? tris[0].getARGB() : 0};
+        } else {
+            colors = new int[triCount];
+            for (int tri = 0; tri < triCount; tri++) {
+                colors[tri] = tris[tri].getARGB();
+            }
+        }
+
+        CompressedMesh3D compressedMesh = new CompressedMesh3D(mesh.getClusterCones(), triCount, step, chunkOrigins,
+                chunkVertexStarts, Arrays.copyOf(positions, vertexCount * 3),
+                normals == null ? null : Arrays.copyOf(normals, vertexCount),
+                textureCoords == null ? null : Arrays.copyOf(textureCoords, vertexCount * 2), corners, colors);
+        compressedMesh.setName(mesh.getName());
+        compressedMesh.setMaterial(mesh.getMaterial());
+        return compressedMesh;
+    }
+
+    // Encode a unit normal by projecting it onto an octahedron and folding the lower half over the upper half
+    private static int encodeNormal(Vector normal) {
+        double x = normal.get(0);
+        double y = normal.get(1);
+        double z = normal.get(2);
+        double sum = Math.abs(x) + Math.abs(y) + Math.abs(z);
+
+        if (!(sum > 0.0)) {
+            return 0;
+        }
+
+        double octX = x / sum;
+        double octY = y / sum;
+
+        if (z < 0.0) {
+            double foldedX = (1.0 - Math.abs(octY)) * (octX >= 0.0 ? 1.0 : -1.0);
+            octY = (1.0 - Math.abs(octX)) * (octY >= 0.0 ? 1.0 : -1.0);
+            octX = foldedX;
+        }
+
+        int encodedX = (int) Math.round(Math.max(-1.0, Math.min(1.0, octX)) * OCT_SCALE);
+        int encodedY = (int) Math.round(Math.max(-1.0, Math.min(1.0, octY)) * OCT_SCALE);
+        return (encodedX << 16) | (encodedY & 0xFFFF);
+    }
+
+    // Decode an octahedron encoded normal back into a unit vector
+    private static Vector decodeNormal(int encoded) {
+        double x = (short) (encoded >> 16) / OCT_SCALE;
+        double y = (short) encoded / OCT_SCALE;
+        double z = 1.0 - Math.abs(x) - Math.abs(y);
+
+        if (z < 0.0) {
+            double unfoldedX = (1.0 - Math.abs(y)) * (x >= 0.0 ? 1.0 : -1.0);
+            y = (1.0 - Math.abs(x)) * (y >= 0.0 ? 1.0 : -1.0);
+            x = unfoldedX;
+        }
+
+        double length = Math.sqrt(x * x + y * y + z * z);
+        return length > 0.0 ? new Vector(x / length, y / length, z / length) : new Vector(0.0, 0.0, 0.0);
+    }
+
+    // Index of the vertex at a corner of a triangle among every vertex of the mesh
+    private int vertexIndex(int index, int corner) {
+        return chunkVertexStarts[index / CLUSTER_SIZE] + (corners[index * Triangle3D.SIZE + corner] & 0xFF);
+    }
+
+    // Getters
+
+    /**
+     * @return the amount of bytes held by the compressed data of this mesh, leaving out object headers
+     */
+    public long getDataSize() {
+        long size = (long) step.length * Double.BYTES + (long) chunkOrigins.length * Double.BYTES
+                + (long) chunkVertexStarts.length * Integer.BYTES + (long) positions.length * Short.BYTES
+                + corners.length + (long) colors.length * Integer.BYTES
+                + (long) getClusterCones().length * Double.BYTES;
+
+        if (normals != null) {
+            size += (long) normals.length * Integer.BYTES;
+        }
+
+        if (textureCoords != null) {
+            size += (long) textureCoords.length * Float.BYTES;
+        }
+
+        return size;
+    }
+
+    // Overrides
+
+    @Override
+    public double getX(int index, int corner) {
+        return chunkOrigins[index / CLUSTER_SIZE * 3] + (positions[vertexIndex(index, corner) * 3] & 0xFFFF) * step[0];
+    }
+
+    @Override
+    public double getY(int index, int corner) {
+        return chunkOrigins[index / CLUSTER_SIZE * 3 + 1]
+                + (positions[vertexIndex(index, corner) * 3 + 1] & 0xFFFF) * step[1];
+    }
+
+    @Override
+    public double getZ(int index, int corner) {
+        return chunkOrigins[index / CLUSTER_SIZE * 3 + 2]
+                + (positions[vertexIndex(index, corner) * 3 + 2] & 0xFFFF) * step[2];
+    }
+
+    @Override
+    public int getVertexIndex(int index, int corner) {
+        return vertexIndex(index, corner);
+    }
+
+    @Override
+    public int getARGB(int index) {
+        return colors.length == 1 ? colors[0] : colors[index];
+    }
+
+    @Override
+    public boolean hasNormals() {
+        return normals != null;
+    }
+
+    @Override
+    public Vector getNormal(int index, int corner) {
+        return decodeNormal(normals[vertexIndex(index, corner)]);
+    }
+
+    @Override
+    public boolean isTextured(int index) {
+        return textureCoords != null && !Float.isNaN(textureCoords[vertexIndex(index, 0) * 2]) && getMaterial() != null
+                && getMaterial().getDiffuseMap() != null;
+    }
+
+    @Override
+    public Vector getTextureCoord(int index, int corner) {
+        int offset = vertexIndex(index, corner) * 2;
+        return new Vector(textureCoords[offset], textureCoords[offset + 1]);
+    }
+
+    /**
+     * Test if a point in model space lies in front of a triangle, decoding the plane of the triangle from its corners
+     * @param index index of the triangle in the order this mesh iterates its triangles
+     * @param x x value of the point in model space
+     * @param y y value of the point in model space
+     * @param z z value of the point in model space
+     * @return whether or not the front of the triangle faces the point
+     */
+    @Override
+    public boolean facesTowards(int index, double x, double y, double z) {
+        int chunk = index / CLUSTER_SIZE;
+        int first = vertexIndex(index, 0) * 3;
+        int second = vertexIndex(index, 1) * 3;
+        int third = vertexIndex(index, 2) * 3;
+
+        // work in grid steps relative to the first corner, where every value is an exact integer
+        double firstX = positions[first] & 0xFFFF;
+        double firstY = positions[first + 1] & 0xFFFF;
+        double firstZ = positions[first + 2] & 0xFFFF;
+        double edge1X = ((positions[second] & 0xFFFF) - firstX) * step[0];
+        double edge1Y = ((positions[second + 1] & 0xFFFF) - firstY) * step[1];
+        double edge1Z = ((positions[second + 2] & 0xFFFF) - firstZ) * step[2];
+        double edge2X = ((positions[third] & 0xFFFF) - firstX) * step[0];
+        double edge2Y = ((positions[third + 1] & 0xFFFF) - firstY) * step[1];
+        double edge2Z = ((positions[third + 2] & 0xFFFF) - firstZ) * step[2];
+
+        double normalX = edge1Y * edge2Z - edge1Z * edge2Y;
+        double normalY = edge1Z * edge2X - edge1X * edge2Z;
+        double normalZ = edge1X * edge2Y - edge1Y * edge2X;
+
+        double toPointX = x - chunkOrigins[chunk * 3] - firstX * step[0];
+        double toPointY = y - chunkOrigins[chunk * 3 + 1] - firstY * step[1];
+        double toPointZ = z - chunkOrigins[chunk * 3 + 2] - firstZ * step[2];
+        return normalX * toPointX + normalY * toPointY + normalZ * toPointZ > 0.0;
+    }
+
+    @Override
+    public Vector getFaceNormal(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IllegalArgumentException("Index " + index + " is out of bounds");
+        }
+
+        Vector first = new Vector(getX(index, 0), getY(index, 0), getZ(index, 0));
+        Vector second = new Vector(getX(index, 1), getY(index, 1), getZ(index, 1));
+        Vector third = new Vector(getX(index, 2), getY(index, 2), getZ(index, 2));
+        Vector surfNorm = second.subtract(first).crossProduct(third.subtract(first));
+        return surfNorm.dotProduct(surfNorm) > 0.0 ? surfNorm.normalized() : surfNorm;
+    }
+
+    // Identity of a vertex within a chunk, made of its position object, encoded normal and texture coordinates
+    private static final class VertexKey {
+        private final int vertexId;
+
+        private final int normal;
+
+        private final long textureCoord;
+
+        private VertexKey(int vertexId, int normal, Vector textureCoord) {
+            this.vertexId = vertexId;
+            this.normal = normal;
+            // missing coordinates are keyed as NaN like they are stored, so they never match coordinates of 0
+            float u = textureCoord == null ? Float.NaN : (float) textureCoord.get(0);
+            float v = textureCoord == null ? Float.NaN : (float) textureCoord.get(1);
+            this.textureCoord = ((long) Float.floatToIntBits(u) << 32) | (Float.floatToIntBits(v) & 0xFFFFFFFFL);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof VertexKey)) {
+                return false;
+            }
+
+            VertexKey key = (VertexKey) other;
+            return vertexId == key.vertexId && normal == key.normal && textureCoord == key.textureCoord;
+        }
+
+        @Override
+        public int hashCode() {
+            return (vertexId * 31 + normal) * 31 + Long.hashCode(textureCoord);
+        }
+    }
+
+}
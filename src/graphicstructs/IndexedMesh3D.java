@@ -0,0 +1,171 @@
+package graphicstructs;
+
+import mathkit.Vector;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Mesh storing its triangles as packed vertex and index data instead of triangle objects
+ * <br>Triangles are only created as objects when asked for, so the renderer reads corners through
+ * {@link #getX(int, int)}, {@link #getY(int, int)} and {@link #getZ(int, int)} instead. Textured triangles take their
+ * texture from the material of the mesh. Indexed meshes cannot be changed.
+ */
+public abstract class IndexedMesh3D extends Mesh3D {
+    /**
+     * Amount of triangles in this mesh
+     */
+    private final int triCount;
+
+    // Constructors
+
+    // Create a mesh of a given amount of triangles, given the normal cones of its clusters
+    IndexedMesh3D(double[] clusterCones, int triCount) {
+        super(clusterCones);
+        this.triCount = triCount;
+    }
+
+    // Getters
+
+    /**
+     * @param index index of the triangle
+     * @param corner corner of the triangle, from 0 to 2
+     * @return the x value of the corner in model space
+     */
+    public abstract double getX(int index, int corner);
+
+    /**
+     * @param index index of the triangle
+     * @param corner corner of the triangle, from 0 to 2
+     * @return the y value of the corner in model space
+     */
+    public abstract double getY(int index, int corner);
+
+    /**
+     * @param index index of the triangle
+     * @param corner corner of the triangle, from 0 to 2
+     * @return the z value of the corner in model space
+     */
+    public abstract double getZ(int index, int corner);
+
+    /**
+     * Corners sharing a vertex index share their position, so a vertex only needs to be transformed once
+     * @param index index of the triangle
+     * @param corner corner of the triangle, from 0 to 2
+     * @return the index of the vertex at the corner among the vertices of this mesh
+     */
+    public abstract int getVertexIndex(int index, int corner);
+
+    /**
+     * @param index index of the triangle
+     * @return the color of the triangle as a packed ARGB value
+     */
+    public abstract int getARGB(int index);
+
+    /**
+     * @return whether or not every triangle has vertex normals
+     */
+    public abstract boolean hasNormals();
+
+    /**
+     * @param index index of the triangle
+     * @param corner corner of the triangle, from 0 to 2
+     * @return the normal at the corner in model space, must only be called if the mesh has normals
+     */
+    public abstract Vector getNormal(int index, int corner);
+
+    /**
+     * @param index index of the triangle
+     * @return whether or not the triangle has texture coordinates and the mesh has a texture to map onto it
+     */
+    public abstract boolean isTextured(int index);
+
+    /**
+     * @param index index of the triangle
+     * @param corner corner of the triangle, from 0 to 2
+     * @return the texture coordinates at the corner, must only be called if the triangle is textured
+     */
+    public abstract Vector getTextureCoord(int index, int corner);
+
+    // Overrides
+
+    /**
+     * @return the number of triangles in this mesh
+     */
+    @Override
+    public int size() {
+        return triCount;
+    }
+
+    /**
+     * Create a triangle object holding a copy of a triangle of this mesh
+     * @param index index of triangle to retrieve, must be within the size of the mesh
+     * @return a new triangle equal to the triangle at the index
+     */
+    @Override
+    public Triangle3D get(int index) {
+        if (index < 0 || index >= triCount) {
+            throw new IllegalArgumentException("Index " + index + " is out of bounds");
+        }
+
+        Triangle3D tri = new Triangle3D(
+                new Vector(getX(index, 0), getY(index, 0), getZ(index, 0)),
+                new Vector(getX(index, 1), getY(index, 1), getZ(index, 1)),
+                new Vector(getX(index, 2), getY(index, 2), getZ(index, 2)),
+                getARGB(index)
+        );
+
+        if (hasNormals()) {
+            tri.setNormals(getNormal(index, 0), getNormal(index, 1), getNormal(index, 2));
+        }
+
+        if (isTextured(index)) {
+            tri.setTexture(getMaterial().getDiffuseMap());
+            tri.setTextureCoords(getTextureCoord(index, 0), getTextureCoord(index, 1), getTextureCoord(index, 2));
+        }
+
+        return tri;
+    }
+
+    /**
+     * Indexed meshes cannot be changed, so their normals must be computed before they are packed
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void computeVertexNormals() {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " meshes cannot be changed");
+    }
+
+    /**
+     * @return a description of the size of this mesh, since its triangles are not stored as objects
+     */
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + triCount + " triangles]";
+    }
+
+    /**
+     * @return an iterator creating a copy of each triangle of this mesh in order
+     */
+    @Override
+    public Iterator<Triangle3D> iterator() {
+        return new Iterator<>() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < triCount;
+            }
+
+            @Override
+            public Triangle3D next() {
+                if (index >= triCount) {
+                    throw new NoSuchElementException();
+                }
+
+                return get(index++);
+            }
+        };
+    }
+
+}
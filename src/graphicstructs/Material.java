@@ -0,0 +1,211 @@
+package graphicstructs;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Surface properties of triangles read from a .mtl file
+ */
+public class Material {
+    /**
+     * Name the material is referred to by in .obj files
+     */
+    private final String name;
+
+    /**
+     * Diffuse color of the material packed as 0xAARRGGBB
+     */
+    private int diffuseARGB;
+
+    /**
+     * Texture mapped across the diffuse color, null if the material has no texture
+     */
+    private Texture diffuseMap;
+
+    // Constructors
+
+    /**
+     * Create a white material without a texture
+     * @param name name the material is referred to by
+     */
+    public Material(String name) {
+        if (name == null) {
+            throw new IllegalArgumentException("Material must have a name");
+        }
+
+        this.name = name;
+        diffuseARGB = PackedColor.WHITE;
+    }
+
+    /**
+     * Read every material of a .mtl file, loading each texture only once even if several materials share it
+     * <br>Only diffuse colors (Kd) and diffuse textures (map_Kd) are read, other statements are ignored. A color
+     * given as a single value is gray, and materials whose texture is missing are warned about and keep their color.
+     * @param file .mtl file to read
+     * @return every material of the file by name
+     * @throws IOException if the file or one of its textures cannot be read, or a color is malformed
+     */
+    public static Map<String, Material> loadLibrary(File file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("Cannot read materials from a null file");
+        }
+
+        Map<String, Material> materials = new HashMap<>();
+        Map<String, Texture> textures = new HashMap<>();
+
+        try (BufferedReader fileReader = new BufferedReader(new FileReader(file))) {
+            Material currMaterial = null;
+            String line = fileReader.readLine();
+            int lineNumber = 1;
+
+            while (line != null) {
+                String[] tokens = line.trim().split("\\s+", 2);
+
+                if (tokens.length == 2) {
+                    switch (tokens[0]) {
+                        case "newmtl":
+                            currMaterial = new Material(tokens[1].trim());
+                            materials.put(currMaterial.getName(), currMaterial);
+                            break;
+                        case "Kd":
+                            if (currMaterial != null) {
+                                currMaterial.setDiffuseARGB(parseColor(tokens[1], file, lineNumber));
+                            }
+                            break;
+                        case "map_Kd":
+                            if (currMaterial != null) {
+                                File textureFile = textureFile(file, tokens[1]);
+                                if (!textureFile.isFile()) {
+                                    System.err.println("Could not find texture " + textureFile + " on line "
+                                            + lineNumber + " of " + file + ", material " + currMaterial.getName()
+                                            + " keeps its color");
+                                    break;
+                                }
+
+                                Texture texture = textures.get(textureFile.getPath());
+                                if (texture == null) {
+                                    texture = Texture.load(textureFile);
+                                    textures.put(textureFile.getPath(), texture);
+                                }
+
+                                currMaterial.setDiffuseMap(texture);
+                            }
+                            break;
+                    }
+                }
+
+                line = fileReader.readLine();
+                lineNumber++;
+            }
+        }
+
+        return materials;
+    }
+
+    /**
+     * Find the textures used by the materials of a .mtl file without loading them
+     * @param file .mtl file to read
+     * @return every texture file used by the materials of the file, in the order they first appear, including
+     * textures that do not exist
+     * @throws IOException if the file cannot be read
+     */
+    public static List<File> findTextures(File file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("Cannot read materials from a null file");
+        }
+
+        Set<File> textureFiles = new LinkedHashSet<>();
+
+        try (BufferedReader fileReader = new BufferedReader(new FileReader(file))) {
+            String line = fileReader.readLine();
+
+            while (line != null) {
+                String[] tokens = line.trim().split("\\s+", 2);
+                if (tokens.length == 2 && tokens[0].equals("map_Kd")) {
+                    textureFiles.add(textureFile(file, tokens[1]));
+                }
+
+                line = fileReader.readLine();
+            }
+        }
+
+        return new ArrayList<>(textureFiles);
+    }
+
+    // Find the texture file named by the arguments of a map_Kd statement, relative to the .mtl file
+    private static File textureFile(File library, String arguments) {
+        // options may come before the path, which is always last
+        String[] tokens = arguments.trim().split("\\s+");
+        return new File(library.getParentFile(), tokens[tokens.length - 1]);
+    }
+
+    // Read the values of a Kd statement as a color, where missing green and blue values are the same as red
+    private static int parseColor(String values, File file, int lineNumber) throws IOException {
+        String[] channels = values.trim().split("\\s+");
+        if (channels.length > 3) {
+            throw new IOException("Malformed color on line " + lineNumber + " of " + file);
+        }
+
+        try {
+            int red = toChannel(channels[0]);
+            int green = channels.length > 1 ? toChannel(channels[1]) : red;
+            int blue = channels.length > 2 ? toChannel(channels[2]) : red;
+            return PackedColor.pack(red, green, blue);
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed color on line " + lineNumber + " of " + file, e);
+        }
+    }
+
+    // Convert a color channel between 0 and 1 to a channel between 0 and 255
+    private static int toChannel(String value) {
+        return (int) Math.round(Math.max(0.0, Math.min(1.0, Double.parseDouble(value))) * 255.0);
+    }
+
+    // Setters
+
+    /**
+     * @param diffuseARGB diffuse color of the material packed as 0xAARRGGBB
+     */
+    public void setDiffuseARGB(int diffuseARGB) {
+        this.diffuseARGB = diffuseARGB;
+    }
+
+    /**
+     * @param diffuseMap texture mapped across the diffuse color, or null for no texture
+     */
+    public void setDiffuseMap(Texture diffuseMap) {
+        this.diffuseMap = diffuseMap;
+    }
+
+    // Getters
+
+    /**
+     * @return the name the material is referred to by in .obj files
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the diffuse color of the material packed as 0xAARRGGBB
+     */
+    public int getDiffuseARGB() {
+        return diffuseARGB;
+    }
+
+    /**
+     * @return the texture mapped across the diffuse color, or null if the material has no texture
+     */
+    public Texture getDiffuseMap() {
+        return diffuseMap;
+    }
+
+}
@@ -13,6 +13,12 @@ public final class Math3D {
 
     private static final Vector FORWARD = new Vector(0, 0, 1);
 
+    /**
+     * Largest difference from the identity matrix allowed in the product of a matrix's transpose with itself for the
+     * matrix to count as orthonormal, leaving room for rounding in rotations composed from several others
+     */
+    private static final double ORTHONORMAL_TOLERANCE = 1e-6;
+
     private Math3D() {
 
     }
@@ -113,4 +119,25 @@ public final class Math3D {
         return FORWARD.multiplyMatrix(rotationMatrix);
     }
 
+    /**
+     * Check whether a matrix only rotates or reflects, so its transpose is its inverse
+     * @param matrix matrix to check, must be 3x3
+     * @return whether or not the product of the transpose of the matrix with the matrix is the identity matrix, within
+     * a small tolerance for rounding
+     */
+    public static boolean isOrthonormal(Matrix matrix) {
+        for (int i = 0; i < 3; i++) {
+            for (int j = i; j < 3; j++) {
+                double dot = matrix.get(0, i) * matrix.get(0, j) + matrix.get(1, i) * matrix.get(1, j)
+                        + matrix.get(2, i) * matrix.get(2, j);
+
+                if (Math.abs(dot - (i == j ? 1.0 : 0.0)) > ORTHONORMAL_TOLERANCE) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
 }
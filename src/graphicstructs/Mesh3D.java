@@ -5,23 +5,82 @@ import mathkit.Vector;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Scanner;
+import java.util.Map;
 
 /**
  * Structure to store triangles in a 3D space as a mesh
+ * <br>Triangles are reordered on creation into clusters of nearby triangles facing the same way, so clusters facing
+ * away from the camera can be culled together
  */
 public class Mesh3D implements Iterable<Triangle3D> {
+    /**
+     * Amount of values stored for the plane of each triangle
+     */
+    private static final int FACE_PLANE_SIZE = 4;
+
+    /**
+     * Amount of consecutive triangles grouped into a cluster for culling
+     */
+    public static final int CLUSTER_SIZE = 64;
+
+    /**
+     * Amount of values stored for the normal cone of each cluster
+     */
+    private static final int CLUSTER_CONE_SIZE = 7;
+
+    /**
+     * Bits per axis of the Morton code used to group nearby triangles into clusters
+     */
+    private static final int MORTON_BITS = 10;
+
+    /**
+     * Largest cell index along an axis of the Morton code
+     */
+    private static final long MORTON_CELLS = (1L << MORTON_BITS) - 1;
+
     /**
      * Container for all triangles in mesh
      */
     private final SinglyLinkedList<Triangle3D> con;
 
+    /**
+     * Plane of each triangle in model space, stored as the unit surface normal followed by the distance of the plane
+     * from the origin along it (four values per triangle)
+     */
+    private final double[] facePlanes;
+
+    /**
+     * Normal cone of each cluster of triangles, stored as the apex, the unit axis and the sine of the half angle
+     * (seven values per cluster). Clusters that cannot be culled as a whole have a cutoff above 1.
+     */
+    private final double[] clusterCones;
+
+    /**
+     * Name of the object or group this mesh was read from
+     */
+    private String name;
+
+    /**
+     * Material shared by the triangles of this mesh, null if it has none
+     */
+    private Material material;
+
+    /**
+     * Bounding box of the mesh in model space as its minimum and maximum corners, computed the first time it is needed
+     */
+    private volatile double[] bounds;
+
     // Constructors
 
     /**
      * Create a mesh from any amount of triangles
+     * <br>The triangles are reordered into clusters of {@link #CLUSTER_SIZE} nearby triangles facing the same way, so
+     * the mesh does not iterate them in the order they were given and triangle indices follow the new order. Meshes of
+     * no more than one cluster keep their order.
      * @param triangles triangles that create this mesh
      */
     public Mesh3D(Triangle3D ... triangles) {
@@ -29,15 +88,209 @@ public class Mesh3D implements Iterable<Triangle3D> {
             throw new IllegalArgumentException("Cannot create a mesh from null triangles");
         }
 
-        con = new SinglyLinkedList<>(triangles);
+        con = clusterTriangles(new SinglyLinkedList<>(triangles));
+        facePlanes = computeFacePlanes();
+        clusterCones = computeClusterCones();
     }
 
+    /**
+     * Create a mesh from a list of triangles
+     * <br>The triangles are reordered into clusters of {@link #CLUSTER_SIZE} nearby triangles facing the same way, so
+     * the mesh does not iterate them in the order of the list and triangle indices follow the new order. Meshes of no
+     * more than one cluster keep their order.
+     * @param triList triangles that create this mesh
+     */
     public Mesh3D(SinglyLinkedList<Triangle3D> triList) {
         if (triList == null) {
             throw new IllegalArgumentException("Cannot create a mesh from a null list");
         }
 
-        con = triList;
+        con = clusterTriangles(triList);
+        facePlanes = computeFacePlanes();
+        clusterCones = computeClusterCones();
+    }
+
+    // Create a mesh from triangles that are already ordered into clusters, keeping their order
+    Mesh3D(SinglyLinkedList<Triangle3D> triList, boolean clustered) {
+        if (triList == null) {
+            throw new IllegalArgumentException("Cannot create a mesh from a null list");
+        }
+
+        con = clustered ? triList : clusterTriangles(triList);
+        facePlanes = computeFacePlanes();
+        clusterCones = computeClusterCones();
+    }
+
+    // Create a mesh whose triangles are stored by a subclass, which answers every query about its triangles
+    Mesh3D(double[] clusterCones) {
+        con = new SinglyLinkedList<>();
+        facePlanes = new double[0];
+        this.clusterCones = clusterCones;
+    }
+
+    // Order triangles so that each cluster holds triangles facing the same way that are close together
+    // Triangles are grouped by the axis their normal points along most, then by the Morton code of their position
+    private static SinglyLinkedList<Triangle3D> clusterTriangles(SinglyLinkedList<Triangle3D> triList) {
+        int triCount = triList.size();
+        if (triCount <= CLUSTER_SIZE) {
+            return triList;
+        }
+
+        Triangle3D[] tris = new Triangle3D[triCount];
+        double[] min = {Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE};
+        double[] max = {-Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+
+        int triIndex = 0;
+        for (Triangle3D tri : triList) {
+            tris[triIndex++] = tri;
+
+            for (Vector vertex : tri) {
+                for (int i = 0; i < min.length; i++) {
+                    min[i] = Math.min(min[i], vertex.get(i));
+                    max[i] = Math.max(max[i], vertex.get(i));
+                }
+            }
+        }
+
+        long[] keys = new long[triCount];
+        Integer[] order = new Integer[triCount];
+
+        for (int i = 0; i < triCount; i++) {
+            keys[i] = clusterKey(tris[i], min, max);
+            order[i] = i;
+        }
+
+        Arrays.sort(order, (a, b) -> Long.compare(keys[a], keys[b]));
+
+        SinglyLinkedList<Triangle3D> clustered = new SinglyLinkedList<>();
+        for (Integer index : order) {
+            clustered.add(tris[index]);
+        }
+
+        return clustered;
+    }
+
+    // Sort key made from the dominant direction of the normal of a triangle followed by the Morton code of its center
+    private static long clusterKey(Triangle3D tri, double[] min, double[] max) {
+        Vector surfNorm = tri.getSurfaceNormal();
+        int direction = 0;
+
+        for (int i = 1; i < 3; i++) {
+            if (Math.abs(surfNorm.get(i)) > Math.abs(surfNorm.get(direction))) {
+                direction = i;
+            }
+        }
+
+        if (surfNorm.get(direction) < 0.0) {
+            direction += 3;
+        }
+
+        long morton = 0;
+        for (int i = 0; i < 3; i++) {
+            double center = (tri.get(0).get(i) + tri.get(1).get(i) + tri.get(2).get(i)) / 3.0;
+            double extent = max[i] - min[i];
+            long cell = extent > 0.0 ? (long) ((center - min[i]) / extent * MORTON_CELLS) : 0;
+            cell = Math.min(Math.max(cell, 0), MORTON_CELLS);
+
+            // spread the bits of the cell so the three axes interleave
+            for (int bit = 0; bit < MORTON_BITS; bit++) {
+                morton |= ((cell >> bit) & 1L) << (3 * bit + i);
+            }
+        }
+
+        return ((long) direction << (3 * MORTON_BITS)) | morton;
+    }
+
+    // Compute the plane of every triangle so normals never have to be recomputed while rendering
+    private double[] computeFacePlanes() {
+        double[] planes = new double[con.size() * FACE_PLANE_SIZE];
+        int offset = 0;
+
+        for (Triangle3D tri : con) {
+            Vector surfNorm = tri.getSurfaceNormal();
+
+            planes[offset] = surfNorm.get(0);
+            planes[offset + 1] = surfNorm.get(1);
+            planes[offset + 2] = surfNorm.get(2);
+            planes[offset + 3] = surfNorm.dotProduct(tri.get(0));
+            offset += FACE_PLANE_SIZE;
+        }
+
+        return planes;
+    }
+
+    // Bound the normals of each cluster of triangles with a cone whose apex lies behind every triangle in it
+    // A camera inside the cone extended backwards from the apex sees the back of every triangle in the cluster
+    private double[] computeClusterCones() {
+        int triCount = con.size();
+        int clusterCount = (triCount + CLUSTER_SIZE - 1) / CLUSTER_SIZE;
+        double[] cones = new double[clusterCount * CLUSTER_CONE_SIZE];
+        List<Vector> vertices = new ArrayList<>(triCount);
+
+        for (Triangle3D tri : con) {
+            vertices.add(tri.get(0));
+        }
+
+        for (int cluster = 0; cluster < clusterCount; cluster++) {
+            int firstTri = cluster * CLUSTER_SIZE;
+            int lastTri = Math.min(firstTri + CLUSTER_SIZE, triCount);
+            int offset = cluster * CLUSTER_CONE_SIZE;
+
+            // the axis is the average normal and the center is the average first vertex
+            double[] axis = new double[3];
+            double[] center = new double[3];
+
+            for (int tri = firstTri; tri < lastTri; tri++) {
+                for (int i = 0; i < axis.length; i++) {
+                    axis[i] += facePlanes[tri * FACE_PLANE_SIZE + i];
+                    center[i] += vertices.get(tri).get(i) / (lastTri - firstTri);
+                }
+            }
+
+            double axisLength = Math.sqrt(axis[0] * axis[0] + axis[1] * axis[1] + axis[2] * axis[2]);
+            cones[offset + 6] = 2.0; // never culled until proven otherwise
+
+            if (!(axisLength > 0.0)) {
+                continue;
+            }
+
+            for (int i = 0; i < axis.length; i++) {
+                axis[i] /= axisLength;
+            }
+
+            // the cone is only valid if every normal is within 90 degrees of the axis
+            double minAxisDot = 1.0;
+            for (int tri = firstTri; tri < lastTri; tri++) {
+                int planeOffset = tri * FACE_PLANE_SIZE;
+                double axisDot = facePlanes[planeOffset] * axis[0] + facePlanes[planeOffset + 1] * axis[1]
+                        + facePlanes[planeOffset + 2] * axis[2];
+                minAxisDot = Math.min(minAxisDot, axisDot);
+            }
+
+            if (!(minAxisDot > 0.0)) {
+                continue;
+            }
+
+            // move the apex back along the axis until it is behind the plane of every triangle
+            double maxDist = 0.0;
+            for (int tri = firstTri; tri < lastTri; tri++) {
+                int planeOffset = tri * FACE_PLANE_SIZE;
+                double centerDist = facePlanes[planeOffset] * center[0] + facePlanes[planeOffset + 1] * center[1]
+                        + facePlanes[planeOffset + 2] * center[2] - facePlanes[planeOffset + 3];
+                double axisDot = facePlanes[planeOffset] * axis[0] + facePlanes[planeOffset + 1] * axis[1]
+                        + facePlanes[planeOffset + 2] * axis[2];
+                maxDist = Math.max(maxDist, centerDist / axisDot);
+            }
+
+            for (int i = 0; i < axis.length; i++) {
+                cones[offset + i] = center[i] - axis[i] * maxDist;
+                cones[offset + 3 + i] = axis[i];
+            }
+
+            cones[offset + 6] = Math.sqrt(1.0 - minAxisDot * minAxisDot);
+        }
+
+        return cones;
     }
 
     // Statics Constructors
@@ -110,50 +363,186 @@ public class Mesh3D implements Iterable<Triangle3D> {
         return rectangularPrism(x, y, z, length, length, length);
     }
 
+    /**
+     * Create a mesh holding every triangle of a .obj file
+     * @param file .obj file to read
+     * @return a mesh of the file
+     * @throws IOException if the file or one of its material libraries cannot be read or is malformed
+     * @see ObjImporter#importMeshes(File) to keep the objects, groups and materials of the file apart
+     */
     public static Mesh3D createMeshFromFile(File file) throws IOException {
-        if (file == null) {
-            throw new IllegalArgumentException("Cannot make a mesh from a null file");
-        }
-
-        try (BufferedReader fileReader = new BufferedReader(new FileReader(file))) {
-            List<Vector> vecList = new ArrayList<>();
-            SinglyLinkedList<Triangle3D> triList = new SinglyLinkedList<>();
-
-            String line = fileReader.readLine();
-
-            while (line != null) {
-                if (!line.isEmpty()) {
-                    Scanner lineScanner = new Scanner(line);
-
-                    switch (lineScanner.next()) {
-                        case "v":
-                            double xCoord = lineScanner.nextDouble();
-                            double yCoord = lineScanner.nextDouble();
-                            double zCoord = lineScanner.nextDouble();
-
-                            Vector newVec = new Vector(xCoord, yCoord, zCoord);
-                            vecList.add(newVec);
-                            break;
-                        case "f":
-                            Vector firstVec = vecList.get(lineScanner.nextInt() - 1);
-                            Vector secondVec = vecList.get(lineScanner.nextInt() - 1);
-                            Vector thirdVec = vecList.get(lineScanner.nextInt() - 1);
-
-                            Triangle3D newTri = new Triangle3D(firstVec, secondVec, thirdVec);
-                            triList.add(newTri);
-                            break;
-                    }
-                }
+        return ObjImporter.importMesh(file);
+    }
+
+    // Shading
+
+    /**
+     * Give every triangle normals at its vertices for smooth shading
+     * <br>The normal of each vertex is the sum of the surface normals of the triangles sharing it, weighted by the
+     * area of the triangles. Vertices are only considered shared if the triangles hold the same vector object.
+     */
+    public void computeVertexNormals() {
+        Map<Vector, double[]> normalSums = new IdentityHashMap<>();
+
+        for (Triangle3D tri : con) {
+            // the cross product has a length of twice the area of the triangle
+            Vector areaNormal = tri.get(1).subtract(tri.get(0)).crossProduct(tri.get(2).subtract(tri.get(0)));
 
-                line = fileReader.readLine();
+            for (Vector vertex : tri) {
+                double[] sum = normalSums.computeIfAbsent(vertex, key -> new double[3]);
+                for (int i = 0; i < sum.length; i++) {
+                    sum[i] += areaNormal.get(i);
+                }
             }
+        }
 
-            return new Mesh3D(triList);
+        Map<Vector, Vector> normals = new IdentityHashMap<>();
+        for (Map.Entry<Vector, double[]> entry : normalSums.entrySet()) {
+            Vector normal = new Vector(entry.getValue());
+            double lengthSquared = normal.dotProduct(normal);
+            normals.put(entry.getKey(), lengthSquared > 0.0 ? normal.normalized() : normal);
+        }
+
+        for (Triangle3D tri : con) {
+            tri.setNormals(normals.get(tri.get(0)), normals.get(tri.get(1)), normals.get(tri.get(2)));
         }
     }
 
+    // Setters
+
+    /**
+     * @param name name of the object or group this mesh was read from
+     */
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @param material material shared by the triangles of this mesh, null if it has none
+     */
+    public void setMaterial(Material material) {
+        this.material = material;
+    }
+
     // Getters
 
+    /**
+     * @return the name of the object or group this mesh was read from, null if it has none
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the material shared by the triangles of this mesh, null if it has none
+     */
+    public Material getMaterial() {
+        return material;
+    }
+
+    /**
+     * @return the number of triangles in this mesh
+     */
+    public int size() {
+        return con.size();
+    }
+
+    /**
+     * Test if a point in model space lies in front of a triangle, meaning the triangle faces towards it
+     * @param index index of the triangle in the order this mesh iterates its triangles
+     * @param x x value of the point in model space
+     * @param y y value of the point in model space
+     * @param z z value of the point in model space
+     * @return whether or not the front of the triangle faces the point
+     */
+    public boolean facesTowards(int index, double x, double y, double z) {
+        int offset = index * FACE_PLANE_SIZE;
+        return facePlanes[offset] * x + facePlanes[offset + 1] * y + facePlanes[offset + 2] * z
+                > facePlanes[offset + 3];
+    }
+
+    /**
+     * Test if every triangle of a cluster faces away from a point, meaning the whole cluster can be culled
+     * <br>The test is conservative, a cluster may still be made only of back faces when it returns false
+     * @param cluster index of the cluster, holding the triangles from cluster * {@link #CLUSTER_SIZE} onwards
+     * @param x x value of the point in model space
+     * @param y y value of the point in model space
+     * @param z z value of the point in model space
+     * @return whether or not every triangle in the cluster faces away from the point
+     */
+    public boolean clusterFacesAway(int cluster, double x, double y, double z) {
+        int offset = cluster * CLUSTER_CONE_SIZE;
+
+        double toApexX = clusterCones[offset] - x;
+        double toApexY = clusterCones[offset + 1] - y;
+        double toApexZ = clusterCones[offset + 2] - z;
+        double toApexDot = toApexX * clusterCones[offset + 3] + toApexY * clusterCones[offset + 4]
+                + toApexZ * clusterCones[offset + 5];
+
+        // compare against the cutoff without normalizing the direction to the apex
+        if (toApexDot <= 0.0) {
+            return false;
+        }
+
+        double cutoff = clusterCones[offset + 6];
+        double toApexLengthSquared = toApexX * toApexX + toApexY * toApexY + toApexZ * toApexZ;
+        return toApexDot * toApexDot >= cutoff * cutoff * toApexLengthSquared;
+    }
+
+    /**
+     * @param index index of the triangle in the order this mesh iterates its triangles
+     * @return the unit surface normal of the triangle in model space
+     */
+    public Vector getFaceNormal(int index) {
+        if (index < 0 || index >= con.size()) {
+            throw new IllegalArgumentException("Index " + index + " is out of bounds");
+        }
+
+        int offset = index * FACE_PLANE_SIZE;
+        return new Vector(facePlanes[offset], facePlanes[offset + 1], facePlanes[offset + 2]);
+    }
+
+    /**
+     * @return the bounding box of the mesh in model space as its minimum x, y and z followed by its maximum x, y and
+     * z, or a box of no size at the origin if the mesh has no triangles
+     */
+    public double[] getBounds() {
+        double[] bounds = this.bounds;
+        if (bounds == null) {
+            bounds = computeBounds();
+            this.bounds = bounds;
+        }
+
+        return bounds.clone();
+    }
+
+    // Find the smallest box holding every vertex of the mesh
+    private double[] computeBounds() {
+        double[] bounds = {Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE,
+                -Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+
+        for (Triangle3D tri : this) {
+            for (int i = 0; i < Triangle3D.SIZE; i++) {
+                Vector vertex = tri.get(i);
+                for (int axis = 0; axis < 3; axis++) {
+                    bounds[axis] = Math.min(bounds[axis], vertex.get(axis));
+                    bounds[axis + 3] = Math.max(bounds[axis + 3], vertex.get(axis));
+                }
+            }
+        }
+
+        if (bounds[0] > bounds[3]) { // no vertices
+            return new double[6];
+        }
+
+        return bounds;
+    }
+
+    // Normal cones of every cluster, shared with off-heap copies of this mesh
+    double[] getClusterCones() {
+        return clusterCones;
+    }
+
     /**
      * @param index index of triangle to retrieve, must be within the size of the mesh
      * @return a triangle from this mesh at a specified index
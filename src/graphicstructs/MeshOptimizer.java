@@ -0,0 +1,314 @@
+package graphicstructs;
+
+import datakit.SinglyLinkedList;
+import mathkit.Vector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Utility class to optimize meshes once they are loaded, or offline before they are stored
+ * <br>Vertices closer together than a tolerance are welded into a single shared vertex, then the triangles of each
+ * cluster are reordered so consecutive triangles share vertices. Indexed copies of an optimized mesh, such as
+ * {@link OffHeapMesh3D} and {@link CompressedMesh3D}, number their vertices in the order they are first used, so
+ * nearby triangles also read nearby vertices.
+ */
+public final class MeshOptimizer {
+    /**
+     * Distance within which vertices are welded by default
+     */
+    public static final double DEFAULT_WELD_TOLERANCE = 1e-6;
+
+    /**
+     * Size of the cache of transformed vertices the triangle order is tuned for
+     */
+    public static final int VERTEX_CACHE_SIZE = 32;
+
+    private MeshOptimizer() {
+
+    }
+
+    // Optimizing
+
+    /**
+     * Weld the vertices of a mesh within the default tolerance and reorder its triangles for vertex reuse
+     * @param mesh mesh to optimize
+     * @return an optimized copy of the mesh with the same name and material
+     */
+    public static Mesh3D optimize(Mesh3D mesh) {
+        return optimize(mesh, DEFAULT_WELD_TOLERANCE);
+    }
+
+    /**
+     * Weld the vertices of a mesh and reorder its triangles for vertex reuse
+     * @param mesh mesh to optimize
+     * @param weldTolerance distance within which vertices are welded, must be greater than 0
+     * @return an optimized copy of the mesh with the same name and material
+     */
+    public static Mesh3D optimize(Mesh3D mesh, double weldTolerance) {
+        return reorderTriangles(weldVertices(mesh, weldTolerance));
+    }
+
+    /**
+     * Merge vertices closer together than a tolerance into a single shared vector, dropping triangles that collapse
+     * <br>Each vertex is welded to the first vertex found within the tolerance, found through a spatial hash of cells
+     * as wide as the tolerance. Normals and texture coordinates stay with their triangle corners.
+     * @param mesh mesh to weld
+     * @param tolerance distance within which vertices are welded, must be greater than 0
+     * @return a copy of the mesh whose triangles share welded vertices, with the same name and material
+     */
+    public static Mesh3D weldVertices(Mesh3D mesh, double tolerance) {
+        if (mesh == null) {
+            throw new IllegalArgumentException("Cannot weld a null mesh");
+        } else if (!(tolerance > 0.0)) {
+            throw new IllegalArgumentException("Weld tolerance must be greater than 0");
+        }
+
+        Map<Vector, Vector> welded = new IdentityHashMap<>();
+        Map<Long, Integer> cellHeads = new HashMap<>();
+        List<Vector> kept = new ArrayList<>();
+        int[] nextInCell = new int[16];
+        double toleranceSquared = tolerance * tolerance;
+
+        SinglyLinkedList<Triangle3D> triList = new SinglyLinkedList<>();
+        Vector[] corners = new Vector[Triangle3D.SIZE];
+
+        for (Triangle3D tri : mesh) {
+            for (int corner = 0; corner < Triangle3D.SIZE; corner++) {
+                Vector vertex = tri.get(corner);
+                Vector weldedVertex = welded.get(vertex);
+
+                if (weldedVertex == null) {
+                    long cellX = (long) Math.floor(vertex.get(0) / tolerance);
+                    long cellY = (long) Math.floor(vertex.get(1) / tolerance);
+                    long cellZ = (long) Math.floor(vertex.get(2) / tolerance);
+
+                    // a vertex within the tolerance lies in the same cell or one of its neighbours
+                    for (int offset = 0; offset < 27 && weldedVertex == null; offset++) {
+                        Integer candidate = cellHeads.get(cellKey(cellX + offset % 3 - 1,
+                                cellY + offset / 3 % 3 - 1, cellZ + offset / 9 - 1));
+
+                        while (candidate != null && candidate >= 0 && weldedVertex == null) {
+                            Vector keptVertex = kept.get(candidate);
+                            Vector difference = keptVertex.subtract(vertex);
+
+                            if (difference.dotProduct(difference) <= toleranceSquared) {
+                                weldedVertex = keptVertex;
+                            }
+
+                            candidate = nextInCell[candidate];
+                        }
+                    }
+
+                    if (weldedVertex == null) {
+                        int index = kept.size();
+                        if (index == nextInCell.length) {
+                            nextInCell = Arrays.copyOf(nextInCell, index * 2);
+                        }
+
+                        long key = cellKey(cellX, cellY, cellZ);
+                        Integer head = cellHeads.get(key);
+                        nextInCell[index] = head == null ? -1 : head;
+                        cellHeads.put(key, index);
+                        kept.add(vertex);
+                        weldedVertex = vertex;
+                    }
+
+                    welded.put(vertex, weldedVertex);
+                }
+
+                corners[corner] = weldedVertex;
+            }
+
+            // triangles whose corners were welded together have no area left to draw
+            if (corners[0] != corners[1] && corners[1] != corners[2] && corners[2] != corners[0]) {
+                triList.add(copyTriangle(tri, corners[0], corners[1], corners[2]));
+            }
+        }
+
+        Mesh3D weldedMesh = new Mesh3D(triList);
+        weldedMesh.setName(mesh.getName());
+        weldedMesh.setMaterial(mesh.getMaterial());
+        return weldedMesh;
+    }
+
+    /**
+     * Reorder the triangles within each cluster of a mesh so triangles sharing vertices follow each other, using the
+     * Tipsify algorithm for a cache of {@link #VERTEX_CACHE_SIZE} transformed vertices
+     * <br>Triangles are only moved within their cluster, so the clusters used for culling stay the same
+     * @param mesh mesh to reorder
+     * @return a copy of the mesh with its triangles reordered, with the same name and material
+     */
+    public static Mesh3D reorderTriangles(Mesh3D mesh) {
+        if (mesh == null) {
+            throw new IllegalArgumentException("Cannot reorder a null mesh");
+        }
+
+        int triCount = mesh.size();
+        Triangle3D[] tris = new Triangle3D[triCount];
+
+        int triIndex = 0;
+        for (Triangle3D tri : mesh) {
+            tris[triIndex++] = tri;
+        }
+
+        SinglyLinkedList<Triangle3D> triList = new SinglyLinkedList<>();
+        Map<Vector, Integer> localVertices = new IdentityHashMap<>();
+        int[] clusterIndices = new int[Mesh3D.CLUSTER_SIZE * Triangle3D.SIZE];
+
+        for (int firstTri = 0; firstTri < triCount; firstTri += Mesh3D.CLUSTER_SIZE) {
+            int clusterSize = Math.min(Mesh3D.CLUSTER_SIZE, triCount - firstTri);
+            localVertices.clear();
+
+            for (int tri = 0; tri < clusterSize; tri++) {
+                for (int corner = 0; corner < Triangle3D.SIZE; corner++) {
+                    Vector vertex = tris[firstTri + tri].get(corner);
+                    Integer localIndex = localVertices.get(vertex);
+
+                    if (localIndex == null) {
+                        localIndex = localVertices.size();
+                        localVertices.put(vertex, localIndex);
+                    }
+
+                    clusterIndices[tri * Triangle3D.SIZE + corner] = localIndex;
+                }
+            }
+
+            for (int tri : tipsify(clusterIndices, clusterSize, localVertices.size(), VERTEX_CACHE_SIZE)) {
+                triList.add(tris[firstTri + tri]);
+            }
+        }
+
+        Mesh3D reorderedMesh = new Mesh3D(triList, true);
+        reorderedMesh.setName(mesh.getName());
+        reorderedMesh.setMaterial(mesh.getMaterial());
+        return reorderedMesh;
+    }
+
+    // Order triangles by fanning around vertices still in the cache, from "Fast Triangle Reordering for Vertex
+    // Locality and Reduced Overdraw" by Sander, Nehab and Barczak
+    // Returns the indices of the triangles in their new order
+    private static int[] tipsify(int[] indices, int triCount, int vertexCount, int cacheSize) {
+        // triangles using each vertex, stored one vertex after another
+        int[] liveTriangles = new int[vertexCount];
+        for (int i = 0; i < triCount * Triangle3D.SIZE; i++) {
+            liveTriangles[indices[i]]++;
+        }
+
+        int[] adjacencyStarts = new int[vertexCount + 1];
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            adjacencyStarts[vertex + 1] = adjacencyStarts[vertex] + liveTriangles[vertex];
+        }
+
+        int[] adjacency = new int[triCount * Triangle3D.SIZE];
+        int[] adjacencyFill = Arrays.copyOf(adjacencyStarts, vertexCount);
+        for (int i = 0; i < triCount * Triangle3D.SIZE; i++) {
+            adjacency[adjacencyFill[indices[i]]++] = i / Triangle3D.SIZE;
+        }
+
+        int[] cacheTimes = new int[vertexCount];
+        boolean[] emitted = new boolean[triCount];
+        int[] order = new int[triCount];
+        int[] deadEnds = new int[triCount * Triangle3D.SIZE];
+        int[] candidates = new int[triCount * Triangle3D.SIZE];
+        int deadEndCount = 0;
+        int orderCount = 0;
+        int time = cacheSize + 1;
+        int cursor = 1;
+        int fanVertex = 0;
+
+        while (fanVertex >= 0) {
+            int candidateCount = 0;
+
+            // emit every triangle around the fanning vertex that has not been emitted yet
+            for (int i = adjacencyStarts[fanVertex]; i < adjacencyStarts[fanVertex + 1]; i++) {
+                int tri = adjacency[i];
+                if (emitted[tri]) {
+                    continue;
+                }
+
+                for (int corner = 0; corner < Triangle3D.SIZE; corner++) {
+                    int vertex = indices[tri * Triangle3D.SIZE + corner];
+                    deadEnds[deadEndCount++] = vertex;
+                    candidates[candidateCount++] = vertex;
+                    liveTriangles[vertex]--;
+
+                    if (time - cacheTimes[vertex] > cacheSize) {
+                        cacheTimes[vertex] = time++;
+                    }
+                }
+
+                emitted[tri] = true;
+                order[orderCount++] = tri;
+            }
+
+            // fan next around the candidate that stays in the cache longest while still having triangles left
+            fanVertex = -1;
+            int bestPriority = -1;
+            for (int i = 0; i < candidateCount; i++) {
+                int vertex = candidates[i];
+                if (liveTriangles[vertex] <= 0) {
+                    continue;
+                }
+
+                int priority = 0;
+                if (time - cacheTimes[vertex] + 2 * liveTriangles[vertex] <= cacheSize) {
+                    priority = time - cacheTimes[vertex];
+                }
+
+                if (priority > bestPriority) {
+                    bestPriority = priority;
+                    fanVertex = vertex;
+                }
+            }
+
+            // at a dead end, go back to a recently used vertex with triangles left, or else the next one in order
+            while (fanVertex < 0 && deadEndCount > 0) {
+                int vertex = deadEnds[--deadEndCount];
+                if (liveTriangles[vertex] > 0) {
+                    fanVertex = vertex;
+                }
+            }
+
+            while (fanVertex < 0 && cursor < vertexCount) {
+                if (liveTriangles[cursor] > 0) {
+                    fanVertex = cursor;
+                }
+
+                cursor++;
+            }
+        }
+
+        return order;
+    }
+
+    // Hash of the coordinates of a cell of the spatial hash
+    private static long cellKey(long cellX, long cellY, long cellZ) {
+        return (cellX * 73856093L) ^ (cellY * 19349663L) ^ (cellZ * 83492791L);
+    }
+
+    // Copy a triangle with its colors, normals and texture onto new corners
+    private static Triangle3D copyTriangle(Triangle3D tri, Vector vertex1, Vector vertex2, Vector vertex3) {
+        Triangle3D copy = new Triangle3D(vertex1, vertex2, vertex3, tri.getARGB());
+
+        if (tri.hasNormals()) {
+            copy.setNormals(tri.getNormal(0), tri.getNormal(1), tri.getNormal(2));
+        }
+
+        if (tri.hasTextureCoords()) {
+            copy.setTextureCoords(tri.getTextureCoord(0), tri.getTextureCoord(1), tri.getTextureCoord(2));
+        }
+
+        if (tri.hasVertexColors()) {
+            copy.setVertexColors(tri.getVertexARGB(0), tri.getVertexARGB(1), tri.getVertexARGB(2));
+        }
+
+        copy.setTexture(tri.getTexture());
+        return copy;
+    }
+
+}
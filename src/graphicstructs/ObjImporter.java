@@ -0,0 +1,500 @@
+package graphicstructs;
+
+import datakit.SinglyLinkedList;
+import mathkit.Vector;
+import profiling.MeshLoadEvent;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Utility class to read meshes from .obj files and the .mtl files they use
+ * <br>Faces with any amount of vertices are triangulated, every form of vertex reference is read including negative
+ * references counting back from the latest vertex, and triangles take the color and texture of their material
+ * <br>Missing material libraries and textures are warned about instead of failing the import, leaving triangles
+ * with the default material or with the color of their material
+ */
+public final class ObjImporter {
+    /**
+     * Name of the group triangles belong to before any object or group is named
+     */
+    private static final String DEFAULT_GROUP = "default";
+
+    private ObjImporter() {
+
+    }
+
+    // Importing
+
+    /**
+     * Read every triangle of a .obj file into a single mesh
+     * @param file .obj file to read
+     * @return a mesh holding every triangle of the file
+     * @throws IOException if the file or one of its material libraries cannot be read or is malformed
+     */
+    public static Mesh3D importMesh(File file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("Cannot make a mesh from a null file");
+        }
+
+        return importFile(new FileInputStream(file), file, false).get(0);
+    }
+
+    /**
+     * Read the triangles of a .obj file into a mesh for each object or group and material used by it, in the order
+     * they first appear
+     * @param file .obj file to read
+     * @return a mesh for each object or group and material with triangles, named after the object or group
+     * @throws IOException if the file or one of its material libraries cannot be read or is malformed
+     */
+    public static List<Mesh3D> importMeshes(File file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("Cannot make a mesh from a null file");
+        }
+
+        return importFile(new FileInputStream(file), file, true);
+    }
+
+    /**
+     * Read the triangles of .obj data that has already been opened, such as a file read into memory, into a mesh for
+     * each object or group and material used by it
+     * @param input .obj data to read, closed once it has been read
+     * @param file .obj file the data came from, used to find material libraries and name meshes
+     * @return a mesh for each object or group and material with triangles, named after the object or group
+     * @throws IOException if the data or one of its material libraries cannot be read or is malformed
+     */
+    public static List<Mesh3D> importMeshes(InputStream input, File file) throws IOException {
+        if (input == null || file == null) {
+            throw new IllegalArgumentException("Cannot make a mesh from null data or a null file");
+        }
+
+        return importFile(input, file, true);
+    }
+
+    /**
+     * Find every file .obj data depends on without importing it: its material libraries and their textures
+     * @param input .obj data to read, closed once it has been read
+     * @param file .obj file the data came from, used to find material libraries
+     * @return every material library and texture the data uses, in the order they first appear, including files that
+     * do not exist
+     * @throws IOException if the data or one of its material libraries cannot be read
+     */
+    public static List<File> findReferencedFiles(InputStream input, File file) throws IOException {
+        if (input == null || file == null) {
+            throw new IllegalArgumentException("Cannot find the files used by null data or a null file");
+        }
+
+        Set<File> referencedFiles = new LinkedHashSet<>();
+
+        try (ObjTokenizer tokenizer = new ObjTokenizer(input)) {
+            int keyword = tokenizer.nextKeyword();
+
+            while (keyword != ObjTokenizer.END) {
+                if (keyword == ObjTokenizer.MATERIAL_LIBRARY) {
+                    for (String libraryName : tokenizer.restOfLine().split("\\s+")) {
+                        if (!libraryName.isEmpty()) {
+                            File library = new File(file.getParentFile(), libraryName);
+                            referencedFiles.add(library);
+
+                            if (library.isFile()) {
+                                referencedFiles.addAll(Material.findTextures(library));
+                            }
+                        }
+                    }
+                }
+
+                tokenizer.nextLine();
+                keyword = tokenizer.nextKeyword();
+            }
+        }
+
+        return new ArrayList<>(referencedFiles);
+    }
+
+    // Read .obj data into one mesh, or into a mesh for each object or group and material
+    private static List<Mesh3D> importFile(InputStream input, File file, boolean split) throws IOException {
+        MeshLoadEvent loadEvent = new MeshLoadEvent();
+        loadEvent.begin();
+
+        List<Vector> vecList = new ArrayList<>();
+        List<Vector> normalList = new ArrayList<>();
+        List<Vector> textureCoordList = new ArrayList<>();
+        Map<String, Material> materials = new HashMap<>();
+        Map<String, MeshBuilder> builders = new LinkedHashMap<>();
+        Face face = new Face();
+
+        String groupName = DEFAULT_GROUP;
+        Material currMaterial = null;
+        MeshBuilder currBuilder = null;
+        int triCount = 0;
+
+        try (ObjTokenizer tokenizer = new ObjTokenizer(input)) {
+            int keyword = tokenizer.nextKeyword();
+
+            while (keyword != ObjTokenizer.END) {
+                switch (keyword) {
+                    case ObjTokenizer.VERTEX:
+                        vecList.add(new Vector(tokenizer.nextDouble(), tokenizer.nextDouble(),
+                                tokenizer.nextDouble()));
+                        break;
+                    case ObjTokenizer.NORMAL:
+                        normalList.add(normalize(new Vector(tokenizer.nextDouble(), tokenizer.nextDouble(),
+                                tokenizer.nextDouble())));
+                        break;
+                    case ObjTokenizer.TEXTURE_COORD:
+                        double uCoord = tokenizer.nextDouble();
+                        double vCoord = tokenizer.hasNextOnLine() ? tokenizer.nextDouble() : 0.0;
+
+                        // v grows up the texture in .obj files but down the rows of an image
+                        textureCoordList.add(new Vector(uCoord, 1.0 - vCoord));
+                        break;
+                    case ObjTokenizer.FACE:
+                        readFace(tokenizer, face, vecList.size(), textureCoordList.size(), normalList.size());
+
+                        if (currBuilder == null) {
+                            String key = split ? groupName + '\n' + (currMaterial == null ? "" : currMaterial.getName())
+                                    : "";
+                            currBuilder = builders.computeIfAbsent(key, unused -> new MeshBuilder());
+                        }
+
+                        triCount += currBuilder.addFace(face, vecList, textureCoordList, normalList, currMaterial);
+                        break;
+                    case ObjTokenizer.OBJECT:
+                    case ObjTokenizer.GROUP:
+                        groupName = tokenizer.hasNextOnLine() ? tokenizer.restOfLine() : DEFAULT_GROUP;
+                        currBuilder = null;
+                        break;
+                    case ObjTokenizer.USE_MATERIAL:
+                        currMaterial = materials.get(tokenizer.restOfLine());
+                        currBuilder = null;
+                        break;
+                    case ObjTokenizer.MATERIAL_LIBRARY:
+                        // several libraries may be listed on one line
+                        for (String libraryName : tokenizer.restOfLine().split("\\s+")) {
+                            File library = new File(file.getParentFile(), libraryName);
+
+                            if (libraryName.isEmpty()) {
+                                continue;
+                            } else if (!library.isFile()) {
+                                // its materials are missing, so triangles using them keep the default color
+                                System.err.println("Could not find material library " + library + " on line "
+                                        + tokenizer.getLineNumber() + " of " + file + ", using the default material");
+                                continue;
+                            }
+
+                            materials.putAll(Material.loadLibrary(library));
+                        }
+                        break;
+                }
+
+                tokenizer.nextLine();
+                keyword = tokenizer.nextKeyword();
+            }
+        }
+
+        loadEvent.end();
+        if (loadEvent.shouldCommit()) {
+            loadEvent.path = file.getPath();
+            loadEvent.fileSize = file.length();
+            loadEvent.vertexCount = vecList.size();
+            loadEvent.triangleCount = triCount;
+            loadEvent.commit();
+        }
+
+        List<Mesh3D> meshes = new ArrayList<>();
+        for (Map.Entry<String, MeshBuilder> entry : builders.entrySet()) {
+            String name = split ? entry.getKey().substring(0, entry.getKey().indexOf('\n')) : file.getName();
+            meshes.add(entry.getValue().build(name));
+        }
+
+        if (meshes.isEmpty()) {
+            meshes.add(new MeshBuilder().build(file.getName()));
+        }
+
+        return meshes;
+    }
+
+    // Read every vertex reference of a face, written as v, v/vt, v//vn or v/vt/vn, as indices into the lists read so far
+    private static void readFace(ObjTokenizer tokenizer, Face face, int vecCount, int textureCoordCount,
+                                 int normalCount) throws IOException {
+        face.size = 0;
+        face.hasTextureCoords = true;
+        face.hasNormals = true;
+
+        while (tokenizer.hasNextOnLine()) {
+            int vecIndex = resolveIndex(tokenizer.nextInt(), vecCount, tokenizer, "vertex");
+            int textureCoordIndex = -1;
+            int normalIndex = -1;
+
+            if (tokenizer.skipIf('/')) {
+                if (!tokenizer.skipIf('/')) {
+                    textureCoordIndex = resolveIndex(tokenizer.nextAdjacentInt(), textureCoordCount, tokenizer,
+                            "texture coordinate");
+
+                    if (tokenizer.skipIf('/')) {
+                        normalIndex = resolveIndex(tokenizer.nextAdjacentInt(), normalCount, tokenizer, "normal");
+                    }
+                } else {
+                    normalIndex = resolveIndex(tokenizer.nextAdjacentInt(), normalCount, tokenizer, "normal");
+                }
+            }
+
+            face.add(vecIndex, textureCoordIndex, normalIndex);
+        }
+
+        if (face.size < Triangle3D.SIZE) {
+            throw new IOException("Face with fewer than 3 vertices on line " + tokenizer.getLineNumber());
+        }
+    }
+
+    // Convert a reference from a face into an index, where negative references count back from the latest element
+    private static int resolveIndex(int reference, int count, ObjTokenizer tokenizer, String element)
+            throws IOException {
+        int index = reference > 0 ? reference - 1 : count + reference;
+
+        if (reference == 0 || index < 0 || index >= count) {
+            throw new IOException("Reference to missing " + element + " " + reference + " on line "
+                    + tokenizer.getLineNumber());
+        }
+
+        return index;
+    }
+
+    // Normalize a vector, leaving vectors of length 0 as they are
+    private static Vector normalize(Vector vector) {
+        return vector.dotProduct(vector) > 0.0 ? vector.normalized() : vector;
+    }
+
+    // Flip a normal read from a file if it faces away from the surface normal given by the winding of its triangle
+    private static Vector orientNormal(Vector normal, Vector surfNorm) {
+        return normal.dotProduct(surfNorm) < 0.0 ? normal.multiplyByScalar(-1.0) : normal;
+    }
+
+    // Split a polygon into triangles by clipping ears, triangles with convex corners and no other corner inside them
+    // The polygon is flattened onto the axis plane it faces most, and triangles keep the winding of the polygon
+    // Returns the amount of triangles, written as corner indices three at a time
+    private static int triangulate(Face face, List<Vector> vecList, int[] triangles) {
+        int size = face.size;
+
+        if (size == Triangle3D.SIZE) {
+            triangles[0] = 0;
+            triangles[1] = 1;
+            triangles[2] = 2;
+            return 1;
+        }
+
+        // normal of the polygon by Newell's method, which works for concave polygons too
+        double normalX = 0.0;
+        double normalY = 0.0;
+        double normalZ = 0.0;
+
+        for (int i = 0; i < size; i++) {
+            Vector curr = vecList.get(face.vecIndices[i]);
+            Vector next = vecList.get(face.vecIndices[(i + 1) % size]);
+            normalX += (curr.get(1) - next.get(1)) * (curr.get(2) + next.get(2));
+            normalY += (curr.get(2) - next.get(2)) * (curr.get(0) + next.get(0));
+            normalZ += (curr.get(0) - next.get(0)) * (curr.get(1) + next.get(1));
+        }
+
+        // flatten onto the plane of the two other axes, mirrored so the polygon winds counterclockwise
+        int axisA = 1;
+        int axisB = 2;
+        double facing = normalX;
+
+        if (Math.abs(normalY) > Math.abs(facing) && Math.abs(normalY) >= Math.abs(normalZ)) {
+            axisA = 2;
+            axisB = 0;
+            facing = normalY;
+        } else if (Math.abs(normalZ) > Math.abs(facing)) {
+            axisA = 0;
+            axisB = 1;
+            facing = normalZ;
+        }
+
+        double mirror = facing < 0.0 ? -1.0 : 1.0;
+        double[] pointsA = new double[size];
+        double[] pointsB = new double[size];
+        int[] remaining = new int[size];
+
+        for (int i = 0; i < size; i++) {
+            Vector vertex = vecList.get(face.vecIndices[i]);
+            pointsA[i] = vertex.get(axisA);
+            pointsB[i] = vertex.get(axisB) * mirror;
+            remaining[i] = i;
+        }
+
+        int triCount = 0;
+        int remainingCount = size;
+        int sinceLastEar = 0;
+        int curr = 0;
+
+        while (remainingCount > Triangle3D.SIZE && sinceLastEar < remainingCount) {
+            int prev = (curr + remainingCount - 1) % remainingCount;
+            int next = (curr + 1) % remainingCount;
+
+            if (isEar(remaining[prev], remaining[curr], remaining[next], remaining, remainingCount, pointsA, pointsB)) {
+                triangles[triCount * 3] = remaining[prev];
+                triangles[triCount * 3 + 1] = remaining[curr];
+                triangles[triCount * 3 + 2] = remaining[next];
+                triCount++;
+
+                System.arraycopy(remaining, curr + 1, remaining, curr, remainingCount - curr - 1);
+                remainingCount--;
+                curr %= remainingCount;
+                sinceLastEar = 0;
+            } else {
+                curr = next;
+                sinceLastEar++;
+            }
+        }
+
+        // degenerate polygons with no ears left are finished as a fan
+        for (int i = 1; i < remainingCount - 1; i++) {
+            triangles[triCount * 3] = remaining[0];
+            triangles[triCount * 3 + 1] = remaining[i];
+            triangles[triCount * 3 + 2] = remaining[i + 1];
+            triCount++;
+        }
+
+        return triCount;
+    }
+
+    // Test if a corner of a counterclockwise polygon is convex and no other remaining corner lies inside its triangle
+    private static boolean isEar(int prev, int curr, int next, int[] remaining, int remainingCount,
+                                 double[] pointsA, double[] pointsB) {
+        if (cross(pointsA, pointsB, prev, curr, next) <= 0.0) {
+            return false;
+        }
+
+        for (int i = 0; i < remainingCount; i++) {
+            int corner = remaining[i];
+            if (corner == prev || corner == curr || corner == next) {
+                continue;
+            }
+
+            if (cross(pointsA, pointsB, prev, curr, corner) >= 0.0
+                    && cross(pointsA, pointsB, curr, next, corner) >= 0.0
+                    && cross(pointsA, pointsB, next, prev, corner) >= 0.0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // Twice the signed area of a triangle in the flattened polygon, positive when it winds counterclockwise
+    private static double cross(double[] pointsA, double[] pointsB, int a, int b, int c) {
+        return (pointsA[b] - pointsA[a]) * (pointsB[c] - pointsB[a])
+                - (pointsB[b] - pointsB[a]) * (pointsA[c] - pointsA[a]);
+    }
+
+    // Vertex references of the face being read, reused for every face
+    private static final class Face {
+        private int[] vecIndices = new int[8];
+
+        private int[] textureCoordIndices = new int[8];
+
+        private int[] normalIndices = new int[8];
+
+        private int size;
+
+        private boolean hasTextureCoords;
+
+        private boolean hasNormals;
+
+        private void add(int vecIndex, int textureCoordIndex, int normalIndex) {
+            if (size == vecIndices.length) {
+                vecIndices = Arrays.copyOf(vecIndices, size * 2);
+                textureCoordIndices = Arrays.copyOf(textureCoordIndices, size * 2);
+                normalIndices = Arrays.copyOf(normalIndices, size * 2);
+            }
+
+            vecIndices[size] = vecIndex;
+            textureCoordIndices[size] = textureCoordIndex;
+            normalIndices[size] = normalIndex;
+            hasTextureCoords &= textureCoordIndex >= 0;
+            hasNormals &= normalIndex >= 0;
+            size++;
+        }
+    }
+
+    // Triangles collected for one mesh
+    private static final class MeshBuilder {
+        private final SinglyLinkedList<Triangle3D> triList = new SinglyLinkedList<>();
+
+        private Material material;
+
+        private boolean allFacesHaveNormals = true;
+
+        private int[] triangles = new int[(8 - 2) * 3];
+
+        // Triangulate a face and add its triangles, returning the amount of triangles added
+        private int addFace(Face face, List<Vector> vecList, List<Vector> textureCoordList, List<Vector> normalList,
+                            Material currMaterial) {
+            if (triangles.length < (face.size - 2) * 3) {
+                triangles = new int[(face.size - 2) * 3];
+            }
+
+            material = currMaterial;
+            int triCount = triangulate(face, vecList, triangles);
+
+            for (int i = 0; i < triCount; i++) {
+                int first = triangles[i * 3];
+                int second = triangles[i * 3 + 1];
+                int third = triangles[i * 3 + 2];
+
+                Triangle3D newTri = new Triangle3D(vecList.get(face.vecIndices[first]),
+                        vecList.get(face.vecIndices[second]), vecList.get(face.vecIndices[third]));
+
+                if (currMaterial != null) {
+                    newTri.setARGB(currMaterial.getDiffuseARGB());
+                    newTri.setTexture(currMaterial.getDiffuseMap());
+                }
+
+                if (face.hasTextureCoords) {
+                    newTri.setTextureCoords(textureCoordList.get(face.textureCoordIndices[first]),
+                            textureCoordList.get(face.textureCoordIndices[second]),
+                            textureCoordList.get(face.textureCoordIndices[third]));
+                }
+
+                if (face.hasNormals) {
+                    Vector surfNorm = newTri.getSurfaceNormal();
+                    newTri.setNormals(
+                            orientNormal(normalList.get(face.normalIndices[first]), surfNorm),
+                            orientNormal(normalList.get(face.normalIndices[second]), surfNorm),
+                            orientNormal(normalList.get(face.normalIndices[third]), surfNorm)
+                    );
+                } else {
+                    allFacesHaveNormals = false;
+                }
+
+                triList.add(newTri);
+            }
+
+            return triCount;
+        }
+
+        private Mesh3D build(String name) {
+            Mesh3D mesh = new Mesh3D(triList);
+            mesh.setName(name);
+            mesh.setMaterial(material);
+
+            if (!allFacesHaveNormals) {
+                mesh.computeVertexNormals();
+            }
+
+            return mesh;
+        }
+    }
+
+}
@@ -0,0 +1,376 @@
+package graphicstructs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads the tokens of .obj files straight from their bytes, parsing numbers without creating strings
+ */
+final class ObjTokenizer implements Closeable {
+    // Keywords
+
+    static final int END = -1;
+
+    static final int OTHER = 0;
+
+    static final int VERTEX = 1;
+
+    static final int TEXTURE_COORD = 2;
+
+    static final int NORMAL = 3;
+
+    static final int FACE = 4;
+
+    static final int OBJECT = 5;
+
+    static final int GROUP = 6;
+
+    static final int USE_MATERIAL = 7;
+
+    static final int MATERIAL_LIBRARY = 8;
+
+    /**
+     * Amount of bytes read from the stream at once
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Most digits a number can have to be parsed exactly without falling back to the slower parser
+     */
+    private static final int MAX_FAST_DIGITS = 15;
+
+    /**
+     * Powers of 10 that are exactly representable as doubles
+     */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * Stream the file is read from
+     */
+    private final InputStream in;
+
+    /**
+     * Bytes read from the stream that haven't all been tokenized yet
+     */
+    private final byte[] buffer;
+
+    /**
+     * Bytes of the token being read, grown for the rare token longer than it
+     */
+    private byte[] token;
+
+    /**
+     * Index of the next byte to tokenize in the buffer
+     */
+    private int position;
+
+    /**
+     * Amount of bytes in the buffer
+     */
+    private int limit;
+
+    /**
+     * Line of the file the next byte is on, starting at 1
+     */
+    private int lineNumber;
+
+    // Constructors
+
+    ObjTokenizer(InputStream in) {
+        this.in = in;
+        buffer = new byte[BUFFER_SIZE];
+        token = new byte[64];
+        lineNumber = 1;
+    }
+
+    // Reading
+
+    // Get the next byte without moving past it, or -1 at the end of the file
+    private int peek() throws IOException {
+        if (position == limit) {
+            limit = in.read(buffer, 0, buffer.length);
+            position = 0;
+
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+
+        return buffer[position] & 0xFF;
+    }
+
+    // Skip spaces and tabs up to the next token or the end of the line
+    private void skipSpaces() throws IOException {
+        int next = peek();
+        while (next == ' ' || next == '\t' || next == '\r') {
+            position++;
+            next = peek();
+        }
+    }
+
+    // Read the bytes of a token up to the next space or the end of the line into the token buffer, returning its length
+    private int readToken() throws IOException {
+        skipSpaces();
+
+        int length = 0;
+        int next = peek();
+
+        while (next != -1 && next != ' ' && next != '\t' && next != '\r' && next != '\n') {
+            if (length == token.length) {
+                token = Arrays.copyOf(token, length * 2);
+            }
+
+            token[length] = (byte) next;
+            length++;
+            position++;
+            next = peek();
+        }
+
+        return length;
+    }
+
+    /**
+     * Read the keyword starting the current line
+     * @return the keyword, {@link #OTHER} for blank lines, comments and statements that aren't read, or {@link #END}
+     * at the end of the file
+     * @throws IOException if the file cannot be read
+     */
+    int nextKeyword() throws IOException {
+        skipSpaces();
+        if (peek() == -1) {
+            return END;
+        }
+
+        int length = readToken();
+
+        if (length == 1) {
+            switch (token[0]) {
+                case 'v':
+                    return VERTEX;
+                case 'f':
+                    return FACE;
+                case 'o':
+                    return OBJECT;
+                case 'g':
+                    return GROUP;
+            }
+        } else if (length == 2 && token[0] == 'v') {
+            if (token[1] == 't') {
+                return TEXTURE_COORD;
+            } else if (token[1] == 'n') {
+                return NORMAL;
+            }
+        } else if (length == 6 && tokenEquals("usemtl", length)) {
+            return USE_MATERIAL;
+        } else if (length == 6 && tokenEquals("mtllib", length)) {
+            return MATERIAL_LIBRARY;
+        }
+
+        return OTHER;
+    }
+
+    private boolean tokenEquals(String word, int length) {
+        for (int i = 0; i < length; i++) {
+            if (token[i] != word.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return whether or not there are tokens left on the current line
+     * @throws IOException if the file cannot be read
+     */
+    boolean hasNextOnLine() throws IOException {
+        skipSpaces();
+        int next = peek();
+        return next != -1 && next != '\n' && next != '#';
+    }
+
+    /**
+     * Skip the rest of the current line
+     * @throws IOException if the file cannot be read
+     */
+    void nextLine() throws IOException {
+        int next = peek();
+        while (next != -1 && next != '\n') {
+            position++;
+            next = peek();
+        }
+
+        if (next == '\n') {
+            position++;
+            lineNumber++;
+        }
+    }
+
+    /**
+     * @return the rest of the current line without surrounding spaces
+     * @throws IOException if the file cannot be read
+     */
+    String restOfLine() throws IOException {
+        skipSpaces();
+
+        StringBuilder builder = new StringBuilder();
+        int next = peek();
+
+        while (next != -1 && next != '\n') {
+            builder.append((char) next);
+            position++;
+            next = peek();
+        }
+
+        return new String(builder.toString().getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8).trim();
+    }
+
+    /**
+     * Read a number, parsing it directly from its digits when it can be parsed exactly that way
+     * @return the number
+     * @throws IOException if the file cannot be read or the next token isn't a number
+     */
+    double nextDouble() throws IOException {
+        int length = readToken();
+        if (length == 0) {
+            throw new IOException("Expected a number on line " + lineNumber);
+        }
+
+        int index = 0;
+        boolean negative = token[0] == '-';
+        if (token[0] == '-' || token[0] == '+') {
+            index++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean valid = index < length;
+
+        for (; index < length && isDigit(token[index]); index++) {
+            mantissa = mantissa * 10 + (token[index] - '0');
+            digits++;
+        }
+
+        if (index < length && token[index] == '.') {
+            for (index++; index < length && isDigit(token[index]); index++) {
+                mantissa = mantissa * 10 + (token[index] - '0');
+                digits++;
+                exponent--;
+            }
+        }
+
+        if (index < length && (token[index] == 'e' || token[index] == 'E')) {
+            index++;
+            boolean negativeExponent = index < length && token[index] == '-';
+            if (index < length && (token[index] == '-' || token[index] == '+')) {
+                index++;
+            }
+
+            int written = 0;
+            valid &= index < length;
+            for (; index < length && isDigit(token[index]) && written < 6; index++) {
+                written = written * 10 + (token[index] - '0');
+            }
+
+            exponent += negativeExponent ? -written : written;
+        }
+
+        // fall back to the slower parser for anything that can't be parsed exactly from the digits
+        if (!valid || index != length || digits == 0 || digits > MAX_FAST_DIGITS
+                || exponent < -POWERS_OF_TEN.length + 1 || exponent > POWERS_OF_TEN.length - 1) {
+            try {
+                return Double.parseDouble(new String(token, 0, length, StandardCharsets.ISO_8859_1));
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid number on line " + lineNumber, e);
+            }
+        }
+
+        double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+        return negative ? -value : value;
+    }
+
+    /**
+     * Read an integer directly after the previous token without skipping spaces, as in the references of a face
+     * @return the integer
+     * @throws IOException if the file cannot be read or there is no integer
+     */
+    int nextAdjacentInt() throws IOException {
+        int next = peek();
+        boolean negative = next == '-';
+        if (negative) {
+            position++;
+            next = peek();
+        }
+
+        if (!isDigit(next)) {
+            throw new IOException("Expected an index on line " + lineNumber);
+        }
+
+        long value = 0;
+        while (isDigit(next)) {
+            value = value * 10 + (next - '0');
+            if (value > Integer.MAX_VALUE) {
+                throw new IOException("Index too large on line " + lineNumber);
+            }
+
+            position++;
+            next = peek();
+        }
+
+        return (int) (negative ? -value : value);
+    }
+
+    /**
+     * Read an integer after skipping spaces
+     * @return the integer
+     * @throws IOException if the file cannot be read or there is no integer
+     */
+    int nextInt() throws IOException {
+        skipSpaces();
+        return nextAdjacentInt();
+    }
+
+    /**
+     * Move past the next byte if it is a certain character
+     * @param character character to move past
+     * @return whether or not the next byte was the character
+     * @throws IOException if the file cannot be read
+     */
+    boolean skipIf(char character) throws IOException {
+        if (peek() == character) {
+            position++;
+            return true;
+        }
+
+        return false;
+    }
+
+    private static boolean isDigit(int character) {
+        return character >= '0' && character <= '9';
+    }
+
+    // Getters
+
+    /**
+     * @return the line of the file being read, starting at 1
+     */
+    int getLineNumber() {
+        return lineNumber;
+    }
+
+    // Overrides
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+}
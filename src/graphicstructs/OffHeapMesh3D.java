@@ -0,0 +1,504 @@
+package graphicstructs;
+
+import mathkit.Vector;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Mesh whose vertices and triangles are stored outside of the Java heap, either in direct buffers or mapped straight
+ * from a binary mesh file so the operating system can page them in and out
+ * <br>Positions are stored once per vertex and indexed by each triangle. Normals, texture coordinates and face planes
+ * are stored per triangle.
+ */
+public final class OffHeapMesh3D extends IndexedMesh3D {
+    /**
+     * First four bytes of every binary mesh file
+     */
+    private static final int MAGIC = 0x4D334448; // "M3DH"
+
+    /**
+     * Version of the binary mesh file layout
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Bytes before the first section of a binary mesh file
+     */
+    private static final int HEADER_SIZE = 7 * Integer.BYTES;
+
+    /**
+     * Flag set when every triangle has vertex normals
+     */
+    private static final int HAS_NORMALS = 1;
+
+    /**
+     * Flag set when any triangle has texture coordinates
+     */
+    private static final int HAS_TEXTURE_COORDS = 1 << 1;
+
+    /**
+     * Amount of values stored for the normal cone of each cluster, matching the layout of the mesh it was copied from
+     */
+    private static final int CLUSTER_CONE_SIZE = 7;
+
+    /**
+     * Byte order of every buffer and file
+     */
+    private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    /**
+     * Amount of distinct vertices in this mesh
+     */
+    private final int vertexCount;
+
+    /**
+     * Position of each vertex (three values per vertex)
+     */
+    private final FloatBuffer positions;
+
+    /**
+     * Index of the vertex at each corner of each triangle (three values per triangle)
+     */
+    private final IntBuffer indices;
+
+    /**
+     * Color of each triangle as a packed ARGB value
+     */
+    private final IntBuffer colors;
+
+    /**
+     * Unit surface normal and distance from the origin of the plane of each triangle (four values per triangle)
+     */
+    private final FloatBuffer planes;
+
+    /**
+     * Normal at each corner of each triangle (nine values per triangle), null if the triangles have no normals
+     */
+    private final FloatBuffer normals;
+
+    /**
+     * Texture coordinates at each corner of each triangle (six values per triangle), null if no triangle has texture
+     * coordinates. Triangles without texture coordinates hold NaN.
+     */
+    private final FloatBuffer textureCoords;
+
+    // Constructors
+
+    private OffHeapMesh3D(double[] clusterCones, int triCount, int vertexCount, ByteBuffer positions,
+                          ByteBuffer indices, ByteBuffer colors, ByteBuffer planes, ByteBuffer normals,
+                          ByteBuffer textureCoords) {
+        super(clusterCones, triCount);
+
+        this.vertexCount = vertexCount;
+        this.positions = positions.order(ORDER).asFloatBuffer();
+        this.indices = indices.order(ORDER).asIntBuffer();
+        this.colors = colors.order(ORDER).asIntBuffer();
+        this.planes = planes.order(ORDER).asFloatBuffer();
+        this.normals = normals == null ? null : normals.order(ORDER).asFloatBuffer();
+        this.textureCoords = textureCoords == null ? null : textureCoords.order(ORDER).asFloatBuffer();
+    }
+
+    /**
+     * Copy a mesh into direct buffers outside of the heap, keeping the order of its triangles
+     * <br>Vertices are shared between triangles holding the same vector object
+     * @param mesh mesh to copy
+     * @return an off-heap copy of the mesh with the same name and material
+     */
+    public static OffHeapMesh3D copyOf(Mesh3D mesh) {
+        if (mesh == null) {
+            throw new IllegalArgumentException("Cannot copy a null mesh");
+        } else if (mesh instanceof OffHeapMesh3D) {
+            return (OffHeapMesh3D) mesh;
+        }
+
+        int triCount = mesh.size();
+        Texture texture = mesh.getMaterial() == null ? null : mesh.getMaterial().getDiffuseMap();
+        Map<Vector, Integer> vertexIndices = new IdentityHashMap<>();
+        boolean hasNormals = triCount > 0;
+        boolean hasTextureCoords = false;
+
+        for (Triangle3D tri : mesh) {
+            for (Vector vertex : tri) {
+                vertexIndices.putIfAbsent(vertex, vertexIndices.size());
+            }
+
+            hasNormals &= tri.hasNormals();
+            hasTextureCoords |= tri.hasTextureCoords();
+
+            if (tri.isTextured() && tri.getTexture() != texture) {
+                throw new IllegalArgumentException("Off-heap meshes take their texture from their material");
+            }
+        }
+
+        int vertexCount = vertexIndices.size();
+        ByteBuffer positions = allocate(sectionSize(vertexCount, 3));
+        ByteBuffer indices = allocate(sectionSize(triCount, Triangle3D.SIZE));
+        ByteBuffer colors = allocate(sectionSize(triCount, 1));
+        ByteBuffer planes = allocate(sectionSize(triCount, 4));
+        ByteBuffer normals = hasNormals ? allocate(sectionSize(triCount, 9)) : null;
+        ByteBuffer textureCoords = hasTextureCoords ? allocate(sectionSize(triCount, 6)) : null;
+
+        for (Map.Entry<Vector, Integer> entry : vertexIndices.entrySet()) {
+            int offset = entry.getValue() * 3 * Float.BYTES;
+            for (int i = 0; i < 3; i++) {
+                positions.putFloat(offset + i * Float.BYTES, (float) entry.getKey().get(i));
+            }
+        }
+
+        for (Triangle3D tri : mesh) {
+            colors.putInt(tri.getARGB());
+
+            for (int corner = 0; corner < Triangle3D.SIZE; corner++) {
+                indices.putInt(vertexIndices.get(tri.get(corner)));
+
+                if (normals != null) {
+                    for (int i = 0; i < 3; i++) {
+                        normals.putFloat((float) tri.getNormal(corner).get(i));
+                    }
+                }
+
+                if (textureCoords != null) {
+                    for (int i = 0; i < 2; i++) {
+                        textureCoords.putFloat(tri.hasTextureCoords()
+                                ? (float) tri.getTextureCoord(corner).get(i) : Float.NaN);
+                    }
+                }
+            }
+        }
+
+        indices.clear();
+        computePlanes(positions, indices, planes, triCount);
+
+        OffHeapMesh3D offHeapMesh = new OffHeapMesh3D(mesh.getClusterCones(), triCount, vertexCount, positions,
+                indices, colors.clear(), planes, normals == null ? null : normals.clear(),
+                textureCoords == null ? null : textureCoords.clear());
+        offHeapMesh.setName(mesh.getName());
+        offHeapMesh.setMaterial(mesh.getMaterial());
+        return offHeapMesh;
+    }
+
+    /**
+     * Map a binary mesh file written by {@link #write(File)} into memory without reading it onto the heap
+     * <br>The file must not change while the mesh is in use
+     * @param file binary mesh file to map
+     * @return a mesh backed by the file, with the name it was written with and without a material
+     * @throws IOException if the file cannot be read, is not a binary mesh file, or has counts or vertex indices that
+     * do not fit its contents
+     */
+    public static OffHeapMesh3D map(File file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("Cannot map a null file");
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ORDER);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // keep reading until the header is full or the file ends
+            }
+
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+                throw new IOException(file + " is not a binary mesh file");
+            } else if (header.getInt() != VERSION) {
+                throw new IOException(file + " was written by a different version");
+            }
+
+            int triCount = header.getInt();
+            int vertexCount = header.getInt();
+            int clusterCount = header.getInt();
+            int flags = header.getInt();
+            int nameLength = header.getInt();
+
+            if (triCount < 0 || vertexCount < 0 || clusterCount < 0 || nameLength < 0 || nameLength > channel.size()) {
+                throw new IOException(file + " has a malformed header");
+            }
+
+            // every count is checked against the size of the file before any of them sizes a buffer
+            int valuesPerTriangle = Triangle3D.SIZE + 1 + 4 + ((flags & HAS_NORMALS) != 0 ? 9 : 0)
+                    + ((flags & HAS_TEXTURE_COORDS) != 0 ? 6 : 0);
+            long expectedSize = conesOffset(nameLength) + (long) clusterCount * CLUSTER_CONE_SIZE * Double.BYTES
+                    + ((long) vertexCount * 3 + (long) triCount * valuesPerTriangle) * Float.BYTES;
+            if (expectedSize != channel.size()) {
+                throw new IOException(file + " does not match the size given by its header");
+            }
+
+            ByteBuffer name = ByteBuffer.allocate(nameLength);
+            long offset = HEADER_SIZE;
+            while (name.hasRemaining() && channel.read(name, offset + name.position()) >= 0) {
+                // keep reading until the name is full or the file ends
+            }
+
+            offset = conesOffset(nameLength);
+            ByteBuffer cones = mapSection(channel, offset, (long) clusterCount * CLUSTER_CONE_SIZE * Double.BYTES);
+            offset += cones.capacity();
+
+            double[] clusterCones = new double[clusterCount * CLUSTER_CONE_SIZE];
+            cones.asDoubleBuffer().get(clusterCones);
+
+            ByteBuffer positions = mapSection(channel, offset, mappedSectionSize(vertexCount, 3));
+            offset += positions.capacity();
+            ByteBuffer indices = mapSection(channel, offset, mappedSectionSize(triCount, Triangle3D.SIZE));
+            offset += indices.capacity();
+            ByteBuffer colors = mapSection(channel, offset, mappedSectionSize(triCount, 1));
+            offset += colors.capacity();
+            ByteBuffer planes = mapSection(channel, offset, mappedSectionSize(triCount, 4));
+            offset += planes.capacity();
+
+            ByteBuffer normals = null;
+            if ((flags & HAS_NORMALS) != 0) {
+                normals = mapSection(channel, offset, mappedSectionSize(triCount, 9));
+                offset += normals.capacity();
+            }
+
+            ByteBuffer textureCoords = null;
+            if ((flags & HAS_TEXTURE_COORDS) != 0) {
+                textureCoords = mapSection(channel, offset, mappedSectionSize(triCount, 6));
+                offset += textureCoords.capacity();
+            }
+
+            // a damaged index would reach past the positions, so every one is checked once instead of on each read
+            IntBuffer vertexIndices = indices.asIntBuffer();
+            while (vertexIndices.hasRemaining()) {
+                int index = vertexIndices.get();
+                if (index < 0 || index >= vertexCount) {
+                    throw new IOException(file + " refers to vertex " + index + " of " + vertexCount);
+                }
+            }
+
+            // mapped buffers stay valid after their channel is closed
+            OffHeapMesh3D mesh = new OffHeapMesh3D(clusterCones, triCount, vertexCount, positions, indices, colors,
+                    planes, normals, textureCoords);
+            mesh.setName(nameLength > 0 ? new String(name.array(), StandardCharsets.UTF_8) : null);
+            return mesh;
+        }
+    }
+
+    // Offset of the cluster cones, after the header and name rounded up so every section stays aligned to its values
+    private static int conesOffset(int nameLength) {
+        return (HEADER_SIZE + nameLength + Double.BYTES - 1) & -Double.BYTES;
+    }
+
+    // Allocate a direct buffer for a section of a mesh
+    private static ByteBuffer allocate(long size) {
+        return ByteBuffer.allocateDirect((int) size).order(ORDER);
+    }
+
+    // Map a section of a binary mesh file that must lie within the file
+    private static ByteBuffer mapSection(FileChannel channel, long offset, long size) throws IOException {
+        if (offset + size > channel.size()) {
+            throw new IOException("Binary mesh file ends before its last section");
+        } else if (size > Integer.MAX_VALUE) {
+            throw new IOException("Binary mesh file has a section too large for a single buffer");
+        }
+
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, size).order(ORDER);
+    }
+
+    // Bytes taken by a section of four byte values in a mapped file, which mapping checks a single buffer can hold
+    private static long mappedSectionSize(int count, int valuesEach) {
+        return (long) count * valuesEach * Float.BYTES;
+    }
+
+    // Bytes taken by a section of four byte values, which a single buffer must be able to hold
+    private static long sectionSize(int count, int valuesEach) {
+        long size = (long) count * valuesEach * Float.BYTES;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Mesh is too large for a single buffer, split it into smaller meshes");
+        }
+
+        return size;
+    }
+
+    // Compute the plane of every triangle from the stored positions so culling matches what is drawn
+    private static void computePlanes(ByteBuffer positions, ByteBuffer indices, ByteBuffer planes, int triCount) {
+        FloatBuffer positionValues = positions.asFloatBuffer();
+        IntBuffer indexValues = indices.asIntBuffer();
+        FloatBuffer planeValues = planes.asFloatBuffer();
+        double[] corners = new double[9];
+
+        for (int tri = 0; tri < triCount; tri++) {
+            for (int corner = 0; corner < Triangle3D.SIZE; corner++) {
+                int vertex = indexValues.get(tri * 3 + corner);
+                for (int i = 0; i < 3; i++) {
+                    corners[corner * 3 + i] = positionValues.get(vertex * 3 + i);
+                }
+            }
+
+            double edge1X = corners[3] - corners[0];
+            double edge1Y = corners[4] - corners[1];
+            double edge1Z = corners[5] - corners[2];
+            double edge2X = corners[6] - corners[0];
+            double edge2Y = corners[7] - corners[1];
+            double edge2Z = corners[8] - corners[2];
+
+            double normalX = edge1Y * edge2Z - edge1Z * edge2Y;
+            double normalY = edge1Z * edge2X - edge1X * edge2Z;
+            double normalZ = edge1X * edge2Y - edge1Y * edge2X;
+            double length = Math.sqrt(normalX * normalX + normalY * normalY + normalZ * normalZ);
+
+            if (length > 0.0) {
+                normalX /= length;
+                normalY /= length;
+                normalZ /= length;
+            }
+
+            planeValues.put(tri * 4, (float) normalX);
+            planeValues.put(tri * 4 + 1, (float) normalY);
+            planeValues.put(tri * 4 + 2, (float) normalZ);
+            planeValues.put(tri * 4 + 3, (float) (normalX * corners[0] + normalY * corners[1] + normalZ * corners[2]));
+        }
+    }
+
+    // Writing
+
+    /**
+     * Write this mesh to a binary mesh file that can be mapped back with {@link #map(File)}
+     * @param file file to write, replaced if it exists
+     * @throws IOException if the file cannot be written
+     */
+    public void write(File file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("Cannot write to a null file");
+        }
+
+        double[] clusterCones = getClusterCones();
+        byte[] name = getName() == null ? new byte[0] : getName().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer header = ByteBuffer.allocate(conesOffset(name.length) + clusterCones.length * Double.BYTES)
+                .order(ORDER);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(size());
+        header.putInt(vertexCount);
+        header.putInt(clusterCones.length / CLUSTER_CONE_SIZE);
+        header.putInt((normals != null ? HAS_NORMALS : 0) | (textureCoords != null ? HAS_TEXTURE_COORDS : 0));
+        header.putInt(name.length);
+        header.put(name);
+        header.position(conesOffset(name.length));
+        header.asDoubleBuffer().put(clusterCones);
+        header.clear();
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, header);
+            writeFully(channel, bytesOf(positions));
+            writeFully(channel, bytesOf(indices));
+            writeFully(channel, bytesOf(colors));
+            writeFully(channel, bytesOf(planes));
+
+            if (normals != null) {
+                writeFully(channel, bytesOf(normals));
+            }
+
+            if (textureCoords != null) {
+                writeFully(channel, bytesOf(textureCoords));
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    // Copy the values of a buffer of floats into bytes in the file byte order
+    private static ByteBuffer bytesOf(FloatBuffer values) {
+        ByteBuffer bytes = ByteBuffer.allocateDirect(values.capacity() * Float.BYTES).order(ORDER);
+        bytes.asFloatBuffer().put(values.duplicate().clear());
+        return bytes;
+    }
+
+    // Copy the values of a buffer of ints into bytes in the file byte order
+    private static ByteBuffer bytesOf(IntBuffer values) {
+        ByteBuffer bytes = ByteBuffer.allocateDirect(values.capacity() * Integer.BYTES).order(ORDER);
+        bytes.asIntBuffer().put(values.duplicate().clear());
+        return bytes;
+    }
+
+    // Getters
+
+    /**
+     * @return the amount of distinct vertices in this mesh
+     */
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    // Overrides
+
+    @Override
+    public double getX(int index, int corner) {
+        return positions.get(indices.get(index * 3 + corner) * 3);
+    }
+
+    @Override
+    public double getY(int index, int corner) {
+        return positions.get(indices.get(index * 3 + corner) * 3 + 1);
+    }
+
+    @Override
+    public double getZ(int index, int corner) {
+        return positions.get(indices.get(index * 3 + corner) * 3 + 2);
+    }
+
+    @Override
+    public int getVertexIndex(int index, int corner) {
+        return indices.get(index * 3 + corner);
+    }
+
+    @Override
+    public int getARGB(int index) {
+        return colors.get(index);
+    }
+
+    @Override
+    public boolean hasNormals() {
+        return normals != null;
+    }
+
+    @Override
+    public Vector getNormal(int index, int corner) {
+        int offset = (index * 3 + corner) * 3;
+        return new Vector(normals.get(offset), normals.get(offset + 1), normals.get(offset + 2));
+    }
+
+    @Override
+    public boolean isTextured(int index) {
+        return textureCoords != null && !Float.isNaN(textureCoords.get(index * 6)) && getMaterial() != null
+                && getMaterial().getDiffuseMap() != null;
+    }
+
+    @Override
+    public Vector getTextureCoord(int index, int corner) {
+        int offset = (index * 3 + corner) * 2;
+        return new Vector(textureCoords.get(offset), textureCoords.get(offset + 1));
+    }
+
+    @Override
+    public boolean facesTowards(int index, double x, double y, double z) {
+        int offset = index * 4;
+        return planes.get(offset) * x + planes.get(offset + 1) * y + planes.get(offset + 2) * z
+                > planes.get(offset + 3);
+    }
+
+    @Override
+    public Vector getFaceNormal(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IllegalArgumentException("Index " + index + " is out of bounds");
+        }
+
+        int offset = index * 4;
+        return new Vector(planes.get(offset), planes.get(offset + 1), planes.get(offset + 2));
+    }
+
+}
@@ -0,0 +1,116 @@
+package graphicstructs;
+
+/**
+ * Utility class to work with colors packed into a single int as 0xAARRGGBB
+ * <br>Keeps colors in the render pipeline free of object allocations
+ */
+public final class PackedColor {
+    /**
+     * Fixed point value of a shading value of 1
+     */
+    public static final int SHADE_ONE = 256;
+
+    /**
+     * Packed opaque white
+     */
+    public static final int WHITE = 0xFFFFFFFF;
+
+    /**
+     * Packed opaque black
+     */
+    public static final int BLACK = 0xFF000000;
+
+    private PackedColor() {
+
+    }
+
+    // Packing
+
+    /**
+     * @param red red component between 0 and 255
+     * @param green green component between 0 and 255
+     * @param blue blue component between 0 and 255
+     * @return an opaque color packed into an int
+     */
+    public static int pack(int red, int green, int blue) {
+        return 0xFF000000 | (red << 16) | (green << 8) | blue;
+    }
+
+    /**
+     * @param argb packed color
+     * @return the red component of a packed color
+     */
+    public static int red(int argb) {
+        return (argb >>> 16) & 0xFF;
+    }
+
+    /**
+     * @param argb packed color
+     * @return the green component of a packed color
+     */
+    public static int green(int argb) {
+        return (argb >>> 8) & 0xFF;
+    }
+
+    /**
+     * @param argb packed color
+     * @return the blue component of a packed color
+     */
+    public static int blue(int argb) {
+        return argb & 0xFF;
+    }
+
+    // Shading
+
+    /**
+     * @param shadingVal value between 0 and 1
+     * @return the shading value as a fixed point value between 0 and {@link #SHADE_ONE}
+     */
+    public static int toFixedShade(double shadingVal) {
+        return (int) (shadingVal * SHADE_ONE);
+    }
+
+    /**
+     * Scale the red, green and blue components of a packed color, the result is always opaque
+     * @param argb packed color to shade
+     * @param fixedShade fixed point shading value between 0 and {@link #SHADE_ONE}
+     * @return the shaded packed color
+     */
+    public static int shade(int argb, int fixedShade) {
+        // red and blue are scaled together since their products cannot overlap
+        int redBlue = (((argb & 0x00FF00FF) * fixedShade) >>> 8) & 0x00FF00FF;
+        int green = (((argb & 0x0000FF00) * fixedShade) >>> 8) & 0x0000FF00;
+        return 0xFF000000 | redBlue | green;
+    }
+
+    /**
+     * Scale each of the red, green and blue components of a packed color separately, the result is always opaque
+     * @param argb packed color to shade
+     * @param redShade fixed point shading value of the red component between 0 and {@link #SHADE_ONE}
+     * @param greenShade fixed point shading value of the green component between 0 and {@link #SHADE_ONE}
+     * @param blueShade fixed point shading value of the blue component between 0 and {@link #SHADE_ONE}
+     * @return the shaded packed color
+     */
+    public static int shade(int argb, int redShade, int greenShade, int blueShade) {
+        if (redShade == greenShade && greenShade == blueShade) {
+            return shade(argb, redShade);
+        }
+
+        return pack((red(argb) * redShade) >>> 8, (green(argb) * greenShade) >>> 8, (blue(argb) * blueShade) >>> 8);
+    }
+
+    /**
+     * Linearly interpolate between two packed colors, the result is always opaque
+     * @param argbA color at a fraction of 0
+     * @param argbB color at a fraction of 1
+     * @param fraction fraction between 0 and 1
+     * @return the interpolated packed color
+     */
+    public static int lerp(int argbA, int argbB, double fraction) {
+        int red = (int) (red(argbA) + (red(argbB) - red(argbA)) * fraction);
+        int green = (int) (green(argbA) + (green(argbB) - green(argbA)) * fraction);
+        int blue = (int) (blue(argbA) + (blue(argbB) - blue(argbA)) * fraction);
+        return pack(red, green, blue);
+    }
+
+}
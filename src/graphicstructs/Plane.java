@@ -65,10 +65,7 @@ public class Plane {
 //                    "intersect the plane");
 //        }
 
-        double planeDotProd = point.dotProduct(normal);
-        double aPlaneDotProd = pointA.dotProduct(normal);
-        double bPlaneDotProd = pointB.dotProduct(normal);
-        double t = (planeDotProd - aPlaneDotProd) / (bPlaneDotProd - aPlaneDotProd);
+        double t = lineIntersectPlaneFraction(pointA, pointB);
 
         Vector lineStartToEnd = pointB.subtract(pointA);
         Vector lineToIntersect = lineStartToEnd.multiplyByScalar(t);
@@ -76,6 +73,18 @@ public class Plane {
         return pointA.add(lineToIntersect);
     }
 
+    /**
+     * @param pointA starting point of the line segment
+     * @param pointB ending point of the line segment
+     * @return how far along the line segment from point A to point B the plane is intersected, as a fraction
+     */
+    public double lineIntersectPlaneFraction(Vector pointA, Vector pointB) {
+        double planeDotProd = point.dotProduct(normal);
+        double aPlaneDotProd = pointA.dotProduct(normal);
+        double bPlaneDotProd = pointB.dotProduct(normal);
+        return (planeDotProd - aPlaneDotProd) / (bPlaneDotProd - aPlaneDotProd);
+    }
+
     // Overrides
 
     /**
@@ -0,0 +1,250 @@
+package graphicstructs;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Image mapped across the surface of triangles, stored with a chain of mip levels that each halve the resolution of
+ * the level before
+ * <br>Texels of each level are stored in Morton order, interleaving the bits of their x and y values, so texels close
+ * to each other in the image are close to each other in memory no matter which direction a triangle is filled in
+ */
+public final class Texture {
+    /**
+     * Largest width or height of a texture, larger images are scaled down
+     */
+    private static final int MAX_SIZE = 4096;
+
+    /**
+     * Colors of every level packed as 0xAARRGGBB, level after level, each in Morton order
+     */
+    private final int[] texels;
+
+    /**
+     * Width of each level in texels, always a power of 2
+     */
+    private final int[] widths;
+
+    /**
+     * Height of each level in texels, always a power of 2
+     */
+    private final int[] heights;
+
+    /**
+     * For each level, the start of the level in the texels plus the bits an x value adds to a Morton index
+     */
+    private final int[][] mortonX;
+
+    /**
+     * For each level, the bits a y value adds to a Morton index
+     */
+    private final int[][] mortonY;
+
+    // Constructors
+
+    /**
+     * Create a texture from an image, scaling it up to a power of 2 in each direction if it isn't already
+     * @param image image to create the texture from
+     */
+    public Texture(BufferedImage image) {
+        if (image == null) {
+            throw new IllegalArgumentException("Cannot create a texture from a null image");
+        }
+
+        int width = powerOfTwoSize(image.getWidth());
+        int height = powerOfTwoSize(image.getHeight());
+
+        // scale into an image that is a power of 2 in each direction with a known pixel layout
+        BufferedImage baseImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = baseImage.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(image, 0, 0, width, height, null);
+        graphics.dispose();
+
+        int levelCount = Integer.numberOfTrailingZeros(Math.max(width, height)) + 1;
+        widths = new int[levelCount];
+        heights = new int[levelCount];
+        mortonX = new int[levelCount][];
+        mortonY = new int[levelCount][];
+
+        int totalTexels = 0;
+        for (int level = 0; level < levelCount; level++) {
+            widths[level] = Math.max(1, width >> level);
+            heights[level] = Math.max(1, height >> level);
+            buildMortonTables(level, totalTexels);
+            totalTexels += widths[level] * heights[level];
+        }
+
+        texels = new int[totalTexels];
+
+        // each level is a box filtered copy of the level before, built in rows and then stored in Morton order
+        int[] levelRows = baseImage.getRGB(0, 0, width, height, null, 0, width);
+
+        for (int level = 0; level < levelCount; level++) {
+            if (level > 0) {
+                levelRows = halveLevel(levelRows, widths[level - 1], heights[level - 1]);
+            }
+
+            for (int y = 0; y < heights[level]; y++) {
+                for (int x = 0; x < widths[level]; x++) {
+                    texels[mortonX[level][x] + mortonY[level][y]] = levelRows[y * widths[level] + x];
+                }
+            }
+        }
+    }
+
+    /**
+     * Load a texture from an image file
+     * @param file image file in any format supported by ImageIO
+     * @return the loaded texture
+     * @throws IOException if the file cannot be read or isn't a supported image
+     */
+    public static Texture load(File file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("Cannot load a texture from a null file");
+        }
+
+        BufferedImage image = ImageIO.read(file);
+        if (image == null) {
+            throw new IOException("Unsupported image format: " + file.getPath());
+        }
+
+        return new Texture(image);
+    }
+
+    // Get the smallest power of 2 at least as large as a size, within the largest size of a texture
+    private static int powerOfTwoSize(int size) {
+        int powerOfTwo = Integer.highestOneBit(Math.max(1, Math.min(size, MAX_SIZE)));
+        return powerOfTwo < size && powerOfTwo < MAX_SIZE ? powerOfTwo << 1 : powerOfTwo;
+    }
+
+    // Spread the bits of x and y values of a level so they interleave when added into a Morton index
+    // Bits beyond the smaller dimension can't be interleaved, so they are placed above the interleaved bits
+    private void buildMortonTables(int level, int levelOffset) {
+        int width = widths[level];
+        int height = heights[level];
+        int sharedBits = Integer.numberOfTrailingZeros(Math.min(width, height));
+
+        mortonX[level] = new int[width];
+        mortonY[level] = new int[height];
+
+        for (int x = 0; x < width; x++) {
+            mortonX[level][x] = levelOffset + (spreadBits(x & ((1 << sharedBits) - 1))
+                    | (x >> sharedBits) << (2 * sharedBits));
+        }
+
+        for (int y = 0; y < height; y++) {
+            mortonY[level][y] = (spreadBits(y & ((1 << sharedBits) - 1)) << 1)
+                    | (y >> sharedBits) << (2 * sharedBits);
+        }
+    }
+
+    // Move each bit of a value to twice its position, leaving a gap after each bit
+    private static int spreadBits(int value) {
+        value = (value | (value << 8)) & 0x00FF00FF;
+        value = (value | (value << 4)) & 0x0F0F0F0F;
+        value = (value | (value << 2)) & 0x33333333;
+        value = (value | (value << 1)) & 0x55555555;
+        return value;
+    }
+
+    // Average each 2x2 block of a level into a level half as large, or each pair once one direction is 1 texel
+    private static int[] halveLevel(int[] rows, int width, int height) {
+        int newWidth = Math.max(1, width >> 1);
+        int newHeight = Math.max(1, height >> 1);
+        int stepX = width > 1 ? 1 : 0;
+        int stepY = height > 1 ? width : 0;
+        int[] blockOffsets = {0, stepX, stepY, stepX + stepY};
+        int[] newRows = new int[newWidth * newHeight];
+
+        for (int y = 0; y < newHeight; y++) {
+            for (int x = 0; x < newWidth; x++) {
+                int topLeft = 2 * y * width + 2 * x;
+
+                int alpha = 0;
+                int red = 0;
+                int green = 0;
+                int blue = 0;
+
+                for (int offset : blockOffsets) {
+                    int argb = rows[topLeft + offset];
+                    alpha += argb >>> 24;
+                    red += PackedColor.red(argb);
+                    green += PackedColor.green(argb);
+                    blue += PackedColor.blue(argb);
+                }
+
+                newRows[y * newWidth + x] = ((alpha + 2) >> 2) << 24 | ((red + 2) >> 2) << 16
+                        | ((green + 2) >> 2) << 8 | (blue + 2) >> 2;
+            }
+        }
+
+        return newRows;
+    }
+
+    // Getters
+
+    /**
+     * @return the amount of mip levels, from the full resolution down to a single texel
+     */
+    public int getLevelCount() {
+        return widths.length;
+    }
+
+    /**
+     * @param level mip level, 0 being the full resolution
+     * @return the width of the level in texels, always a power of 2
+     */
+    public int getWidth(int level) {
+        return widths[level];
+    }
+
+    /**
+     * @param level mip level, 0 being the full resolution
+     * @return the height of the level in texels, always a power of 2
+     */
+    public int getHeight(int level) {
+        return heights[level];
+    }
+
+    /**
+     * Get the color of a texel, wrapping coordinates outside of the level around to repeat the texture
+     * @param level mip level, 0 being the full resolution
+     * @param x x value of the texel
+     * @param y y value of the texel, 0 being the top row of the image
+     * @return the color of the texel packed as 0xAARRGGBB
+     */
+    public int getTexel(int level, int x, int y) {
+        return texels[mortonX[level][x & (widths[level] - 1)] + mortonY[level][y & (heights[level] - 1)]];
+    }
+
+    /**
+     * @return the colors of every level in Morton order, shared with this texture so they must not be modified
+     */
+    public int[] getTexels() {
+        return texels;
+    }
+
+    /**
+     * @param level mip level, 0 being the full resolution
+     * @return for each x value of the level, its texel's offset into the texels without its y value, shared with this
+     * texture so it must not be modified
+     */
+    public int[] getMortonX(int level) {
+        return mortonX[level];
+    }
+
+    /**
+     * @param level mip level, 0 being the full resolution
+     * @return for each y value of the level, its texel's offset into the level without its x value, shared with this
+     * texture so it must not be modified
+     */
+    public int[] getMortonY(int level) {
+        return mortonY[level];
+    }
+
+}
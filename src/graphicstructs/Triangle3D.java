@@ -13,15 +13,81 @@ import java.util.Iterator;
 public class Triangle3D implements Iterable<Vector> {
     public static final int SIZE = 3;
 
+    /**
+     * Amount of values holding the normals of the vertices of a triangle, three components per vertex
+     */
+    public static final int NORMAL_STRIDE = SIZE * 3;
+
+    /**
+     * Amount of values holding the world positions of the vertices of a triangle, three components per vertex
+     */
+    public static final int POSITION_STRIDE = SIZE * 3;
+
     /**
      * Container for 3 vertices of triangle
      */
     private final Vector[] con;
 
     /**
-     * Color of this triangle
+     * Color of this triangle packed as 0xAARRGGBB
+     */
+    private int argb;
+
+    /**
+     * Array holding the components of the normal of each vertex of this triangle one after another, null if the
+     * triangle has no vertex normals
+     * <br>The array may be shared with other triangles, each reading its normals from its own offset
+     */
+    private double[] normals;
+
+    /**
+     * Index of the first component of the first vertex normal of this triangle in its normal array
+     */
+    private int normalOffset;
+
+    /**
+     * Surface normal of this triangle, computed when first needed and forgotten when a vertex changes
+     * <br>Volatile so a normal computed on one thread is only seen by others once it is complete. Threads that ask
+     * for it at the same time may each compute it, which is harmless since they compute the same normal. Vertices
+     * must not be changed while other threads read the triangle.
+     */
+    private volatile Vector surfaceNormal;
+
+    /**
+     * Array holding the color of each vertex of this triangle packed as 0xAARRGGBB one after another, null if the
+     * triangle is a single color
+     * <br>The array may be shared with other triangles, each reading its colors from its own offset
+     */
+    private int[] vertexColors;
+
+    /**
+     * Index of the color of the first vertex of this triangle in its vertex color array
+     */
+    private int vertexColorOffset;
+
+    /**
+     * Array holding the components of the position of each vertex of this triangle in world space one after another,
+     * null if the triangle has no world positions
+     * <br>The positions stay in world space when the vertices are transformed into view and screen space, so lights
+     * can still find how far away each point of the triangle is
+     * <br>The array may be shared with other triangles, each reading its positions from its own offset
+     */
+    private double[] worldPositions;
+
+    /**
+     * Index of the first component of the world position of the first vertex of this triangle in its position array
+     */
+    private int worldPositionOffset;
+
+    /**
+     * Texture coordinates of each vertex of this triangle, null if the triangle has no texture coordinates
+     */
+    private Vector[] textureCoords;
+
+    /**
+     * Texture mapped across this triangle, null if the triangle has no texture
      */
-    private Color color;
+    private Texture texture;
 
     // Constructors
 
@@ -42,7 +108,7 @@ public class Triangle3D implements Iterable<Vector> {
         con[1] = new Vector(vec2);
         con[2] = new Vector(vec3);
 
-        color = Color.WHITE;
+        argb = PackedColor.WHITE;
     }
 
     /**
@@ -62,7 +128,7 @@ public class Triangle3D implements Iterable<Vector> {
         con[1] = vec2;
         con[2] = vec3;
 
-        color = Color.WHITE;
+        argb = PackedColor.WHITE;
     }
 
     /**
@@ -74,12 +140,7 @@ public class Triangle3D implements Iterable<Vector> {
      */
     public Triangle3D(double[] vec1, double[] vec2, double[] vec3, Color color) {
         this(vec1, vec2, vec3);
-
-        if (color == null) {
-            throw new IllegalArgumentException("Cannot set color to null");
-        }
-
-        this.color = color;
+        setColor(color);
     }
 
     /**
@@ -91,12 +152,19 @@ public class Triangle3D implements Iterable<Vector> {
      */
     public Triangle3D(Vector vec1, Vector vec2, Vector vec3, Color color) {
         this(vec1, vec2, vec3);
+        setColor(color);
+    }
 
-        if (color == null) {
-            throw new IllegalArgumentException("Cannot set color to null");
-        }
-
-        this.color = color;
+    /**
+     * Initialize this triangle with 3 points as vectors and a packed color
+     * @param vec1 first vector, must be 3D
+     * @param vec2 second vector, must be 3D
+     * @param vec3 third vector, must be 3D
+     * @param argb color to set for this triangle packed as 0xAARRGGBB
+     */
+    public Triangle3D(Vector vec1, Vector vec2, Vector vec3, int argb) {
+        this(vec1, vec2, vec3);
+        this.argb = argb;
     }
 
     // Setters
@@ -116,6 +184,7 @@ public class Triangle3D implements Iterable<Vector> {
         }
 
         con[index] = new Vector(vector);
+        surfaceNormal = null;
     }
 
     /**
@@ -133,6 +202,7 @@ public class Triangle3D implements Iterable<Vector> {
         }
 
         con[index] = vector;
+        surfaceNormal = null;
     }
 
     /**
@@ -143,7 +213,150 @@ public class Triangle3D implements Iterable<Vector> {
             throw new IllegalArgumentException("Cannot set color to null");
         }
 
-        this.color = color;
+        argb = color.getRGB();
+    }
+
+    /**
+     * @param argb color to set for this triangle packed as 0xAARRGGBB
+     */
+    public void setARGB(int argb) {
+        this.argb = argb;
+    }
+
+    /**
+     * Set the normals of each vertex of this triangle used for smooth shading, copying their components
+     * @param normal1 normal of the first vertex, must be 3D
+     * @param normal2 normal of the second vertex, must be 3D
+     * @param normal3 normal of the third vertex, must be 3D
+     */
+    public void setNormals(Vector normal1, Vector normal2, Vector normal3) {
+        if (normal1 == null || normal2 == null || normal3 == null) {
+            throw new IllegalArgumentException("Cannot set normals to null");
+        } else if (normal1.size() != 3 || normal2.size() != 3 || normal3.size() != 3) {
+            throw new IllegalArgumentException("All normals must be 3 dimensional");
+        }
+
+        double[] components = new double[NORMAL_STRIDE];
+        Vector[] vertexNormals = {normal1, normal2, normal3};
+        for (int i = 0; i < SIZE; i++) {
+            for (int axis = 0; axis < 3; axis++) {
+                components[i * 3 + axis] = vertexNormals[i].get(axis);
+            }
+        }
+
+        setNormals(components, 0);
+    }
+
+    /**
+     * Read the normals of each vertex of this triangle from an array shared with other triangles, so no memory is
+     * allocated for them
+     * @param normals array holding the x, y and z components of the normal of each vertex one after another, must not
+     *                change while this triangle is in use
+     * @param offset index of the first component of the first vertex normal, must leave room for all three normals
+     */
+    public void setNormals(double[] normals, int offset) {
+        if (normals == null) {
+            throw new IllegalArgumentException("Cannot set normals to null");
+        } else if (offset < 0 || offset > normals.length - NORMAL_STRIDE) {
+            throw new IllegalArgumentException("Offset " + offset + " leaves no room for three normals");
+        }
+
+        this.normals = normals;
+        normalOffset = offset;
+    }
+
+    /**
+     * Set the position of each vertex of this triangle in world space, copying their components
+     * @param position1 world position of the first vertex, must be 3D
+     * @param position2 world position of the second vertex, must be 3D
+     * @param position3 world position of the third vertex, must be 3D
+     */
+    public void setWorldPositions(Vector position1, Vector position2, Vector position3) {
+        if (position1 == null || position2 == null || position3 == null) {
+            throw new IllegalArgumentException("Cannot set world positions to null");
+        } else if (position1.size() != 3 || position2.size() != 3 || position3.size() != 3) {
+            throw new IllegalArgumentException("All world positions must be 3 dimensional");
+        }
+
+        double[] components = new double[POSITION_STRIDE];
+        Vector[] positions = {position1, position2, position3};
+        for (int i = 0; i < SIZE; i++) {
+            for (int axis = 0; axis < 3; axis++) {
+                components[i * 3 + axis] = positions[i].get(axis);
+            }
+        }
+
+        setWorldPositions(components, 0);
+    }
+
+    /**
+     * Read the world position of each vertex of this triangle from an array shared with other triangles, so no memory
+     * is allocated for them
+     * @param positions array holding the x, y and z components of the world position of each vertex one after another,
+     *                  must not change while this triangle is in use
+     * @param offset index of the first component of the first vertex position, must leave room for all three positions
+     */
+    public void setWorldPositions(double[] positions, int offset) {
+        if (positions == null) {
+            throw new IllegalArgumentException("Cannot set world positions to null");
+        } else if (offset < 0 || offset > positions.length - POSITION_STRIDE) {
+            throw new IllegalArgumentException("Offset " + offset + " leaves no room for three positions");
+        }
+
+        worldPositions = positions;
+        worldPositionOffset = offset;
+    }
+
+    /**
+     * Set the color of each vertex of this triangle to be interpolated across its surface
+     * @param argb1 packed color of the first vertex
+     * @param argb2 packed color of the second vertex
+     * @param argb3 packed color of the third vertex
+     */
+    public void setVertexColors(int argb1, int argb2, int argb3) {
+        setVertexColors(new int[] {argb1, argb2, argb3}, 0);
+    }
+
+    /**
+     * Read the color of each vertex of this triangle from an array shared with other triangles, so no memory is
+     * allocated for them
+     * @param vertexColors array holding packed colors one after another, must not change while this triangle is in use
+     * @param offset index of the color of the first vertex, must leave room for all three colors
+     */
+    public void setVertexColors(int[] vertexColors, int offset) {
+        if (vertexColors == null) {
+            throw new IllegalArgumentException("Cannot set vertex colors to null");
+        } else if (offset < 0 || offset > vertexColors.length - SIZE) {
+            throw new IllegalArgumentException("Offset " + offset + " leaves no room for three colors");
+        }
+
+        this.vertexColors = vertexColors;
+        vertexColorOffset = offset;
+    }
+
+    /**
+     * Set the texture coordinates of each vertex of this triangle
+     * <br>Coordinates are given as u and v with v growing down the texture, and once the triangle is projected as u,
+     * v and 1 divided by the depth of the vertex so they can be interpolated linearly across the screen
+     * @param textureCoord1 texture coordinates of the first vertex, must be at least 2D
+     * @param textureCoord2 texture coordinates of the second vertex, must be at least 2D
+     * @param textureCoord3 texture coordinates of the third vertex, must be at least 2D
+     */
+    public void setTextureCoords(Vector textureCoord1, Vector textureCoord2, Vector textureCoord3) {
+        if (textureCoord1 == null || textureCoord2 == null || textureCoord3 == null) {
+            throw new IllegalArgumentException("Cannot set texture coordinates to null");
+        } else if (textureCoord1.size() < 2 || textureCoord2.size() < 2 || textureCoord3.size() < 2) {
+            throw new IllegalArgumentException("All texture coordinates must be at least 2 dimensional");
+        }
+
+        textureCoords = new Vector[] {textureCoord1, textureCoord2, textureCoord3};
+    }
+
+    /**
+     * @param texture texture to map across this triangle, or null for no texture
+     */
+    public void setTexture(Texture texture) {
+        this.texture = texture;
     }
 
     /**
@@ -154,11 +367,7 @@ public class Triangle3D implements Iterable<Vector> {
             throw new IllegalArgumentException("Shading value must be between 0 and 1");
         }
 
-        color = new Color(
-                (int) (shadingVal * color.getRed()),
-                (int) (shadingVal * color.getGreen()),
-                (int) (shadingVal * color.getBlue())
-        );
+        argb = PackedColor.shade(argb, PackedColor.toFixedShade(shadingVal));
     }
 
     // Getters
@@ -176,19 +385,162 @@ public class Triangle3D implements Iterable<Vector> {
     }
 
     /**
-     * @return the color of this triangle
+     * @return the color of this triangle, a new object is created on each call
      */
     public Color getColor() {
-        return color;
+        return new Color(argb, true);
+    }
+
+    /**
+     * @return the color of this triangle packed as 0xAARRGGBB
+     */
+    public int getARGB() {
+        return argb;
+    }
+
+    /**
+     * @return whether or not this triangle has a normal for each vertex
+     */
+    public boolean hasNormals() {
+        return normals != null;
+    }
+
+    /**
+     * @param index index of the vertex, must be within the size of a triangle
+     * @return the normal of the vertex at the specified index, or null if this triangle has no vertex normals, a new
+     * object is created on each call
+     */
+    public Vector getNormal(int index) {
+        if (index < 0 || index > 2) {
+            throw new IllegalArgumentException("Index " + index + " is out of bounds");
+        } else if (normals == null) {
+            return null;
+        }
+
+        int start = normalOffset + index * 3;
+        return new Vector(normals[start], normals[start + 1], normals[start + 2]);
+    }
+
+    /**
+     * @param index index of the vertex, must be within the size of a triangle
+     * @param axis index of the component, 0 for x, 1 for y and 2 for z
+     * @return a single component of the normal of the vertex at the specified index, this triangle must have vertex
+     * normals
+     */
+    public double getNormal(int index, int axis) {
+        if (index < 0 || index > 2 || axis < 0 || axis > 2) {
+            throw new IllegalArgumentException("Index " + index + " or axis " + axis + " is out of bounds");
+        }
+
+        return normals[normalOffset + index * 3 + axis];
+    }
+
+    /**
+     * @return whether or not this triangle has a world position for each vertex
+     */
+    public boolean hasWorldPositions() {
+        return worldPositions != null;
     }
 
     /**
-     * @return the surface normal of this triangle
+     * @param index index of the vertex, must be within the size of a triangle
+     * @return the world position of the vertex at the specified index, or null if this triangle has no world
+     * positions, a new object is created on each call
+     */
+    public Vector getWorldPosition(int index) {
+        if (index < 0 || index > 2) {
+            throw new IllegalArgumentException("Index " + index + " is out of bounds");
+        } else if (worldPositions == null) {
+            return null;
+        }
+
+        int start = worldPositionOffset + index * 3;
+        return new Vector(worldPositions[start], worldPositions[start + 1], worldPositions[start + 2]);
+    }
+
+    /**
+     * @param index index of the vertex, must be within the size of a triangle
+     * @param axis index of the component, 0 for x, 1 for y and 2 for z
+     * @return a single component of the world position of the vertex at the specified index, this triangle must have
+     * world positions
+     */
+    public double getWorldPosition(int index, int axis) {
+        if (index < 0 || index > 2 || axis < 0 || axis > 2) {
+            throw new IllegalArgumentException("Index " + index + " or axis " + axis + " is out of bounds");
+        }
+
+        return worldPositions[worldPositionOffset + index * 3 + axis];
+    }
+
+    /**
+     * @return whether or not this triangle has a color for each vertex
+     */
+    public boolean hasVertexColors() {
+        return vertexColors != null;
+    }
+
+    /**
+     * @param index index of the vertex, must be within the size of a triangle
+     * @return the packed color of the vertex at the specified index, or the triangle color if it has no vertex colors
+     */
+    public int getVertexARGB(int index) {
+        if (index < 0 || index > 2) {
+            throw new IllegalArgumentException("Index " + index + " is out of bounds");
+        }
+
+        return vertexColors == null ? argb : vertexColors[vertexColorOffset + index];
+    }
+
+    /**
+     * @return whether or not this triangle has texture coordinates for each vertex
+     */
+    public boolean hasTextureCoords() {
+        return textureCoords != null;
+    }
+
+    /**
+     * @param index index of the vertex, must be within the size of a triangle
+     * @return the texture coordinates of the vertex at the specified index, or null if this triangle has none
+     */
+    public Vector getTextureCoord(int index) {
+        if (index < 0 || index > 2) {
+            throw new IllegalArgumentException("Index " + index + " is out of bounds");
+        }
+
+        return textureCoords == null ? null : textureCoords[index];
+    }
+
+    /**
+     * @return the texture mapped across this triangle, or null if the triangle has no texture
+     */
+    public Texture getTexture() {
+        return texture;
+    }
+
+    /**
+     * @return whether or not this triangle has both a texture and texture coordinates to map it with
+     */
+    public boolean isTextured() {
+        return texture != null && textureCoords != null;
+    }
+
+    /**
+     * @return the surface normal of this triangle, or a vector of length 0 if the triangle has no area, shared between
+     * calls so it must not be modified
      */
     public Vector getSurfaceNormal() {
-        Vector vec1 = con[1].subtract(con[0]);
-        Vector vec2 = con[2].subtract(con[0]);
-        return vec1.crossProduct(vec2).normalized();
+        // read the field once, so a normal forgotten by another thread in between is never returned as null
+        Vector normal = surfaceNormal;
+
+        if (normal == null) {
+            Vector vec1 = con[1].subtract(con[0]);
+            Vector vec2 = con[2].subtract(con[0]);
+            Vector cross = vec1.crossProduct(vec2);
+            normal = cross.dotProduct(cross) > 0.0 ? cross.normalized() : cross;
+            surfaceNormal = normal;
+        }
+
+        return normal;
     }
 
     // Overrides
@@ -0,0 +1,54 @@
+package jobs;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Task submitted to a {@link JobSystem}, which later jobs can depend on and anyone can wait for
+ * @param <T> type of the result of the job
+ */
+public class Job<T> {
+    /**
+     * Future completed with the result of the job once it has run
+     */
+    private final CompletableFuture<T> future;
+
+    // Constructors
+
+    Job(CompletableFuture<T> future) {
+        this.future = future;
+    }
+
+    // Waiting
+
+    /**
+     * Wait for the job to finish
+     * @return the result of the job
+     * @throws CompletionException if the job or any job it depends on failed, with the first failure as its cause
+     */
+    public T join() {
+        return future.join();
+    }
+
+    // Getters
+
+    /**
+     * @return whether or not the job has finished, successfully or not
+     */
+    public boolean isDone() {
+        return future.isDone();
+    }
+
+    /**
+     * @return whether or not the job or any job it depends on failed
+     */
+    public boolean isFailed() {
+        return future.isCompletedExceptionally();
+    }
+
+    // Future completed with the result of the job, for jobs depending on it
+    CompletableFuture<T> getFuture() {
+        return future;
+    }
+
+}
@@ -0,0 +1,118 @@
+package jobs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Jobs submitted together to a {@link JobSystem} and waited for together at a single join point, such as the end of
+ * a frame
+ * <br>A group can be joined any amount of times, each join waiting for the jobs submitted since the last one. Groups
+ * are meant to be used from a single thread, while their jobs run on the job system's threads
+ */
+public class JobGroup {
+    /**
+     * Job system the jobs of the group run on
+     */
+    private final JobSystem jobSystem;
+
+    /**
+     * Jobs submitted since the group was last joined
+     */
+    private final List<Job<?>> jobs;
+
+    // Constructors
+
+    JobGroup(JobSystem jobSystem) {
+        this.jobSystem = jobSystem;
+        jobs = new ArrayList<>();
+    }
+
+    // Submitting
+
+    /**
+     * Run a CPU bound task as part of the group once every job it depends on has finished
+     * @param task task to run
+     * @param dependencies jobs that must finish before the task runs
+     * @param <T> type of the result of the task
+     * @return the job running the task
+     */
+    public <T> Job<T> submit(Callable<T> task, Job<?>... dependencies) {
+        return add(jobSystem.submit(task, dependencies));
+    }
+
+    /**
+     * Run a CPU bound task as part of the group once every job it depends on has finished
+     * @param task task to run
+     * @param dependencies jobs that must finish before the task runs
+     * @return the job running the task
+     */
+    public Job<Void> submit(Runnable task, Job<?>... dependencies) {
+        return add(jobSystem.submit(task, dependencies));
+    }
+
+    /**
+     * Run a blocking task as part of the group once every job it depends on has finished
+     * @param task task to run
+     * @param dependencies jobs that must finish before the task runs
+     * @param <T> type of the result of the task
+     * @return the job running the task
+     */
+    public <T> Job<T> submitIO(Callable<T> task, Job<?>... dependencies) {
+        return add(jobSystem.submitIO(task, dependencies));
+    }
+
+    /**
+     * Run a blocking task as part of the group once every job it depends on has finished
+     * @param task task to run
+     * @param dependencies jobs that must finish before the task runs
+     * @return the job running the task
+     */
+    public Job<Void> submitIO(Runnable task, Job<?>... dependencies) {
+        return add(jobSystem.submitIO(task, dependencies));
+    }
+
+    // Keep track of a job until the group is next joined
+    private <T> Job<T> add(Job<T> job) {
+        jobs.add(job);
+        return job;
+    }
+
+    // Waiting
+
+    /**
+     * Wait for every job submitted since the group was last joined, even if some of them fail
+     * @throws CompletionException if any job failed, with the first failure in the order the jobs were submitted as
+     * its cause
+     */
+    public void join() {
+        CompletionException failure = null;
+
+        for (Job<?> job : jobs) {
+            try {
+                job.join();
+            } catch (CompletionException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+
+        jobs.clear();
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // Getters
+
+    /**
+     * @return the amount of jobs submitted since the group was last joined
+     */
+    public int size() {
+        return jobs.size();
+    }
+
+}
@@ -0,0 +1,397 @@
+package jobs;
+
+import java.io.Closeable;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * Scheduler running the engine's tasks, so parallel features share the same threads instead of creating their own
+ * <br>CPU bound jobs, such as the stages of the render pipeline, run on a work stealing pool with a thread for each
+ * processor. Blocking jobs, such as loading files or writing them, run on virtual threads when the runtime has them
+ * and on a growing pool of daemon threads otherwise, so they never hold up the CPU bound jobs.
+ * <br>Jobs can depend on other jobs, only running once all of them finish, and fail without running if any of them
+ * fails. Jobs submitted through a {@link JobGroup} can be waited for together, such as once per frame.
+ */
+public class JobSystem implements Closeable {
+    /**
+     * Tasks a parallel loop is split into for each thread by default, so threads finishing early can steal the rest
+     */
+    private static final int SPLITS_PER_THREAD = 8;
+
+    /**
+     * Work stealing pool running CPU bound jobs
+     */
+    private final ForkJoinPool computePool;
+
+    /**
+     * Executor running blocking jobs
+     */
+    private final ExecutorService ioExecutor;
+
+    /**
+     * Whether or not blocking jobs run on virtual threads
+     */
+    private final boolean virtualThreads;
+
+    // Constructors
+
+    /**
+     * Create a job system with a CPU bound thread for each processor
+     */
+    public JobSystem() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a job system
+     * @param parallelism amount of CPU bound jobs run at the same time, must be positive
+     */
+    public JobSystem(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("A job system needs at least one thread");
+        }
+
+        computePool = new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("job-compute-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+
+        ExecutorService virtualThreadExecutor = createVirtualThreadExecutor();
+        virtualThreads = virtualThreadExecutor != null;
+        ioExecutor = virtualThreads ? virtualThreadExecutor : createDaemonThreadExecutor();
+    }
+
+    // Create an executor starting a virtual thread for each task, or return null if the runtime has no virtual threads
+    // The executor is found by reflection, since virtual threads are newer than the language level of the project
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null; // missing, or a preview that isn't enabled
+        }
+    }
+
+    // Create a growing pool of daemon threads for blocking tasks, reusing threads that have finished their tasks
+    private static ExecutorService createDaemonThreadExecutor() {
+        AtomicInteger threadNumber = new AtomicInteger();
+
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "job-io-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Submitting
+
+    /**
+     * Run a CPU bound task on the work stealing pool once every job it depends on has finished
+     * @param task task to run
+     * @param dependencies jobs that must finish before the task runs
+     * @param <T> type of the result of the task
+     * @return the job running the task
+     */
+    public <T> Job<T> submit(Callable<T> task, Job<?>... dependencies) {
+        return schedule(task, computePool, dependencies);
+    }
+
+    /**
+     * Run a CPU bound task on the work stealing pool once every job it depends on has finished
+     * @param task task to run
+     * @param dependencies jobs that must finish before the task runs
+     * @return the job running the task
+     */
+    public Job<Void> submit(Runnable task, Job<?>... dependencies) {
+        return schedule(asCallable(task), computePool, dependencies);
+    }
+
+    /**
+     * Run a blocking task, such as reading or writing a file, once every job it depends on has finished
+     * @param task task to run
+     * @param dependencies jobs that must finish before the task runs
+     * @param <T> type of the result of the task
+     * @return the job running the task
+     */
+    public <T> Job<T> submitIO(Callable<T> task, Job<?>... dependencies) {
+        return schedule(task, ioExecutor, dependencies);
+    }
+
+    /**
+     * Run a blocking task, such as reading or writing a file, once every job it depends on has finished
+     * @param task task to run
+     * @param dependencies jobs that must finish before the task runs
+     * @return the job running the task
+     */
+    public Job<Void> submitIO(Runnable task, Job<?>... dependencies) {
+        return schedule(asCallable(task), ioExecutor, dependencies);
+    }
+
+    /**
+     * @return a new group of jobs to wait for together
+     */
+    public JobGroup newGroup() {
+        return new JobGroup(this);
+    }
+
+    // Run a task on an executor once its dependencies finish, failing without running it if any of them fail
+    private <T> Job<T> schedule(Callable<T> task, Executor executor, Job<?>[] dependencies) {
+        if (task == null) {
+            throw new IllegalArgumentException("Cannot submit a null task");
+        }
+
+        CompletableFuture<T> future;
+        if (dependencies.length == 0) {
+            future = CompletableFuture.supplyAsync(() -> call(task), executor);
+        } else {
+            CompletableFuture<?>[] dependencyFutures = new CompletableFuture<?>[dependencies.length];
+            for (int i = 0; i < dependencies.length; i++) {
+                dependencyFutures[i] = dependencies[i].getFuture();
+            }
+
+            future = CompletableFuture.allOf(dependencyFutures).thenApplyAsync(ignored -> call(task), executor);
+        }
+
+        return new Job<>(future);
+    }
+
+    // Run a task, passing on unchecked exceptions and wrapping checked ones so they fail the job with them as cause
+    private static <T> T call(Callable<T> task) {
+        try {
+            return task.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static Callable<Void> asCallable(Runnable task) {
+        if (task == null) {
+            throw new IllegalArgumentException("Cannot submit a null task");
+        }
+
+        return () -> {
+            task.run();
+            return null;
+        };
+    }
+
+    // Parallel Loops
+
+    /**
+     * Run the body of a loop for every index of a range across the work stealing pool and wait for all of them,
+     * splitting the range into a few tasks for each thread
+     * <br>Can be called from within a CPU bound job, in which case the calling thread works on the loop too
+     * @param start first index of the range
+     * @param end index after the last index of the range
+     * @param body body of the loop, called once for each index from any thread
+     */
+    public void parallelFor(int start, int end, IntConsumer body) {
+        int grainSize = (end - start) / (getParallelism() * SPLITS_PER_THREAD);
+        parallelFor(start, end, Math.max(1, grainSize), body);
+    }
+
+    /**
+     * Run the body of a loop for every index of a range across the work stealing pool and wait for all of them
+     * <br>Can be called from within a CPU bound job, in which case the calling thread works on the loop too
+     * @param start first index of the range
+     * @param end index after the last index of the range
+     * @param grainSize fewest indices run as a single task, must be positive
+     * @param body body of the loop, called once for each index from any thread
+     */
+    public void parallelFor(int start, int end, int grainSize, IntConsumer body) {
+        if (grainSize <= 0) {
+            throw new IllegalArgumentException("Grain size must be positive");
+        } else if (body == null) {
+            throw new IllegalArgumentException("Cannot run a null loop body");
+        }
+
+        if (end - start <= grainSize) { // not worth handing to another thread
+            for (int i = start; i < end; i++) {
+                body.accept(i);
+            }
+
+            return;
+        }
+
+        RangeAction action = new RangeAction(start, end, grainSize, body);
+        if (ForkJoinTask.getPool() == computePool) {
+            action.invoke();
+        } else {
+            computePool.invoke(action);
+        }
+    }
+
+    // Getters
+
+    /**
+     * @return the amount of CPU bound jobs run at the same time
+     */
+    public int getParallelism() {
+        return computePool.getParallelism();
+    }
+
+    /**
+     * @return whether or not blocking jobs run on virtual threads
+     */
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * @return an executor running blocking tasks, for code that takes an executor instead of submitting jobs
+     */
+    public Executor getIOExecutor() {
+        return ioExecutor;
+    }
+
+    /**
+     * Create an executor running blocking tasks like {@link #getIOExecutor()}, but no more than a given amount at the
+     * same time, queueing the others in the order they were given
+     * @param maxConcurrentTasks most tasks run at the same time, must be positive
+     * @return an executor for code that takes an executor and may give it many tasks at once, such as loading models
+     */
+    public Executor newBoundedIOExecutor(int maxConcurrentTasks) {
+        if (maxConcurrentTasks <= 0) {
+            throw new IllegalArgumentException("Must run at least one task at a time");
+        }
+
+        return new BoundedExecutor(ioExecutor, maxConcurrentTasks);
+    }
+
+    // Overrides
+
+    /**
+     * Stop accepting jobs, letting jobs already submitted finish
+     */
+    @Override
+    public void close() {
+        computePool.shutdown();
+        ioExecutor.shutdown();
+    }
+
+    /**
+     * Range of a parallel loop, split in half until each half is no larger than the grain size
+     */
+    private static final class RangeAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int start;
+
+        private final int end;
+
+        private final int grainSize;
+
+        private final IntConsumer body;
+
+        private RangeAction(int start, int end, int grainSize, IntConsumer body) {
+            this.start = start;
+            this.end = end;
+            this.grainSize = grainSize;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= grainSize) {
+                for (int i = start; i < end; i++) {
+                    body.accept(i);
+                }
+
+                return;
+            }
+
+            int middle = (start + end) >>> 1;
+            invokeAll(new RangeAction(start, middle, grainSize, body), new RangeAction(middle, end, grainSize, body));
+        }
+    }
+
+    /**
+     * Executor handing tasks to another executor, with no more than a given amount of them running at the same time
+     */
+    private static final class BoundedExecutor implements Executor {
+        private final Executor executor;
+
+        private final int maxRunning;
+
+        /**
+         * Tasks waiting for one of the running tasks to finish, in the order they were given
+         */
+        private final Queue<Runnable> waiting;
+
+        private int running;
+
+        private BoundedExecutor(Executor executor, int maxRunning) {
+            this.executor = executor;
+            this.maxRunning = maxRunning;
+            waiting = new ArrayDeque<>();
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            if (task == null) {
+                throw new IllegalArgumentException("Cannot run a null task");
+            }
+
+            synchronized (this) {
+                if (running == maxRunning) {
+                    waiting.add(task);
+                    return;
+                }
+
+                running++;
+            }
+
+            try {
+                executor.execute(() -> runThenNext(task));
+            } catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    running--;
+                }
+
+                throw e;
+            }
+        }
+
+        // Run a task, then each waiting task in turn on the same thread until none are left
+        // Tasks keep their thread instead of starting a new one, so a task rejected once the executor is shut down
+        // cannot leave the tasks queued behind it waiting forever
+        private void runThenNext(Runnable task) {
+            Runnable next = task;
+
+            while (next != null) {
+                try {
+                    next.run();
+                } catch (RuntimeException e) {
+                    // a failing task must not keep the tasks waiting behind it from running
+                    Thread thread = Thread.currentThread();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                }
+
+                synchronized (this) {
+                    next = waiting.poll();
+                    if (next == null) {
+                        running--;
+                    }
+                }
+            }
+        }
+    }
+
+}
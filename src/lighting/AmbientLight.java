@@ -0,0 +1,25 @@
+package lighting;
+
+/**
+ * Light reaching every surface equally regardless of its position or direction
+ */
+public class AmbientLight extends Light {
+    // Constructors
+
+    /**
+     * Create a white ambient light
+     * @param intensity strength of this light, cannot be negative
+     */
+    public AmbientLight(double intensity) {
+        setIntensity(intensity);
+    }
+
+    // Lighting
+
+    @Override
+    public void illuminate(double pointX, double pointY, double pointZ,
+                           double normalX, double normalY, double normalZ, double[] rgb) {
+        addLight(1.0, rgb);
+    }
+
+}
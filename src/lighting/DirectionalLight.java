@@ -0,0 +1,61 @@
+package lighting;
+
+import mathkit.Vector;
+
+/**
+ * Light arriving from the same direction at every point, such as from the sun
+ */
+public class DirectionalLight extends Light {
+    /**
+     * Unit vector pointing from surfaces towards the light
+     */
+    private Vector direction;
+
+    // Constructors
+
+    /**
+     * Create a white directional light at full intensity
+     * @param direction direction pointing from surfaces towards the light, must be 3D and non zero
+     */
+    public DirectionalLight(Vector direction) {
+        setDirection(direction);
+    }
+
+    // Lighting
+
+    @Override
+    public void illuminate(double pointX, double pointY, double pointZ,
+                           double normalX, double normalY, double normalZ, double[] rgb) {
+        double lambert = normalX * direction.get(0) + normalY * direction.get(1) + normalZ * direction.get(2);
+
+        if (lambert > 0.0) {
+            addLight(lambert, rgb);
+        }
+    }
+
+    // Setters
+
+    /**
+     * @param direction direction pointing from surfaces towards the light, must be 3D and non zero
+     */
+    public void setDirection(Vector direction) {
+        if (direction == null || direction.size() != 3) {
+            throw new IllegalArgumentException("Direction must be a 3D vector");
+        } else if (direction.dotProduct(direction) == 0.0) {
+            throw new IllegalArgumentException("Direction cannot be a zero vector");
+        }
+
+        this.direction = direction.normalized();
+        changed();
+    }
+
+    // Getters
+
+    /**
+     * @return the unit vector pointing from surfaces towards the light
+     */
+    public Vector getDirection() {
+        return direction;
+    }
+
+}
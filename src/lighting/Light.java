@@ -0,0 +1,123 @@
+package lighting;
+
+import graphicstructs.PackedColor;
+
+import java.awt.Color;
+
+/**
+ * A source of light in the 3D environment
+ * <br>Any change to a light invalidates the lighting cached from the {@link Lighting} it belongs to
+ */
+public abstract class Light {
+    /**
+     * Color of this light packed as 0xAARRGGBB
+     */
+    private int argb;
+
+    /**
+     * Strength of this light, 1 lights a surface facing it at its full color
+     */
+    private double intensity;
+
+    /**
+     * Lighting this light belongs to, null if it has not been added to one
+     */
+    private Lighting owner;
+
+    // Constructors
+
+    /**
+     * Create a white light at full intensity
+     */
+    protected Light() {
+        argb = PackedColor.WHITE;
+        intensity = 1.0;
+    }
+
+    // Lighting
+
+    /**
+     * Add the light this light casts onto a surface to running red, green and blue totals
+     * @param pointX x value of the lit point in world space
+     * @param pointY y value of the lit point in world space
+     * @param pointZ z value of the lit point in world space
+     * @param normalX x value of the unit surface normal
+     * @param normalY y value of the unit surface normal
+     * @param normalZ z value of the unit surface normal
+     * @param rgb red, green and blue totals where 1 is full brightness
+     */
+    public abstract void illuminate(double pointX, double pointY, double pointZ,
+                                    double normalX, double normalY, double normalZ, double[] rgb);
+
+    /**
+     * Add a scaled amount of the color of this light to running red, green and blue totals
+     * @param amount amount of light reaching the surface, 1 being the full intensity of this light
+     * @param rgb red, green and blue totals where 1 is full brightness
+     */
+    protected void addLight(double amount, double[] rgb) {
+        double scale = amount * intensity / 255.0;
+        rgb[0] += PackedColor.red(argb) * scale;
+        rgb[1] += PackedColor.green(argb) * scale;
+        rgb[2] += PackedColor.blue(argb) * scale;
+    }
+
+    /**
+     * Mark this light as changed so lighting computed from it is recomputed
+     */
+    protected void changed() {
+        if (owner != null) {
+            owner.changed();
+        }
+    }
+
+    // Setters
+
+    /**
+     * @param color color of this light
+     */
+    public void setColor(Color color) {
+        if (color == null) {
+            throw new IllegalArgumentException("Cannot set color to null");
+        }
+
+        argb = color.getRGB();
+        changed();
+    }
+
+    /**
+     * @param intensity strength of this light, cannot be negative
+     */
+    public void setIntensity(double intensity) {
+        if (intensity < 0.0) {
+            throw new IllegalArgumentException("Intensity cannot be negative");
+        }
+
+        this.intensity = intensity;
+        changed();
+    }
+
+    void setOwner(Lighting owner) {
+        this.owner = owner;
+    }
+
+    // Getters
+
+    /**
+     * @return the color of this light
+     */
+    public Color getColor() {
+        return new Color(argb, true);
+    }
+
+    /**
+     * @return the strength of this light
+     */
+    public double getIntensity() {
+        return intensity;
+    }
+
+    Lighting getOwner() {
+        return owner;
+    }
+
+}
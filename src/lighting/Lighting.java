@@ -0,0 +1,135 @@
+package lighting;
+
+import graphicstructs.PackedColor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collection of every light in the 3D environment
+ */
+public class Lighting {
+    /**
+     * Container for all lights
+     */
+    private final List<Light> lights;
+
+    /**
+     * Running red, green and blue totals of the surface being lit
+     */
+    private final double[] rgb;
+
+    /**
+     * Incremented whenever a light is added, removed or changed
+     */
+    private final AtomicLong version;
+
+    // Constructors
+
+    /**
+     * Create lighting with no lights, leaving every surface black
+     */
+    public Lighting() {
+        lights = new ArrayList<>();
+        rgb = new double[3];
+        version = new AtomicLong();
+    }
+
+    // Lights
+
+    /**
+     * @param light light to add, cannot already belong to another lighting
+     */
+    public synchronized void addLight(Light light) {
+        if (light == null) {
+            throw new IllegalArgumentException("Cannot add a null light");
+        } else if (light.getOwner() != null) {
+            throw new IllegalArgumentException("Light already belongs to a lighting");
+        }
+
+        light.setOwner(this);
+        lights.add(light);
+        changed();
+    }
+
+    /**
+     * @param light light to remove
+     * @return whether or not the light was removed
+     */
+    public synchronized boolean removeLight(Light light) {
+        if (light == null || light.getOwner() != this) {
+            return false;
+        }
+
+        light.setOwner(null);
+        lights.remove(light);
+        changed();
+        return true;
+    }
+
+    // Lighting
+
+    /**
+     * Light a surface with every light
+     * @param argb packed color of the surface
+     * @param pointX x value of the lit point in world space
+     * @param pointY y value of the lit point in world space
+     * @param pointZ z value of the lit point in world space
+     * @param normalX x value of the unit surface normal
+     * @param normalY y value of the unit surface normal
+     * @param normalZ z value of the unit surface normal
+     * @return the packed color of the lit surface
+     */
+    public synchronized int shade(int argb, double pointX, double pointY, double pointZ,
+                                  double normalX, double normalY, double normalZ) {
+        Arrays.fill(rgb, 0.0);
+
+        for (Light light : lights) {
+            light.illuminate(pointX, pointY, pointZ, normalX, normalY, normalZ, rgb);
+        }
+
+        return PackedColor.shade(argb, toFixedShade(rgb[0]), toFixedShade(rgb[1]), toFixedShade(rgb[2]));
+    }
+
+    // Clamp an amount of light to a fixed point shading value
+    private static int toFixedShade(double light) {
+        return PackedColor.toFixedShade(Math.min(Math.max(light, 0.0), 1.0));
+    }
+
+    void changed() {
+        version.incrementAndGet();
+    }
+
+    // Getters
+
+    /**
+     * @return a copy of the list of lights
+     */
+    public synchronized List<Light> getLights() {
+        return Collections.unmodifiableList(new ArrayList<>(lights));
+    }
+
+    /**
+     * @return the first directional light, or null if there is none
+     */
+    public synchronized DirectionalLight getPrimaryLight() {
+        for (Light light : lights) {
+            if (light instanceof DirectionalLight) {
+                return (DirectionalLight) light;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return a number that changes whenever a light is added, removed or changed
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+}
@@ -0,0 +1,261 @@
+package lighting;
+
+import graphicstructs.Mesh3D;
+import graphicstructs.Triangle3D;
+import mathkit.Matrix;
+import mathkit.Vector;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Cache of the lit colors of each mesh, per triangle for flat shading and per vertex for Gouraud shading, and of the
+ * vertex normals and positions of each mesh in world space for Phong shading
+ * <br>Colors are only recomputed when a light or the world transform of a mesh changes, so static scenes are lit once,
+ * and normals and positions only when the world transform changes
+ * <br>The cache is safe to use from several threads, so viewports rendering at the same time share the colors the
+ * first of them computes
+ */
+public class LightingCache {
+    /**
+     * Lights the cached colors are computed from
+     */
+    private final Lighting lighting;
+
+    /**
+     * Cached colors of each mesh
+     */
+    private final Map<Mesh3D, MeshLighting> meshLighting;
+
+    // Constructors
+
+    /**
+     * Create an empty cache
+     * @param lighting lights to compute colors from
+     */
+    public LightingCache(Lighting lighting) {
+        if (lighting == null) {
+            throw new IllegalArgumentException("Cannot cache colors of null lighting");
+        }
+
+        this.lighting = lighting;
+        meshLighting = new IdentityHashMap<>();
+    }
+
+    // Cache
+
+    /**
+     * @param mesh mesh to get colors of
+     * @param worldMat rotation of the mesh in world space
+     * @param translationVec translation of the mesh in world space
+     * @param transformVersion number that changes whenever the world transform of the mesh changes
+     * @return the lit color of each triangle of the mesh, in the order the mesh iterates its triangles
+     */
+    public synchronized int[] getFaceColors(Mesh3D mesh, Matrix worldMat, Vector translationVec, long transformVersion) {
+        MeshLighting cached = getMeshLighting(mesh);
+        long lightingVersion = lighting.getVersion();
+
+        if (cached.faceColors == null || cached.faceLightingVersion != lightingVersion
+                || cached.faceTransformVersion != transformVersion) {
+            cached.faceColors = computeFaceColors(mesh, worldMat, translationVec);
+            cached.faceLightingVersion = lightingVersion;
+            cached.faceTransformVersion = transformVersion;
+        }
+
+        return cached.faceColors;
+    }
+
+    /**
+     * @param mesh mesh to get colors of
+     * @param worldMat rotation of the mesh in world space
+     * @param translationVec translation of the mesh in world space
+     * @param transformVersion number that changes whenever the world transform of the mesh changes
+     * @return the lit color of each vertex of each triangle of the mesh, three per triangle in the order the mesh
+     * iterates its triangles
+     */
+    public synchronized int[] getVertexColors(Mesh3D mesh, Matrix worldMat, Vector translationVec, long transformVersion) {
+        MeshLighting cached = getMeshLighting(mesh);
+        long lightingVersion = lighting.getVersion();
+
+        if (cached.vertexColors == null || cached.vertexLightingVersion != lightingVersion
+                || cached.vertexTransformVersion != transformVersion) {
+            cached.vertexColors = computeVertexColors(mesh, worldMat, translationVec);
+            cached.vertexLightingVersion = lightingVersion;
+            cached.vertexTransformVersion = transformVersion;
+        }
+
+        return cached.vertexColors;
+    }
+
+    /**
+     * @param mesh mesh to get normals of
+     * @param worldMat rotation of the mesh in world space
+     * @param transformVersion number that changes whenever the world transform of the mesh changes
+     * @return the x, y and z components of the normal of each vertex of each triangle of the mesh in world space,
+     * {@link Triangle3D#NORMAL_STRIDE} per triangle in the order the mesh iterates its triangles, with the surface
+     * normal for triangles without vertex normals
+     */
+    public synchronized double[] getVertexNormals(Mesh3D mesh, Matrix worldMat, long transformVersion) {
+        MeshLighting cached = getMeshLighting(mesh);
+
+        if (cached.vertexNormals == null || cached.normalTransformVersion != transformVersion) {
+            cached.vertexNormals = computeVertexNormals(mesh, worldMat);
+            cached.normalTransformVersion = transformVersion;
+        }
+
+        return cached.vertexNormals;
+    }
+
+    /**
+     * @param mesh mesh to get positions of
+     * @param worldMat rotation of the mesh in world space
+     * @param translationVec translation of the mesh in world space
+     * @param transformVersion number that changes whenever the world transform of the mesh changes
+     * @return the x, y and z components of the position of each vertex of each triangle of the mesh in world space,
+     * {@link Triangle3D#POSITION_STRIDE} per triangle in the order the mesh iterates its triangles
+     */
+    public synchronized double[] getVertexPositions(Mesh3D mesh, Matrix worldMat, Vector translationVec,
+                                                    long transformVersion) {
+        MeshLighting cached = getMeshLighting(mesh);
+
+        if (cached.vertexPositions == null || cached.positionTransformVersion != transformVersion) {
+            cached.vertexPositions = computeVertexPositions(mesh, worldMat, translationVec);
+            cached.positionTransformVersion = transformVersion;
+        }
+
+        return cached.vertexPositions;
+    }
+
+    /**
+     * Forget the colors of a mesh, for example after it has been unloaded
+     * @param mesh mesh to forget
+     */
+    public synchronized void invalidate(Mesh3D mesh) {
+        meshLighting.remove(mesh);
+    }
+
+    private MeshLighting getMeshLighting(Mesh3D mesh) {
+        if (mesh == null) {
+            throw new IllegalArgumentException("Cannot light a null mesh");
+        }
+
+        return meshLighting.computeIfAbsent(mesh, key -> new MeshLighting());
+    }
+
+    // Lighting
+
+    // Light each triangle at its center with its surface normal
+    private int[] computeFaceColors(Mesh3D mesh, Matrix worldMat, Vector translationVec) {
+        int[] colors = new int[mesh.size()];
+        int triIndex = 0;
+
+        for (Triangle3D tri : mesh) {
+            Vector vertex1 = tri.get(0).multiplyMatrix(worldMat).add(translationVec);
+            Vector vertex2 = tri.get(1).multiplyMatrix(worldMat).add(translationVec);
+            Vector vertex3 = tri.get(2).multiplyMatrix(worldMat).add(translationVec);
+
+            Vector center = vertex1.add(vertex2).add(vertex3).divideByScalar(3.0);
+            Vector surfNorm = vertex2.subtract(vertex1).crossProduct(vertex3.subtract(vertex1));
+            if (surfNorm.dotProduct(surfNorm) > 0.0) { // triangles with no area have no direction to light
+                surfNorm = surfNorm.normalized();
+            }
+
+            colors[triIndex++] = shade(tri.getARGB(), center, surfNorm);
+        }
+
+        return colors;
+    }
+
+    // Light each vertex with its vertex normal, or the surface normal for triangles without vertex normals
+    private int[] computeVertexColors(Mesh3D mesh, Matrix worldMat, Vector translationVec) {
+        int[] colors = new int[mesh.size() * Triangle3D.SIZE];
+        int colorIndex = 0;
+
+        for (Triangle3D tri : mesh) {
+            Vector surfNorm = null;
+            if (!tri.hasNormals()) {
+                surfNorm = tri.getSurfaceNormal().multiplyMatrix(worldMat);
+            }
+
+            for (int i = 0; i < Triangle3D.SIZE; i++) {
+                Vector vertex = tri.get(i).multiplyMatrix(worldMat).add(translationVec);
+                Vector normal = surfNorm == null ? tri.getNormal(i).multiplyMatrix(worldMat) : surfNorm;
+
+                colors[colorIndex++] = shade(tri.getARGB(), vertex, normal);
+            }
+        }
+
+        return colors;
+    }
+
+    // Rotate the normal of each vertex into world space, or the surface normal for triangles without vertex normals
+    private static double[] computeVertexNormals(Mesh3D mesh, Matrix worldMat) {
+        double[] normals = new double[mesh.size() * Triangle3D.NORMAL_STRIDE];
+        int offset = 0;
+
+        for (Triangle3D tri : mesh) {
+            Vector surfNorm = null;
+            if (!tri.hasNormals()) {
+                surfNorm = tri.getSurfaceNormal().multiplyMatrix(worldMat);
+            }
+
+            for (int i = 0; i < Triangle3D.SIZE; i++) {
+                Vector normal = surfNorm == null ? tri.getNormal(i).multiplyMatrix(worldMat) : surfNorm;
+
+                normals[offset++] = normal.get(0);
+                normals[offset++] = normal.get(1);
+                normals[offset++] = normal.get(2);
+            }
+        }
+
+        return normals;
+    }
+
+    // Move each vertex into world space
+    private static double[] computeVertexPositions(Mesh3D mesh, Matrix worldMat, Vector translationVec) {
+        double[] positions = new double[mesh.size() * Triangle3D.POSITION_STRIDE];
+        int offset = 0;
+
+        for (Triangle3D tri : mesh) {
+            for (int i = 0; i < Triangle3D.SIZE; i++) {
+                Vector position = tri.get(i).multiplyMatrix(worldMat).add(translationVec);
+
+                positions[offset++] = position.get(0);
+                positions[offset++] = position.get(1);
+                positions[offset++] = position.get(2);
+            }
+        }
+
+        return positions;
+    }
+
+    private int shade(int argb, Vector point, Vector normal) {
+        return lighting.shade(argb, point.get(0), point.get(1), point.get(2), normal.get(0), normal.get(1), normal.get(2));
+    }
+
+    /**
+     * Cached colors of a single mesh and the versions they were computed at
+     */
+    private static class MeshLighting {
+        private int[] faceColors;
+
+        private long faceLightingVersion;
+
+        private long faceTransformVersion;
+
+        private int[] vertexColors;
+
+        private long vertexLightingVersion;
+
+        private long vertexTransformVersion;
+
+        private double[] vertexNormals;
+
+        private long normalTransformVersion;
+
+        private double[] vertexPositions;
+
+        private long positionTransformVersion;
+    }
+
+}
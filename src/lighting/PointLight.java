@@ -0,0 +1,95 @@
+package lighting;
+
+import mathkit.Vector;
+
+/**
+ * Light radiating in every direction from a single point and fading with distance
+ */
+public class PointLight extends Light {
+    /**
+     * Position of the light in world space
+     */
+    private Vector position;
+
+    /**
+     * How quickly the light fades, the light is divided by 1 + attenuation * distance^2
+     */
+    private double attenuation;
+
+    // Constructors
+
+    /**
+     * Create a white point light at full intensity
+     * @param position position of the light in world space, must be 3D
+     * @param attenuation how quickly the light fades with distance, cannot be negative
+     */
+    public PointLight(Vector position, double attenuation) {
+        setPosition(position);
+        setAttenuation(attenuation);
+    }
+
+    // Lighting
+
+    @Override
+    public void illuminate(double pointX, double pointY, double pointZ,
+                           double normalX, double normalY, double normalZ, double[] rgb) {
+        double toLightX = position.get(0) - pointX;
+        double toLightY = position.get(1) - pointY;
+        double toLightZ = position.get(2) - pointZ;
+        double distSquared = toLightX * toLightX + toLightY * toLightY + toLightZ * toLightZ;
+
+        if (distSquared == 0.0) {
+            addLight(1.0, rgb);
+            return;
+        }
+
+        double lambert = (normalX * toLightX + normalY * toLightY + normalZ * toLightZ) / Math.sqrt(distSquared);
+
+        if (lambert > 0.0) {
+            addLight(lambert / (1.0 + attenuation * distSquared), rgb);
+        }
+    }
+
+    // Setters
+
+    /**
+     * @param position position of the light in world space, must be 3D
+     */
+    public void setPosition(Vector position) {
+        if (position == null || position.size() != 3) {
+            throw new IllegalArgumentException("Position must be a 3D vector");
+        }
+
+        this.position = new Vector(position);
+        changed();
+    }
+
+    /**
+     * @param attenuation how quickly the light fades with distance, cannot be negative
+     */
+    public void setAttenuation(double attenuation) {
+        if (attenuation < 0.0) {
+            throw new IllegalArgumentException("Attenuation cannot be negative");
+        }
+
+        this.attenuation = attenuation;
+        changed();
+    }
+
+    // Getters
+
+    /**
+     * @return the position of the light in world space
+     */
+    public Vector getPosition() {
+        return new Vector(position);
+    }
+
+    /**
+     * @return how quickly the light fades with distance
+     */
+    public double getAttenuation() {
+        return attenuation;
+    }
+
+}
@@ -0,0 +1,36 @@
+package profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event spanning the (re)allocation of the canvas and depth buffers
+ */
+@Name("engine.BufferReallocation")
+@Label("Buffer Reallocation")
+@Category({"3D Graphics Engine", "Memory"})
+@Description("Allocation of the canvas and depth buffers")
+public final class BufferReallocationEvent extends Event {
+    /**
+     * Width of the new buffers in pixels
+     */
+    @Label("Width")
+    public int width;
+
+    /**
+     * Height of the new buffers in pixels
+     */
+    @Label("Height")
+    public int height;
+
+    /**
+     * Total size of the new buffers
+     */
+    @Label("Size")
+    @DataAmount
+    public long bytes;
+}
@@ -0,0 +1,30 @@
+package profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event spanning the update of a single engine frame, from camera movement to the repaint request
+ */
+@Name("engine.Frame")
+@Label("Frame")
+@Category({"3D Graphics Engine", "Frame"})
+@Description("Update of a single engine frame")
+@StackTrace(false)
+public final class FrameEvent extends Event {
+    /**
+     * Number of the frame since the engine started
+     */
+    @Label("Frame Number")
+    public long frameNumber;
+
+    /**
+     * Triangles handed to the rasterizer this frame
+     */
+    @Label("Triangles Rendered")
+    public int trianglesRendered;
+}
@@ -0,0 +1,42 @@
+package profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event spanning the load of a mesh from a file
+ */
+@Name("engine.MeshLoad")
+@Label("Mesh Load")
+@Category({"3D Graphics Engine", "Assets"})
+@Description("Loading of a mesh from a model file")
+public final class MeshLoadEvent extends Event {
+    /**
+     * Path of the file being loaded
+     */
+    @Label("Path")
+    public String path;
+
+    /**
+     * Size of the file being loaded
+     */
+    @Label("File Size")
+    @DataAmount
+    public long fileSize;
+
+    /**
+     * Vertices read from the file
+     */
+    @Label("Vertices")
+    public int vertexCount;
+
+    /**
+     * Triangles read from the file
+     */
+    @Label("Triangles")
+    public int triangleCount;
+}
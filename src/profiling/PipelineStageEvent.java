@@ -0,0 +1,54 @@
+package profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event spanning one stage of the render pipeline (cull, project, clip, raster, reproject)
+ */
+@Name("engine.PipelineStage")
+@Label("Pipeline Stage")
+@Category({"3D Graphics Engine", "Pipeline"})
+@Description("A single stage of the render pipeline")
+@StackTrace(false)
+public final class PipelineStageEvent extends Event {
+    /**
+     * Name of the stage
+     */
+    @Label("Stage")
+    public String stage;
+
+    /**
+     * Number of the frame this stage belongs to
+     */
+    @Label("Frame Number")
+    public long frameNumber;
+
+    /**
+     * Index of the viewport this stage ran for, 0 for the main viewport
+     */
+    @Label("Viewport")
+    public int viewport;
+
+    /**
+     * Triangles entering the stage
+     */
+    @Label("Triangles In")
+    public int trianglesIn;
+
+    /**
+     * Triangles leaving the stage
+     */
+    @Label("Triangles Out")
+    public int trianglesOut;
+
+    /**
+     * Extra triangles created by clipping in this stage
+     */
+    @Label("Clip Splits")
+    public int clipSplits;
+}
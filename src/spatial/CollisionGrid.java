@@ -0,0 +1,460 @@
+package spatial;
+
+import graphicstructs.Mesh3D;
+import graphicstructs.Triangle3D;
+import mathkit.Matrix;
+import mathkit.Vector;
+
+import java.util.List;
+
+/**
+ * Uniform grid over the x and z axes holding the triangles of meshes in world space, used to find the height of the
+ * ground and to keep bodies out of walls without testing every triangle
+ * <br>The grid is never changed after it is built, so it can be queried from any amount of threads at once, and must be
+ * rebuilt whenever the meshes or their world transform change
+ */
+public class CollisionGrid {
+    /**
+     * Average amount of triangles each cell should hold
+     */
+    private static final double TRIANGLES_PER_CELL = 2.0;
+
+    /**
+     * Most cells along either axis of the grid
+     */
+    private static final int MAX_CELLS_PER_AXIS = 1024;
+
+    /**
+     * Most times a body is pushed out of the triangles around it in a single query
+     */
+    private static final int COLLISION_PASSES = 4;
+
+    /**
+     * Smallest x value covered by the grid
+     */
+    private final double minX;
+
+    /**
+     * Smallest z value covered by the grid
+     */
+    private final double minZ;
+
+    /**
+     * Width and depth of each cell
+     */
+    private final double cellSize;
+
+    /**
+     * Amount of cells along the x axis
+     */
+    private final int columns;
+
+    /**
+     * Amount of cells along the z axis
+     */
+    private final int rows;
+
+    /**
+     * Index into the cell triangles where each cell's triangles start, one more than there are cells
+     */
+    private final int[] cellStarts;
+
+    /**
+     * Triangles overlapping each cell, cell after cell
+     */
+    private final int[] cellTriangles;
+
+    /**
+     * Coordinates of the three vertices of each triangle in world space, nine values per triangle
+     */
+    private final double[] triangleVertices;
+
+    /**
+     * First column and row of the cells each triangle overlaps, two values per triangle
+     */
+    private final int[] triangleCells;
+
+    // Constructors
+
+    /**
+     * Build a grid over every triangle of the meshes in world space
+     * @param meshes meshes to build from
+     * @param worldMat rotation of every mesh in world space, must be 3x3
+     * @param translationVec translation of every mesh in world space, must be 3D
+     */
+    public CollisionGrid(List<Mesh3D> meshes, Matrix worldMat, Vector translationVec) {
+        if (meshes == null || worldMat == null || translationVec == null || translationVec.size() != 3) {
+            throw new IllegalArgumentException("Grid needs meshes, a 3x3 world matrix and a 3D translation");
+        }
+
+        int triCount = 0;
+        for (Mesh3D mesh : meshes) {
+            triCount += mesh.size();
+        }
+
+        triangleVertices = new double[triCount * 9];
+        triangleCells = new int[triCount * 2];
+
+        double boundsMinX = Double.MAX_VALUE;
+        double boundsMinZ = Double.MAX_VALUE;
+        double boundsMaxX = -Double.MAX_VALUE;
+        double boundsMaxZ = -Double.MAX_VALUE;
+        double totalExtent = 0.0;
+
+        // bring every triangle into world space
+        int triIndex = 0;
+        for (Mesh3D mesh : meshes) {
+            for (Triangle3D tri : mesh) {
+                double triMinX = Double.MAX_VALUE;
+                double triMaxX = -Double.MAX_VALUE;
+                double triMinZ = Double.MAX_VALUE;
+                double triMaxZ = -Double.MAX_VALUE;
+
+                for (int vertex = 0; vertex < Triangle3D.SIZE; vertex++) {
+                    Vector worldVertex = tri.get(vertex).multiplyMatrix(worldMat).add(translationVec);
+                    int offset = triIndex * 9 + vertex * 3;
+
+                    for (int axis = 0; axis < 3; axis++) {
+                        triangleVertices[offset + axis] = worldVertex.get(axis);
+                    }
+
+                    triMinX = Math.min(triMinX, triangleVertices[offset]);
+                    triMaxX = Math.max(triMaxX, triangleVertices[offset]);
+                    triMinZ = Math.min(triMinZ, triangleVertices[offset + 2]);
+                    triMaxZ = Math.max(triMaxZ, triangleVertices[offset + 2]);
+                }
+
+                boundsMinX = Math.min(boundsMinX, triMinX);
+                boundsMaxX = Math.max(boundsMaxX, triMaxX);
+                boundsMinZ = Math.min(boundsMinZ, triMinZ);
+                boundsMaxZ = Math.max(boundsMaxZ, triMaxZ);
+                totalExtent += Math.max(triMaxX - triMinX, triMaxZ - triMinZ);
+
+                triIndex++;
+            }
+        }
+
+        if (triCount == 0) {
+            boundsMinX = 0.0;
+            boundsMaxX = 0.0;
+            boundsMinZ = 0.0;
+            boundsMaxZ = 0.0;
+        }
+
+        // size cells so each holds a few triangles, but never smaller than a typical triangle
+        double width = Math.max(boundsMaxX - boundsMinX, Double.MIN_NORMAL);
+        double depth = Math.max(boundsMaxZ - boundsMinZ, Double.MIN_NORMAL);
+        double size = Math.sqrt(width * depth * TRIANGLES_PER_CELL / Math.max(triCount, 1));
+        size = Math.max(size, triCount > 0 ? totalExtent / triCount : 0.0);
+        size = Math.max(size, Math.max(width, depth) / MAX_CELLS_PER_AXIS);
+
+        minX = boundsMinX;
+        minZ = boundsMinZ;
+        cellSize = size;
+        columns = Math.min(MAX_CELLS_PER_AXIS, (int) (width / size) + 1);
+        rows = Math.min(MAX_CELLS_PER_AXIS, (int) (depth / size) + 1);
+
+        // count the triangles overlapping each cell, then fill each cell's range
+        cellStarts = new int[columns * rows + 1];
+
+        for (int tri = 0; tri < triCount; tri++) {
+            int[] range = triangleCellRange(tri);
+            triangleCells[tri * 2] = range[0];
+            triangleCells[tri * 2 + 1] = range[2];
+
+            for (int row = range[2]; row <= range[3]; row++) {
+                for (int column = range[0]; column <= range[1]; column++) {
+                    cellStarts[row * columns + column + 1]++;
+                }
+            }
+        }
+
+        for (int cell = 0; cell < columns * rows; cell++) {
+            cellStarts[cell + 1] += cellStarts[cell];
+        }
+
+        cellTriangles = new int[cellStarts[columns * rows]];
+        int[] cellFill = new int[columns * rows];
+
+        for (int tri = 0; tri < triCount; tri++) {
+            int[] range = triangleCellRange(tri);
+
+            for (int row = range[2]; row <= range[3]; row++) {
+                for (int column = range[0]; column <= range[1]; column++) {
+                    int cell = row * columns + column;
+                    cellTriangles[cellStarts[cell] + cellFill[cell]++] = tri;
+                }
+            }
+        }
+    }
+
+    // Get the first column, last column, first row and last row of the cells a triangle overlaps
+    private int[] triangleCellRange(int tri) {
+        int offset = tri * 9;
+        double triMinX = Math.min(triangleVertices[offset], Math.min(triangleVertices[offset + 3], triangleVertices[offset + 6]));
+        double triMaxX = Math.max(triangleVertices[offset], Math.max(triangleVertices[offset + 3], triangleVertices[offset + 6]));
+        double triMinZ = Math.min(triangleVertices[offset + 2], Math.min(triangleVertices[offset + 5], triangleVertices[offset + 8]));
+        double triMaxZ = Math.max(triangleVertices[offset + 2], Math.max(triangleVertices[offset + 5], triangleVertices[offset + 8]));
+
+        return new int[] {column(triMinX), column(triMaxX), row(triMinZ), row(triMaxZ)};
+    }
+
+    // Get the column of the cells holding an x value, clamped to the grid
+    private int column(double x) {
+        return Math.max(0, Math.min(columns - 1, (int) Math.floor((x - minX) / cellSize)));
+    }
+
+    // Get the row of the cells holding a z value, clamped to the grid
+    private int row(double z) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor((z - minZ) / cellSize)));
+    }
+
+    // Queries
+
+    /**
+     * Find the highest surface directly above or below a point that is no higher than a maximum height
+     * @param x x value of the point
+     * @param z z value of the point
+     * @param maxHeight highest surface to accept
+     * @return the y value of the highest surface, or NaN if there is no surface under the maximum height
+     */
+    public double heightAt(double x, double z, double maxHeight) {
+        if (x < minX || z < minZ || x > minX + columns * cellSize || z > minZ + rows * cellSize) {
+            return Double.NaN;
+        }
+
+        int cell = row(z) * columns + column(x);
+        double height = Double.NaN;
+
+        for (int i = cellStarts[cell]; i < cellStarts[cell + 1]; i++) {
+            int offset = cellTriangles[i] * 9;
+
+            // barycentric coordinates of the point in the triangle seen from above
+            double edge1X = triangleVertices[offset + 3] - triangleVertices[offset];
+            double edge1Z = triangleVertices[offset + 5] - triangleVertices[offset + 2];
+            double edge2X = triangleVertices[offset + 6] - triangleVertices[offset];
+            double edge2Z = triangleVertices[offset + 8] - triangleVertices[offset + 2];
+            double det = edge1X * edge2Z - edge2X * edge1Z;
+
+            if (det == 0.0) { // vertical triangles have no height of their own
+                continue;
+            }
+
+            double toPointX = x - triangleVertices[offset];
+            double toPointZ = z - triangleVertices[offset + 2];
+            double u = (toPointX * edge2Z - edge2X * toPointZ) / det;
+            double v = (edge1X * toPointZ - toPointX * edge1Z) / det;
+
+            if (u < 0.0 || v < 0.0 || u + v > 1.0) {
+                continue;
+            }
+
+            double y = triangleVertices[offset + 1]
+                    + u * (triangleVertices[offset + 4] - triangleVertices[offset + 1])
+                    + v * (triangleVertices[offset + 7] - triangleVertices[offset + 1]);
+
+            if (y <= maxHeight && !(y <= height)) {
+                height = y;
+            }
+        }
+
+        return height;
+    }
+
+    /**
+     * Push an upright capsule out of every triangle it overlaps
+     * @param base lowest point of the capsule, must be 3D
+     * @param height distance from the lowest to the highest point of the capsule, at least twice the radius
+     * @param radius radius of the capsule, must be greater than 0
+     * @return the lowest point of the capsule after it was pushed out of the triangles
+     */
+    public Vector collideCapsule(Vector base, double height, double radius) {
+        if (base == null || base.size() != 3) {
+            throw new IllegalArgumentException("Base must be a 3D vector");
+        } else if (radius <= 0.0 || height < radius * 2.0) {
+            throw new IllegalArgumentException("Capsule must have a positive radius and be at least as tall as it is wide");
+        }
+
+        double[] position = {base.get(0), base.get(1), base.get(2)};
+        double[] closest = new double[3];
+
+        for (int pass = 0; pass < COLLISION_PASSES; pass++) {
+            boolean pushed = false;
+
+            int firstColumn = column(position[0] - radius);
+            int lastColumn = column(position[0] + radius);
+            int firstRow = row(position[2] - radius);
+            int lastRow = row(position[2] + radius);
+
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    int cell = row * columns + column;
+
+                    for (int i = cellStarts[cell]; i < cellStarts[cell + 1]; i++) {
+                        int tri = cellTriangles[i];
+
+                        // a triangle spanning several cells is only tested in the first of them this query covers
+                        if (Math.max(triangleCells[tri * 2], firstColumn) != column
+                                || Math.max(triangleCells[tri * 2 + 1], firstRow) != row) {
+                            continue;
+                        }
+
+                        pushed |= pushCapsuleOutOfTriangle(tri, position, height, radius, closest);
+                    }
+                }
+            }
+
+            if (!pushed) {
+                break;
+            }
+        }
+
+        return new Vector(position[0], position[1], position[2]);
+    }
+
+    // Move a capsule out of a triangle along the shortest way, returning whether it had to be moved
+    private boolean pushCapsuleOutOfTriangle(int tri, double[] position, double height, double radius,
+                                             double[] closest) {
+        int offset = tri * 9;
+        double bottomY = position[1] + radius;
+        double topY = position[1] + height - radius;
+
+        // take the point where the capsule's axis meets the triangle's plane as a reference for the nearest sphere
+        double edge1X = triangleVertices[offset + 3] - triangleVertices[offset];
+        double edge1Y = triangleVertices[offset + 4] - triangleVertices[offset + 1];
+        double edge1Z = triangleVertices[offset + 5] - triangleVertices[offset + 2];
+        double edge2X = triangleVertices[offset + 6] - triangleVertices[offset];
+        double edge2Y = triangleVertices[offset + 7] - triangleVertices[offset + 1];
+        double edge2Z = triangleVertices[offset + 8] - triangleVertices[offset + 2];
+        double normalX = edge1Y * edge2Z - edge1Z * edge2Y;
+        double normalY = edge1Z * edge2X - edge1X * edge2Z;
+        double normalZ = edge1X * edge2Y - edge1Y * edge2X;
+
+        double planeY = (bottomY + topY) / 2.0; // walls are parallel to the axis, so any height works
+        if (normalY != 0.0) {
+            planeY = triangleVertices[offset + 1] + (normalX * (triangleVertices[offset] - position[0])
+                    + normalZ * (triangleVertices[offset + 2] - position[2])) / normalY;
+        }
+
+        closestPointOnTriangle(offset, position[0], planeY, position[2], closest);
+
+        // test the sphere on the capsule's axis nearest to the reference point against the triangle
+        double sphereY = Math.max(bottomY, Math.min(topY, closest[1]));
+        closestPointOnTriangle(offset, position[0], sphereY, position[2], closest);
+
+        double awayX = position[0] - closest[0];
+        double awayY = sphereY - closest[1];
+        double awayZ = position[2] - closest[2];
+        double distanceSquared = awayX * awayX + awayY * awayY + awayZ * awayZ;
+
+        if (distanceSquared >= radius * radius) {
+            return false;
+        }
+
+        double distance = Math.sqrt(distanceSquared);
+        if (distance == 0.0) { // the axis passes through the triangle, so push along the normal
+            double normalLength = Math.sqrt(normalX * normalX + normalY * normalY + normalZ * normalZ);
+
+            if (normalLength == 0.0) {
+                return false;
+            }
+
+            awayX = normalX / normalLength;
+            awayY = normalY / normalLength;
+            awayZ = normalZ / normalLength;
+        } else {
+            awayX /= distance;
+            awayY /= distance;
+            awayZ /= distance;
+        }
+
+        double depth = radius - distance;
+        position[0] += awayX * depth;
+        position[1] += awayY * depth;
+        position[2] += awayZ * depth;
+
+        return true;
+    }
+
+    // Find the point on a triangle closest to a point, checking the regions around its vertices and edges in turn
+    private void closestPointOnTriangle(int offset, double x, double y, double z, double[] closest) {
+        double aX = triangleVertices[offset];
+        double aY = triangleVertices[offset + 1];
+        double aZ = triangleVertices[offset + 2];
+        double abX = triangleVertices[offset + 3] - aX;
+        double abY = triangleVertices[offset + 4] - aY;
+        double abZ = triangleVertices[offset + 5] - aZ;
+        double acX = triangleVertices[offset + 6] - aX;
+        double acY = triangleVertices[offset + 7] - aY;
+        double acZ = triangleVertices[offset + 8] - aZ;
+
+        double apX = x - aX;
+        double apY = y - aY;
+        double apZ = z - aZ;
+        double d1 = abX * apX + abY * apY + abZ * apZ;
+        double d2 = acX * apX + acY * apY + acZ * apZ;
+
+        if (d1 <= 0.0 && d2 <= 0.0) {
+            setPoint(closest, aX, aY, aZ);
+            return;
+        }
+
+        double bpX = x - triangleVertices[offset + 3];
+        double bpY = y - triangleVertices[offset + 4];
+        double bpZ = z - triangleVertices[offset + 5];
+        double d3 = abX * bpX + abY * bpY + abZ * bpZ;
+        double d4 = acX * bpX + acY * bpY + acZ * bpZ;
+
+        if (d3 >= 0.0 && d4 <= d3) {
+            setPoint(closest, aX + abX, aY + abY, aZ + abZ);
+            return;
+        }
+
+        double vc = d1 * d4 - d3 * d2;
+        if (vc <= 0.0 && d1 >= 0.0 && d3 <= 0.0) {
+            double v = d1 / (d1 - d3);
+            setPoint(closest, aX + abX * v, aY + abY * v, aZ + abZ * v);
+            return;
+        }
+
+        double cpX = x - triangleVertices[offset + 6];
+        double cpY = y - triangleVertices[offset + 7];
+        double cpZ = z - triangleVertices[offset + 8];
+        double d5 = abX * cpX + abY * cpY + abZ * cpZ;
+        double d6 = acX * cpX + acY * cpY + acZ * cpZ;
+
+        if (d6 >= 0.0 && d5 <= d6) {
+            setPoint(closest, aX + acX, aY + acY, aZ + acZ);
+            return;
+        }
+
+        double vb = d5 * d2 - d1 * d6;
+        if (vb <= 0.0 && d2 >= 0.0 && d6 <= 0.0) {
+            double w = d2 / (d2 - d6);
+            setPoint(closest, aX + acX * w, aY + acY * w, aZ + acZ * w);
+            return;
+        }
+
+        double va = d3 * d6 - d5 * d4;
+        if (va <= 0.0 && d4 - d3 >= 0.0 && d5 - d6 >= 0.0) {
+            double w = (d4 - d3) / ((d4 - d3) + (d5 - d6));
+            setPoint(closest,
+                    triangleVertices[offset + 3] + (triangleVertices[offset + 6] - triangleVertices[offset + 3]) * w,
+                    triangleVertices[offset + 4] + (triangleVertices[offset + 7] - triangleVertices[offset + 4]) * w,
+                    triangleVertices[offset + 5] + (triangleVertices[offset + 8] - triangleVertices[offset + 5]) * w);
+            return;
+        }
+
+        double denom = 1.0 / (va + vb + vc);
+        double v = vb * denom;
+        double w = vc * denom;
+        setPoint(closest, aX + abX * v + acX * w, aY + abY * v + acY * w, aZ + abZ * v + acZ * w);
+    }
+
+    private static void setPoint(double[] point, double x, double y, double z) {
+        point[0] = x;
+        point[1] = y;
+        point[2] = z;
+    }
+
+}
@@ -0,0 +1,386 @@
+package spatial;
+
+import graphicstructs.Mesh3D;
+import graphicstructs.Triangle3D;
+import mathkit.Vector;
+
+/**
+ * Bounding volume hierarchy over the triangles of a mesh in model space, used to find the nearest triangle along a ray
+ * without testing every triangle
+ * <br>Nodes and triangles are stored in flat arrays in depth first order, and the hierarchy is never changed after it is
+ * built, so it can be queried from any amount of threads at once
+ */
+public class MeshBVH {
+    /**
+     * Most triangles held by a leaf node
+     */
+    private static final int LEAF_SIZE = 4;
+
+    /**
+     * Deepest a traversal stack can grow, enough for any hierarchy built from median splits
+     */
+    private static final int MAX_DEPTH = 64;
+
+    /**
+     * Mesh this hierarchy was built from
+     */
+    private final Mesh3D mesh;
+
+    /**
+     * Triangles of the mesh in leaf order
+     */
+    private final Triangle3D[] triangles;
+
+    /**
+     * Index of each triangle in the order the mesh iterates its triangles, in leaf order
+     */
+    private final int[] triangleIndices;
+
+    /**
+     * Coordinates of the three vertices of each triangle, nine values per triangle in leaf order
+     */
+    private final double[] triangleVertices;
+
+    /**
+     * Bounding box of each node as its minimum and maximum corners, six values per node
+     */
+    private double[] nodeBounds;
+
+    /**
+     * Two values per node: for leaves the first triangle and the amount of triangles, for inner nodes the index of the
+     * second child and 0 (the first child always directly follows its parent)
+     */
+    private int[] nodeData;
+
+    /**
+     * Amount of nodes built so far
+     */
+    private int nodeCount;
+
+    // Constructors
+
+    /**
+     * Build a hierarchy over every triangle of a mesh
+     * @param mesh mesh to build from
+     */
+    public MeshBVH(Mesh3D mesh) {
+        if (mesh == null) {
+            throw new IllegalArgumentException("Cannot build a hierarchy from a null mesh");
+        }
+
+        this.mesh = mesh;
+
+        int triCount = mesh.size();
+        Triangle3D[] meshTris = new Triangle3D[triCount];
+        double[] centers = new double[triCount * 3];
+        int[] order = new int[triCount];
+
+        int triIndex = 0;
+        for (Triangle3D tri : mesh) {
+            meshTris[triIndex] = tri;
+            order[triIndex] = triIndex;
+
+            for (int i = 0; i < 3; i++) {
+                centers[triIndex * 3 + i] = (tri.get(0).get(i) + tri.get(1).get(i) + tri.get(2).get(i)) / 3.0;
+            }
+
+            triIndex++;
+        }
+
+        int maxNodes = Math.max(1, 2 * ((triCount + LEAF_SIZE - 1) / LEAF_SIZE));
+        nodeBounds = new double[maxNodes * 6];
+        nodeData = new int[maxNodes * 2];
+        buildNode(meshTris, centers, order, 0, triCount);
+
+        triangles = new Triangle3D[triCount];
+        triangleIndices = order;
+        triangleVertices = new double[triCount * 9];
+
+        for (int i = 0; i < triCount; i++) {
+            Triangle3D tri = meshTris[order[i]];
+            triangles[i] = tri;
+
+            for (int vertex = 0; vertex < Triangle3D.SIZE; vertex++) {
+                for (int axis = 0; axis < 3; axis++) {
+                    triangleVertices[i * 9 + vertex * 3 + axis] = tri.get(vertex).get(axis);
+                }
+            }
+        }
+    }
+
+    // Build a node over a range of the triangle order, splitting it at the median center along its longest axis
+    private int buildNode(Triangle3D[] meshTris, double[] centers, int[] order, int start, int end) {
+        int node = nodeCount++;
+        ensureNodeCapacity(nodeCount);
+
+        double[] bounds = {Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE,
+                -Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+        double[] centerBounds = bounds.clone();
+
+        for (int i = start; i < end; i++) {
+            for (Vector vertex : meshTris[order[i]]) {
+                for (int axis = 0; axis < 3; axis++) {
+                    bounds[axis] = Math.min(bounds[axis], vertex.get(axis));
+                    bounds[axis + 3] = Math.max(bounds[axis + 3], vertex.get(axis));
+                }
+            }
+
+            for (int axis = 0; axis < 3; axis++) {
+                centerBounds[axis] = Math.min(centerBounds[axis], centers[order[i] * 3 + axis]);
+                centerBounds[axis + 3] = Math.max(centerBounds[axis + 3], centers[order[i] * 3 + axis]);
+            }
+        }
+
+        System.arraycopy(bounds, 0, nodeBounds, node * 6, 6);
+
+        if (end - start <= LEAF_SIZE) {
+            nodeData[node * 2] = start;
+            nodeData[node * 2 + 1] = end - start;
+            return node;
+        }
+
+        int splitAxis = 0;
+        for (int axis = 1; axis < 3; axis++) {
+            if (centerBounds[axis + 3] - centerBounds[axis] > centerBounds[splitAxis + 3] - centerBounds[splitAxis]) {
+                splitAxis = axis;
+            }
+        }
+
+        int mid = (start + end) >>> 1;
+        selectByCenter(centers, order, start, end - 1, mid, splitAxis);
+
+        // build both children before writing into the node arrays, since building can grow them
+        buildNode(meshTris, centers, order, start, mid);
+        int secondChild = buildNode(meshTris, centers, order, mid, end);
+        nodeData[node * 2] = secondChild;
+        nodeData[node * 2 + 1] = 0;
+        return node;
+    }
+
+    // Partially sort a range of the triangle order so the triangle at an index has the median center along an axis
+    private static void selectByCenter(double[] centers, int[] order, int low, int high, int target, int axis) {
+        while (low < high) {
+            double pivot = centers[order[(low + high) >>> 1] * 3 + axis];
+            int i = low;
+            int j = high;
+
+            while (i <= j) {
+                while (centers[order[i] * 3 + axis] < pivot) {
+                    i++;
+                }
+
+                while (centers[order[j] * 3 + axis] > pivot) {
+                    j--;
+                }
+
+                if (i <= j) {
+                    int temp = order[i];
+                    order[i] = order[j];
+                    order[j] = temp;
+                    i++;
+                    j--;
+                }
+            }
+
+            if (target <= j) {
+                high = j;
+            } else if (target >= i) {
+                low = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void ensureNodeCapacity(int capacity) {
+        if (nodeData.length >= capacity * 2) {
+            return;
+        }
+
+        int newCapacity = Math.max(capacity, nodeData.length);
+        double[] newBounds = new double[newCapacity * 6];
+        int[] newData = new int[newCapacity * 2];
+        System.arraycopy(nodeBounds, 0, newBounds, 0, nodeBounds.length);
+        System.arraycopy(nodeData, 0, newData, 0, nodeData.length);
+        nodeBounds = newBounds;
+        nodeData = newData;
+    }
+
+    // Queries
+
+    /**
+     * Find the nearest triangle along a ray in model space, hitting triangles from either side
+     * @param origin start of the ray in model space, must be 3D
+     * @param direction direction of the ray in model space, must be 3D and non zero
+     * @return the nearest hit with its point in model space, or null if the ray hits nothing
+     */
+    public RayHit intersect(Vector origin, Vector direction) {
+        if (origin == null || direction == null || origin.size() != 3 || direction.size() != 3) {
+            throw new IllegalArgumentException("Origin and direction must be 3D vectors");
+        }
+
+        double[] distance = {Double.MAX_VALUE};
+        int hit = intersect(origin.get(0), origin.get(1), origin.get(2),
+                direction.get(0), direction.get(1), direction.get(2), distance);
+
+        if (hit < 0) {
+            return null;
+        }
+
+        Vector point = origin.add(direction.multiplyByScalar(distance[0]));
+        return new RayHit(mesh, triangleIndices[hit], triangles[hit], distance[0], point);
+    }
+
+    /**
+     * Find the nearest triangle along a ray in model space closer than a maximum distance
+     * @param originX x value of the start of the ray
+     * @param originY y value of the start of the ray
+     * @param originZ z value of the start of the ray
+     * @param directionX x value of the direction of the ray
+     * @param directionY y value of the direction of the ray
+     * @param directionZ z value of the direction of the ray
+     * @param distance holds the maximum distance in multiples of the direction, replaced with the distance of the hit
+     * @return the leaf order index of the nearest hit triangle, or -1 if the ray hits nothing
+     */
+    int intersect(double originX, double originY, double originZ,
+                  double directionX, double directionY, double directionZ, double[] distance) {
+        if (triangles.length == 0) {
+            return -1;
+        }
+
+        double invDirX = 1.0 / directionX;
+        double invDirY = 1.0 / directionY;
+        double invDirZ = 1.0 / directionZ;
+
+        int[] stack = new int[MAX_DEPTH];
+        int stackSize = 0;
+        stack[stackSize++] = 0;
+
+        int nearestHit = -1;
+
+        while (stackSize > 0) {
+            int node = stack[--stackSize];
+
+            if (!rayHitsBounds(node, originX, originY, originZ, invDirX, invDirY, invDirZ, distance[0])) {
+                continue;
+            }
+
+            int count = nodeData[node * 2 + 1];
+
+            if (count > 0) {
+                int first = nodeData[node * 2];
+
+                for (int tri = first; tri < first + count; tri++) {
+                    double triDistance = intersectTriangle(tri, originX, originY, originZ,
+                            directionX, directionY, directionZ);
+
+                    if (triDistance < distance[0]) {
+                        distance[0] = triDistance;
+                        nearestHit = tri;
+                    }
+                }
+            } else {
+                stack[stackSize++] = nodeData[node * 2];
+                stack[stackSize++] = node + 1;
+            }
+        }
+
+        return nearestHit;
+    }
+
+    // Slab test of a ray against the bounding box of a node
+    private boolean rayHitsBounds(int node, double originX, double originY, double originZ,
+                                  double invDirX, double invDirY, double invDirZ, double maxDistance) {
+        int offset = node * 6;
+
+        double near1 = (nodeBounds[offset] - originX) * invDirX;
+        double far1 = (nodeBounds[offset + 3] - originX) * invDirX;
+        double near = Math.min(near1, far1);
+        double far = Math.max(near1, far1);
+
+        double near2 = (nodeBounds[offset + 1] - originY) * invDirY;
+        double far2 = (nodeBounds[offset + 4] - originY) * invDirY;
+        near = Math.max(near, Math.min(near2, far2));
+        far = Math.min(far, Math.max(near2, far2));
+
+        double near3 = (nodeBounds[offset + 2] - originZ) * invDirZ;
+        double far3 = (nodeBounds[offset + 5] - originZ) * invDirZ;
+        near = Math.max(near, Math.min(near3, far3));
+        far = Math.min(far, Math.max(near3, far3));
+
+        return far >= Math.max(near, 0.0) && near < maxDistance;
+    }
+
+    // Moller-Trumbore intersection of a ray with a triangle, returning the distance or infinity if it misses
+    private double intersectTriangle(int tri, double originX, double originY, double originZ,
+                                     double directionX, double directionY, double directionZ) {
+        int offset = tri * 9;
+        double v0X = triangleVertices[offset];
+        double v0Y = triangleVertices[offset + 1];
+        double v0Z = triangleVertices[offset + 2];
+
+        double edge1X = triangleVertices[offset + 3] - v0X;
+        double edge1Y = triangleVertices[offset + 4] - v0Y;
+        double edge1Z = triangleVertices[offset + 5] - v0Z;
+        double edge2X = triangleVertices[offset + 6] - v0X;
+        double edge2Y = triangleVertices[offset + 7] - v0Y;
+        double edge2Z = triangleVertices[offset + 8] - v0Z;
+
+        double pX = directionY * edge2Z - directionZ * edge2Y;
+        double pY = directionZ * edge2X - directionX * edge2Z;
+        double pZ = directionX * edge2Y - directionY * edge2X;
+        double det = edge1X * pX + edge1Y * pY + edge1Z * pZ;
+
+        if (det == 0.0) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        double invDet = 1.0 / det;
+        double toOriginX = originX - v0X;
+        double toOriginY = originY - v0Y;
+        double toOriginZ = originZ - v0Z;
+
+        double u = (toOriginX * pX + toOriginY * pY + toOriginZ * pZ) * invDet;
+        if (u < 0.0 || u > 1.0) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        double qX = toOriginY * edge1Z - toOriginZ * edge1Y;
+        double qY = toOriginZ * edge1X - toOriginX * edge1Z;
+        double qZ = toOriginX * edge1Y - toOriginY * edge1X;
+
+        double v = (directionX * qX + directionY * qY + directionZ * qZ) * invDet;
+        if (v < 0.0 || u + v > 1.0) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        double distance = (edge2X * qX + edge2Y * qY + edge2Z * qZ) * invDet;
+        return distance >= 0.0 ? distance : Double.POSITIVE_INFINITY;
+    }
+
+    // Getters
+
+    /**
+     * @return the mesh this hierarchy was built from
+     */
+    public Mesh3D getMesh() {
+        return mesh;
+    }
+
+    /**
+     * @param leafIndex leaf order index of a triangle
+     * @return the triangle at the leaf order index
+     */
+    Triangle3D getTriangle(int leafIndex) {
+        return triangles[leafIndex];
+    }
+
+    /**
+     * @param leafIndex leaf order index of a triangle
+     * @return the index of the triangle in the order the mesh iterates its triangles
+     */
+    int getTriangleIndex(int leafIndex) {
+        return triangleIndices[leafIndex];
+    }
+
+}
@@ -0,0 +1,213 @@
+package spatial;
+
+import graphicstructs.Math3D;
+import graphicstructs.Mesh3D;
+import jobs.JobSystem;
+import mathkit.Matrix;
+import mathkit.Vector;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Casts rays against meshes placed in world space, building a bounding volume hierarchy for each mesh the first time it
+ * is queried
+ * <br>Every query is safe to run from any amount of threads at once, and batches of rays are cast in parallel on the
+ * job system given to the ray caster, if any
+ */
+public class RayCaster {
+    /**
+     * Smallest batch of rays worth splitting across threads
+     */
+    private static final int PARALLEL_THRESHOLD = 64;
+
+    /**
+     * Hierarchy built for each mesh that has been queried
+     */
+    private final ConcurrentHashMap<Mesh3D, MeshBVH> hierarchies;
+
+    /**
+     * Job system batches of rays are cast across, or null to cast them on the calling thread
+     */
+    private final JobSystem jobSystem;
+
+    // Constructors
+
+    /**
+     * Create a ray caster casting batches of rays on the calling thread
+     */
+    public RayCaster() {
+        this(null);
+    }
+
+    /**
+     * Create a ray caster casting batches of rays across the CPU bound threads of a job system
+     * @param jobSystem job system to cast batches of rays on, or null to cast them on the calling thread
+     */
+    public RayCaster(JobSystem jobSystem) {
+        hierarchies = new ConcurrentHashMap<>();
+        this.jobSystem = jobSystem;
+    }
+
+    // Queries
+
+    /**
+     * Find the nearest triangle hit by a ray in world space
+     * @param meshes meshes to cast the ray against
+     * @param worldMat rotation of every mesh in world space, must be 3x3 and orthonormal
+     * @param translationVec translation of every mesh in world space, must be 3D
+     * @param origin start of the ray in world space, must be 3D
+     * @param direction direction of the ray in world space, must be 3D and non zero
+     * @return the nearest hit, or null if the ray hits nothing
+     */
+    public RayHit castRay(List<Mesh3D> meshes, Matrix worldMat, Vector translationVec, Vector origin, Vector direction) {
+        return castRay(meshes, worldMatrixValues(worldMat, translationVec), translationVec, origin, direction,
+                Double.MAX_VALUE);
+    }
+
+    /**
+     * Check whether anything blocks the straight line between two points in world space
+     * @param meshes meshes that could block the line
+     * @param worldMat rotation of every mesh in world space, must be 3x3 and orthonormal
+     * @param translationVec translation of every mesh in world space, must be 3D
+     * @param from start of the line in world space, must be 3D
+     * @param to end of the line in world space, must be 3D
+     * @return true if no triangle lies between the two points
+     */
+    public boolean hasLineOfSight(List<Mesh3D> meshes, Matrix worldMat, Vector translationVec, Vector from, Vector to) {
+        Vector direction = to.subtract(from);
+        return castRay(meshes, worldMatrixValues(worldMat, translationVec), translationVec, from, direction, 1.0) == null;
+    }
+
+    /**
+     * Find the nearest triangle hit by each ray of a batch in world space, casting the rays in parallel on the job
+     * system of the ray caster if it has one
+     * @param meshes meshes to cast the rays against
+     * @param worldMat rotation of every mesh in world space, must be 3x3 and orthonormal
+     * @param translationVec translation of every mesh in world space, must be 3D
+     * @param origins start of each ray in world space, must be 3D
+     * @param directions direction of each ray in world space, must be 3D, non zero and as many as there are origins
+     * @return the nearest hit of each ray in the order of the rays, null for each ray that hits nothing
+     */
+    public RayHit[] castRays(List<Mesh3D> meshes, Matrix worldMat, Vector translationVec,
+                             Vector[] origins, Vector[] directions) {
+        if (origins == null || directions == null || origins.length != directions.length) {
+            throw new IllegalArgumentException("Every ray must have an origin and a direction");
+        }
+
+        double[] worldValues = worldMatrixValues(worldMat, translationVec);
+
+        // build every hierarchy up front so the parallel queries don't race to build the same one
+        for (Mesh3D mesh : meshes) {
+            getHierarchy(mesh);
+        }
+
+        RayHit[] hits = new RayHit[origins.length];
+
+        if (jobSystem != null && origins.length >= PARALLEL_THRESHOLD) {
+            jobSystem.parallelFor(0, origins.length, i -> hits[i] = castRay(meshes, worldValues, translationVec,
+                    origins[i], directions[i], Double.MAX_VALUE));
+        } else {
+            for (int i = 0; i < origins.length; i++) {
+                hits[i] = castRay(meshes, worldValues, translationVec, origins[i], directions[i], Double.MAX_VALUE);
+            }
+        }
+
+        return hits;
+    }
+
+    // Cast a ray against every mesh in model space, keeping the nearest hit closer than a maximum distance
+    private RayHit castRay(List<Mesh3D> meshes, double[] worldValues, Vector translationVec,
+                           Vector origin, Vector direction, double maxDistance) {
+        if (origin == null || direction == null || origin.size() != 3 || direction.size() != 3) {
+            throw new IllegalArgumentException("Origin and direction must be 3D vectors");
+        }
+
+        double offsetX = origin.get(0) - translationVec.get(0);
+        double offsetY = origin.get(1) - translationVec.get(1);
+        double offsetZ = origin.get(2) - translationVec.get(2);
+        double dirX = direction.get(0);
+        double dirY = direction.get(1);
+        double dirZ = direction.get(2);
+
+        if (dirX == 0.0 && dirY == 0.0 && dirZ == 0.0) {
+            throw new IllegalArgumentException("Direction must be non zero");
+        }
+
+        // bring the ray into model space by undoing the world rotation, which keeps distances along the ray the same
+        double modelOriginX = offsetX * worldValues[0] + offsetY * worldValues[1] + offsetZ * worldValues[2];
+        double modelOriginY = offsetX * worldValues[3] + offsetY * worldValues[4] + offsetZ * worldValues[5];
+        double modelOriginZ = offsetX * worldValues[6] + offsetY * worldValues[7] + offsetZ * worldValues[8];
+        double modelDirX = dirX * worldValues[0] + dirY * worldValues[1] + dirZ * worldValues[2];
+        double modelDirY = dirX * worldValues[3] + dirY * worldValues[4] + dirZ * worldValues[5];
+        double modelDirZ = dirX * worldValues[6] + dirY * worldValues[7] + dirZ * worldValues[8];
+
+        double[] distance = {maxDistance};
+        MeshBVH nearestHierarchy = null;
+        int nearestHit = -1;
+
+        for (Mesh3D mesh : meshes) {
+            MeshBVH hierarchy = getHierarchy(mesh);
+            int hit = hierarchy.intersect(modelOriginX, modelOriginY, modelOriginZ,
+                    modelDirX, modelDirY, modelDirZ, distance);
+
+            if (hit >= 0) {
+                nearestHierarchy = hierarchy;
+                nearestHit = hit;
+            }
+        }
+
+        if (nearestHierarchy == null) {
+            return null;
+        }
+
+        Vector point = new Vector(origin.get(0) + dirX * distance[0],
+                origin.get(1) + dirY * distance[0],
+                origin.get(2) + dirZ * distance[0]);
+
+        return new RayHit(nearestHierarchy.getMesh(), nearestHierarchy.getTriangleIndex(nearestHit),
+                nearestHierarchy.getTriangle(nearestHit), distance[0], point);
+    }
+
+    // Copy the world rotation into an array, row by row
+    private static double[] worldMatrixValues(Matrix worldMat, Vector translationVec) {
+        if (worldMat == null || translationVec == null || translationVec.size() != 3) {
+            throw new IllegalArgumentException("World transform must be a 3x3 matrix and a 3D translation");
+        } else if (!Math3D.isOrthonormal(worldMat)) {
+            throw new IllegalArgumentException("World matrix must be orthonormal, it cannot scale or shear");
+        }
+
+        double[] values = new double[9];
+        for (int row = 0; row < 3; row++) {
+            for (int col = 0; col < 3; col++) {
+                values[row * 3 + col] = worldMat.get(row, col);
+            }
+        }
+
+        return values;
+    }
+
+    // Hierarchies
+
+    /**
+     * @param mesh mesh to get the hierarchy of
+     * @return the hierarchy of the mesh, built the first time it is requested
+     */
+    public MeshBVH getHierarchy(Mesh3D mesh) {
+        if (mesh == null) {
+            throw new IllegalArgumentException("Cannot cast rays against a null mesh");
+        }
+
+        return hierarchies.computeIfAbsent(mesh, MeshBVH::new);
+    }
+
+    /**
+     * Discard the hierarchy of a mesh so it is rebuilt the next time the mesh is queried, must be called whenever the
+     * triangles of the mesh change
+     * @param mesh mesh whose hierarchy should be discarded
+     */
+    public void invalidate(Mesh3D mesh) {
+        hierarchies.remove(mesh);
+    }
+
+}
@@ -0,0 +1,93 @@
+package spatial;
+
+import graphicstructs.Mesh3D;
+import graphicstructs.Triangle3D;
+import mathkit.Vector;
+
+/**
+ * The nearest triangle hit by a ray
+ */
+public class RayHit {
+    /**
+     * Mesh holding the triangle that was hit
+     */
+    private final Mesh3D mesh;
+
+    /**
+     * Index of the triangle in the order its mesh iterates its triangles
+     */
+    private final int triangleIndex;
+
+    /**
+     * Triangle that was hit
+     */
+    private final Triangle3D triangle;
+
+    /**
+     * Distance along the ray to the hit, in multiples of the length of the ray's direction
+     */
+    private final double distance;
+
+    /**
+     * Point that was hit in world space
+     */
+    private final Vector point;
+
+    // Constructors
+
+    public RayHit(Mesh3D mesh, int triangleIndex, Triangle3D triangle, double distance, Vector point) {
+        this.mesh = mesh;
+        this.triangleIndex = triangleIndex;
+        this.triangle = triangle;
+        this.distance = distance;
+        this.point = point;
+    }
+
+    // Getters
+
+    /**
+     * @return the mesh holding the triangle that was hit
+     */
+    public Mesh3D getMesh() {
+        return mesh;
+    }
+
+    /**
+     * @return the index of the triangle in the order its mesh iterates its triangles
+     */
+    public int getTriangleIndex() {
+        return triangleIndex;
+    }
+
+    /**
+     * @return the triangle that was hit, in model space
+     */
+    public Triangle3D getTriangle() {
+        return triangle;
+    }
+
+    /**
+     * @return the distance along the ray to the hit, in multiples of the length of the ray's direction
+     */
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * @return the point that was hit in world space
+     */
+    public Vector getPoint() {
+        return new Vector(point);
+    }
+
+    // Overrides
+
+    /**
+     * @return the triangle index, distance and point of this hit
+     */
+    @Override
+    public String toString() {
+        return "Triangle: " + triangleIndex + " | Distance: " + distance + " | Point: " + point;
+    }
+
+}